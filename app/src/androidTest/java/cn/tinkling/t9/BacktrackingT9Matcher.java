@@ -0,0 +1,198 @@
+package cn.tinkling.t9;
+
+import android.text.TextUtils;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 参照实现: 改为 {@link T9Query} 之前的回溯匹配, 分支顺序(首字母, 前缀, 整个音节)及匹配的区间
+ * 与原实现相同. 记录已失败的 (单词, 查询位置) 以免指数级的重复搜索, 不影响结果.
+ */
+final class BacktrackingT9Matcher {
+
+    private BacktrackingT9Matcher() {
+    }
+
+    static T9MatchInfo matches(String t9Key, String t9Constraint) {
+        if (TextUtils.isEmpty(t9Key) || TextUtils.isEmpty(t9Constraint))
+            return new T9MatchInfo();
+
+        T9MatchInfo matchInfo = new T9MatchInfo();
+        if (t9Constraint.length() == 1) {
+            int index = t9Key.indexOf(T9Utils.convertDigitToInitial(t9Constraint.charAt(0)));
+            if (index >= 0) {
+                int begin = t9Key.lastIndexOf(T9Utils.T9_KEYS_DIVIDER, index) + 1;
+                matchInfo.set(T9Utils.getWordsCount(t9Key, begin, index), 1);
+            }
+            return matchInfo;
+        }
+
+        int start = 0;
+        int end;
+        do {
+            end = t9Key.indexOf(T9Utils.T9_KEYS_DIVIDER, start);
+            if (end < 0)
+                end = t9Key.length();
+
+            if (start < end)
+                matchesName(matchInfo, t9Key, start, end, t9Constraint);
+
+            start = end + 1;
+        } while (!matchInfo.found() && end < t9Key.length());
+
+        return matchInfo;
+    }
+
+    private static void matchesName(T9MatchInfo matchInfo, String t9Key, int start, int end,
+                                    String t9Constraint) {
+        if (end - start < t9Constraint.length())
+            return;
+
+        final int maxLength = 1 + (end - t9Constraint.length());
+        final char first = T9Utils.convertDigitToInitial(t9Constraint.charAt(0));
+        final Set<Long> failed = new HashSet<>();
+        int startIndex = start;
+        while (startIndex < maxLength) {
+            int index = t9Key.indexOf(first, startIndex);
+            if (index < 0 || index >= maxLength)
+                break;
+
+            BitSet bitSet = new BitSet();
+            if (matchesName(t9Key, start, end, index, t9Constraint, 0, bitSet, failed) > 0) {
+                setMatchResult(t9Key, matchInfo, bitSet, start);
+                break;
+            }
+
+            startIndex = index + 1;
+        }
+    }
+
+    private static int matchesName(String t9Key, int begin, int end, int start,
+                                   String t9Constraint, int cStart, BitSet bitSet,
+                                   Set<Long> failed) {
+        final long state = ((long) start << 32) | cStart;
+        if (failed.contains(state))
+            return 0;
+
+        int matchCount = matchesWord(t9Key, begin, end, start, t9Constraint, cStart, bitSet,
+                failed);
+        if (matchCount == 0) {
+            failed.add(state);
+        }
+        return matchCount;
+    }
+
+    private static int matchesWord(String t9Key, int begin, int end, int start,
+                                   String t9Constraint, int cStart, BitSet bitSet,
+                                   Set<Long> failed) {
+        int nextInitialCharIndex = start + 1;
+
+        boolean regionMatches = t9Key.regionMatches(start + 1, t9Constraint, cStart + 1,
+                -1 + (t9Constraint.length() - cStart));
+        do {
+            if (nextInitialCharIndex >= end ||
+                T9Utils.isInitial(t9Key.charAt(nextInitialCharIndex))) {
+                if (nextInitialCharIndex == end) {
+                    if (regionMatches) {
+                        bitSet.set(start - begin, (start - begin) + t9Constraint.length() - cStart);
+                        return 1;
+                    } else {
+                        return 0;
+                    }
+                }
+                break;
+            }
+            nextInitialCharIndex++;
+        } while (true);
+
+        if (T9Utils.convertDigitToInitial(t9Constraint.charAt(cStart + 1)) ==
+            t9Key.charAt(nextInitialCharIndex)) {
+            if (t9Constraint.length() == cStart + 2) {
+                bitSet.set(start - begin);
+                bitSet.set(nextInitialCharIndex - begin);
+                return 2;
+            }
+
+            int matchCount = matchesName(t9Key, begin, end, nextInitialCharIndex, t9Constraint,
+                    cStart + 1, bitSet, failed);
+            if (matchCount > 0) {
+                bitSet.set(start - begin);
+                return matchCount + 1;
+            }
+        }
+
+        int spanLength = nextInitialCharIndex - start;
+        for (int i = nextInitialCharIndex - 1; t9Key.charAt(i) == ' '; ) {
+            i--;
+            spanLength--;
+        }
+
+        if (t9Constraint.length() - cStart <= spanLength) {
+            if (regionMatches) {
+                bitSet.set(start - begin, ((start - begin) + t9Constraint.length()) - cStart);
+                return 1;
+            } else {
+                return 0;
+            }
+        }
+
+        if (T9Utils.convertDigitToInitial(t9Constraint.charAt(cStart + spanLength)) ==
+            t9Key.charAt(nextInitialCharIndex)
+            && t9Key.regionMatches(start + 1, t9Constraint, cStart + 1, spanLength - 1)) {
+            if (1 + (cStart + spanLength) == t9Constraint.length()) {
+                bitSet.set(start - begin, 1 + (nextInitialCharIndex - begin));
+                return 2;
+            }
+
+            int matchCount = matchesName(t9Key, begin, end, nextInitialCharIndex, t9Constraint,
+                    cStart + spanLength, bitSet, failed);
+            if (matchCount > 0) {
+                bitSet.set(start - begin, nextInitialCharIndex - begin);
+                return matchCount + 1;
+            }
+        }
+
+        return 0;
+    }
+
+    private static void setMatchResult(String t9Key, T9MatchInfo matchInfo, BitSet bitSet,
+                                       int begin) {
+        int wordCount = 0;
+        int start = -1;
+
+        final int length = t9Key.length();
+        for (int i = begin; i < length; i++) {
+            char c = t9Key.charAt(i);
+            if (i == begin || c == ' ' || T9Utils.isInitial(c)) {
+                if (bitSet.get(i - begin) && c != ' ') {
+                    if (start == -1) {
+                        start = wordCount;
+                    }
+                } else if (start > -1) {
+                    matchInfo = append(matchInfo);
+                    matchInfo.set(start, wordCount - start);
+                    start = -1;
+                }
+
+                wordCount++;
+            }
+        }
+
+        if (start > -1) {
+            matchInfo = append(matchInfo);
+            matchInfo.set(start, wordCount - start);
+        }
+    }
+
+    private static T9MatchInfo append(T9MatchInfo matchInfo) {
+        if (matchInfo.found()) {
+            T9MatchInfo info = new T9MatchInfo();
+            matchInfo.setNext(info);
+            matchInfo = info;
+        }
+        return matchInfo;
+    }
+
+}
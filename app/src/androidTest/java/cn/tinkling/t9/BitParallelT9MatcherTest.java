@@ -0,0 +1,68 @@
+package cn.tinkling.t9;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import static cn.tinkling.t9.T9TestUtils.dump;
+import static cn.tinkling.t9.T9TestUtils.randomDigits;
+import static cn.tinkling.t9.T9TestUtils.randomT9Key;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * 位并行匹配与回溯匹配的差分测试
+ */
+@RunWith(AndroidJUnit4.class)
+public class BitParallelT9MatcherTest {
+
+    private static final int ITERATIONS = 200000;
+
+    @Test
+    public void matchesSameAsRecursive() {
+        Random random = new Random(26);
+        for (int i = 0; i < ITERATIONS; i++) {
+            String t9Key = randomT9Key(random);
+            String constraint = randomDigits(random, 1 + random.nextInt(7));
+
+            assertEquals(t9Key + " / " + constraint,
+                    dump(T9MatchStrategy.RECURSIVE.matches(t9Key, constraint)),
+                    dump(T9MatchStrategy.BIT_PARALLEL.matches(t9Key, constraint)));
+        }
+    }
+
+    @Test
+    public void matchesLongKeysWithRepeatedInitials() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            sb.append("R2");
+        }
+        String t9Key = sb.toString();
+
+        String[] constraints = {"22", "2222", "2222222223", "22222222222222222222"};
+        for (String constraint : constraints) {
+            assertEquals(constraint,
+                    dump(T9MatchStrategy.RECURSIVE.matches(t9Key, constraint)),
+                    dump(T9MatchStrategy.BIT_PARALLEL.matches(t9Key, constraint)));
+        }
+    }
+
+    /**
+     * 未匹配时返回共享的 {@link T9MatchInfo#NO_MATCH}, 不分配对象
+     */
+    @Test
+    public void missesReturnNoMatch() {
+        String[][] misses = {{null, "23"}, {"", "23"}, {"R2", null}, {"R2", ""},
+                {"R2S3", "9"}, {"R2S3", "94"}, {"R2S3;T4", "99"}};
+        for (String[] miss : misses) {
+            assertSame(miss[0] + " / " + miss[1], T9MatchInfo.NO_MATCH,
+                    T9MatchStrategy.BIT_PARALLEL.matches(miss[0], miss[1]));
+        }
+        assertSame(T9MatchInfo.NO_MATCH, T9Matcher.matches("", '2'));
+        assertSame(T9MatchInfo.NO_MATCH, T9Matcher.matches(null, '2'));
+    }
+
+}
@@ -0,0 +1,153 @@
+package cn.tinkling.t9;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 各内置布局的数字键表, 及谚文音节与兼容字母分解结果的一致性
+ */
+@RunWith(AndroidJUnit4.class)
+public class KeypadLayoutTest {
+
+    /**
+     * 谚文音节的初声, 中声, 终声对应的兼容字母
+     */
+    private static final String HANGUL_LEADS = "ㄱㄲㄴㄷㄸㄹㅁㅂㅃㅅㅆㅇㅈㅉㅊㅋㅌㅍㅎ";
+    private static final String HANGUL_VOWELS = "ㅏㅐㅑㅒㅓㅔㅕㅖㅗㅘㅙㅚㅛㅜㅝㅞㅟㅠㅡㅢㅣ";
+    private static final String HANGUL_TAILS = "ㄱㄲㄳㄴㄵㄶㄷㄹㄺㄻㄼㄽㄾㄿㅀㅁㅂㅄㅅㅆㅇㅈㅊㅋㅌㅍㅎ";
+
+    private static final PinyinProvider NO_PINYIN = new PinyinProvider() {
+        @Override
+        public String[] getPinyin(char c) {
+            return null;
+        }
+    };
+
+    @Test
+    public void latinSameAsFormatCharToT9() {
+        for (char c = 0; c < 128; c++) {
+            assertEquals(String.valueOf((int) c), T9Utils.formatCharToT9(c),
+                    KeypadLayout.LATIN.getKey(c));
+        }
+    }
+
+    @Test
+    public void cyrillicKeys() {
+        assertKeys(KeypadLayout.CYRILLIC,
+                "АБВГ", '2', "ДЕЖЗ", '3', "ИЙКЛ", '4', "МНОП", '5',
+                "РСТУ", '6', "ФХЦЧ", '7', "ШЩЪЫ", '8', "ЬЭЮЯ", '9',
+                "абвгґҐ", '2', "деёжзєЁЄ", '3', "ийкліїІЇ", '4', "мноп", '5', "уўЎ", '6',
+                "ьэюя", '9');
+    }
+
+    @Test
+    public void greekKeys() {
+        assertKeys(KeypadLayout.GREEK,
+                "ΑΒΓαβγάΆ", '2', "ΔΕΖδεζέΈ", '3', "ΗΘΙηθιήίϊΐΉΊΪ", '4', "ΚΛΜκλμ", '5',
+                "ΝΞΟνξοόΌ", '6', "ΠΡΣπρσς", '7', "ΤΥΦτυφύϋΰΎΫ", '8', "ΧΨΩχψωώΏ", '9');
+    }
+
+    @Test
+    public void zhuyinKeys() {
+        assertKeys(KeypadLayout.ZHUYIN,
+                "ㄅㄆㄇㄈ", '1', "ㄉㄊㄋㄌ", '2', "ㄍㄎㄏ", '3', "ㄐㄑㄒ", '4',
+                "ㄓㄔㄕㄖ", '5', "ㄗㄘㄙ", '6', "ㄚㄛㄜㄝ", '7', "ㄞㄟㄠㄡ", '8',
+                "ㄢㄣㄤㄥㄦ", '9', "ㄧㄨㄩ", '0');
+    }
+
+    @Test
+    public void hangulSingleKeys() {
+        assertKeys(KeypadLayout.HANGUL,
+                "ㄱㄲㅋ", '1', "ㄴㄷㄸㅌ", '2', "ㅏㅑㅓㅕ", '3', "ㄹ", '4', "ㅁㅂㅃㅍ", '5',
+                "ㅗㅛㅜㅠ", '6', "ㅅㅆㅈㅉㅊ", '7', "ㅇㅎ", '8', "ㅣ", '9', "ㅡ", '0');
+    }
+
+    /**
+     * 复合字母不能查表得到, 分解后与其组成部分的数字键相同
+     */
+    @Test
+    public void hangulCompoundJamo() {
+        String[] compounds = {
+                "ㅐ", "ㅏㅣ", "ㅒ", "ㅑㅣ", "ㅔ", "ㅓㅣ", "ㅖ", "ㅕㅣ", "ㅘ", "ㅗㅏ", "ㅙ", "ㅗㅏㅣ",
+                "ㅚ", "ㅗㅣ", "ㅝ", "ㅜㅓ", "ㅞ", "ㅜㅓㅣ", "ㅟ", "ㅜㅣ", "ㅢ", "ㅡㅣ",
+                "ㄳ", "ㄱㅅ", "ㄵ", "ㄴㅈ", "ㄶ", "ㄴㅎ", "ㄺ", "ㄹㄱ", "ㄻ", "ㄹㅁ", "ㄼ", "ㄹㅂ",
+                "ㄽ", "ㄹㅅ", "ㄾ", "ㄹㅌ", "ㄿ", "ㄹㅍ", "ㅀ", "ㄹㅎ", "ㅄ", "ㅂㅅ"
+        };
+        char[] out = new char[KeypadLayout.MAX_SYLLABLE_LENGTH];
+        for (int i = 0; i < compounds.length; i += 2) {
+            char c = compounds[i].charAt(0);
+            assertEquals(compounds[i], '\0', KeypadLayout.HANGUL.getKey(c));
+            assertEquals(compounds[i], digits(compounds[i + 1]), digits(compounds[i]));
+            assertEquals(compounds[i], compounds[i + 1].length(),
+                    KeypadLayout.HANGUL.getSyllableT9Key(c, out));
+        }
+    }
+
+    /**
+     * 每个音节的数字键与其初声, 中声, 终声兼容字母的数字键相同, 且为一个单词
+     */
+    @Test
+    public void hangulSyllablesSameAsJamo() {
+        char[] out = new char[KeypadLayout.MAX_SYLLABLE_LENGTH];
+        char c = '가';
+        for (int lead = 0; lead < HANGUL_LEADS.length(); lead++) {
+            for (int vowel = 0; vowel < HANGUL_VOWELS.length(); vowel++) {
+                for (int tail = 0; tail <= HANGUL_TAILS.length(); tail++, c++) {
+                    String jamo = "" + HANGUL_LEADS.charAt(lead) + HANGUL_VOWELS.charAt(vowel)
+                            + (tail == 0 ? "" : HANGUL_TAILS.charAt(tail - 1));
+                    String message = c + " " + jamo;
+                    assertEquals(message, digits(jamo), digits(String.valueOf(c)));
+
+                    int length = KeypadLayout.HANGUL.getSyllableT9Key(c, out);
+                    assertTrue(message, T9Utils.isInitial(out[0]));
+                    for (int i = 1; i < length; i++) {
+                        assertTrue(message, out[i] >= '0' && out[i] <= '9');
+                    }
+                }
+            }
+        }
+        assertEquals('힤', c);
+    }
+
+    @Test
+    public void hangulRequiresHangulLayout() {
+        char[] out = new char[KeypadLayout.MAX_SYLLABLE_LENGTH];
+        assertEquals(0, KeypadLayout.LATIN.getSyllableT9Key('가', out));
+        assertEquals(0, KeypadLayout.CYRILLIC.getSyllableT9Key('ㅐ', out));
+        assertEquals(0, KeypadLayout.HANGUL.getSyllableT9Key('a', out));
+        assertEquals(3, KeypadLayout.ALL.getSyllableT9Key('개', out));
+    }
+
+    private static void assertKeys(KeypadLayout layout, Object... charsAndKeys) {
+        for (int i = 0; i < charsAndKeys.length; i += 2) {
+            String chars = (String) charsAndKeys[i];
+            char key = (Character) charsAndKeys[i + 1];
+            for (int c = 0; c < chars.length(); c++) {
+                assertEquals(String.valueOf(chars.charAt(c)), key,
+                        layout.getKey(chars.charAt(c)));
+                // 组合后的布局保留映射
+                assertEquals(String.valueOf(chars.charAt(c)), key,
+                        KeypadLayout.ALL.getKey(chars.charAt(c)));
+            }
+        }
+    }
+
+    /**
+     * T9键去掉单词边界后的数字
+     */
+    private static String digits(String src) {
+        String t9Key = T9Utils.buildT9Key(src, NO_PINYIN, KeypadLayout.HANGUL);
+        StringBuilder sb = new StringBuilder(t9Key.length());
+        for (int i = 0; i < t9Key.length(); i++) {
+            char c = t9Key.charAt(i);
+            sb.append(T9Utils.isInitial(c) ? (char) (c - 'C' + '#') : c);
+        }
+        return sb.toString();
+    }
+
+}
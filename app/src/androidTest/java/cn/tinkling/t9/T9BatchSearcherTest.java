@@ -0,0 +1,287 @@
+package cn.tinkling.t9;
+
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import cn.tinkling.t9search.sample.Contact;
+
+import static cn.tinkling.t9.T9TestUtils.dump;
+import static cn.tinkling.t9.T9TestUtils.randomDigits;
+import static cn.tinkling.t9.T9TestUtils.randomT9Key;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 批量过滤与逐个过滤的结果比较, 及批量查询前端的结果, 异常与关闭
+ */
+@RunWith(AndroidJUnit4.class)
+public class T9BatchSearcherTest {
+
+    private static final int CONTACTS = 2000;
+    private static final int BATCHES = 100;
+    private static final int CLIENTS = 4;
+    private static final int REQUESTS = 100;
+
+    private static final long TIMEOUT_SECONDS = 30;
+
+    /**
+     * 查询串为 {@link #FAILING_KEY} 时抛出 {@link Error}
+     */
+    private static final String FAILING_KEY = "6666";
+
+    @Test
+    public void filterBatchSameAsFilter() {
+        Random random = new Random(43);
+        List<Contact> contacts = createContacts(random, CONTACTS);
+        T9NumberColumn numberColumn = T9SearchSupport.buildNumberColumn(contacts);
+
+        for (int b = 0; b < BATCHES; b++) {
+            List<String> keys = randomKeys(random, 1 + random.nextInt(8));
+            int maxErrors = random.nextInt(4) == 0
+                    ? 1 + random.nextInt(T9FuzzyQuery.MAX_ERRORS) : 0;
+            T9MatchStrategy strategy = random.nextBoolean()
+                    ? T9MatchStrategy.RECURSIVE : T9MatchStrategy.BIT_PARALLEL;
+
+            List<List<Contact>> results = T9SearchSupport.filterBatch(contacts,
+                    random.nextBoolean() ? numberColumn : null, keys, strategy, maxErrors);
+            assertEquals(keys.size(), results.size());
+            for (int q = 0; q < keys.size(); q++) {
+                assertSameResults(keys.get(q) + " / " + maxErrors,
+                        T9SearchSupport.filter(contacts, keys.get(q), strategy, maxErrors),
+                        results.get(q));
+            }
+        }
+    }
+
+    @Test
+    public void searcherSameAsSearch() throws Exception {
+        final T9ContactIndex index = new T9ContactIndex();
+        index.publish(createContacts(new Random(44), CONTACTS));
+        final T9BatchSearcher searcher = new T9BatchSearcher(index, T9MatchStrategy.RECURSIVE,
+                1, 8, 2, TimeUnit.MILLISECONDS);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        List<Thread> clients = new ArrayList<>();
+        for (int c = 0; c < CLIENTS; c++) {
+            final Random random = new Random(45 + c);
+            Thread client = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int r = 0; r < REQUESTS; r++) {
+                            String key = randomKeys(random, 1).get(0);
+                            Future<List<Contact>> future = searcher.submit(key);
+                            assertSameResults(key,
+                                    index.snapshot().search(key, T9MatchStrategy.RECURSIVE, 1),
+                                    future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            });
+            clients.add(client);
+            client.start();
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        searcher.close();
+
+        assertNull(String.valueOf(failure.get()), failure.get());
+        assertEquals(CLIENTS * REQUESTS, searcher.requestCount());
+        assertTrue(searcher.batchCount() <= searcher.requestCount());
+    }
+
+    /**
+     * 匹配时抛出的 {@link Error} 交给该批的请求, 工作线程继续处理之后的请求
+     */
+    @Test
+    public void errorFailsBatchAndWorkerSurvives() throws Exception {
+        T9MatchStrategy failing = new T9MatchStrategy() {
+            @Override
+            public T9MatchInfo matches(@Nullable String t9Key, @Nullable String t9Constraint) {
+                if (FAILING_KEY.equals(t9Constraint))
+                    throw new StackOverflowError(t9Constraint);
+                return T9MatchStrategy.RECURSIVE.matches(t9Key, t9Constraint);
+            }
+        };
+        T9ContactIndex index = new T9ContactIndex();
+        index.publish(createContacts(new Random(46), 100));
+        T9BatchSearcher searcher = new T9BatchSearcher(index, failing, 0, 8, 0,
+                TimeUnit.MILLISECONDS);
+
+        for (int round = 0; round < 3; round++) {
+            try {
+                searcher.submit(FAILING_KEY).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                fail("expected ExecutionException");
+            } catch (ExecutionException e) {
+                assertTrue(String.valueOf(e.getCause()),
+                        e.getCause() instanceof StackOverflowError);
+            }
+
+            String key = "2";
+            assertSameResults(key, index.snapshot().search(key, failing, 0),
+                    searcher.submit(key).get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+        searcher.close();
+    }
+
+    /**
+     * 关闭时正在执行的批次仍会完成(工作线程被中断), 尚未执行的请求被取消
+     */
+    @Test
+    public void closeCompletesRunningBatch() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        T9MatchStrategy blocking = new T9MatchStrategy() {
+            @Override
+            public T9MatchInfo matches(@Nullable String t9Key, @Nullable String t9Constraint) {
+                if (started.getCount() > 0) {
+                    started.countDown();
+                    awaitUninterruptibly(release);
+                }
+                return T9MatchStrategy.RECURSIVE.matches(t9Key, t9Constraint);
+            }
+        };
+        T9ContactIndex index = new T9ContactIndex();
+        index.publish(createContacts(new Random(48), CONTACTS));
+        T9BatchSearcher searcher = new T9BatchSearcher(index, blocking, 0, 1, 0,
+                TimeUnit.MILLISECONDS);
+
+        Future<List<Contact>> running = searcher.submit("2");
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Future<List<Contact>> queued = searcher.submit("3");
+        searcher.close();
+        release.countDown();
+
+        assertSameResults("2", index.snapshot().search("2", T9MatchStrategy.RECURSIVE, 0),
+                running.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        try {
+            queued.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            fail("expected CancellationException");
+        } catch (CancellationException expected) {
+        }
+        assertEquals(1, searcher.requestCount());
+    }
+
+    @Test
+    public void submitAfterCloseThrows() throws Exception {
+        T9ContactIndex index = new T9ContactIndex();
+        index.publish(createContacts(new Random(47), 100));
+        T9BatchSearcher searcher = new T9BatchSearcher(index, T9MatchStrategy.RECURSIVE, 0, 8,
+                0, TimeUnit.MILLISECONDS);
+        searcher.submit("2").get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        searcher.close();
+
+        try {
+            searcher.submit("2");
+            fail("submit after close");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void constructorRejectsInvalidArguments() {
+        T9ContactIndex index = new T9ContactIndex();
+        int[][] invalid = {{-1, 1, 0}, {T9FuzzyQuery.MAX_ERRORS + 1, 1, 0}, {0, 0, 0}, {0, 1, -1}};
+        for (int[] arguments : invalid) {
+            try {
+                new T9BatchSearcher(index, T9MatchStrategy.RECURSIVE, arguments[0], arguments[1],
+                        arguments[2], TimeUnit.MILLISECONDS).close();
+                fail(Arrays.toString(arguments));
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    /**
+     * 等待时不响应中断, 之后恢复中断状态
+     */
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void assertSameResults(String message, List<Contact> expected,
+                                          List<Contact> actual) {
+        assertEquals(message, expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Contact e = expected.get(i);
+            Contact a = actual.get(i);
+            assertEquals(message, e.id, a.id);
+            assertEquals(message, dump(e.nameMatchInfo), dump(a.nameMatchInfo));
+            assertEquals(message, dump(e.phoneNumberMatchInfo), dump(a.phoneNumberMatchInfo));
+            assertEquals(message, dump(e.extraMatchInfo), dump(a.extraMatchInfo));
+            assertEquals(message, e.matchedNumber, a.matchedNumber);
+            assertEquals(message, e.matchedExtra, a.matchedExtra);
+        }
+    }
+
+    /**
+     * 随机查询串, 包括重复的, 空的及 null
+     */
+    private static List<String> randomKeys(Random random, int count) {
+        List<String> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            switch (random.nextInt(10)) {
+                case 0:
+                    keys.add(random.nextBoolean() ? null : "");
+                    break;
+                case 1:
+                    keys.add(keys.isEmpty() ? "2" : keys.get(random.nextInt(keys.size())));
+                    break;
+                default:
+                    keys.add(randomDigits(random, 1 + random.nextInt(5)));
+                    break;
+            }
+        }
+        return keys;
+    }
+
+    private static List<Contact> createContacts(Random random, int count) {
+        List<Contact> contacts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String[] numbers = new String[random.nextInt(3)];
+            for (int n = 0; n < numbers.length; n++) {
+                numbers[n] = "1" + randomDigits(random, 10);
+            }
+            String[] extras = new String[random.nextInt(2)];
+            String[] extraT9Keys = new String[extras.length];
+            for (int e = 0; e < extras.length; e++) {
+                extras[e] = "extra" + e;
+                extraT9Keys[e] = randomT9Key(random);
+            }
+            contacts.add(new Contact(i, "name" + i, randomT9Key(random), numbers, extras,
+                    extraT9Keys));
+        }
+        return contacts;
+    }
+
+}
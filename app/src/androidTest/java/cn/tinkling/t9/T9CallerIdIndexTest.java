@@ -0,0 +1,123 @@
+package cn.tinkling.t9;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * 来电号码查找的匹配规则及吞吐量
+ */
+@RunWith(AndroidJUnit4.class)
+public class T9CallerIdIndexTest {
+
+    private static final String TAG = "T9CallerIdIndexTest";
+
+    private static final int BOOK_SIZE = 100000;
+    private static final int LOOKUPS = 100000;
+
+    @Test
+    public void matchesAcrossPrefixes() {
+        T9CallerIdIndex index = T9CallerIdIndex.build(Arrays.asList(
+                new String[]{"13800001111"},
+                new String[]{"+86 139-0000-2222", "10086"},
+                new String[]{"0755 8888 3333"},
+                new String[]{"23800001111"}));
+
+        assertEquals(0, index.lookup("13800001111"));
+        assertEquals(0, index.lookup("+8613800001111"));
+        assertEquals(0, index.lookup("013800001111"));
+        assertEquals(1, index.lookup("13900002222"));
+        assertEquals(1, index.lookup("(139) 0000-2222"));
+        assertEquals(1, index.lookup("0139 0000 2222"));
+        assertEquals(1, index.lookup("10086"));
+        assertEquals(2, index.lookup("+86 755 88883333"));
+        assertEquals(2, index.lookup("88883333"));
+        assertEquals(3, index.lookup("+86 23800001111"));
+
+        // 公共后缀过短, 或对应多个联系人
+        assertEquals(-1, index.lookup("110086"));
+        assertEquals(-1, index.lookup("0001111"));
+        assertEquals(-1, index.lookup("3800001111"));
+        assertEquals(-1, index.lookup("99999999"));
+        assertEquals(-1, index.lookup("010 8888 3333"));
+        assertEquals(-1, index.lookup(""));
+        assertEquals(-1, index.lookup(null));
+        assertEquals(5, index.size());
+    }
+
+    @Test
+    public void sameNumberPrefersFirstRow() {
+        T9CallerIdIndex index = T9CallerIdIndex.build(Arrays.asList(
+                new String[]{"13800001111"}, null, new String[]{"138 0000 1111"}));
+        assertEquals(0, index.lookup("+86 138 0000 1111"));
+    }
+
+    @Test
+    public void normalizeSameAsRegex() {
+        Random random = new Random(41);
+        final String chars = "0123456789 ()-+*#,";
+        for (int i = 0; i < 10000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(16);
+            for (int c = 0; c < length; c++) {
+                sb.append(chars.charAt(random.nextInt(chars.length())));
+            }
+
+            String number = sb.toString();
+            assertEquals(number, number.replaceAll("[ \\(\\)-]+", ""),
+                    T9Utils.normalizePhoneNumber(number));
+        }
+
+        String normalized = "+8613800001111";
+        assertSame(normalized, T9Utils.normalizePhoneNumber(normalized));
+    }
+
+    @Test
+    public void lookupThroughput() {
+        Random random = new Random(42);
+        List<String[]> book = new ArrayList<>(BOOK_SIZE);
+        for (int i = 0; i < BOOK_SIZE; i++) {
+            book.add(new String[]{"1" + (3000000000L + random.nextInt(1000000000))});
+        }
+
+        long start = System.nanoTime();
+        T9CallerIdIndex index = T9CallerIdIndex.build(book);
+        long buildNanos = System.nanoTime() - start;
+
+        String[] incoming = new String[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            String number = book.get(random.nextInt(BOOK_SIZE))[0];
+            incoming[i] = (i & 1) == 0 ? "+86 " + number : number;
+        }
+
+        // 预热
+        for (int i = 0; i < LOOKUPS / 10; i++) {
+            index.lookup(incoming[i]);
+        }
+
+        start = System.nanoTime();
+        int found = 0;
+        for (String number : incoming) {
+            if (index.lookup(number) >= 0)
+                found++;
+        }
+        long nanos = System.nanoTime() - start;
+
+        long perSecond = LOOKUPS * 1000000000L / Math.max(1, nanos);
+        Log.i(TAG, BOOK_SIZE + " numbers: build " + buildNanos / 1000000 + "ms, "
+                + index.sizeInBytes() / 1024 + "KB, " + perSecond + " lookups/s");
+        assertEquals(LOOKUPS, found);
+    }
+
+}
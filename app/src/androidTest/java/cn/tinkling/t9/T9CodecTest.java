@@ -0,0 +1,240 @@
+package cn.tinkling.t9;
+
+import android.os.Parcel;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import cn.tinkling.t9search.sample.Contact;
+
+import static cn.tinkling.t9.T9TestUtils.dump;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 编码往返测试, 及与 Parcel 的编码/解码吞吐量对比
+ */
+@RunWith(AndroidJUnit4.class)
+public class T9CodecTest {
+
+    private static final String TAG = "T9CodecTest";
+
+    private static final int CONTACTS = 2000;
+    private static final int ROUNDS = 10;
+
+    @Test
+    public void indexRoundTrip() {
+        List<Contact> contacts = createContacts(new Random(40), CONTACTS);
+        T9Codec.Index index = T9Codec.readIndex(T9Codec.encodeIndex(contacts));
+
+        assertEquals(contacts.size(), index.size());
+        for (int row = 0; row < contacts.size(); row++) {
+            assertContactEquals(contacts.get(row), index.getContact(row));
+        }
+        index.close();
+    }
+
+    @Test
+    public void resultsRoundTrip() {
+        List<Contact> contacts = createContacts(new Random(41), CONTACTS);
+        String[] keys = {"2", "64", "946", "5464", "138"};
+        for (String key : keys) {
+            List<Contact> results = T9SearchSupport.filter(contacts, key);
+            List<Contact> decoded = T9Codec.decodeResults(T9Codec.encodeResults(results));
+
+            assertEquals(key, results.size(), decoded.size());
+            for (int i = 0; i < results.size(); i++) {
+                Contact expected = results.get(i);
+                Contact actual = decoded.get(i);
+                assertContactEquals(expected, actual);
+                assertEquals(expected.phoneNumber, actual.phoneNumber);
+                assertEquals(expected.matchedNumber, actual.matchedNumber);
+                assertEquals(expected.matchedExtra, actual.matchedExtra);
+                assertEquals(dump(expected.nameMatchInfo), dump(actual.nameMatchInfo));
+                assertEquals(dump(expected.phoneNumberMatchInfo),
+                        dump(actual.phoneNumberMatchInfo));
+                assertEquals(dump(expected.extraMatchInfo), dump(actual.extraMatchInfo));
+            }
+        }
+    }
+
+    @Test
+    public void mappedFileIsSearchable() throws IOException {
+        List<Contact> contacts = createContacts(new Random(42), CONTACTS);
+        File file = File.createTempFile("t9codec", ".bin");
+        try {
+            T9Codec.write(T9Codec.encodeIndex(contacts), file);
+            T9Codec.Index index = T9Codec.readIndex(T9Codec.map(file));
+
+            int[] rows = new int[CONTACTS];
+            int count = index.contacts().search("64", 0, rows);
+            List<Contact> expected = new ArrayList<>();
+            for (int row = 0; row < contacts.size(); row++) {
+                Contact contact = contacts.get(row);
+                if (T9MatchStrategy.BIT_PARALLEL.matches(contact.t9Key, "64").found()
+                        || matchesNumber(contact, "64"))
+                    expected.add(contact);
+            }
+
+            assertEquals(expected.size(), count);
+            for (int i = 0; i < count; i++) {
+                assertEquals(expected.get(i).id, index.getId(rows[i]));
+            }
+            index.close();
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOtherVersions() {
+        ByteBuffer buffer = T9Codec.encodeIndex(createContacts(new Random(43), 10));
+        buffer.putInt(4, T9Codec.VERSION + 1);
+        T9Codec.readIndex(buffer);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsIndexAsResults() {
+        T9Codec.decodeResults(T9Codec.encodeIndex(createContacts(new Random(44), 10)));
+    }
+
+    @Test
+    public void throughputAgainstParcel() {
+        List<Contact> contacts = createContacts(new Random(45), CONTACTS);
+        List<Contact> results = T9SearchSupport.filter(contacts, "2");
+
+        long codecEncode = 0;
+        long codecDecode = 0;
+        long parcelEncode = 0;
+        long parcelDecode = 0;
+        int codecBytes = 0;
+        int parcelBytes = 0;
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            ByteBuffer buffer = T9Codec.encodeResults(results);
+            codecEncode += System.nanoTime() - start;
+            codecBytes = buffer.remaining();
+
+            start = System.nanoTime();
+            List<Contact> decoded = T9Codec.decodeResults(buffer);
+            codecDecode += System.nanoTime() - start;
+            assertEquals(results.size(), decoded.size());
+
+            start = System.nanoTime();
+            Parcel parcel = Parcel.obtain();
+            writeToParcel(parcel, results);
+            byte[] bytes = parcel.marshall();
+            parcel.recycle();
+            parcelEncode += System.nanoTime() - start;
+            parcelBytes = bytes.length;
+
+            start = System.nanoTime();
+            parcel = Parcel.obtain();
+            parcel.unmarshall(bytes, 0, bytes.length);
+            parcel.setDataPosition(0);
+            readFromParcel(parcel);
+            parcel.recycle();
+            parcelDecode += System.nanoTime() - start;
+        }
+
+        Log.i(TAG, results.size() + " results: codec " + codecBytes + " bytes, encode "
+                + codecEncode / ROUNDS / 1000 + "us, decode " + codecDecode / ROUNDS / 1000
+                + "us; parcel " + parcelBytes + " bytes, encode " + parcelEncode / ROUNDS / 1000
+                + "us, decode " + parcelDecode / ROUNDS / 1000 + "us");
+    }
+
+    /**
+     * 与 Parcelable 实现相同的逐字段写入
+     */
+    private static void writeToParcel(Parcel parcel, List<Contact> contacts) {
+        parcel.writeInt(contacts.size());
+        for (Contact contact : contacts) {
+            parcel.writeLong(contact.id);
+            parcel.writeString(contact.name);
+            parcel.writeString(contact.t9Key);
+            parcel.writeStringArray(contact.phoneNumbers);
+            parcel.writeStringArray(contact.extras);
+            parcel.writeStringArray(contact.extraT9Keys);
+            parcel.writeInt(contact.matchedNumber);
+            parcel.writeInt(contact.matchedExtra);
+            parcel.writeParcelable(contact.nameMatchInfo, 0);
+            parcel.writeParcelable(contact.phoneNumberMatchInfo, 0);
+            parcel.writeParcelable(contact.extraMatchInfo, 0);
+        }
+    }
+
+    private static List<Contact> readFromParcel(Parcel parcel) {
+        final int size = parcel.readInt();
+        List<Contact> contacts = new ArrayList<>(size);
+        ClassLoader classLoader = T9MatchInfo.class.getClassLoader();
+        for (int i = 0; i < size; i++) {
+            Contact contact = new Contact(parcel.readLong(), parcel.readString(),
+                    parcel.readString(), parcel.createStringArray(), parcel.createStringArray(),
+                    parcel.createStringArray());
+            contact.matchedNumber = parcel.readInt();
+            contact.matchedExtra = parcel.readInt();
+            contact.nameMatchInfo = parcel.readParcelable(classLoader);
+            contact.phoneNumberMatchInfo = parcel.readParcelable(classLoader);
+            contact.extraMatchInfo = parcel.readParcelable(classLoader);
+            contacts.add(contact);
+        }
+        return contacts;
+    }
+
+    private static void assertContactEquals(Contact expected, Contact actual) {
+        assertEquals(expected.id, actual.id);
+        assertEquals(expected.name, actual.name);
+        assertEquals(expected.t9Key, actual.t9Key);
+        assertArrayEquals(expected.phoneNumbers, actual.phoneNumbers);
+        assertArrayEquals(expected.extras, actual.extras);
+        assertArrayEquals(expected.extraT9Keys, actual.extraT9Keys);
+    }
+
+    private static boolean matchesNumber(Contact contact, String key) {
+        for (String number : contact.phoneNumbers) {
+            if (number.contains(key))
+                return true;
+        }
+        return false;
+    }
+
+    private static List<Contact> createContacts(Random random, int count) {
+        final String chars = "张王李赵刘陈杨黄abcdefghijklmnopqrstuvwxyz ";
+        List<Contact> contacts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder name = new StringBuilder();
+            int length = 1 + random.nextInt(8);
+            for (int c = 0; c < length; c++) {
+                name.append(chars.charAt(random.nextInt(chars.length())));
+            }
+
+            String[] numbers = new String[random.nextInt(3)];
+            for (int n = 0; n < numbers.length; n++) {
+                numbers[n] = String.valueOf(1000000L + random.nextInt(Integer.MAX_VALUE));
+            }
+
+            String[] extras = random.nextInt(4) == 0 ? new String[]{"Acme " + i} : new String[0];
+            String[] extraT9Keys = new String[extras.length];
+            for (int e = 0; e < extras.length; e++) {
+                extraT9Keys[e] = T9SearchSupport.buildT9Key(extras[e]);
+            }
+
+            String text = name.toString();
+            contacts.add(new Contact(random.nextLong(), text, T9SearchSupport.buildT9Key(text),
+                    numbers, extras, extraT9Keys));
+        }
+        return contacts;
+    }
+
+}
@@ -0,0 +1,241 @@
+package cn.tinkling.t9;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import cn.tinkling.t9search.sample.Contact;
+
+import static cn.tinkling.t9.T9TestUtils.dump;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 多线程压力测试: 并发查询只能看到完整的某一版本快照
+ */
+@RunWith(AndroidJUnit4.class)
+public class T9ContactIndexTest {
+
+    private static final int READERS = 8;
+    private static final int VERSIONS = 300;
+    private static final int WRITERS = 4;
+    private static final int UPDATES = 200;
+
+    /**
+     * 版本 v 的每个联系人 id 为 v * ID_STRIDE + 下标, 号码均以 "1" 开头
+     */
+    private static final long ID_STRIDE = 100000;
+
+    @Test
+    public void readersSeeConsistentSnapshots() throws InterruptedException {
+        final T9ContactIndex index = new T9ContactIndex(true);
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch started = new CountDownLatch(READERS);
+
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < READERS; r++) {
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    long lastVersion = 0;
+                    try {
+                        while (!done.get()) {
+                            T9ContactIndex.Snapshot snapshot = index.snapshot();
+                            assertTrue(snapshot.version() >= lastVersion);
+                            lastVersion = snapshot.version();
+                            checkSnapshot(snapshot);
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+            readers.add(reader);
+            reader.start();
+        }
+
+        started.await();
+        for (int v = 1; v <= VERSIONS; v++) {
+            T9ContactIndex.Snapshot snapshot = index.publish(createContacts(v));
+            assertEquals(v, snapshot.version());
+        }
+        done.set(true);
+
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertNull(String.valueOf(failure.get()), failure.get());
+        assertEquals(VERSIONS, index.snapshot().version());
+    }
+
+    @Test
+    public void concurrentUpdatesAreNotLost() throws InterruptedException {
+        final T9ContactIndex index = new T9ContactIndex();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            final int writer = w;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < UPDATES; i++) {
+                            final long id = (long) i * WRITERS + writer;
+                            index.update(new T9ContactIndex.Mutation() {
+                                @Override
+                                public void apply(List<Contact> contacts) {
+                                    contacts.add(createContact(id));
+                                }
+                            });
+                            checkSnapshot(index.snapshot());
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+            writers.add(thread);
+            thread.start();
+        }
+
+        for (Thread thread : writers) {
+            thread.join();
+        }
+        assertNull(String.valueOf(failure.get()), failure.get());
+
+        T9ContactIndex.Snapshot snapshot = index.snapshot();
+        assertEquals(WRITERS * UPDATES, snapshot.contacts().size());
+        assertEquals(WRITERS * UPDATES, snapshot.version());
+        assertEquals(WRITERS * UPDATES, snapshot.search("1").size());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void snapshotIsImmutable() {
+        T9ContactIndex index = new T9ContactIndex();
+        List<Contact> contacts = createContacts(1);
+        index.publish(contacts);
+        contacts.clear();
+
+        assertEquals(contacts(1), index.snapshot().contacts().size());
+        index.snapshot().contacts().clear();
+    }
+
+    /**
+     * 发布不修改调用方的联系人, 共享键字典的查询结果与不带字典的过滤相同
+     */
+    @Test
+    public void publishDoesNotModifyContacts() {
+        List<Contact> contacts = new ArrayList<>();
+        List<String> t9Keys = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            // 内容相同的键为不同实例
+            String t9Key = new String("V6V3" + (i % 7));
+            t9Keys.add(t9Key);
+            contacts.add(new Contact(i, "name" + i, t9Key, new String[]{"1" + i},
+                    new String[0], new String[0]));
+        }
+        T9ContactIndex.Snapshot snapshot = new T9ContactIndex().publish(contacts);
+
+        for (int i = 0; i < contacts.size(); i++) {
+            assertSame(t9Keys.get(i), contacts.get(i).t9Key);
+        }
+        for (String key : new String[]{"9", "93", "934", "6", "12", "3"}) {
+            for (int maxErrors = 0; maxErrors <= 1; maxErrors++) {
+                List<Contact> expected = T9SearchSupport.filter(contacts, key,
+                        T9MatchStrategy.RECURSIVE, maxErrors);
+                List<Contact> actual = snapshot.search(key, T9MatchStrategy.RECURSIVE,
+                        maxErrors);
+                assertEquals(key, expected.size(), actual.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(key, expected.get(i).id, actual.get(i).id);
+                    assertEquals(key, dump(expected.get(i).nameMatchInfo),
+                            dump(actual.get(i).nameMatchInfo));
+                }
+            }
+        }
+    }
+
+    /**
+     * 默认不生成号码列存储; 生成时结果相同, 包括含有 T9 按键以外字符的查询
+     */
+    @Test
+    public void numberColumnIsOptional() {
+        List<Contact> contacts = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            contacts.add(new Contact(i, "name" + i, "V6V3" + (i % 7),
+                    new String[]{"+86 138-" + i, "1" + i}, new String[0], new String[0]));
+        }
+        T9ContactIndex.Snapshot snapshot = new T9ContactIndex().publish(contacts);
+        T9ContactIndex.Snapshot columnSnapshot = new T9ContactIndex(true).publish(contacts);
+        assertNull(snapshot.numberColumn());
+        assertEquals(contacts.size(), columnSnapshot.numberColumn().size());
+
+        for (String key : new String[]{"1", "13", "+86", "138-", "8-2", "-", " ", "96", "é"}) {
+            List<Contact> expected = T9SearchSupport.filter(contacts, key,
+                    T9MatchStrategy.RECURSIVE, 0);
+            for (T9ContactIndex.Snapshot s : new T9ContactIndex.Snapshot[]{snapshot,
+                    columnSnapshot}) {
+                List<Contact> actual = s.search(key);
+                assertEquals(key, expected.size(), actual.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(key, expected.get(i).id, actual.get(i).id);
+                    assertEquals(key, dump(expected.get(i).phoneNumberMatchInfo),
+                            dump(actual.get(i).phoneNumberMatchInfo));
+                }
+            }
+        }
+        assertTrue(snapshot.search("138-").size() > 0);
+    }
+
+    /**
+     * 快照内部一致: 号码列与联系人对应, 查询结果全部来自同一版本
+     */
+    private static void checkSnapshot(T9ContactIndex.Snapshot snapshot) {
+        List<Contact> contacts = snapshot.contacts();
+        if (snapshot.numberColumn() != null) {
+            assertEquals(contacts.size(), snapshot.numberColumn().size());
+        }
+
+        List<Contact> result = snapshot.search("1");
+        assertEquals(contacts.size(), result.size());
+        if (snapshot.version() == 0 || contacts.isEmpty())
+            return;
+
+        long version = contacts.get(0).id / ID_STRIDE;
+        for (Contact contact : result) {
+            assertEquals(version, contact.id / ID_STRIDE);
+        }
+    }
+
+    private static int contacts(int version) {
+        return 20 + (version % 7) * 30;
+    }
+
+    private static List<Contact> createContacts(int version) {
+        int count = contacts(version);
+        List<Contact> contacts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            contacts.add(createContact(version * ID_STRIDE + i));
+        }
+        return contacts;
+    }
+
+    private static Contact createContact(long id) {
+        String name = "name" + id;
+        return new Contact(id, name, "V6V3" + id, new String[]{"1" + id, "2" + id},
+                new String[0], new String[0]);
+    }
+
+}
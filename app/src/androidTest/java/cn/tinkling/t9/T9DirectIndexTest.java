@@ -0,0 +1,213 @@
+package cn.tinkling.t9;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static cn.tinkling.t9.T9TestUtils.randomDigits;
+import static cn.tinkling.t9.T9TestUtils.randomT9Key;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 堆外索引的存取及查找结果与 {@link T9Query} / {@link String#contains(CharSequence)} 比较,
+ * 及关闭后(包括与查找并发时)的行为
+ */
+@RunWith(AndroidJUnit4.class)
+public class T9DirectIndexTest {
+
+    private static final int ROWS = 3000;
+    private static final int QUERIES = 300;
+
+    private static final String NAME_CHARS = "王李张abcXYZ 1é";
+
+    @Test
+    public void rowsRoundTrip() {
+        Random random = new Random(33);
+        List<Row> rows = randomRows(random, ROWS);
+        T9DirectIndex index = build(rows);
+
+        assertEquals(rows.size(), index.size());
+        assertTrue(index.sizeInBytes() > 0);
+        for (int i = 0; i < rows.size(); i++) {
+            Row row = rows.get(i);
+            assertEquals(row.name == null ? "" : row.name, index.getName(i));
+            assertEquals(row.t9Key, index.getT9Key(i));
+            assertArrayEquals(row.phoneNumbers, index.getPhoneNumbers(i));
+        }
+        index.close();
+    }
+
+    @Test
+    public void searchSameAsReference() {
+        Random random = new Random(34);
+        List<Row> rows = randomRows(random, ROWS);
+        T9DirectIndex index = build(rows);
+
+        for (int q = 0; q < QUERIES; q++) {
+            String constraint = randomDigits(random, 1 + random.nextInt(4));
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < rows.size(); i++) {
+                if (rows.get(i).matches(constraint))
+                    expected.add(i);
+            }
+
+            // 分页查找, 每次从上一页最后一行之后继续
+            int[] page = new int[1 + random.nextInt(64)];
+            List<Integer> actual = new ArrayList<>();
+            int fromRow = 0;
+            while (true) {
+                int count = index.search(constraint, fromRow, page);
+                for (int i = 0; i < count; i++) {
+                    actual.add(page[i]);
+                }
+                if (count < page.length)
+                    break;
+                fromRow = page[count - 1] + 1;
+            }
+            assertEquals(constraint, expected, actual);
+        }
+        index.close();
+    }
+
+    @Test
+    public void emptyConstraintNeverMatches() {
+        T9DirectIndex index = build(randomRows(new Random(35), 10));
+        int[] rows = new int[10];
+        assertEquals(0, index.search(null, 0, rows));
+        assertEquals(0, index.search("", 0, rows));
+        assertEquals(0, index.search("2", 0, new int[0]));
+        index.close();
+    }
+
+    @Test
+    public void closedIndexThrows() {
+        T9DirectIndex index = build(randomRows(new Random(36), 10));
+        assertFalse(index.isClosed());
+        index.close();
+        index.close();
+        assertTrue(index.isClosed());
+
+        try {
+            index.search("2", 0, new int[10]);
+            fail("search after close");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            index.getName(0);
+            fail("getName after close");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            index.getT9Key(0);
+            fail("getT9Key after close");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            index.getPhoneNumbers(0);
+            fail("getPhoneNumbers after close");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    /**
+     * 与查找并发关闭: 已开始的查找正常完成, 之后的调用只抛出 {@link IllegalStateException}
+     */
+    @Test
+    public void closeDuringSearch() throws InterruptedException {
+        Random random = new Random(37);
+        List<Row> rows = randomRows(random, ROWS);
+        for (int round = 0; round < 20; round++) {
+            final T9DirectIndex index = build(rows);
+            final AtomicReference<Throwable> failure = new AtomicReference<>();
+            Thread searcher = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    int[] page = new int[ROWS];
+                    try {
+                        while (true) {
+                            index.search("2", 0, page);
+                            index.getPhoneNumbers(ROWS - 1);
+                        }
+                    } catch (IllegalStateException expected) {
+                        // 已关闭
+                    } catch (Throwable t) {
+                        failure.set(t);
+                    }
+                }
+            });
+            searcher.start();
+            Thread.sleep(random.nextInt(5));
+            index.close();
+            searcher.join();
+            assertNull(String.valueOf(failure.get()), failure.get());
+        }
+    }
+
+    private static T9DirectIndex build(List<Row> rows) {
+        T9DirectIndex.Builder builder = new T9DirectIndex.Builder();
+        for (Row row : rows) {
+            builder.add(row.name, row.t9Key, row.phoneNumbers);
+        }
+        return builder.build();
+    }
+
+    private static List<Row> randomRows(Random random, int count) {
+        List<Row> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = null;
+            if (random.nextInt(20) != 0) {
+                StringBuilder sb = new StringBuilder();
+                int length = 1 + random.nextInt(6);
+                for (int c = 0; c < length; c++) {
+                    sb.append(NAME_CHARS.charAt(random.nextInt(NAME_CHARS.length())));
+                }
+                name = sb.toString();
+            }
+
+            String[] phoneNumbers = new String[random.nextInt(4)];
+            for (int n = 0; n < phoneNumbers.length; n++) {
+                phoneNumbers[n] = (random.nextBoolean() ? "+86" : "")
+                        + randomDigits(random, random.nextInt(12));
+            }
+            rows.add(new Row(name, random.nextInt(20) == 0 ? "" : randomT9Key(random),
+                    phoneNumbers));
+        }
+        return rows;
+    }
+
+    private static final class Row {
+
+        final String name;
+        final String t9Key;
+        final String[] phoneNumbers;
+
+        Row(String name, String t9Key, String[] phoneNumbers) {
+            this.name = name;
+            this.t9Key = t9Key;
+            this.phoneNumbers = phoneNumbers;
+        }
+
+        boolean matches(String constraint) {
+            if (T9Query.compile(constraint).matches(t9Key).found())
+                return true;
+
+            for (String number : phoneNumbers) {
+                if (number.contains(constraint))
+                    return true;
+            }
+            return false;
+        }
+    }
+
+}
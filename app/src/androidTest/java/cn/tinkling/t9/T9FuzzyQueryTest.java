@@ -0,0 +1,303 @@
+package cn.tinkling.t9;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import cn.tinkling.t9search.sample.Contact;
+
+import static cn.tinkling.t9.T9TestUtils.randomDigits;
+import static cn.tinkling.t9.T9TestUtils.randomT9Key;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 模糊匹配的编辑距离与动态规划参照实现比较, 及过滤结果中模糊匹配相对精确匹配的排序
+ */
+@RunWith(AndroidJUnit4.class)
+public class T9FuzzyQueryTest {
+
+    private static final int ITERATIONS = 50000;
+    private static final int CONTACTS = 2000;
+    private static final int QUERIES = 100;
+
+    private static final int INFINITY = Integer.MAX_VALUE / 2;
+
+    @Test
+    public void nameDistanceSameAsReference() {
+        Random random = new Random(28);
+        for (int i = 0; i < ITERATIONS; i++) {
+            String t9Key = randomT9Key(random);
+            int maxErrors = 1 + random.nextInt(T9FuzzyQuery.MAX_ERRORS);
+            String constraint = randomDigits(random, 2 * maxErrors + 1 + random.nextInt(4));
+
+            T9MatchInfo matchInfo = T9FuzzyQuery.compile(constraint, maxErrors).matches(t9Key);
+            int expected = nameDistance(t9Key, constraint);
+            String message = t9Key + " / " + constraint + " / " + maxErrors;
+            assertEquals(message, expected <= maxErrors, matchInfo.found());
+            if (matchInfo.found()) {
+                assertEquals(message, Math.max(1, expected), matchInfo.errors());
+                assertTrue(message, matchInfo.start() >= 0 && matchInfo.length() > 0);
+            }
+        }
+    }
+
+    @Test
+    public void numberDistanceSameAsReference() {
+        Random random = new Random(29);
+        for (int i = 0; i < ITERATIONS; i++) {
+            String number = randomNumber(random);
+            int maxErrors = 1 + random.nextInt(T9FuzzyQuery.MAX_ERRORS);
+            String constraint = randomNumber(random).substring(0,
+                    2 * maxErrors + 1 + random.nextInt(2));
+
+            T9MatchInfo matchInfo =
+                    T9FuzzyQuery.compile(constraint, maxErrors).matchesNumber(number);
+            int expected = distance(constraint, number, null);
+            String message = number + " / " + constraint + " / " + maxErrors;
+            assertEquals(message, expected <= maxErrors, matchInfo.found());
+            if (matchInfo.found()) {
+                assertEquals(message, Math.max(1, expected), matchInfo.errors());
+                // 高亮的区间与查询串的编辑距离不超过报告的距离
+                String span = number.substring(matchInfo.start(),
+                        matchInfo.start() + matchInfo.length());
+                assertTrue(message + ": " + span,
+                        levenshtein(constraint, span) <= matchInfo.errors());
+            }
+        }
+    }
+
+    /**
+     * 多输入了开头的数字
+     */
+    @Test
+    public void leadingDeletions() {
+        assertNumberMatch("2345", 1, "345", 0, 3, 1);
+        assertNumberMatch("23456", 1, "3456", 0, 4, 1);
+        assertNumberMatch("23456", 2, "13456", 1, 4, 1);
+        assertNumberMatch("2234567", 2, "34567", 0, 5, 2);
+        assertSame(T9MatchInfo.NO_MATCH, T9FuzzyQuery.compile("2234567", 1).matchesNumber("34567"));
+
+        // 全拼: 张(94264)三(726), 多输入一位后从单词首字母开始匹配
+        T9MatchInfo matchInfo = T9FuzzyQuery.compile("594264", 1).matches("Y4264 W26");
+        assertTrue(matchInfo.found());
+        assertEquals(1, matchInfo.errors());
+        assertEquals(0, matchInfo.start());
+        assertTrue(T9FuzzyQuery.compile("3726", 1).matches("Y4264 W26").found());
+        // 首字母
+        assertTrue(T9FuzzyQuery.compile("697", 1).matches("Y4264 W26").found());
+        // 漏输入单词首字母, 匹配仍从首字母开始
+        assertTrue(T9FuzzyQuery.compile("4264", 1).matches("Y4264 W26").found());
+    }
+
+    @Test
+    public void shortOrInvalidConstraintsNeverMatch() {
+        for (int maxErrors = 1; maxErrors <= T9FuzzyQuery.MAX_ERRORS; maxErrors++) {
+            String constraint = T9TestUtils.repeat("2", 2 * maxErrors);
+            T9FuzzyQuery query = T9FuzzyQuery.compile(constraint, maxErrors);
+            assertSame(T9MatchInfo.NO_MATCH, query.matches("R222"));
+            assertSame(T9MatchInfo.NO_MATCH, query.matchesNumber("2222"));
+        }
+        assertSame(T9MatchInfo.NO_MATCH, T9FuzzyQuery.compile("22a22", 1).matchesNumber("22a22"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void filterRejectsTooManyErrors() {
+        T9SearchSupport.filter(new ArrayList<Contact>(), "2345678",
+                T9MatchStrategy.RECURSIVE, T9FuzzyQuery.MAX_ERRORS + 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void filterRejectsNegativeErrors() {
+        T9SearchSupport.filter(new ArrayList<Contact>(), "2345678",
+                T9MatchStrategy.RECURSIVE, -1);
+    }
+
+    /**
+     * 精确匹配的结果及顺序不变, 模糊匹配的结果按编辑距离排在其后, 且包含参照实现认为匹配的全部联系人
+     */
+    @Test
+    public void fuzzyResultsRankAfterExactResults() {
+        Random random = new Random(30);
+        List<Contact> contacts = new ArrayList<>(CONTACTS);
+        for (int i = 0; i < CONTACTS; i++) {
+            contacts.add(new Contact(i, "name" + i, randomT9Key(random),
+                    new String[]{randomNumber(random), randomNumber(random)},
+                    new String[0], new String[0]));
+        }
+
+        for (int q = 0; q < QUERIES; q++) {
+            int maxErrors = 1 + random.nextInt(T9FuzzyQuery.MAX_ERRORS);
+            String key = randomDigits(random, 2 * maxErrors + 1 + random.nextInt(3));
+
+            List<Contact> exact = T9SearchSupport.filter(contacts, key,
+                    T9MatchStrategy.RECURSIVE, 0);
+            List<Contact> fuzzy = T9SearchSupport.filter(contacts, key,
+                    T9MatchStrategy.RECURSIVE, maxErrors);
+            String message = key + " / " + maxErrors;
+            assertTrue(message, fuzzy.size() >= exact.size());
+
+            Set<Long> exactIds = new HashSet<>();
+            for (int i = 0; i < exact.size(); i++) {
+                assertEquals(message, exact.get(i).id, fuzzy.get(i).id);
+                assertEquals(message, 0, errors(fuzzy.get(i)));
+                exactIds.add(exact.get(i).id);
+            }
+
+            Set<Long> fuzzyIds = new HashSet<>();
+            int lastErrors = 1;
+            for (int i = exact.size(); i < fuzzy.size(); i++) {
+                Contact c = fuzzy.get(i);
+                int errors = errors(c);
+                assertTrue(message, errors >= lastErrors && errors <= maxErrors);
+                assertFalse(message, exactIds.contains(c.id));
+                lastErrors = errors;
+                fuzzyIds.add(c.id);
+            }
+
+            for (Contact contact : contacts) {
+                if (exactIds.contains(contact.id))
+                    continue;
+
+                int expected = nameDistance(contact.t9Key, key);
+                for (String number : contact.phoneNumbers) {
+                    expected = Math.min(expected, distance(key, number, null));
+                }
+                assertEquals(message + ": " + contact.t9Key, expected <= maxErrors,
+                        fuzzyIds.contains(contact.id));
+            }
+        }
+    }
+
+    private static void assertNumberMatch(String constraint, int maxErrors, String number,
+                                          int start, int length, int errors) {
+        T9MatchInfo matchInfo = T9FuzzyQuery.compile(constraint, maxErrors).matchesNumber(number);
+        String message = constraint + " / " + number;
+        assertTrue(message, matchInfo.found());
+        assertEquals(message, start, matchInfo.start());
+        assertEquals(message, length, matchInfo.length());
+        assertEquals(message, errors, matchInfo.errors());
+    }
+
+    private static int errors(Contact contact) {
+        int errors = Integer.MAX_VALUE;
+        if (contact.nameMatchInfo.found())
+            errors = contact.nameMatchInfo.errors();
+        if (contact.phoneNumberMatchInfo.found())
+            errors = Math.min(errors, contact.phoneNumberMatchInfo.errors());
+        return errors;
+    }
+
+    /**
+     * 名称的参照距离: 各候选项分别按全拼(只能从单词首字母开始)及首字母两种投影计算, 取最小值
+     */
+    private static int nameDistance(String t9Key, String constraint) {
+        int best = INFINITY;
+        for (String alternative : t9Key.split(String.valueOf(T9Utils.T9_KEYS_DIVIDER), -1)) {
+            StringBuilder full = new StringBuilder();
+            StringBuilder initials = new StringBuilder();
+            List<Boolean> startable = new ArrayList<>();
+            for (int i = 0; i < alternative.length(); i++) {
+                char c = alternative.charAt(i);
+                if (T9Utils.isInitial(c)) {
+                    char digit = (char) (c - 'C' + '#');
+                    full.append(digit);
+                    initials.append(digit);
+                    startable.add(true);
+                } else if (c != ' ') {
+                    full.append(c);
+                    startable.add(false);
+                }
+            }
+
+            boolean[] starts = new boolean[startable.size()];
+            for (int i = 0; i < starts.length; i++) {
+                starts[i] = startable.get(i);
+            }
+            best = Math.min(best, distance(constraint, full.toString(), starts));
+            best = Math.min(best, distance(constraint, initials.toString(), null));
+        }
+        return best;
+    }
+
+    /**
+     * 查询串与文本中任一子串的最小编辑距离(子串 Levenshtein), 子串只能从 startable 的位置开始
+     * (null - 任意位置, 即第 0 行全为 0), 开始处第 j 列为 j(删除查询串开头的 j 个字符)
+     */
+    private static int distance(String constraint, String text, boolean[] startable) {
+        final int m = constraint.length();
+        int[] previous = new int[m + 1];
+        int[] current = new int[m + 1];
+        Arrays.fill(previous, INFINITY);
+
+        int best = INFINITY;
+        for (int b = 0; b < text.length(); b++) {
+            if (startable == null || startable[b]) {
+                for (int j = 0; j <= m; j++) {
+                    previous[j] = Math.min(previous[j], j);
+                }
+            }
+
+            final char c = text.charAt(b);
+            current[0] = previous[0] + 1;
+            for (int j = 1; j <= m; j++) {
+                current[j] = Math.min(previous[j - 1] + cost(constraint, j - 1, c),
+                        Math.min(current[j - 1] + 1, previous[j] + 1));
+            }
+            best = Math.min(best, current[m]);
+
+            int[] temp = previous;
+            previous = current;
+            current = temp;
+        }
+        return best;
+    }
+
+    private static int cost(String constraint, int index, char c) {
+        return constraint.charAt(index) == c ? 0 : 1;
+    }
+
+    private static int levenshtein(String left, String right) {
+        int[] previous = new int[right.length() + 1];
+        int[] current = new int[right.length() + 1];
+        for (int j = 0; j <= right.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= left.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= right.length(); j++) {
+                int substitution = previous[j - 1]
+                        + (left.charAt(i - 1) == right.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution,
+                        Math.min(previous[j] + 1, current[j - 1] + 1));
+            }
+            int[] temp = previous;
+            previous = current;
+            current = temp;
+        }
+        return previous[right.length()];
+    }
+
+    /**
+     * 只含 2-5 的号码, 以提高命中率
+     */
+    private static String randomNumber(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int length = 8 + random.nextInt(5);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('2' + random.nextInt(4)));
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,136 @@
+package cn.tinkling.t9;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 线性时间的 T9 键生成与原插入式实现的结果逐字节一致
+ */
+@RunWith(AndroidJUnit4.class)
+public class T9KeyBuilderTest {
+
+    private static final int ITERATIONS = 50000;
+
+    private static final String[] SYLLABLES = {
+            "zhang", "wang", "li", "zhao", "chen", "yang", "huang", "zhou", "wu", "xu",
+            "a", "e", "er", "shan", "chang", "zeng", "lü", "", null
+    };
+
+    /**
+     * 确定性的拼音提供者: 部分汉字无读音, 部分为多音字
+     */
+    private static final PinyinProvider PROVIDER = new PinyinProvider() {
+        @Override
+        public String[] getPinyin(char c) {
+            Random random = new Random(c);
+            int count = random.nextInt(5) - 1;
+            if (count < 0)
+                return null;
+
+            String[] pinyin = new String[count];
+            for (int i = 0; i < count; i++) {
+                pinyin[i] = SYLLABLES[random.nextInt(SYLLABLES.length)];
+            }
+            return pinyin;
+        }
+    };
+
+    @Test
+    public void buildT9KeySameAsInsertion() {
+        Random random = new Random(32);
+        T9KeyCache cache = new T9KeyCache(PROVIDER, 64, 64);
+        for (int i = 0; i < ITERATIONS; i++) {
+            String src = randomName(random);
+            String expected = buildT9KeyByInsertion(src, PROVIDER);
+
+            assertEquals(src, expected, T9Utils.buildT9Key(src, PROVIDER));
+            assertEquals(src, expected, cache.buildT9Key(src));
+        }
+    }
+
+    @Test
+    public void buildT9KeyEmpty() {
+        assertEquals("", T9Utils.buildT9Key("", PROVIDER));
+    }
+
+    /**
+     * 混合 ASCII, 扩展拉丁字母及汉字, 多音字较少以限制结果长度
+     */
+    private static String randomName(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int length = random.nextInt(12);
+        int polyphones = 0;
+        for (int i = 0; i < length; i++) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    sb.append((char) (' ' + random.nextInt(95)));
+                    break;
+                case 1:
+                    sb.append((char) (0xC0 + random.nextInt(0x190)));
+                    break;
+                default:
+                    char c = (char) (0x4E00 + random.nextInt(0x5000));
+                    String[] pinyin = PROVIDER.getPinyin(c);
+                    if (pinyin != null && pinyin.length > 1 && ++polyphones > 3)
+                        break;
+                    sb.append(c);
+                    break;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 原实现: 每个字符在所有分隔符前插入
+     */
+    private static String buildT9KeyByInsertion(String src, PinyinProvider provider) {
+        StringBuilder t9KeyBuilder = new StringBuilder();
+        t9KeyBuilder.append(T9Utils.T9_KEYS_DIVIDER);
+
+        for (int i = 0; i < src.length(); ++i) {
+            char c = src.charAt(i);
+
+            if (c < 128 || (c < 0x250 || (0x1e00 <= c && c < 0x1eff))) {
+                char t9c = T9Utils.convertDigitToInitial(T9Utils.formatCharToT9(c));
+                insertT9Key(t9KeyBuilder, String.valueOf(t9c));
+            } else {
+                String[] pinyin = provider.getPinyin(c);
+                if (pinyin == null || pinyin.length == 0) {
+                    insertT9Key(t9KeyBuilder, " ");
+                } else if (pinyin.length == 1) {
+                    insertT9Key(t9KeyBuilder, T9Utils.convertPinyinToT9Key(pinyin[0]));
+                } else {
+                    String temp = t9KeyBuilder.toString();
+                    t9KeyBuilder.setLength(0);
+                    for (String py : pinyin) {
+                        StringBuilder tempBuilder = new StringBuilder(temp);
+                        insertT9Key(tempBuilder, T9Utils.convertPinyinToT9Key(py));
+                        t9KeyBuilder.append(tempBuilder);
+                    }
+                }
+            }
+        }
+
+        t9KeyBuilder.delete(t9KeyBuilder.length() - 1, t9KeyBuilder.length());
+        return t9KeyBuilder.toString();
+    }
+
+    private static void insertT9Key(StringBuilder t9KeyBuilder, String t9Str) {
+        if (t9Str.length() == 0)
+            return;
+
+        int index = -1;
+        while ((index = t9KeyBuilder.indexOf(String.valueOf(T9Utils.T9_KEYS_DIVIDER),
+                index + 1)) >= 0) {
+            t9KeyBuilder.insert(index, t9Str);
+            index += t9Str.length();
+        }
+    }
+
+}
@@ -0,0 +1,157 @@
+package cn.tinkling.t9;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * T9键缓存在接近真实的中文姓名分布上的命中率及生成耗时, 使用 pinyin4j
+ */
+@RunWith(AndroidJUnit4.class)
+public class T9KeyCacheTest {
+
+    private static final String TAG = "T9KeyCacheTest";
+
+    private static final int NAMES = 20000;
+    private static final int MAX_CHARS = 1024;
+    private static final int MAX_NAMES = 2048;
+
+    /**
+     * 常见姓氏及其人口占比(万分之一, 约数), 合计约六成
+     */
+    private static final String COMMON_SURNAMES =
+            "王李张刘陈杨黄赵吴周徐孙马朱胡郭何高林罗郑梁谢宋唐许韩冯邓曹";
+    private static final int[] COMMON_SURNAME_WEIGHTS = {
+            725, 719, 683, 538, 453, 308, 223, 201, 195, 189, 149, 147, 135, 125, 120,
+            115, 114, 107, 107, 93, 85, 83, 73, 70, 69, 67, 63, 62, 61, 58
+    };
+
+    /**
+     * 其余姓氏, 平均分配剩余的占比
+     */
+    private static final String OTHER_SURNAMES =
+            "彭曾肖田董袁潘于蒋蔡余杜叶程苏魏吕丁任沈姚卢姜崔钟谭陆汪范金石廖贾夏韦付方白邹孟熊秦"
+            + "邱江尹薛闫段雷侯龙史陶黎贺顾毛郝龚邵万钱严覃武戴莫孔向汤常温康施文牛樊葛邢安齐易乔伍"
+            + "庞颜倪庄聂章鲁岳翟殷詹申欧耿关兰焦俞左柳甘祝包宁尚符舒阮柯纪梅童凌毕单季裴霍涂成苗谷";
+
+    private static final int TOTAL_WEIGHT = 10000;
+
+    /**
+     * 名字常用字, 靠前的字出现得更多
+     */
+    private static final String GIVEN_NAME_CHARS =
+            "伟芳娜敏静丽强磊军洋勇艳杰娟涛明超秀兰霞平刚桂英华玉萍红玲芬燕彬鑫斌宇浩凯健俊帆帅旭"
+            + "宁龙林欢阳建国志永海晓东丹婷雪梅慧琳思远子涵梓萱一诺欣怡雨轩然航博文天佑嘉佳琪诗可馨"
+            + "语桐乐行重长朝晨辰瑞泽睿铭昊哲宏毅家豪振鹏飞云峰波辉亮成荣新春晶颖莉倩蕾薇璐露瑶怡悦";
+
+    @Test
+    public void buildOnSurnameDistribution() {
+        final PinyinProvider provider = T9SearchSupport.getPinyinProvider();
+        List<String> names = generateNames(new Random(31), NAMES);
+
+        // 预热: 加载拼音数据
+        for (int i = 0; i < 200; i++) {
+            T9Utils.buildT9Key(names.get(i), provider, KeypadLayout.ALL);
+        }
+
+        long start = System.nanoTime();
+        List<String> expected = new ArrayList<>(NAMES);
+        for (String name : names) {
+            expected.add(T9Utils.buildT9Key(name, provider, KeypadLayout.ALL));
+        }
+        long uncachedNanos = System.nanoTime() - start;
+
+        T9KeyCache cache = new T9KeyCache(provider, KeypadLayout.ALL, MAX_CHARS, MAX_NAMES);
+        start = System.nanoTime();
+        for (int i = 0; i < NAMES; i++) {
+            assertEquals(names.get(i), expected.get(i), cache.buildT9Key(names.get(i)));
+        }
+        long coldNanos = System.nanoTime() - start;
+        final float nameHitRate = cache.nameHitRate();
+        final float charHitRate = cache.charHitRate();
+        final float syllableHitRate = cache.syllableHitRate();
+
+        start = System.nanoTime();
+        for (String name : names) {
+            cache.buildT9Key(name);
+        }
+        long warmNanos = System.nanoTime() - start;
+
+        Log.i(TAG, NAMES + " names: uncached " + uncachedNanos / 1000000 + "ms, cache cold "
+                + coldNanos / 1000000 + "ms, warm " + warmNanos / 1000000 + "ms; " + cache);
+        Log.i(TAG, "first pass hit rates: names " + nameHitRate + ", chars " + charHitRate
+                + ", syllables " + syllableHitRate);
+
+        // 姓氏及名字用字高度集中, 与设备无关
+        assertTrue("char hit rate " + charHitRate, charHitRate > 0.9f);
+    }
+
+    /**
+     * 音节表只在汉字缓存未命中时使用, 以只能缓存一个汉字的缓存单独测量其命中率.
+     * 名称用字不超过几百个, 其读音的种类同样有限, 与拼音提供者无关
+     */
+    @Test
+    public void syllableHitRateWithoutCharCache() {
+        final PinyinProvider provider = T9SearchSupport.getPinyinProvider();
+        List<String> names = generateNames(new Random(32), NAMES);
+
+        T9KeyCache cache = new T9KeyCache(provider, KeypadLayout.ALL, 1, 1);
+        for (String name : names) {
+            assertEquals(name, T9Utils.buildT9Key(name, provider, KeypadLayout.ALL),
+                    cache.buildT9Key(name));
+        }
+
+        final float syllableHitRate = cache.syllableHitRate();
+        Log.i(TAG, NAMES + " names without char cache: " + cache);
+        assertTrue("char hit rate " + cache.charHitRate(), cache.charHitRate() < 0.5f);
+        assertTrue("syllable hit rate " + syllableHitRate, syllableHitRate > 0.9f);
+    }
+
+    /**
+     * 按姓氏占比生成两字或三字的名称
+     */
+    private static List<String> generateNames(Random random, int count) {
+        int commonWeight = 0;
+        for (int weight : COMMON_SURNAME_WEIGHTS) {
+            commonWeight += weight;
+        }
+
+        List<String> names = new ArrayList<>(count);
+        StringBuilder sb = new StringBuilder(3);
+        for (int i = 0; i < count; i++) {
+            sb.setLength(0);
+            int pick = random.nextInt(TOTAL_WEIGHT);
+            if (pick < commonWeight) {
+                int s = 0;
+                while (pick >= COMMON_SURNAME_WEIGHTS[s]) {
+                    pick -= COMMON_SURNAME_WEIGHTS[s];
+                    s++;
+                }
+                sb.append(COMMON_SURNAMES.charAt(s));
+            } else {
+                sb.append(OTHER_SURNAMES.charAt(random.nextInt(OTHER_SURNAMES.length())));
+            }
+
+            final int length = random.nextInt(4) == 0 ? 1 : 2;
+            for (int c = 0; c < length; c++) {
+                // 两个均匀分布取较小者, 偏向靠前的常用字
+                int index = Math.min(random.nextInt(GIVEN_NAME_CHARS.length()),
+                        random.nextInt(GIVEN_NAME_CHARS.length()));
+                sb.append(GIVEN_NAME_CHARS.charAt(index));
+            }
+            names.add(sb.toString());
+        }
+        return names;
+    }
+
+}
@@ -0,0 +1,200 @@
+package cn.tinkling.t9;
+
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import cn.tinkling.t9search.sample.Contact;
+
+import static cn.tinkling.t9.T9TestUtils.dump;
+import static cn.tinkling.t9.T9TestUtils.randomDigits;
+import static cn.tinkling.t9.T9TestUtils.randomT9Key;
+import static cn.tinkling.t9.T9TestUtils.repeat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 签名排除({@link T9Query#mayMatch(long)}, {@link T9Query#mayMatchNameAtStart(String)})
+ * 不会漏掉不经排除的匹配器能找到的匹配
+ */
+@RunWith(AndroidJUnit4.class)
+public class T9KeySignatureTest {
+
+    private static final int ITERATIONS = 100000;
+    private static final int CONTACTS = 2000;
+    private static final int QUERIES = 200;
+
+    /**
+     * 全部可出现在查询串中的字符
+     */
+    private static final String T9_CHARS = "0123456789*#";
+
+    /**
+     * 不以签名排除的策略, 匹配结果与 {@link T9MatchStrategy#RECURSIVE} 相同
+     */
+    private static final T9MatchStrategy UNFILTERED = new T9MatchStrategy() {
+        @Override
+        public T9MatchInfo matches(@Nullable String t9Key, @Nullable String t9Constraint) {
+            return T9MatchStrategy.RECURSIVE.matches(t9Key, t9Constraint);
+        }
+    };
+
+    @Test
+    public void rejectionNeverDropsMatch() {
+        Random random = new Random(42);
+        int matches = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            String t9Key = random.nextInt(4) == 0 ? randomFullT9Key(random) : randomT9Key(random);
+            String constraint = randomConstraint(random, t9Key);
+            T9Query query = T9Query.compile(constraint);
+            long signature = T9KeySignature.of(t9Key);
+            String message = t9Key + " / " + constraint;
+
+            boolean found = false;
+            boolean atStart = false;
+            T9MatchInfo[] results = {
+                    query.matches(t9Key),
+                    T9MatchStrategy.BIT_PARALLEL.matches(t9Key, constraint),
+                    BacktrackingT9Matcher.matches(t9Key, constraint)
+            };
+            for (T9MatchInfo matchInfo : results) {
+                found |= matchInfo.found();
+                atStart |= matchInfo.found() && matchInfo.start() == 0;
+            }
+
+            if (found) {
+                matches++;
+                assertTrue(message, query.mayMatch(signature));
+            }
+            if (atStart)
+                assertTrue(message, query.mayMatchNameAtStart(t9Key));
+            assertTrue(message, query.mayMatch(T9KeySignature.UNKNOWN));
+        }
+        // 大部分查询串取自键本身, 确保确实检查了匹配的情况
+        assertTrue(matches + " matches", matches > ITERATIONS / 4);
+    }
+
+    /**
+     * 长度超过签名可表示的最大值时按最大值比较
+     */
+    @Test
+    public void longKeysAreNotRejected() {
+        int length = T9KeySignature.MAX_LENGTH + 100;
+        String t9Key = "R" + repeat("2", length - 1);
+        long signature = T9KeySignature.of(t9Key);
+        assertEquals(T9KeySignature.MAX_LENGTH, T9KeySignature.getMaxLength(signature));
+
+        for (int constraintLength : new int[]{T9KeySignature.MAX_LENGTH, length}) {
+            T9Query query = T9Query.compile(repeat("2", constraintLength));
+            assertTrue(String.valueOf(constraintLength), query.matches(t9Key).found());
+            assertTrue(String.valueOf(constraintLength), query.mayMatch(signature));
+        }
+    }
+
+    @Test
+    public void nullAndEmptyKeysNeverMatch() {
+        T9Query query = T9Query.compile("2");
+        assertFalse(query.mayMatch(T9KeySignature.of(null)));
+        assertFalse(query.mayMatch(T9KeySignature.of("")));
+        assertFalse(T9Query.compile("").mayMatch(T9KeySignature.of("R")));
+    }
+
+    /**
+     * 以签名排除的过滤与不排除的过滤结果相同(包括顺序及匹配信息)
+     */
+    @Test
+    public void filterSameAsUnfiltered() {
+        Random random = new Random(43);
+        List<Contact> contacts = new ArrayList<>(CONTACTS);
+        for (int i = 0; i < CONTACTS; i++) {
+            String t9Key = random.nextInt(4) == 0 ? randomFullT9Key(random) : randomT9Key(random);
+            contacts.add(new Contact(i, "name" + i, t9Key,
+                    new String[]{randomDigits(random, 8)}, new String[0], new String[0]));
+        }
+
+        for (int q = 0; q < QUERIES; q++) {
+            String key = randomConstraint(random, contacts.get(random.nextInt(CONTACTS)).t9Key);
+            List<Contact> expected = T9SearchSupport.filter(contacts, key, UNFILTERED, 0);
+            List<Contact> actual = T9SearchSupport.filter(contacts, key,
+                    T9MatchStrategy.RECURSIVE, 0);
+
+            assertEquals(key, expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(key, expected.get(i).id, actual.get(i).id);
+                assertEquals(key, dump(expected.get(i).nameMatchInfo),
+                        dump(actual.get(i).nameMatchInfo));
+            }
+        }
+    }
+
+    /**
+     * 首字母及字符取自全部按键(含 0, 1, * 及 #)的键
+     */
+    private static String randomFullT9Key(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int words = 1 + random.nextInt(6);
+        for (int w = 0; w < words; w++) {
+            sb.append(T9Utils.convertDigitToInitial(
+                    T9_CHARS.charAt(random.nextInt(T9_CHARS.length()))));
+            int length = random.nextInt(4);
+            for (int c = 0; c < length; c++) {
+                sb.append(T9_CHARS.charAt(random.nextInt(T9_CHARS.length())));
+            }
+            if (random.nextInt(8) == 0)
+                sb.append(random.nextBoolean() ? ' ' : T9Utils.T9_KEYS_DIVIDER);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 多数取自键的某个候选项: 从某个单词开始的全拼片段, 或首字母序列; 其余随机
+     */
+    private static String randomConstraint(Random random, String t9Key) {
+        String[] alternatives = t9Key.split(String.valueOf(T9Utils.T9_KEYS_DIVIDER), -1);
+        String alternative = alternatives[random.nextInt(alternatives.length)];
+        StringBuilder full = new StringBuilder();
+        StringBuilder initials = new StringBuilder();
+        List<Integer> wordStarts = new ArrayList<>();
+        for (int i = 0; i < alternative.length(); i++) {
+            char c = alternative.charAt(i);
+            if (T9Utils.isInitial(c)) {
+                wordStarts.add(full.length());
+                char digit = (char) (c - 'C' + '#');
+                full.append(digit);
+                initials.append(digit);
+            } else if (c != ' ') {
+                full.append(c);
+            }
+        }
+
+        switch (wordStarts.isEmpty() ? 3 : random.nextInt(4)) {
+            case 0:
+            case 1: {
+                int start = wordStarts.get(random.nextInt(wordStarts.size()));
+                int end = start + 1 + random.nextInt(full.length() - start);
+                return full.substring(start, end);
+            }
+            case 2: {
+                int start = random.nextInt(initials.length());
+                return initials.substring(start,
+                        start + 1 + random.nextInt(initials.length() - start));
+            }
+            default: {
+                StringBuilder sb = new StringBuilder();
+                int length = 1 + random.nextInt(4);
+                for (int c = 0; c < length; c++) {
+                    sb.append(T9_CHARS.charAt(random.nextInt(T9_CHARS.length())));
+                }
+                return sb.toString();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,183 @@
+package cn.tinkling.t9;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 号码列存储的查找结果与 {@link String#indexOf(String)} 比较, 及扫描整列的耗时
+ */
+@RunWith(AndroidJUnit4.class)
+public class T9NumberColumnTest {
+
+    private static final String TAG = "T9NumberColumnTest";
+
+    private static final int ITERATIONS = 300;
+    private static final int ROWS = 500;
+
+    private static final int BENCHMARK_NUMBERS = 100000;
+    private static final int BENCHMARK_ROUNDS = 20;
+
+    private static final String CHARS = "0123456789+*#,-";
+
+    @Test
+    public void searchSameAsIndexOf() {
+        Random random = new Random(29);
+        for (int i = 0; i < ITERATIONS; i++) {
+            List<String[]> rows = randomRows(random);
+            T9NumberColumn column = T9NumberColumn.buildMultiValued(rows);
+            List<String> values = checkLayout(rows, column);
+
+            for (int q = 0; q < 20; q++) {
+                String constraint = randomConstraint(random, values);
+                int[] expected = new int[values.size()];
+                for (int v = 0; v < expected.length; v++) {
+                    String number = values.get(v);
+                    expected[v] = number == null ? -1 : number.indexOf(constraint);
+                }
+                assertArrayEquals(constraint, expected, column.search(constraint));
+            }
+        }
+    }
+
+    @Test
+    public void searchEmptyOrNonT9Constraints() {
+        T9NumberColumn column = T9NumberColumn.build(Arrays.asList("138a0000", "", null));
+        for (String constraint : new String[]{null, "", "é", "b"}) {
+            assertArrayEquals(String.valueOf(constraint), new int[]{-1, -1, -1},
+                    column.search(constraint));
+        }
+        // 含有 T9 按键以外的字符时与 indexOf 相同
+        assertArrayEquals(new int[]{3, -1, -1}, column.search("a"));
+        assertArrayEquals(new int[]{2, -1, -1}, column.search("8a0"));
+        assertArrayEquals(new int[]{4, -1, -1}, column.search("0000"));
+        assertArrayEquals(new int[]{-1, -1, -1}, column.search("8a00000"));
+        assertArrayEquals(new int[0], T9NumberColumn.build(new ArrayList<String>()).search("1"));
+    }
+
+    @Test
+    public void scanThroughput() {
+        Random random = new Random(42);
+        List<String> numbers = new ArrayList<>(BENCHMARK_NUMBERS);
+        for (int i = 0; i < BENCHMARK_NUMBERS; i++) {
+            numbers.add("1" + (3000000000L + random.nextInt(1000000000)));
+        }
+        T9NumberColumn column = T9NumberColumn.build(numbers);
+
+        int[] starts = new int[BENCHMARK_NUMBERS];
+        for (String constraint : new String[]{"1", "13", "138", "5678", "13812345678"}) {
+            // 预热
+            column.search(constraint);
+            indexOf(numbers, constraint, starts);
+
+            long start = System.nanoTime();
+            for (int r = 0; r < BENCHMARK_ROUNDS; r++) {
+                column.search(constraint);
+            }
+            long columnNanos = (System.nanoTime() - start) / BENCHMARK_ROUNDS;
+
+            start = System.nanoTime();
+            for (int r = 0; r < BENCHMARK_ROUNDS; r++) {
+                indexOf(numbers, constraint, starts);
+            }
+            long indexOfNanos = (System.nanoTime() - start) / BENCHMARK_ROUNDS;
+
+            assertArrayEquals(constraint, starts, column.search(constraint));
+            Log.i(TAG, BENCHMARK_NUMBERS + " numbers, '" + constraint + "': column "
+                    + columnNanos / 1000 + "us, indexOf " + indexOfNanos / 1000 + "us");
+        }
+    }
+
+    private static void indexOf(List<String> numbers, String constraint, int[] starts) {
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = numbers.get(i).indexOf(constraint);
+        }
+    }
+
+    /**
+     * 校验行与号码的对应关系
+     *
+     * @return 按序号排列的全部号码
+     */
+    private static List<String> checkLayout(List<String[]> rows, T9NumberColumn column) {
+        assertEquals(rows.size(), column.size());
+        List<String> values = new ArrayList<>();
+        for (int row = 0; row < rows.size(); row++) {
+            String[] numbers = rows.get(row);
+            int count = numbers == null ? 0 : numbers.length;
+            assertEquals(values.size(), column.firstValue(row));
+            assertEquals(count, column.valueCount(row));
+            for (int n = 0; n < count; n++) {
+                String number = numbers[n];
+                assertEquals(number == null ? 0 : number.length(),
+                        column.length(values.size()));
+                values.add(number);
+            }
+        }
+        assertEquals(values.size(), column.valueCount());
+        return values;
+    }
+
+    /**
+     * 随机的行: 没有号码, null 或空号码, 及偶尔夹杂非 ASCII 字符的号码
+     */
+    private static List<String[]> randomRows(Random random) {
+        int rowCount = random.nextInt(ROWS);
+        List<String[]> rows = new ArrayList<>(rowCount);
+        for (int r = 0; r < rowCount; r++) {
+            if (random.nextInt(20) == 0) {
+                rows.add(null);
+                continue;
+            }
+
+            String[] numbers = new String[random.nextInt(4)];
+            for (int n = 0; n < numbers.length; n++) {
+                if (random.nextInt(30) == 0)
+                    continue;
+
+                StringBuilder sb = new StringBuilder();
+                int length = random.nextInt(16);
+                for (int c = 0; c < length; c++) {
+                    sb.append(random.nextInt(50) == 0 ? 'é'
+                            : CHARS.charAt(random.nextInt(random.nextBoolean() ? 3 : CHARS.length())));
+                }
+                numbers[n] = sb.toString();
+            }
+            rows.add(numbers);
+        }
+        return rows;
+    }
+
+    /**
+     * 随机的查询串, 一半取自已有号码的子串
+     */
+    private static String randomConstraint(Random random, List<String> values) {
+        if (!values.isEmpty() && random.nextBoolean()) {
+            String number = values.get(random.nextInt(values.size()));
+            if (number != null && number.length() > 0 && number.indexOf('é') < 0) {
+                int start = random.nextInt(number.length());
+                return number.substring(start,
+                        start + 1 + random.nextInt(number.length() - start));
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        int length = 1 + random.nextInt(4);
+        for (int c = 0; c < length; c++) {
+            sb.append(CHARS.charAt(random.nextInt(random.nextBoolean() ? 3 : CHARS.length())));
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,234 @@
+package cn.tinkling.t9;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 倒排列表的 varint 编码, 跳表前进及求交/求并与未压缩的参照实现比较
+ */
+@RunWith(AndroidJUnit4.class)
+public class T9PostingListTest {
+
+    private static final int ITERATIONS = 2000;
+
+    @Test
+    public void roundTrip() {
+        Random random = new Random(39);
+        for (int i = 0; i < ITERATIONS; i++) {
+            int[] ids = randomIds(random, random.nextInt(4 * T9PostingList.BLOCK_SIZE));
+            T9PostingList list = T9PostingList.of(ids);
+
+            String message = Arrays.toString(ids);
+            assertEquals(message, ids.length, list.size());
+            assertEquals(message, ids.length == 0, list.isEmpty());
+            assertArrayEquals(message, ids, list.toArray());
+            assertEquals(message, expectedSizeInBytes(ids), list.sizeInBytes());
+
+            T9PostingList.Cursor cursor = list.cursor();
+            assertEquals(-1, cursor.id());
+            for (int id : ids) {
+                assertEquals(message, id, cursor.next());
+                assertEquals(message, id, cursor.id());
+            }
+            assertEquals(message, T9PostingList.NO_MORE_IDS, cursor.next());
+            assertEquals(message, T9PostingList.NO_MORE_IDS, cursor.next());
+        }
+    }
+
+    @Test
+    public void varintBoundaries() {
+        // 差值恰好跨过 1 - 5 字节的边界
+        int[] deltas = {1, 127, 128, 16383, 16384, (1 << 21) - 1, 1 << 21, (1 << 28) - 1,
+                1 << 28};
+        int[] ids = new int[deltas.length + 1];
+        for (int i = 0; i < deltas.length; i++) {
+            ids[i + 1] = ids[i] + deltas[i];
+        }
+        T9PostingList list = T9PostingList.of(ids);
+        assertArrayEquals(ids, list.toArray());
+        assertEquals(expectedSizeInBytes(ids), list.sizeInBytes());
+
+        int[] extremes = {0, Integer.MAX_VALUE - 1};
+        assertArrayEquals(extremes, T9PostingList.of(extremes).toArray());
+    }
+
+    /**
+     * 随机交替 next 及 advance(目标可能小于当前 id 或跨越多个块), 与二分查找比较
+     */
+    @Test
+    public void advanceSameAsBinarySearch() {
+        Random random = new Random(40);
+        for (int i = 0; i < ITERATIONS; i++) {
+            int[] ids = randomIds(random, random.nextInt(8 * T9PostingList.BLOCK_SIZE));
+            T9PostingList.Cursor cursor = T9PostingList.of(ids).cursor();
+            int last = ids.length == 0 ? 0 : ids[ids.length - 1];
+
+            int index = -1;
+            while (index < ids.length) {
+                if (random.nextInt(4) == 0) {
+                    index++;
+                    int expected = index < ids.length ? ids[index] : T9PostingList.NO_MORE_IDS;
+                    assertEquals(expected, cursor.next());
+                    continue;
+                }
+
+                int current = index < 0 ? 0 : (index < ids.length ? ids[index] : last);
+                int target = random.nextInt(8) == 0
+                        ? Math.max(0, current - random.nextInt(100))
+                        : current + random.nextInt(random.nextBoolean() ? 50 : last / 4 + 2);
+                if (index < 0 || index < ids.length && ids[index] < target) {
+                    index = ceiling(ids, target);
+                }
+                int expected = index < ids.length ? ids[index] : T9PostingList.NO_MORE_IDS;
+                assertEquals(Arrays.toString(ids) + " / " + target, expected,
+                        cursor.advance(target));
+                assertEquals(expected, cursor.id());
+            }
+        }
+    }
+
+    @Test
+    public void intersectSameAsSets() {
+        Random random = new Random(41);
+        for (int i = 0; i < ITERATIONS; i++) {
+            int universe = 1 + random.nextInt(2000);
+            T9PostingList[] lists = new T9PostingList[1 + random.nextInt(4)];
+            TreeSet<Integer> expected = null;
+            for (int l = 0; l < lists.length; l++) {
+                TreeSet<Integer> ids = randomSubset(random, universe);
+                lists[l] = of(ids);
+                if (expected == null) {
+                    expected = ids;
+                } else {
+                    expected.retainAll(ids);
+                }
+            }
+
+            assertArrayEquals(toArray(expected), T9PostingList.intersect(lists).toArray());
+        }
+        assertSame(T9PostingList.EMPTY, T9PostingList.intersect());
+        assertSame(T9PostingList.EMPTY,
+                T9PostingList.intersect(T9PostingList.of(1, 2, 3), T9PostingList.EMPTY));
+    }
+
+    @Test
+    public void unionSameAsSets() {
+        Random random = new Random(42);
+        for (int i = 0; i < ITERATIONS; i++) {
+            int universe = 1 + random.nextInt(2000);
+            T9PostingList[] lists = new T9PostingList[random.nextInt(5)];
+            TreeSet<Integer> expected = new TreeSet<>();
+            for (int l = 0; l < lists.length; l++) {
+                TreeSet<Integer> ids = randomSubset(random, universe);
+                lists[l] = of(ids);
+                expected.addAll(ids);
+            }
+
+            assertArrayEquals(toArray(expected), T9PostingList.union(lists).toArray());
+        }
+    }
+
+    @Test
+    public void builderRejectsInvalidIds() {
+        int[][] invalid = {{-1}, {3, 3}, {5, 4}, {T9PostingList.NO_MORE_IDS}};
+        for (int[] ids : invalid) {
+            try {
+                T9PostingList.of(ids);
+                fail(Arrays.toString(ids));
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+        assertSame(T9PostingList.EMPTY, T9PostingList.of());
+        assertTrue(T9PostingList.EMPTY.isEmpty());
+    }
+
+    /**
+     * 严格递增的 id, 差值混合 1, 2, 3 字节及更大的 varint
+     */
+    private static int[] randomIds(Random random, int count) {
+        int[] ids = new int[count];
+        int id = random.nextInt(1000);
+        for (int i = 0; i < count; i++) {
+            ids[i] = id;
+            switch (random.nextInt(10)) {
+                case 0:
+                    id += 1 + random.nextInt(1 << 20);
+                    break;
+                case 1:
+                case 2:
+                    id += 128 + random.nextInt(16384);
+                    break;
+                default:
+                    id += 1 + random.nextInt(127);
+                    break;
+            }
+        }
+        return ids;
+    }
+
+    private static TreeSet<Integer> randomSubset(Random random, int universe) {
+        // 不同密度, 使求交时既有大段跳过, 也有逐个比较
+        int density = 1 + random.nextInt(random.nextBoolean() ? 3 : 200);
+        TreeSet<Integer> ids = new TreeSet<>();
+        for (int id = 0; id < universe; id++) {
+            if (random.nextInt(density) == 0)
+                ids.add(id);
+        }
+        return ids;
+    }
+
+    private static T9PostingList of(TreeSet<Integer> ids) {
+        return T9PostingList.of(toArray(ids));
+    }
+
+    private static int[] toArray(TreeSet<Integer> ids) {
+        List<Integer> list = new ArrayList<>(ids);
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * @return 第一个不小于 target 的 id 的序号, 不存在时为 ids.length
+     */
+    private static int ceiling(int[] ids, int target) {
+        int index = Arrays.binarySearch(ids, target);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * 块首 id 记入跳表(id 及偏移各 4 字节), 其余 id 的差值每 7 位一个字节
+     */
+    private static int expectedSizeInBytes(int[] ids) {
+        int bytes = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (i % T9PostingList.BLOCK_SIZE == 0) {
+                bytes += 8;
+            } else {
+                int delta = ids[i] - ids[i - 1];
+                do {
+                    bytes++;
+                    delta >>>= 7;
+                } while (delta != 0);
+            }
+        }
+        return bytes;
+    }
+
+}
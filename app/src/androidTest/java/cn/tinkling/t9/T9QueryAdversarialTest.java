@@ -0,0 +1,65 @@
+package cn.tinkling.t9;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static cn.tinkling.t9.T9TestUtils.dump;
+import static cn.tinkling.t9.T9TestUtils.repeat;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 对抗输入: 长名称且每个单词都可按首字母或全拼匹配, 回溯实现的分支数随单词数指数增长.
+ * 结果与 {@link BacktrackingT9Matcher} 比较; 耗时只记录, 不作断言, 超时即说明退化为指数级.
+ */
+@RunWith(AndroidJUnit4.class)
+public class T9QueryAdversarialTest {
+
+    private static final String TAG = "T9QueryAdversarialTest";
+
+    private static final int[] WORDS = {8, 16, 24, 32, 48, 64};
+
+    private static final int REPEATS = 20;
+
+    @Test(timeout = 60000)
+    public void matchesRepeatedSyllablesLikeBacktracking() {
+        for (int words : WORDS) {
+            String t9Key = repeat("R2", words);
+            // 最后一个数字无法匹配, 需穷尽全部分支
+            String[] constraints = {
+                    repeat("2", words - 1) + "3",
+                    repeat("2", words) + "3",
+                    repeat("22", words / 2),
+                    repeat("2", 2 * words - 1) + "3"
+            };
+
+            for (String constraint : constraints) {
+                String expected = dump(BacktrackingT9Matcher.matches(t9Key, constraint));
+                T9Query query = T9Query.compile(constraint);
+                assertEquals(words + " / " + constraint, expected, dump(query.matches(t9Key)));
+                assertEquals(words + " / " + constraint, expected,
+                        dump(T9MatchStrategy.BIT_PARALLEL.matches(t9Key, constraint)));
+
+                long start = System.nanoTime();
+                for (int i = 0; i < REPEATS; i++) {
+                    query.matches(t9Key);
+                }
+                Log.i(TAG, words + " words, " + constraint.length() + " digits: "
+                        + (System.nanoTime() - start) / REPEATS + "ns per match");
+            }
+        }
+    }
+
+    @Test
+    public void matchesAfterUnmatchedAlternatives() {
+        String t9Key = repeat("R2", 30) + T9Utils.T9_KEYS_DIVIDER + "R2S3" + repeat("R2", 30);
+        String constraint = "2" + repeat("2", 28) + "33";
+        String expected = dump(BacktrackingT9Matcher.matches(t9Key, constraint));
+        assertEquals(expected, dump(T9Query.compile(constraint).matches(t9Key)));
+        assertEquals(expected, dump(T9MatchStrategy.BIT_PARALLEL.matches(t9Key, constraint)));
+    }
+
+}
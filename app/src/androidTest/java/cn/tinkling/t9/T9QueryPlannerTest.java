@@ -0,0 +1,277 @@
+package cn.tinkling.t9;
+
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import cn.tinkling.t9search.sample.Contact;
+
+import static cn.tinkling.t9.T9TestUtils.dump;
+import static cn.tinkling.t9.T9TestUtils.randomDigits;
+import static cn.tinkling.t9.T9TestUtils.randomT9Key;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 各执行计划的结果与逐行过滤比较, 及各会话的细化互不影响
+ */
+@RunWith(AndroidJUnit4.class)
+public class T9QueryPlannerTest {
+
+    private static final int CONTACTS = 3000;
+    private static final int SESSIONS = 300;
+    private static final int THREADS = 4;
+
+    private static final T9MatchStrategy CUSTOM = new T9MatchStrategy() {
+        @Override
+        public T9MatchInfo matches(@Nullable String t9Key, @Nullable String t9Constraint) {
+            return T9MatchStrategy.RECURSIVE.matches(t9Key, t9Constraint);
+        }
+    };
+
+    /**
+     * 逐位输入(偶尔退格)的查询, 结果与逐行过滤相同, 且覆盖全部计划
+     */
+    @Test
+    public void searchSameAsFilter() {
+        Random random = new Random(44);
+        List<Contact> contacts = createContacts(random, CONTACTS);
+        T9NumberColumn columnStore = T9SearchSupport.buildNumberColumn(contacts);
+        T9QueryPlanner columnPlanner = T9QueryPlanner.build(contacts, columnStore);
+        T9QueryPlanner noColumnPlanner = T9QueryPlanner.build(contacts, null);
+
+        Set<Integer> types = new HashSet<>();
+        for (int s = 0; s < SESSIONS; s++) {
+            // 有无号码列存储的计划器交替使用
+            T9NumberColumn numberColumn = s % 2 == 0 ? columnStore : null;
+            T9QueryPlanner planner = s % 2 == 0 ? columnPlanner : noColumnPlanner;
+            T9QueryPlanner.Session session = new T9QueryPlanner.Session();
+            T9MatchStrategy strategy = randomStrategy(random);
+            int maxErrors = random.nextInt(8) == 0 ? 1 : 0;
+            for (String key : typing(random, randomQuery(random, contacts))) {
+                T9QueryPlanner.Plan plan = planner.plan(key, strategy, maxErrors, session);
+                types.add(plan.type());
+                assertSameResults(key + ": " + plan.explain(),
+                        T9SearchSupport.filter(contacts, numberColumn, key, strategy, maxErrors),
+                        planner.execute(plan));
+            }
+        }
+
+        assertTrue(types.toString(), types.contains(T9QueryPlanner.Plan.SCAN));
+        assertTrue(types.toString(), types.contains(T9QueryPlanner.Plan.INDEX));
+        assertTrue(types.toString(), types.contains(T9QueryPlanner.Plan.NUMBERS_ONLY));
+        assertTrue(types.toString(), types.contains(T9QueryPlanner.Plan.REFINE));
+    }
+
+    /**
+     * 交替输入的两个会话各自细化, 不会覆盖对方的结果
+     */
+    @Test
+    public void sessionsKeepTheirOwnRefinement() {
+        Random random = new Random(45);
+        List<Contact> contacts = createContacts(random, CONTACTS);
+        T9NumberColumn numberColumn = T9SearchSupport.buildNumberColumn(contacts);
+        T9QueryPlanner planner = T9QueryPlanner.build(contacts, numberColumn);
+
+        T9QueryPlanner.Session first = new T9QueryPlanner.Session();
+        T9QueryPlanner.Session second = new T9QueryPlanner.Session();
+        planner.search("9", T9MatchStrategy.RECURSIVE, 0, first);
+        planner.search("2", T9MatchStrategy.RECURSIVE, 0, second);
+
+        assertTrue(planner.plan("94", T9MatchStrategy.RECURSIVE, 0, first).explain(),
+                canRefine(planner.plan("94", T9MatchStrategy.RECURSIVE, 0, first), "9"));
+        assertTrue(canRefine(planner.plan("23", T9MatchStrategy.RECURSIVE, 0, second), "2"));
+        assertFalse(canRefine(planner.plan("94", T9MatchStrategy.RECURSIVE, 0, second), "9"));
+
+        // 不带会话时从不细化
+        T9QueryPlanner.Plan plan = planner.plan("94", T9MatchStrategy.RECURSIVE, 0);
+        assertTrue(Double.isNaN(plan.mRefineCost));
+        assertNotEquals(T9QueryPlanner.Plan.REFINE, plan.type());
+
+        first.reset();
+        assertFalse(canRefine(planner.plan("94", T9MatchStrategy.RECURSIVE, 0, first), "9"));
+    }
+
+    /**
+     * 会话换用其他计划器(新的快照)时不使用旧快照的结果行
+     */
+    @Test
+    public void sessionIgnoresOtherPlanner() {
+        Random random = new Random(46);
+        T9QueryPlanner.Session session = new T9QueryPlanner.Session();
+        List<Contact> oldContacts = createContacts(random, CONTACTS);
+        T9QueryPlanner oldPlanner = T9QueryPlanner.build(oldContacts,
+                T9SearchSupport.buildNumberColumn(oldContacts));
+        oldPlanner.search("9", T9MatchStrategy.RECURSIVE, 0, session);
+
+        List<Contact> contacts = createContacts(random, CONTACTS);
+        T9NumberColumn numberColumn = T9SearchSupport.buildNumberColumn(contacts);
+        T9QueryPlanner planner = T9QueryPlanner.build(contacts, numberColumn);
+        T9QueryPlanner.Plan plan = planner.plan("94", T9MatchStrategy.RECURSIVE, 0, session);
+        assertTrue(plan.explain(), Double.isNaN(plan.mRefineCost));
+        assertSameResults("94",
+                T9SearchSupport.filter(contacts, numberColumn, "94", T9MatchStrategy.RECURSIVE, 0),
+                planner.execute(plan));
+    }
+
+    /**
+     * 多个线程在同一计划器上各自输入, 结果始终与逐行过滤相同
+     */
+    @Test
+    public void concurrentSessionsSameAsFilter() throws InterruptedException {
+        final Random random = new Random(47);
+        final List<Contact> contacts = createContacts(random, CONTACTS);
+        final T9NumberColumn numberColumn = T9SearchSupport.buildNumberColumn(contacts);
+        final T9QueryPlanner planner = T9QueryPlanner.build(contacts, numberColumn);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final Random threadRandom = new Random(random.nextLong());
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int s = 0; s < SESSIONS / THREADS; s++) {
+                            T9QueryPlanner.Session session = new T9QueryPlanner.Session();
+                            String query = randomQuery(threadRandom, contacts);
+                            for (String key : typing(threadRandom, query)) {
+                                assertSameResults(key, T9SearchSupport.filter(contacts,
+                                        numberColumn, key, T9MatchStrategy.RECURSIVE, 0),
+                                        planner.search(key, T9MatchStrategy.RECURSIVE, 0,
+                                                session));
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(String.valueOf(failure.get()), failure.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void executeRejectsOtherPlanner() {
+        List<Contact> contacts = createContacts(new Random(48), 10);
+        T9NumberColumn numberColumn = T9SearchSupport.buildNumberColumn(contacts);
+        T9QueryPlanner planner = T9QueryPlanner.build(contacts, numberColumn);
+        T9QueryPlanner other = T9QueryPlanner.build(contacts, numberColumn);
+        other.execute(planner.plan("2", T9MatchStrategy.RECURSIVE, 0));
+    }
+
+    private static boolean canRefine(T9QueryPlanner.Plan plan, String previousKey) {
+        return !Double.isNaN(plan.mRefineCost)
+               && (plan.type() != T9QueryPlanner.Plan.REFINE
+                   || plan.reason().contains("'" + previousKey + "'"));
+    }
+
+    private static T9MatchStrategy randomStrategy(Random random) {
+        switch (random.nextInt(5)) {
+            case 0:
+                return CUSTOM;
+            case 1:
+                return T9MatchStrategy.BIT_PARALLEL;
+            default:
+                return T9MatchStrategy.RECURSIVE;
+        }
+    }
+
+    /**
+     * 取自某个联系人名称首字母或号码的查询串, 或只含 0 / 1(不出现在任何名称中)的查询串
+     */
+    private static String randomQuery(Random random, List<Contact> contacts) {
+        Contact contact = contacts.get(random.nextInt(contacts.size()));
+        switch (random.nextInt(5)) {
+            case 0:
+                return random.nextBoolean() ? "10" : "01";
+            case 1:
+                if (contact.phoneNumbers.length > 0) {
+                    String number = contact.phoneNumbers[0];
+                    int start = random.nextInt(number.length() - 4);
+                    return number.substring(start, start + 4);
+                }
+                return randomDigits(random, 3);
+            default:
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < contact.t9Key.length() && sb.length() < 5; i++) {
+                    char c = contact.t9Key.charAt(i);
+                    if (c == T9Utils.T9_KEYS_DIVIDER)
+                        break;
+                    if (c != ' ')
+                        sb.append(T9Utils.isInitial(c) ? (char) (c - 'C' + '#') : c);
+                }
+                return sb.length() > 0 ? sb.toString() : randomDigits(random, 2);
+        }
+    }
+
+    /**
+     * 逐位输入 query 时各次的查询串, 偶尔退格后改为其他数字
+     */
+    private static List<String> typing(Random random, String query) {
+        List<String> keys = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < query.length(); i++) {
+            if (sb.length() > 0 && random.nextInt(6) == 0) {
+                sb.setLength(sb.length() - 1);
+                if (sb.length() > 0)
+                    keys.add(sb.toString());
+            }
+            sb.append(query.charAt(i));
+            keys.add(sb.toString());
+        }
+        return keys;
+    }
+
+    private static void assertSameResults(String message, List<Contact> expected,
+                                          List<Contact> actual) {
+        assertEquals(message, expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Contact e = expected.get(i);
+            Contact a = actual.get(i);
+            assertEquals(message, e.id, a.id);
+            assertEquals(message, dump(e.nameMatchInfo), dump(a.nameMatchInfo));
+            assertEquals(message, dump(e.phoneNumberMatchInfo), dump(a.phoneNumberMatchInfo));
+            assertEquals(message, dump(e.extraMatchInfo), dump(a.extraMatchInfo));
+            assertEquals(message, e.matchedNumber, a.matchedNumber);
+            assertEquals(message, e.matchedExtra, a.matchedExtra);
+        }
+    }
+
+    private static List<Contact> createContacts(Random random, int count) {
+        List<Contact> contacts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String[] numbers = new String[random.nextInt(3)];
+            for (int n = 0; n < numbers.length; n++) {
+                numbers[n] = "1" + (char) ('0' + random.nextInt(10)) + randomDigits(random, 9);
+            }
+            String[] extras = new String[random.nextInt(4) == 0 ? 1 : 0];
+            String[] extraT9Keys = new String[extras.length];
+            for (int e = 0; e < extras.length; e++) {
+                extras[e] = "extra" + e;
+                extraT9Keys[e] = randomT9Key(random);
+            }
+            contacts.add(new Contact(i, "name" + i, randomT9Key(random), numbers, extras,
+                    extraT9Keys));
+        }
+        return contacts;
+    }
+
+}
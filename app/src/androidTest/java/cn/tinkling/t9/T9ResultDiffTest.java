@@ -0,0 +1,327 @@
+package cn.tinkling.t9;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import cn.tinkling.t9search.sample.Contact;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 结果差异的移动, 重复 id 及高亮改变, 及随机列表上的一致性
+ */
+@RunWith(AndroidJUnit4.class)
+public class T9ResultDiffTest {
+
+    private static final int ITERATIONS = 2000;
+
+    @Test
+    public void nullAndEmptyLists() {
+        assertTrue(T9ResultDiff.compute(null, null).isEmpty());
+        assertTrue(T9ResultDiff.compute(contacts(), Collections.<Contact>emptyList()).isEmpty());
+
+        T9ResultDiff diff = T9ResultDiff.compute(null, contacts(1, 2));
+        assertEquals(2, diff.insertCount());
+        assertEquals(T9ResultDiff.FLAG_INSERTED, diff.flags(0));
+        assertEquals(-1, diff.oldPosition(1));
+
+        diff = T9ResultDiff.compute(contacts(1, 2), null);
+        assertEquals(0, diff.newSize());
+        assertArrayEquals(new int[]{0, 1}, diff.removedPositions());
+    }
+
+    /**
+     * 内容相同的新实例不是改变
+     */
+    @Test
+    public void sameContentIsEmpty() {
+        List<Contact> oldList = contacts(3, 1, 2);
+        List<Contact> newList = new ArrayList<>();
+        for (Contact contact : oldList) {
+            newList.add(copy(contact));
+        }
+
+        T9ResultDiff diff = T9ResultDiff.compute(oldList, newList);
+        assertTrue(diff.toString(), diff.isEmpty());
+        for (int i = 0; i < newList.size(); i++) {
+            assertEquals(0, diff.flags(i));
+            assertEquals(i, diff.oldPosition(i));
+        }
+    }
+
+    @Test
+    public void moves() {
+        // 3 提前: 其后的 1, 2 的旧位置小于 3 的旧位置, 视为移动
+        T9ResultDiff diff = T9ResultDiff.compute(contacts(0, 1, 2, 3, 4),
+                contacts(0, 3, 1, 2, 4));
+        assertEquals(2, diff.moveCount());
+        assertFlags(diff, 0, 0, T9ResultDiff.FLAG_MOVED, T9ResultDiff.FLAG_MOVED, 0);
+        assertOldPositions(diff, 0, 3, 1, 2, 4);
+
+        // 1 移到末尾: 只有 1 移动
+        diff = T9ResultDiff.compute(contacts(0, 1, 2, 3), contacts(0, 2, 3, 1));
+        assertEquals(1, diff.moveCount());
+        assertFlags(diff, 0, 0, 0, T9ResultDiff.FLAG_MOVED);
+
+        // 移动, 插入及删除同时发生
+        diff = T9ResultDiff.compute(contacts(0, 1, 2, 3), contacts(5, 2, 0, 6));
+        assertFlags(diff, T9ResultDiff.FLAG_INSERTED, 0, T9ResultDiff.FLAG_MOVED,
+                T9ResultDiff.FLAG_INSERTED);
+        assertOldPositions(diff, -1, 2, 0, -1);
+        assertArrayEquals(new int[]{1, 3}, diff.removedPositions());
+        assertEquals(2, diff.insertCount());
+        assertEquals(2, diff.removeCount());
+        assertEquals(1, diff.moveCount());
+        assertFalse(diff.isEmpty());
+    }
+
+    /**
+     * 同一列表中 id 重复的行不作对应
+     */
+    @Test
+    public void duplicateIds() {
+        // 旧列表中重复: 两行都删除, 新行视为插入
+        T9ResultDiff diff = T9ResultDiff.compute(contacts(1, 1, 2), contacts(2, 1));
+        assertFlags(diff, 0, T9ResultDiff.FLAG_INSERTED);
+        assertOldPositions(diff, 2, -1);
+        assertArrayEquals(new int[]{0, 1}, diff.removedPositions());
+
+        // 旧列表中出现三次
+        diff = T9ResultDiff.compute(contacts(1, 2, 1, 1), contacts(1, 2));
+        assertFlags(diff, T9ResultDiff.FLAG_INSERTED, 0);
+        assertArrayEquals(new int[]{0, 2, 3}, diff.removedPositions());
+
+        // 新列表中重复: 第一次出现对应旧行, 之后的视为插入
+        diff = T9ResultDiff.compute(contacts(1, 2), contacts(1, 1, 2, 2));
+        assertFlags(diff, 0, T9ResultDiff.FLAG_INSERTED, 0, T9ResultDiff.FLAG_INSERTED);
+        assertOldPositions(diff, 0, -1, 1, -1);
+        assertEquals(0, diff.removeCount());
+    }
+
+    @Test
+    public void changedHighlights() {
+        Contact contact = contact(1);
+        contact.phoneNumbers = new String[]{"13800", "6623"};
+        contact.extras = new String[]{"note"};
+        contact.extraT9Keys = new String[]{"W683"};
+
+        // 名称高亮的长度
+        assertChanged(contact, withName(contact, "6"), withName(contact, "66"));
+        // 名称高亮的编辑距离
+        Contact fuzzy = copy(contact);
+        fuzzy.nameMatchInfo = T9FuzzyQuery.compile("696", 1).matches(contact.t9Key);
+        assertTrue(fuzzy.nameMatchInfo.found());
+        assertChanged(contact, withName(contact, "666"), fuzzy);
+        // 名称从匹配变为不匹配; null 与未匹配相同
+        Contact unmatched = copy(contact);
+        unmatched.nameMatchInfo = T9MatchInfo.NO_MATCH;
+        assertChanged(contact, withName(contact, "6"), unmatched);
+        assertTrue(T9ResultDiff.sameContent(unmatched, copy(contact)));
+
+        // 显示的号码及其高亮
+        Contact first = withNumber(contact, 0, "38");
+        assertChanged(contact, first, withNumber(contact, 1, "23"));
+        assertChanged(contact, first, withNumber(contact, 0, "380"));
+
+        // 匹配的附加字段
+        Contact extra = copy(contact);
+        extra.matchedExtra = 0;
+        extra.extraMatchInfo = T9Query.compile("683").matches(contact.extraT9Keys[0]);
+        assertChanged(contact, copy(contact), extra);
+
+        // 高亮相同而名称改变
+        Contact renamed = withName(contact, "6");
+        renamed.name = "renamed";
+        assertChanged(contact, withName(contact, "6"), renamed);
+    }
+
+    /**
+     * 随机的新旧列表: 对应关系, 标记及计数与各自的定义一致
+     */
+    @Test
+    public void randomListsAreConsistent() {
+        Random random = new Random(48);
+        for (int i = 0; i < ITERATIONS; i++) {
+            int universe = 1 + random.nextInt(40);
+            List<Contact> oldList = randomList(random, universe);
+            List<Contact> newList = randomList(random, universe);
+            T9ResultDiff diff = T9ResultDiff.compute(oldList, newList);
+            String message = ids(oldList) + " -> " + ids(newList);
+
+            assertEquals(message, oldList.size(), diff.oldSize());
+            assertEquals(message, newList.size(), diff.newSize());
+
+            boolean[] kept = new boolean[oldList.size()];
+            int lastKept = -1;
+            int inserts = 0;
+            int moves = 0;
+            int changes = 0;
+            for (int n = 0; n < newList.size(); n++) {
+                final int flags = diff.flags(n);
+                final int oldPosition = diff.oldPosition(n);
+                final long id = newList.get(n).id;
+                if (oldPosition < 0) {
+                    assertEquals(message, T9ResultDiff.FLAG_INSERTED, flags);
+                    // 未对应的行: 旧列表中没有或重复, 或新列表中之前已出现
+                    assertTrue(message, count(oldList, id) != 1
+                                        || indexOf(newList, id) < n);
+                    inserts++;
+                    continue;
+                }
+
+                assertEquals(message, id, oldList.get(oldPosition).id);
+                assertEquals(message, 1, count(oldList, id));
+                assertFalse(message, kept[oldPosition]);
+                kept[oldPosition] = true;
+                if (oldPosition < lastKept) {
+                    assertEquals(message, T9ResultDiff.FLAG_MOVED,
+                            flags & T9ResultDiff.FLAG_MOVED);
+                    moves++;
+                } else {
+                    assertEquals(message, 0, flags & T9ResultDiff.FLAG_MOVED);
+                    lastKept = oldPosition;
+                }
+                final boolean same = T9ResultDiff.sameContent(oldList.get(oldPosition),
+                        newList.get(n));
+                assertEquals(message, same ? 0 : T9ResultDiff.FLAG_CHANGED,
+                        flags & T9ResultDiff.FLAG_CHANGED);
+                if (!same)
+                    changes++;
+            }
+
+            List<Integer> removed = new ArrayList<>();
+            for (int o = 0; o < kept.length; o++) {
+                if (!kept[o])
+                    removed.add(o);
+            }
+            assertEquals(message, removed.toString(),
+                    Arrays.toString(diff.removedPositions()));
+            assertEquals(message, inserts, diff.insertCount());
+            assertEquals(message, moves, diff.moveCount());
+            assertEquals(message, changes, diff.changeCount());
+            assertEquals(message, inserts == 0 && removed.isEmpty() && moves == 0
+                                  && changes == 0, diff.isEmpty());
+        }
+    }
+
+    private static void assertChanged(Contact contact, Contact before, Contact after) {
+        T9ResultDiff diff = T9ResultDiff.compute(contacts(before), contacts(after));
+        assertEquals(contact.name, T9ResultDiff.FLAG_CHANGED, diff.flags(0));
+        assertEquals(1, diff.changeCount());
+        assertFalse(diff.isEmpty());
+        assertTrue(T9ResultDiff.compute(contacts(before), contacts(copy(before))).isEmpty());
+    }
+
+    private static void assertFlags(T9ResultDiff diff, int... flags) {
+        assertEquals(flags.length, diff.newSize());
+        for (int i = 0; i < flags.length; i++) {
+            assertEquals(diff + " @" + i, flags[i], diff.flags(i));
+        }
+    }
+
+    private static void assertOldPositions(T9ResultDiff diff, int... positions) {
+        for (int i = 0; i < positions.length; i++) {
+            assertEquals(diff + " @" + i, positions[i], diff.oldPosition(i));
+        }
+    }
+
+    /**
+     * 随机的列表, id 可能重复, 部分行的名称高亮随机
+     */
+    private static List<Contact> randomList(Random random, int universe) {
+        final int size = random.nextInt(universe + 5);
+        List<Contact> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Contact contact = contact(random.nextInt(universe));
+            list.add(random.nextInt(4) == 0
+                    ? withName(contact, random.nextBoolean() ? "6" : "66") : contact);
+        }
+        return list;
+    }
+
+    private static List<Contact> contacts(long... ids) {
+        List<Contact> list = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            list.add(contact(id));
+        }
+        return list;
+    }
+
+    private static List<Contact> contacts(Contact contact) {
+        return Collections.singletonList(contact);
+    }
+
+    private static Contact contact(long id) {
+        return new Contact(id, "name" + id, "V6V3", new String[]{"1" + id}, new String[0],
+                new String[0]);
+    }
+
+    /**
+     * 复制联系人及其匹配结果
+     */
+    private static Contact copy(Contact contact) {
+        Contact copy = new Contact(contact);
+        copy.phoneNumber = contact.phoneNumber;
+        copy.nameMatchInfo = contact.nameMatchInfo;
+        copy.phoneNumberMatchInfo = contact.phoneNumberMatchInfo;
+        copy.extraMatchInfo = contact.extraMatchInfo;
+        copy.matchedNumber = contact.matchedNumber;
+        copy.matchedExtra = contact.matchedExtra;
+        return copy;
+    }
+
+    private static Contact withName(Contact contact, String key) {
+        Contact copy = copy(contact);
+        copy.nameMatchInfo = T9Query.compile(key).matches(contact.t9Key);
+        assertTrue(key, copy.nameMatchInfo.found());
+        return copy;
+    }
+
+    private static Contact withNumber(Contact contact, int number, String key) {
+        Contact copy = copy(contact);
+        copy.matchedNumber = number;
+        copy.phoneNumber = contact.phoneNumbers[number];
+        copy.phoneNumberMatchInfo = T9Query.compile(key).matchesNumber(copy.phoneNumber);
+        assertTrue(key, copy.phoneNumberMatchInfo.found());
+        return copy;
+    }
+
+    private static int count(List<Contact> list, long id) {
+        int count = 0;
+        for (Contact contact : list) {
+            if (contact.id == id)
+                count++;
+        }
+        return count;
+    }
+
+    private static int indexOf(List<Contact> list, long id) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i).id == id)
+                return i;
+        }
+        return -1;
+    }
+
+    private static String ids(List<Contact> list) {
+        StringBuilder sb = new StringBuilder("[");
+        for (Contact contact : list) {
+            if (sb.length() > 1)
+                sb.append(", ");
+            sb.append(contact.id);
+        }
+        return sb.append(']').toString();
+    }
+
+}
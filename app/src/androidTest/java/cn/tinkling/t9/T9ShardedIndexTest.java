@@ -0,0 +1,224 @@
+package cn.tinkling.t9;
+
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cn.tinkling.t9search.sample.Contact;
+
+import static cn.tinkling.t9.T9TestUtils.dump;
+import static cn.tinkling.t9.T9TestUtils.randomDigits;
+import static cn.tinkling.t9.T9TestUtils.randomT9Key;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 1 - 5 个分片的结果与单个索引比较, 及超时分片的取消
+ */
+@RunWith(AndroidJUnit4.class)
+public class T9ShardedIndexTest {
+
+    private static final int MAX_SHARDS = 5;
+    private static final int CONTACTS = 1500;
+    private static final int QUERIES = 100;
+
+    private static final int SLOW_CONTACTS = 4000;
+    private static final long SLOW_MATCH_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    @Test
+    public void shardsSameAsSingleIndex() {
+        Random random = new Random(47);
+        List<Contact> contacts = createContacts(random, CONTACTS);
+        T9ContactIndex.Snapshot single = new T9ContactIndex().publish(contacts);
+
+        for (int shardCount = 1; shardCount <= MAX_SHARDS; shardCount++) {
+            for (int transport : new int[]{T9ShardedIndex.TRANSPORT_IN_PROCESS,
+                    T9ShardedIndex.TRANSPORT_LOOPBACK}) {
+                T9ShardedIndex index = new T9ShardedIndex(shardCount, transport);
+                try {
+                    index.publish(contacts);
+                    assertEquals(contacts.size(), index.size());
+
+                    for (int q = 0; q < QUERIES; q++) {
+                        String key = randomKey(random);
+                        int maxErrors = random.nextInt(4) == 0 ? 1 : 0;
+                        T9MatchStrategy strategy = random.nextBoolean()
+                                ? T9MatchStrategy.RECURSIVE : T9MatchStrategy.BIT_PARALLEL;
+                        T9ShardedIndex.Result result = index.search(key, strategy, maxErrors,
+                                Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+                        String message = shardCount + " shards, transport " + transport
+                                         + ": " + key + " / " + maxErrors;
+                        assertTrue(message, result.isComplete());
+                        assertEquals(message, shardCount, result.shardCount());
+                        assertSameResults(message, single.search(key, strategy, maxErrors),
+                                result.contacts());
+                    }
+                    assertEquals(QUERIES, index.queryCount());
+                    assertEquals(0, index.partialCount());
+                } finally {
+                    index.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * 超时的分片返回部分结果, 且被取消的分片查询停止匹配, 之后的查询不必等待其完成
+     */
+    @Test
+    public void timedOutShardsAreCancelled() {
+        final AtomicInteger slowMatches = new AtomicInteger();
+        T9MatchStrategy slow = new T9MatchStrategy() {
+            @Override
+            public T9MatchInfo matches(@Nullable String t9Key, @Nullable String t9Constraint) {
+                slowMatches.incrementAndGet();
+                // 忙等待, 不响应中断
+                final long end = System.nanoTime() + SLOW_MATCH_NANOS;
+                while (System.nanoTime() < end) {
+                    Thread.yield();
+                }
+                return T9MatchStrategy.RECURSIVE.matches(t9Key, t9Constraint);
+            }
+        };
+
+        List<Contact> contacts = new ArrayList<>(SLOW_CONTACTS);
+        for (int i = 0; i < SLOW_CONTACTS; i++) {
+            // 各不相同的键, 每行都调用一次匹配策略; 号码都以 1 开头
+            contacts.add(new Contact(i, "name" + i, "V6V3" + i, new String[]{"1" + i},
+                    new String[0], new String[0]));
+        }
+
+        T9ShardedIndex index = new T9ShardedIndex(2, T9ShardedIndex.TRANSPORT_IN_PROCESS);
+        try {
+            index.publish(contacts);
+            T9ShardedIndex.Result partial = index.search("1", slow, 0, 20,
+                    TimeUnit.MILLISECONDS);
+            assertFalse(partial.toString(), partial.isComplete());
+            assertEquals(1, index.partialCount());
+
+            // 线程池的线程数与分片数相同, 该查询在被取消的分片查询结束后才会执行
+            T9ShardedIndex.Result next = index.search("1", T9MatchStrategy.RECURSIVE, 0,
+                    Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            assertTrue(next.isComplete());
+            assertEquals(SLOW_CONTACTS, next.contacts().size());
+            assertTrue(slowMatches.get() + " slow matches",
+                    slowMatches.get() < SLOW_CONTACTS / 2);
+        } finally {
+            index.close();
+        }
+    }
+
+    /**
+     * 只有分片查询设置的取消标志能停止过滤, 线程的中断状态不影响其他调用方
+     */
+    @Test
+    public void onlyCancellationFlagStopsFilter() {
+        List<Contact> contacts = createContacts(new Random(48), CONTACTS);
+        List<Contact> expected = T9SearchSupport.filter(contacts, "2",
+                T9MatchStrategy.RECURSIVE, 1);
+
+        Thread.currentThread().interrupt();
+        try {
+            assertSameResults("interrupted", expected,
+                    T9SearchSupport.filter(contacts, "2", T9MatchStrategy.RECURSIVE, 1));
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+
+        T9SearchSupport.setCancellation(new AtomicBoolean(true));
+        try {
+            T9SearchSupport.filter(contacts, "2", T9MatchStrategy.RECURSIVE, 1);
+            fail("expected CancellationException");
+        } catch (CancellationException expectedException) {
+            // 已取消
+        } finally {
+            T9SearchSupport.setCancellation(null);
+        }
+
+        assertSameResults("after cancellation", expected,
+                T9SearchSupport.filter(contacts, "2", T9MatchStrategy.RECURSIVE, 1));
+    }
+
+    @Test
+    public void constructorRejectsInvalidArguments() {
+        int[][] invalid = {{0, T9ShardedIndex.TRANSPORT_IN_PROCESS}, {1, -1}, {1, 2}};
+        for (int[] arguments : invalid) {
+            try {
+                new T9ShardedIndex(arguments[0], arguments[1]).close();
+                fail(arguments[0] + " / " + arguments[1]);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void searchAfterCloseThrows() {
+        T9ShardedIndex index = new T9ShardedIndex(2, T9ShardedIndex.TRANSPORT_IN_PROCESS);
+        index.close();
+        index.search("2", T9MatchStrategy.RECURSIVE, 0);
+    }
+
+    private static void assertSameResults(String message, List<Contact> expected,
+                                          List<Contact> actual) {
+        assertEquals(message, expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Contact e = expected.get(i);
+            Contact a = actual.get(i);
+            assertEquals(message, e.id, a.id);
+            assertEquals(message, dump(e.nameMatchInfo), dump(a.nameMatchInfo));
+            assertEquals(message, dump(e.phoneNumberMatchInfo), dump(a.phoneNumberMatchInfo));
+            assertEquals(message, dump(e.extraMatchInfo), dump(a.extraMatchInfo));
+            assertEquals(message, e.matchedNumber, a.matchedNumber);
+            assertEquals(message, e.matchedExtra, a.matchedExtra);
+        }
+    }
+
+    private static String randomKey(Random random) {
+        switch (random.nextInt(10)) {
+            case 0:
+                return random.nextBoolean() ? null : "";
+            default:
+                return randomDigits(random, 1 + random.nextInt(4));
+        }
+    }
+
+    /**
+     * 键有重复, 使各分片中都有比较相等的结果
+     */
+    private static List<Contact> createContacts(Random random, int count) {
+        List<String> t9Keys = new ArrayList<>();
+        List<Contact> contacts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String t9Key = t9Keys.isEmpty() || random.nextInt(3) != 0
+                    ? randomT9Key(random) : t9Keys.get(random.nextInt(t9Keys.size()));
+            t9Keys.add(t9Key);
+            String[] numbers = new String[random.nextInt(3)];
+            for (int n = 0; n < numbers.length; n++) {
+                numbers[n] = "1" + randomDigits(random, 10);
+            }
+            String[] extras = new String[random.nextInt(2)];
+            String[] extraT9Keys = new String[extras.length];
+            for (int e = 0; e < extras.length; e++) {
+                extras[e] = "extra" + e;
+                extraT9Keys[e] = randomT9Key(random);
+            }
+            contacts.add(new Contact(i, "name" + i, t9Key, numbers, extras, extraT9Keys));
+        }
+        return contacts;
+    }
+
+}
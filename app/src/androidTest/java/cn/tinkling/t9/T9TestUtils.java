@@ -0,0 +1,75 @@
+package cn.tinkling.t9;
+
+import java.util.Random;
+
+/**
+ * 测试共用的工具方法
+ */
+final class T9TestUtils {
+
+    private T9TestUtils() {
+    }
+
+    static String repeat(String s, int count) {
+        StringBuilder sb = new StringBuilder(s.length() * count);
+        for (int i = 0; i < count; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 匹配信息链的文本形式, 用于比较
+     */
+    static String dump(T9MatchInfo matchInfo) {
+        StringBuilder sb = new StringBuilder();
+        while (matchInfo != null) {
+            sb.append(matchInfo.found()).append(',')
+                    .append(matchInfo.start()).append(',')
+                    .append(matchInfo.length()).append(',')
+                    .append(matchInfo.errors()).append(';');
+            matchInfo = matchInfo.next();
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 生成形如 "Y4264S2 R;Y4264..." 的 key: 首字母 + 数字组成单词, 偶尔夹杂空格
+     */
+    static String randomT9Key(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int alternatives = 1 + random.nextInt(3);
+        for (int a = 0; a < alternatives; a++) {
+            if (a > 0)
+                sb.append(T9Utils.T9_KEYS_DIVIDER);
+
+            int words = 1 + random.nextInt(6);
+            for (int w = 0; w < words; w++) {
+                if (random.nextInt(10) == 0) {
+                    sb.append(' ');
+                    continue;
+                }
+
+                sb.append(T9Utils.convertDigitToInitial(randomDigit(random)));
+                sb.append(randomDigits(random, random.nextInt(5)));
+                if (random.nextInt(8) == 0)
+                    sb.append(' ');
+            }
+        }
+        return sb.toString();
+    }
+
+    static String randomDigits(Random random, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(randomDigit(random));
+        }
+        return sb.toString();
+    }
+
+    // 偏向较小的字母表, 以提高命中率
+    static char randomDigit(Random random) {
+        return (char) ('2' + random.nextInt(random.nextBoolean() ? 3 : 8));
+    }
+
+}
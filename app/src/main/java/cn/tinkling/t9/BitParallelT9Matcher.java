@@ -0,0 +1,318 @@
+package cn.tinkling.t9;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.BitSet;
+
+/**
+ * 位并行(shift-and)T9匹配器.
+ * <p>
+ * 查询串被编译为每个字符一个位掩码(第 p 位表示查询串第 p 个字符), 每个 key 的每个候选项
+ * 自右向左单遍扫描, 以位运算求出 "从该单词的首字母开始, 查询串第 q 位之后能否匹配完成"
+ * 的所有 q. 首字母 / 全拼的选择顺序与 {@link T9Matcher} 的回溯顺序一致, 因此得到的
+ * {@link T9MatchInfo} 与 {@link T9Matcher#matches(String, String)} 完全相同.
+ * <p>
+ * 查询串超过 64 个字符或含有非 T9 字符时回退为 {@link T9Matcher}.
+ */
+final class BitParallelT9Matcher {
+
+    static final int MAX_CONSTRAINT_LENGTH = Long.SIZE;
+
+    private static final int MASK_TABLE_SIZE = 128;
+
+    static final T9MatchStrategy STRATEGY = new T9MatchStrategy() {
+
+        private volatile BitParallelT9Matcher mLastCompiled;
+
+        @NonNull
+        @Override
+        public T9MatchInfo matches(@Nullable String t9Key, @Nullable String t9Constraint) {
+            if (T9Utils.isEmpty(t9Key) || T9Utils.isEmpty(t9Constraint))
+                return T9MatchInfo.NO_MATCH;
+
+            BitParallelT9Matcher matcher = mLastCompiled;
+            if (matcher == null || !matcher.mConstraint.equals(t9Constraint)) {
+                matcher = compile(t9Constraint);
+                mLastCompiled = matcher;
+            }
+
+            return matcher.matches(t9Key);
+        }
+    };
+
+    private final String mConstraint;
+    private final int mLength;
+    private final boolean mFallback;
+
+    /**
+     * 字符 -> 出现位置的位掩码. 数字字符与首字母(C-Y)的取值范围不重叠, 共用一张表.
+     */
+    private final long[] mMasks;
+    private final long mAllBits;
+    private final long mLastBit;
+
+    private BitParallelT9Matcher(@NonNull String t9Constraint) {
+        mConstraint = t9Constraint;
+        mLength = t9Constraint.length();
+
+        boolean fallback = mLength > MAX_CONSTRAINT_LENGTH;
+        for (int i = 0; i < mLength && !fallback; i++) {
+            fallback = !T9Utils.isValidT9Key(t9Constraint.charAt(i));
+        }
+        mFallback = fallback;
+
+        mMasks = new long[MASK_TABLE_SIZE];
+        if (!fallback) {
+            for (int p = 0; p < mLength; p++) {
+                char c = t9Constraint.charAt(p);
+                mMasks[c] |= 1L << p;
+                mMasks[T9Utils.convertDigitToInitial(c)] |= 1L << p;
+            }
+        }
+
+        mAllBits = mLength == Long.SIZE ? -1L : (1L << mLength) - 1;
+        mLastBit = 1L << (mLength - 1);
+    }
+
+    /**
+     * 编译查询串
+     *
+     * @param t9Constraint the constraint.
+     * @return 编译后的匹配器
+     */
+    @NonNull
+    static BitParallelT9Matcher compile(@NonNull String t9Constraint) {
+        if (t9Constraint.length() == 0) {
+            throw new IllegalArgumentException("The constraint must not be empty");
+        }
+
+        return new BitParallelT9Matcher(t9Constraint);
+    }
+
+    /**
+     * T9 匹配
+     *
+     * @param t9Key t9 key.
+     * @return the match info.
+     */
+    @NonNull
+    T9MatchInfo matches(@Nullable String t9Key) {
+        if (T9Utils.isEmpty(t9Key))
+            return T9MatchInfo.NO_MATCH;
+
+        if (mLength == 1)
+            return T9Matcher.matches(t9Key, mConstraint.charAt(0));
+
+        if (mFallback)
+            return T9Matcher.matches(t9Key, mConstraint);
+
+        final int length = t9Key.length();
+        int start = 0;
+        int end;
+        do {
+            end = t9Key.indexOf(T9Utils.T9_KEYS_DIVIDER, start);
+            if (end < 0)
+                end = length;
+
+            if (end - start >= mLength) {
+                int matchStart = scan(t9Key, start, end, null, null);
+                if (matchStart >= 0) {
+                    // 只在命中时分配结果
+                    T9MatchInfo matchInfo = new T9MatchInfo();
+                    setMatchResult(matchInfo, t9Key, start, end, matchStart);
+                    if (matchInfo.found())
+                        return matchInfo;
+                }
+            }
+
+            start = end + 1;
+        } while (end < length);
+
+        return T9MatchInfo.NO_MATCH;
+    }
+
+    /**
+     * 只判断是否匹配, 不计算 {@link T9MatchInfo}, 不分配对象(回退的情况除外).
+     * 可用于堆外存储的 key, 见 {@link T9DirectIndex}.
+     *
+     * @param t9Key t9 key.
+     * @return <code>true</code> - 如果匹配
+     */
+    boolean find(@NonNull CharSequence t9Key) {
+        final int length = t9Key.length();
+        if (length == 0)
+            return false;
+
+        if (mLength == 1) {
+            final char initial = T9Utils.convertDigitToInitial(mConstraint.charAt(0));
+            for (int i = 0; i < length; i++) {
+                if (t9Key.charAt(i) == initial)
+                    return true;
+            }
+            return false;
+        }
+
+        if (mFallback)
+            return T9Query.compile(mConstraint).matches(t9Key.toString()).found();
+
+        int start = 0;
+        while (start < length) {
+            int end = start;
+            while (end < length && t9Key.charAt(end) != T9Utils.T9_KEYS_DIVIDER) {
+                end++;
+            }
+
+            if (end - start >= mLength && scan(t9Key, start, end, null, null) >= 0)
+                return true;
+
+            start = end + 1;
+        }
+
+        return false;
+    }
+
+    private static int getSpanLength(CharSequence t9Key, int start, int nextInitial) {
+        int spanLength = nextInitial - start;
+        for (int i = nextInitial - 1; t9Key.charAt(i) == ' '; i--) {
+            spanLength--;
+        }
+        return spanLength;
+    }
+
+    private long getMask(char c) {
+        return c < MASK_TABLE_SIZE ? mMasks[c] : 0L;
+    }
+
+    /**
+     * 自右向左扫描 [start, end) 内的单词, 计算每个单词的可匹配位置集合.
+     *
+     * @param wordStarts 非 null 时记录各单词的起始位置(按自左向右的顺序)
+     * @param wordMasks  非 null 时记录各单词的可匹配位置集合
+     * @return 最左侧可完成匹配的单词的起始位置, <code>-1</code> - 如果未匹配.
+     */
+    private int scan(CharSequence t9Key, int start, int end,
+                     @Nullable int[] wordStarts, @Nullable long[] wordMasks) {
+        final int maxLength = 1 + (end - mLength);
+        final long validBits = mLastBit - 1;
+
+        int wordIndex = wordStarts != null ? wordStarts.length : 0;
+        int matchStart = -1;
+        int nextInitial = end;
+        long nextMask = 0L;
+
+        for (int i = end - 1; i >= start; i--) {
+            char c = t9Key.charAt(i);
+            if (!T9Utils.isInitial(c))
+                continue;
+
+            final int spanLength = getSpanLength(t9Key, i, nextInitial);
+
+            // prefixMatched: 查询串第 q + 1 位起的剩余部分是本单词的前缀
+            // fullMatched: 查询串第 q + 1 位起包含本单词除首字母外的全部字符
+            long prefixMatched = 0L;
+            long fullMatched = 0L;
+            long p = mAllBits;
+            final int maxK = Math.min(spanLength - 1, mLength);
+            int k = 1;
+            for (; k <= maxK && p != 0L; k++) {
+                p &= getMask(t9Key.charAt(i + k)) >>> (k - 1);
+                if (k < mLength && (p & (1L << (mLength - k))) != 0L) {
+                    prefixMatched |= 1L << (mLength - k - 1);
+                }
+            }
+            if (k > spanLength - 1) {
+                fullMatched = p >>> 1;
+            }
+
+            long matched;
+            if (nextInitial == end) {
+                matched = prefixMatched;
+            } else {
+                matched = (nextMask >>> 1) | prefixMatched;
+                if (spanLength < mLength) {
+                    long lower = (1L << (mLength - spanLength)) - 1;
+                    matched |= fullMatched & (nextMask >>> spanLength) & lower;
+                }
+            }
+            matched &= validBits;
+
+            long mask = getMask(c) & (mLastBit | matched);
+            if ((mask & 1L) != 0L && i < maxLength) {
+                matchStart = i;
+            }
+
+            if (wordStarts != null) {
+                wordIndex--;
+                wordStarts[wordIndex] = i;
+                wordMasks[wordIndex] = mask;
+            }
+
+            nextInitial = i;
+            nextMask = mask;
+        }
+
+        return matchStart;
+    }
+
+    private void setMatchResult(T9MatchInfo matchInfo, String t9Key, int begin, int end,
+                                int matchStart) {
+        int wordCount = 0;
+        for (int i = begin; i < end; i++) {
+            if (T9Utils.isInitial(t9Key.charAt(i))) {
+                wordCount++;
+            }
+        }
+
+        int[] wordStarts = new int[wordCount];
+        long[] wordMasks = new long[wordCount];
+        scan(t9Key, begin, end, wordStarts, wordMasks);
+
+        int w = 0;
+        while (wordStarts[w] != matchStart) {
+            w++;
+        }
+
+        BitSet bitSet = T9Utils.getReusableBitSet();
+        int q = 0;
+        while (true) {
+            final int start = wordStarts[w] - begin;
+            if (w == wordCount - 1) {
+                bitSet.set(start, start + mLength - q);
+                break;
+            }
+
+            final int nextInitial = wordStarts[w + 1];
+            final int next = nextInitial - begin;
+            if (((wordMasks[w + 1] >>> (q + 1)) & 1L) != 0L) {
+                bitSet.set(start);
+                if (q + 2 == mLength) {
+                    bitSet.set(next);
+                    break;
+                }
+                w++;
+                q++;
+                continue;
+            }
+
+            final int spanLength = getSpanLength(t9Key, wordStarts[w], nextInitial);
+            if (mLength - q <= spanLength) {
+                bitSet.set(start, start + mLength - q);
+                break;
+            }
+
+            if (q + spanLength + 1 == mLength) {
+                bitSet.set(start, next + 1);
+                break;
+            }
+
+            bitSet.set(start, next);
+            w++;
+            q += spanLength;
+        }
+
+        T9Matcher.setMatchResult(t9Key, matchInfo, bitSet, begin);
+        T9Utils.recycleBitSet(bitSet);
+    }
+
+}
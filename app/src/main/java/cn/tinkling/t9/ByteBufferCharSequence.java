@@ -0,0 +1,56 @@
+package cn.tinkling.t9;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * ByteBuffer 中一段 ASCII 字节的字符序列视图, 可重复指向不同的区间, 不复制数据.
+ */
+final class ByteBufferCharSequence implements CharSequence {
+
+    private final ByteBuffer mBuffer;
+    private int mStart;
+    private int mLength;
+
+    ByteBufferCharSequence(@NonNull ByteBuffer buffer) {
+        mBuffer = buffer;
+    }
+
+    /**
+     * 指向 [start, end)
+     */
+    @NonNull
+    ByteBufferCharSequence reset(int start, int end) {
+        mStart = start;
+        mLength = end - start;
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return mLength;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (mBuffer.get(mStart + index) & 0xFF);
+    }
+
+    @NonNull
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new ByteBufferCharSequence(mBuffer).reset(mStart + start, mStart + end);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        char[] chars = new char[mLength];
+        for (int i = 0; i < mLength; i++) {
+            chars[i] = charAt(i);
+        }
+        return new String(chars);
+    }
+
+}
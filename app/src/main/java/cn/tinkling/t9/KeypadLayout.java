@@ -0,0 +1,227 @@
+package cn.tinkling.t9;
+
+import androidx.annotation.NonNull;
+
+/**
+ * 键盘布局: 字符 -> 数字键.
+ * <p>
+ * 以字符为下标的稠密数组查表, 每个字符一次数组访问. 映射到数字键的字符在T9键中各自作为一个单词
+ * (与英文字母相同); 谚文音节按初声, 中声, 终声分解为一个单词(与拼音相同). 复合的兼容字母
+ * (如 ㅐ, ㄳ)同样分解为一个单词, 其数字键与音节中相同(ㅐ 与 개 中的 ㅐ 都是 39).
+ * 未映射的字符交给 {@link PinyinProvider} 处理.
+ * <p>
+ * 内置布局均包含 {@link #LATIN}, 可用 {@link #combine(KeypadLayout...)} 组合. 实例不可变.
+ */
+public final class KeypadLayout {
+
+    private static final char HANGUL_BASE = '가';
+    private static final char HANGUL_COMPAT_CONSONANT = 'ㄱ';
+    private static final char HANGUL_COMPAT_VOWEL = 'ㅏ';
+    private static final int HANGUL_COUNT = 11172;
+    private static final int HANGUL_VOWELS = 21;
+    private static final int HANGUL_TAILS = 28;
+
+    /**
+     * 谚文音节T9键的最大长度
+     */
+    static final int MAX_SYLLABLE_LENGTH = 6;
+
+    /**
+     * 谚文取 Naratgeul 12 键布局的基本键(加划, 双写的字母与基本字母同键, 复合元音拆分):
+     * ㄱ1 ㄴ2 ㅏㅓ3 ㄹ4 ㅁ5 ㅗㅜ6 ㅅ7 ㅇ8 ㅣ9 ㅡ0
+     */
+    private static final String HANGUL_LEADS = "1122245557787771258";
+
+    private static final String[] HANGUL_VOWEL_KEYS = {
+            "3", "39", "3", "39", "3", "39", "3", "39", "6", "63", "639",
+            "69", "6", "6", "63", "639", "69", "6", "0", "09", "9"
+    };
+
+    /**
+     * 兼容辅音字母 ㄱ - ㅎ, 复合的辅音与音节的终声相同
+     */
+    private static final String[] HANGUL_CONSONANT_KEYS = {
+            "1", "1", "17", "2", "27", "28", "2", "2", "4", "41", "45", "45", "47", "42", "45",
+            "48", "5", "5", "5", "57", "7", "7", "8", "7", "7", "7", "1", "2", "5", "8"
+    };
+
+    private static final String[] HANGUL_TAIL_KEYS = {
+            "", "1", "1", "17", "2", "27", "28", "2", "4", "41", "45", "45", "47", "42",
+            "45", "48", "5", "5", "57", "7", "7", "8", "7", "7", "1", "2", "5", "8"
+    };
+
+    /**
+     * ITU-T E.161 拉丁字母, 数字及 T9 符号, 与 {@link T9Utils#formatCharToT9(char)} 相同
+     */
+    public static final KeypadLayout LATIN;
+
+    /**
+     * 西里尔字母(俄语键盘, 含乌克兰语, 白俄罗斯语字母)
+     */
+    public static final KeypadLayout CYRILLIC;
+
+    /**
+     * 希腊字母(含重音字母)
+     */
+    public static final KeypadLayout GREEK;
+
+    /**
+     * 谚文音节及兼容字母
+     */
+    public static final KeypadLayout HANGUL;
+
+    /**
+     * 注音符号(台湾手机键盘)
+     */
+    public static final KeypadLayout ZHUYIN;
+
+    /**
+     * 全部内置布局
+     */
+    public static final KeypadLayout ALL;
+
+    static {
+        char[] latin = new char[128];
+        for (char c = 0; c < latin.length; c++) {
+            latin[c] = T9Utils.formatCharToT9(c);
+        }
+        LATIN = new KeypadLayout(latin, false);
+
+        char[] cyrillic = new char[0x492];
+        put(cyrillic, 'А', "22223333444455556666777788889999");
+        put(cyrillic, 'а', "22223333444455556666777788889999");
+        // Ё Є І Ї Ў, ё є і ї ў, Ґ ґ
+        put(cyrillic, 'Ё', "3  3 44      6");
+        put(cyrillic, 'ё', "3  3 44      6");
+        put(cyrillic, 'Ґ', "22");
+        CYRILLIC = combine(LATIN, new KeypadLayout(cyrillic, false));
+
+        char[] greek = new char[0x3CF];
+        put(greek, 'Α', "2223334445556667777888999");
+        put(greek, 'α', "2223334445556667777888999");
+        // ΐ, Ά ΈΉΊ Ό ΎΏ, ΪΫάέήίΰ, ϊϋόύώ
+        put(greek, 'Ά', "2 344 6 89");
+        put(greek, 'ΐ', "4");
+        put(greek, 'Ϊ', "4823448");
+        put(greek, 'ϊ', "48689");
+        GREEK = combine(LATIN, new KeypadLayout(greek, false));
+
+        // 只有单个键的兼容字母可直接查表, 复合字母由 getSyllableT9Key 分解
+        char[] hangul = new char[0x3164];
+        putSingleKeys(hangul, HANGUL_COMPAT_CONSONANT, HANGUL_CONSONANT_KEYS);
+        putSingleKeys(hangul, HANGUL_COMPAT_VOWEL, HANGUL_VOWEL_KEYS);
+        HANGUL = combine(LATIN, new KeypadLayout(hangul, true));
+
+        char[] zhuyin = new char[0x312A];
+        put(zhuyin, 'ㄅ', "1111222233344455556667777888899999000");
+        ZHUYIN = combine(LATIN, new KeypadLayout(zhuyin, false));
+
+        ALL = combine(CYRILLIC, GREEK, HANGUL, ZHUYIN);
+    }
+
+    private final char[] mKeys;
+    private final boolean mHangulSyllables;
+
+    private KeypadLayout(@NonNull char[] keys, boolean hangulSyllables) {
+        mKeys = keys;
+        mHangulSyllables = hangulSyllables;
+    }
+
+    private static void put(char[] keys, char first, String digits) {
+        for (int i = 0; i < digits.length(); i++) {
+            char digit = digits.charAt(i);
+            if (digit != ' ') {
+                keys[first + i] = digit;
+            }
+        }
+    }
+
+    private static void putSingleKeys(char[] keys, char first, String[] digits) {
+        for (int i = 0; i < digits.length; i++) {
+            if (digits[i].length() == 1) {
+                keys[first + i] = digits[i].charAt(0);
+            }
+        }
+    }
+
+    /**
+     * 组合多个布局, 同一字符以先出现的布局为准
+     *
+     * @param layouts 布局
+     * @return 组合后的布局
+     */
+    @NonNull
+    public static KeypadLayout combine(@NonNull KeypadLayout... layouts) {
+        int length = 0;
+        boolean hangulSyllables = false;
+        for (KeypadLayout layout : layouts) {
+            length = Math.max(length, layout.mKeys.length);
+            hangulSyllables |= layout.mHangulSyllables;
+        }
+
+        char[] keys = new char[length];
+        for (KeypadLayout layout : layouts) {
+            for (int c = 0; c < layout.mKeys.length; c++) {
+                if (keys[c] == 0) {
+                    keys[c] = layout.mKeys[c];
+                }
+            }
+        }
+        return new KeypadLayout(keys, hangulSyllables);
+    }
+
+    /**
+     * @param c 输入字符
+     * @return 数字键, <code>'\0'</code> - 如果未映射
+     */
+    public char getKey(char c) {
+        return c < mKeys.length ? mKeys[c] : '\0';
+    }
+
+    /**
+     * 谚文音节或复合兼容字母的T9键(首字母 + 数字)
+     *
+     * @param c   输入字符
+     * @param out 输出, 长度至少为 {@link #MAX_SYLLABLE_LENGTH}
+     * @return 长度, <code>0</code> - 如果不是谚文音节或兼容字母, 或未启用谚文
+     */
+    int getSyllableT9Key(char c, @NonNull char[] out) {
+        if (!mHangulSyllables)
+            return 0;
+
+        final int compatConsonant = c - HANGUL_COMPAT_CONSONANT;
+        if (compatConsonant >= 0 && compatConsonant < HANGUL_CONSONANT_KEYS.length)
+            return getJamoT9Key(HANGUL_CONSONANT_KEYS[compatConsonant], out);
+
+        final int compatVowel = c - HANGUL_COMPAT_VOWEL;
+        if (compatVowel >= 0 && compatVowel < HANGUL_VOWEL_KEYS.length)
+            return getJamoT9Key(HANGUL_VOWEL_KEYS[compatVowel], out);
+
+        final int index = c - HANGUL_BASE;
+        if (index < 0 || index >= HANGUL_COUNT)
+            return 0;
+
+        final int lead = index / (HANGUL_VOWELS * HANGUL_TAILS);
+        final String vowel = HANGUL_VOWEL_KEYS[(index / HANGUL_TAILS) % HANGUL_VOWELS];
+        final String tail = HANGUL_TAIL_KEYS[index % HANGUL_TAILS];
+
+        int length = 0;
+        out[length++] = T9Utils.convertDigitToInitial(HANGUL_LEADS.charAt(lead));
+        for (int i = 0; i < vowel.length(); i++) {
+            out[length++] = vowel.charAt(i);
+        }
+        for (int i = 0; i < tail.length(); i++) {
+            out[length++] = tail.charAt(i);
+        }
+        return length;
+    }
+
+    private static int getJamoT9Key(String keys, char[] out) {
+        out[0] = T9Utils.convertDigitToInitial(keys.charAt(0));
+        for (int i = 1; i < keys.length(); i++) {
+            out[i] = keys.charAt(i);
+        }
+        return keys.length();
+    }
+
+}
@@ -0,0 +1,247 @@
+package cn.tinkling.t9;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cn.tinkling.t9search.sample.Contact;
+
+/**
+ * 批量查询前端: 在很短的时间窗口内收集并发的查询请求, 合并为一批在同一快照上执行
+ * {@link T9ContactIndex.Snapshot#searchBatch(List, T9MatchStrategy, int)}, 只遍历一次联系人.
+ * <p>
+ * 请求由单个工作线程处理: 取得第一个请求后最多再等待一个窗口, 凑满 maxBatchSize 个请求时立即执行.
+ * 负载低时每批只有一个请求, 延迟最多增加一个窗口; 负载高时批次变大, 每个请求分摊的遍历开销随之减少.
+ * 同一批中相同的查询串只匹配一次, 各请求得到独立的结果列表, 其中的联系人对象共享.
+ * <p>
+ * 一批查询抛出的任何异常(包括 {@link Error})都作为该批全部请求的结果, 工作线程继续处理后续请求.
+ */
+public final class T9BatchSearcher implements Closeable {
+
+    private final T9ContactIndex mIndex;
+    private final T9MatchStrategy mStrategy;
+    private final int mMaxErrors;
+    private final int mMaxBatchSize;
+    private final long mWindowNanos;
+
+    private final BlockingQueue<Request> mQueue = new LinkedBlockingQueue<>();
+    private final Thread mWorker;
+    private volatile boolean mClosed;
+
+    private final AtomicLong mBatchCount = new AtomicLong();
+    private final AtomicLong mRequestCount = new AtomicLong();
+
+    /**
+     * @param strategy     名称匹配策略
+     * @param maxErrors    最大编辑距离, [0, {@link T9FuzzyQuery#MAX_ERRORS}], <code>0</code> - 不进行模糊匹配
+     * @param maxBatchSize 每批最多的请求数
+     * @param window       收集一批请求的最长等待时间, <code>0</code> - 只合并已在排队的请求
+     * @throws IllegalArgumentException 如果 maxErrors 超出范围, maxBatchSize 小于 1 或 window 为负数
+     */
+    public T9BatchSearcher(@NonNull T9ContactIndex index, @NonNull T9MatchStrategy strategy,
+                           int maxErrors, int maxBatchSize, long window,
+                           @NonNull TimeUnit unit) {
+        T9SearchSupport.checkMaxErrors(maxErrors);
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("The max batch size must be > 0");
+        }
+        if (window < 0) {
+            throw new IllegalArgumentException("The window must be >= 0");
+        }
+
+        mIndex = index;
+        mStrategy = strategy;
+        mMaxErrors = maxErrors;
+        mMaxBatchSize = maxBatchSize;
+        mWindowNanos = unit.toNanos(window);
+
+        mWorker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runWorker();
+            }
+        }, "T9BatchSearcher");
+        mWorker.setDaemon(true);
+        mWorker.start();
+    }
+
+    /**
+     * 提交查询
+     *
+     * @param key 查询串
+     * @return 过滤结果, 与 {@link T9ContactIndex.Snapshot#search(String, T9MatchStrategy, int)} 相同.
+     * 关闭时尚未执行的请求被取消.
+     * @throws IllegalStateException 如果已关闭
+     */
+    @NonNull
+    public Future<List<Contact>> submit(@Nullable String key) {
+        if (mClosed) {
+            throw new IllegalStateException("The searcher has been closed");
+        }
+
+        Request request = new Request(key);
+        mQueue.add(request);
+        // 与 close() 竞争时, 工作线程可能已退出
+        if (mClosed && mQueue.remove(request)) {
+            request.cancel(false);
+        }
+        return request;
+    }
+
+    /**
+     * @return 已执行的批次数
+     */
+    public long batchCount() {
+        return mBatchCount.get();
+    }
+
+    /**
+     * @return 已执行的请求数(不含已取消的)
+     */
+    public long requestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * 停止工作线程, 取消尚未执行的请求. 正在执行的批次仍会完成.
+     */
+    @Override
+    public void close() {
+        mClosed = true;
+        mWorker.interrupt();
+    }
+
+    private void runWorker() {
+        final List<Request> batch = new ArrayList<>(mMaxBatchSize);
+        try {
+            while (!mClosed) {
+                batch.add(mQueue.take());
+                final long deadline = System.nanoTime() + mWindowNanos;
+                while (batch.size() < mMaxBatchSize) {
+                    // 先取走已在排队的请求, 没有时等待到窗口结束
+                    if (mQueue.drainTo(batch, mMaxBatchSize - batch.size()) > 0)
+                        continue;
+
+                    final long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0)
+                        break;
+
+                    Request request = mQueue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (request == null)
+                        break;
+                    batch.add(request);
+                }
+
+                execute(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // 已关闭
+        } finally {
+            // 工作线程意外退出时之后的请求不会被执行, 拒绝提交而不是让其一直等待
+            mClosed = true;
+            mQueue.drainTo(batch);
+            for (Request request : batch) {
+                request.cancel(false);
+            }
+        }
+    }
+
+    private void execute(List<Request> batch) {
+        final int size = batch.size();
+        final int[] slots = new int[size];
+        final List<String> keys = new ArrayList<>(size);
+        final Map<String, Integer> slotOfKey = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            Request request = batch.get(i);
+            if (request.isCancelled()) {
+                slots[i] = -1;
+                continue;
+            }
+
+            Integer slot = slotOfKey.get(request.mKey);
+            if (slot == null) {
+                slot = keys.size();
+                keys.add(request.mKey);
+                slotOfKey.put(request.mKey, slot);
+            }
+            slots[i] = slot;
+        }
+        if (keys.isEmpty())
+            return;
+
+        List<List<Contact>> results;
+        try {
+            results = mIndex.snapshot().searchBatch(keys, mStrategy, mMaxErrors);
+        } catch (Throwable t) {
+            for (int i = 0; i < size; i++) {
+                batch.get(i).fail(t);
+            }
+            return;
+        }
+
+        // 先计数, 调用方取得结果时计数已包含该请求
+        int executed = 0;
+        for (int slot : slots) {
+            if (slot >= 0)
+                executed++;
+        }
+        mBatchCount.incrementAndGet();
+        mRequestCount.addAndGet(executed);
+
+        for (int i = 0; i < size; i++) {
+            if (slots[i] >= 0) {
+                batch.get(i).complete(new ArrayList<>(results.get(slots[i])));
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "T9BatchSearcher{" +
+               "mMaxBatchSize=" + mMaxBatchSize +
+               ", mWindowNanos=" + mWindowNanos +
+               ", mBatchCount=" + mBatchCount +
+               ", mRequestCount=" + mRequestCount +
+               '}';
+    }
+
+    /**
+     * 由工作线程设置结果的查询请求
+     */
+    private static final class Request extends FutureTask<List<Contact>> {
+
+        private static final Runnable NONE = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+
+        final String mKey;
+
+        Request(@Nullable String key) {
+            super(NONE, null);
+            mKey = key;
+        }
+
+        void complete(@NonNull List<Contact> result) {
+            set(result);
+        }
+
+        void fail(@NonNull Throwable t) {
+            setException(t);
+        }
+    }
+
+}
@@ -0,0 +1,269 @@
+package cn.tinkling.t9;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 来电号码查找: 以号码的数字倒序建立字典树, 按最长公共后缀匹配联系人.
+ * <p>
+ * 号码中的非数字字符(空格, 括号, 连字符, '+' 等)被忽略, 因此 "+86 138-0000-1111",
+ * "013800001111" 与 "13800001111" 可以互相匹配, 不受国家码及长途前缀的影响.
+ * {@link #lookup(CharSequence)} 从号码末尾逐位下行, 耗时 O(号码长度), 不分配对象.
+ * <p>
+ * 匹配规则:
+ * <ul>
+ * <li>两个号码完全相同时匹配, 不限长度(如 "10086")</li>
+ * <li>存储的号码是来电号码的后缀, 或来电号码是存储的号码的后缀(且该后缀只对应一个联系人),
+ * 并且公共后缀至少 {@link #MIN_MATCH} 位</li>
+ * <li>公共后缀至少 {@link #MIN_MATCH} 位, 且一方余下的部分只有长途前缀 "0"
+ * (如 "0755 8888 3333" 与 "+86 755 8888 3333")</li>
+ * <li>多个候选时取公共后缀最长的; 相同号码属于多个联系人时取行号最小的</li>
+ * </ul>
+ * 节点以 "第一个子节点 / 下一个兄弟节点" 数组存储. 实例不可变, 可在多个线程间共享.
+ */
+public final class T9CallerIdIndex {
+
+    /**
+     * 号码不完全相同时, 公共后缀的最小位数
+     */
+    public static final int MIN_MATCH = 7;
+
+    private static final int NONE = -1;
+    private static final int AMBIGUOUS = -2;
+
+    private static final int ROOT = 0;
+
+    private final byte[] mDigits;
+    private final int[] mFirstChild;
+    private final int[] mNextSibling;
+
+    /**
+     * 在该节点结束的号码所属的行, {@link #NONE} - 没有号码在此结束
+     */
+    private final int[] mRows;
+
+    /**
+     * 子树中全部号码所属的行, {@link #AMBIGUOUS} - 属于多个行
+     */
+    private final int[] mSubtreeRows;
+
+    private final int mNodeCount;
+    private final int mNumberCount;
+
+    private T9CallerIdIndex(byte[] digits, int[] firstChild, int[] nextSibling, int[] rows,
+                            int[] subtreeRows, int nodeCount, int numberCount) {
+        mDigits = digits;
+        mFirstChild = firstChild;
+        mNextSibling = nextSibling;
+        mRows = rows;
+        mSubtreeRows = subtreeRows;
+        mNodeCount = nodeCount;
+        mNumberCount = numberCount;
+    }
+
+    /**
+     * 建立索引
+     *
+     * @param rows 每行的号码, 行号即列表中的下标. 可以为 null.
+     * @return 索引
+     */
+    @NonNull
+    public static T9CallerIdIndex build(@NonNull List<String[]> rows) {
+        Builder builder = new Builder();
+        for (int row = 0; row < rows.size(); row++) {
+            String[] numbers = rows.get(row);
+            if (numbers == null)
+                continue;
+
+            for (String number : numbers) {
+                if (number != null) {
+                    builder.add(number, row);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return 已索引的号码个数(不含没有数字的号码)
+     */
+    public int size() {
+        return mNumberCount;
+    }
+
+    /**
+     * @return 字典树占用的字节数
+     */
+    public int sizeInBytes() {
+        return mDigits.length + (mFirstChild.length + mNextSibling.length + mRows.length
+                + mSubtreeRows.length) * 4;
+    }
+
+    /**
+     * 查找来电号码所属的行
+     *
+     * @param number 来电号码, 可以含有非数字字符
+     * @return 行号, <code>-1</code> - 如果没有匹配
+     */
+    public int lookup(@Nullable CharSequence number) {
+        if (number == null)
+            return NONE;
+
+        int node = ROOT;
+        int depth = 0;
+        int best = NONE;
+        int i = number.length() - 1;
+        for (; i >= 0; i--) {
+            final int digit = number.charAt(i) - '0';
+            if (digit < 0 || digit > 9)
+                continue;
+
+            final int child = findChild(node, digit);
+            if (child == NONE)
+                break;
+
+            node = child;
+            depth++;
+            if (depth >= MIN_MATCH && mRows[node] >= 0) {
+                best = mRows[node];
+            }
+        }
+
+        if (i < 0 && depth > 0) {
+            // 来电号码已全部匹配
+            if (mRows[node] >= 0) {
+                best = mRows[node];
+            } else if (depth >= MIN_MATCH && mSubtreeRows[node] >= 0) {
+                best = mSubtreeRows[node];
+            }
+        } else if (i >= 0 && depth >= MIN_MATCH) {
+            // 一方余下的只有长途前缀 0, 另一方为国家码
+            final int trunk = findChild(node, 0);
+            if (trunk != NONE && mRows[trunk] >= 0) {
+                best = mRows[trunk];
+            } else if (isTrunkPrefix(number, i) && mSubtreeRows[node] >= 0) {
+                best = mSubtreeRows[node];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return <code>true</code> - 如果 [0, end] 中的数字只有一个 0
+     */
+    private static boolean isTrunkPrefix(CharSequence number, int end) {
+        int digits = 0;
+        for (int i = end; i >= 0; i--) {
+            final char c = number.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (c != '0' || ++digits > 1)
+                    return false;
+            }
+        }
+        return digits == 1;
+    }
+
+    private int findChild(int node, int digit) {
+        for (int child = mFirstChild[node]; child != NONE; child = mNextSibling[child]) {
+            if (mDigits[child] == digit)
+                return child;
+        }
+        return NONE;
+    }
+
+    @Override
+    public String toString() {
+        return "T9CallerIdIndex{" +
+               "mNumberCount=" + mNumberCount +
+               ", mNodeCount=" + mNodeCount +
+               '}';
+    }
+
+    private static final class Builder {
+
+        private byte[] mDigits = new byte[256];
+        private int[] mFirstChild = new int[256];
+        private int[] mNextSibling = new int[256];
+        private int[] mRows = new int[256];
+        private int[] mSubtreeRows = new int[256];
+        private int mNodeCount;
+        private int mNumberCount;
+
+        Builder() {
+            newNode(0);
+        }
+
+        void add(@NonNull String number, int row) {
+            int node = ROOT;
+            int depth = 0;
+            for (int i = number.length() - 1; i >= 0; i--) {
+                final int digit = number.charAt(i) - '0';
+                if (digit < 0 || digit > 9)
+                    continue;
+
+                node = getOrAddChild(node, digit);
+                depth++;
+                final int subtreeRow = mSubtreeRows[node];
+                if (subtreeRow == NONE) {
+                    mSubtreeRows[node] = row;
+                } else if (subtreeRow != row) {
+                    mSubtreeRows[node] = AMBIGUOUS;
+                }
+            }
+
+            if (depth == 0)
+                return;
+
+            if (mRows[node] == NONE) {
+                mRows[node] = row;
+            }
+            mNumberCount++;
+        }
+
+        private int getOrAddChild(int node, int digit) {
+            int last = NONE;
+            for (int child = mFirstChild[node]; child != NONE; child = mNextSibling[child]) {
+                if (mDigits[child] == digit)
+                    return child;
+                last = child;
+            }
+
+            final int child = newNode(digit);
+            if (last == NONE) {
+                mFirstChild[node] = child;
+            } else {
+                mNextSibling[last] = child;
+            }
+            return child;
+        }
+
+        private int newNode(int digit) {
+            final int node = mNodeCount++;
+            if (node == mDigits.length) {
+                final int capacity = node * 2;
+                mDigits = Arrays.copyOf(mDigits, capacity);
+                mFirstChild = Arrays.copyOf(mFirstChild, capacity);
+                mNextSibling = Arrays.copyOf(mNextSibling, capacity);
+                mRows = Arrays.copyOf(mRows, capacity);
+                mSubtreeRows = Arrays.copyOf(mSubtreeRows, capacity);
+            }
+            mDigits[node] = (byte) digit;
+            mFirstChild[node] = NONE;
+            mNextSibling[node] = NONE;
+            mRows[node] = NONE;
+            mSubtreeRows[node] = NONE;
+            return node;
+        }
+
+        T9CallerIdIndex build() {
+            final int n = mNodeCount;
+            return new T9CallerIdIndex(Arrays.copyOf(mDigits, n), Arrays.copyOf(mFirstChild, n),
+                    Arrays.copyOf(mNextSibling, n), Arrays.copyOf(mRows, n),
+                    Arrays.copyOf(mSubtreeRows, n), n, mNumberCount);
+        }
+    }
+
+}
@@ -0,0 +1,438 @@
+package cn.tinkling.t9;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import cn.tinkling.t9search.sample.Contact;
+
+/**
+ * 联系人, 预先生成的T9键及匹配信息的二进制编码, 用于在进程间(同步服务 -> 拨号进程)传递
+ * 预先建立的索引或查询结果, 代替逐个对象的 Parcelable.
+ * <p>
+ * 联系人部分沿用 {@link T9DirectIndex} 的布局. {@link #readIndex(ByteBuffer)} 不复制数据,
+ * 直接在传入的缓冲区(如 {@link #map(File)} 映射的文件, 或 ashmem 等共享内存映射出的
+ * ByteBuffer)上建立索引, 只有读取的条目才生成字符串.
+ * <p>
+ * 布局(小端):
+ * <pre>
+ * header:     magic, version, kind, payloadBytes
+ * payload:    contactsBytes, extrasBytes
+ *             contacts   T9DirectIndex 布局(名称, T9键, 号码)
+ *             ids        long[rowCount]
+ *             extraRows  int[rowCount + 1]  每个联系人第一个附加字段的序号
+ *             extras     T9DirectIndex 布局, 每个附加字段一行(附加字段及其T9键)
+ * 查询结果另有: matches      每行 matchedNumber, matchedExtra 及名称, 号码, 附加字段的匹配信息,
+ *                           每个匹配信息为 spanCount 及各段的 start, length, errors
+ * </pre>
+ * 版本号不同的数据不能读取.
+ */
+public final class T9Codec {
+
+    /**
+     * "T9CD"
+     */
+    public static final int MAGIC = 0x54394344;
+
+    public static final int VERSION = 1;
+
+    static final int KIND_INDEX = 1;
+    static final int KIND_RESULTS = 2;
+
+    private static final int HEADER_SIZE = 4 * 4;
+    private static final int INDEX_HEADER_SIZE = 2 * 4;
+
+    private T9Codec() {
+    }
+
+    /**
+     * 编码联系人(名称, T9键, 号码, 附加字段), 不含匹配信息
+     *
+     * @return direct ByteBuffer, position 为 0, limit 为数据长度
+     */
+    @NonNull
+    public static ByteBuffer encodeIndex(@NonNull List<Contact> contacts) {
+        return encode(contacts, KIND_INDEX);
+    }
+
+    /**
+     * 编码查询结果, 包括联系人及其匹配信息
+     *
+     * @return direct ByteBuffer, position 为 0, limit 为数据长度
+     * @see T9SearchSupport#filter(List, T9NumberColumn, String, T9MatchStrategy, int)
+     */
+    @NonNull
+    public static ByteBuffer encodeResults(@NonNull List<Contact> results) {
+        return encode(results, KIND_RESULTS);
+    }
+
+    /**
+     * 在编码后的数据上建立索引, 不复制数据. 缓冲区的 position 及 limit 不变.
+     *
+     * @param buffer {@link #encodeIndex(List)} 或 {@link #encodeResults(List)} 的结果
+     * @return 索引, 读取期间缓冲区的内容不能改变
+     * @throws IllegalArgumentException 如果格式或版本不符
+     */
+    @NonNull
+    public static Index readIndex(@NonNull ByteBuffer buffer) {
+        ByteBuffer payload = readPayload(buffer, 0);
+        return new Index(payload);
+    }
+
+    /**
+     * 解码查询结果
+     *
+     * @param buffer {@link #encodeResults(List)} 的结果
+     * @return 查询结果, 包含匹配信息
+     * @throws IllegalArgumentException 如果格式或版本不符
+     */
+    @NonNull
+    public static List<Contact> decodeResults(@NonNull ByteBuffer buffer) {
+        ByteBuffer payload = readPayload(buffer, KIND_RESULTS);
+        Index index = new Index(payload);
+        try {
+            final int size = index.size();
+            List<Contact> results = new ArrayList<>(size);
+            int position = index.mMatchesBase;
+            for (int row = 0; row < size; row++) {
+                Contact c = index.getContact(row);
+                c.matchedNumber = payload.getInt(position);
+                c.matchedExtra = payload.getInt(position + 4);
+                position += 8;
+                if (c.matchedNumber >= 0) {
+                    c.phoneNumber = c.phoneNumbers[c.matchedNumber];
+                }
+
+                T9MatchInfo[] matchInfos = new T9MatchInfo[3];
+                for (int m = 0; m < matchInfos.length; m++) {
+                    final int spans = payload.getInt(position);
+                    position += 4;
+                    matchInfos[m] = readMatchInfo(payload, position, spans);
+                    position += spans * 3 * 4;
+                }
+                c.nameMatchInfo = matchInfos[0];
+                c.phoneNumberMatchInfo = matchInfos[1];
+                c.extraMatchInfo = matchInfos[2];
+                results.add(c);
+            }
+            return results;
+        } finally {
+            index.close();
+        }
+    }
+
+    /**
+     * 将编码后的数据写入文件
+     *
+     * @param buffer 编码后的数据, 写入 position 到 limit 之间的内容, position 不变
+     */
+    public static void write(@NonNull ByteBuffer buffer, @NonNull File file) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            FileChannel channel = out.getChannel();
+            ByteBuffer source = buffer.duplicate();
+            while (source.hasRemaining()) {
+                channel.write(source);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * 以只读方式映射文件, 可直接传给 {@link #readIndex(ByteBuffer)}. 映射在缓冲区被回收时解除.
+     */
+    @NonNull
+    public static ByteBuffer map(@NonNull File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            in.close();
+        }
+    }
+
+    @NonNull
+    private static ByteBuffer encode(@NonNull List<Contact> contacts, int kind) {
+        final int size = contacts.size();
+        T9DirectIndex.Builder contactsBuilder = new T9DirectIndex.Builder();
+        T9DirectIndex.Builder extrasBuilder = new T9DirectIndex.Builder();
+        int extraCount = 0;
+        int matchesBytes = 0;
+        for (int i = 0; i < size; i++) {
+            Contact contact = contacts.get(i);
+            contactsBuilder.add(contact.name, contact.t9Key, contact.phoneNumbers);
+
+            for (int e = 0; e < contact.extras.length; e++) {
+                extrasBuilder.add(contact.extras[e], contact.extraT9Keys[e], null);
+            }
+            extraCount += contact.extras.length;
+
+            if (kind == KIND_RESULTS) {
+                matchesBytes += 2 * 4 + getMatchInfoBytes(contact.nameMatchInfo)
+                        + getMatchInfoBytes(contact.phoneNumberMatchInfo)
+                        + getMatchInfoBytes(contact.extraMatchInfo);
+            }
+        }
+
+        final ByteBuffer contactsBuffer = contactsBuilder.build().buffer();
+        final ByteBuffer extrasBuffer = extrasBuilder.build().buffer();
+        final int payloadBytes = INDEX_HEADER_SIZE + contactsBuffer.capacity()
+                + size * 8 + (size + 1) * 4 + extrasBuffer.capacity() + matchesBytes;
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(HEADER_SIZE + payloadBytes)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(kind)
+                .putInt(payloadBytes)
+                .putInt(contactsBuffer.capacity())
+                .putInt(extrasBuffer.capacity());
+
+        contactsBuffer.clear();
+        buffer.put(contactsBuffer);
+        for (int i = 0; i < size; i++) {
+            buffer.putLong(contacts.get(i).id);
+        }
+        int extraRow = 0;
+        for (int i = 0; i < size; i++) {
+            buffer.putInt(extraRow);
+            extraRow += contacts.get(i).extras.length;
+        }
+        buffer.putInt(extraCount);
+        extrasBuffer.clear();
+        buffer.put(extrasBuffer);
+
+        if (kind == KIND_RESULTS) {
+            for (int i = 0; i < size; i++) {
+                Contact contact = contacts.get(i);
+                buffer.putInt(contact.matchedNumber).putInt(contact.matchedExtra);
+                putMatchInfo(buffer, contact.nameMatchInfo);
+                putMatchInfo(buffer, contact.phoneNumberMatchInfo);
+                putMatchInfo(buffer, contact.extraMatchInfo);
+            }
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    private static int getMatchInfoBytes(@Nullable T9MatchInfo matchInfo) {
+        int bytes = 4;
+        for (T9MatchInfo info = matchInfo; info != null && info.found(); info = info.next()) {
+            bytes += 3 * 4;
+        }
+        return bytes;
+    }
+
+    private static void putMatchInfo(ByteBuffer buffer, @Nullable T9MatchInfo matchInfo) {
+        final int countPosition = buffer.position();
+        buffer.putInt(0);
+
+        int spans = 0;
+        for (T9MatchInfo info = matchInfo; info != null && info.found(); info = info.next()) {
+            buffer.putInt(info.start()).putInt(info.length()).putInt(info.errors());
+            spans++;
+        }
+        buffer.putInt(countPosition, spans);
+    }
+
+    @NonNull
+    private static T9MatchInfo readMatchInfo(ByteBuffer buffer, int position, int spans) {
+        if (spans == 0)
+            return T9MatchInfo.NO_MATCH;
+
+        T9MatchInfo first = null;
+        T9MatchInfo last = null;
+        for (int s = 0; s < spans; s++, position += 3 * 4) {
+            T9MatchInfo info = new T9MatchInfo();
+            info.set(buffer.getInt(position), buffer.getInt(position + 4));
+            info.setErrors(buffer.getInt(position + 8));
+            if (last == null) {
+                first = info;
+            } else {
+                last.setNext(info);
+            }
+            last = info;
+        }
+        return first;
+    }
+
+    /**
+     * @param kind 期望的类型, <code>0</code> - 任意类型
+     * @return 数据部分, 与传入的缓冲区共享内容
+     */
+    @NonNull
+    private static ByteBuffer readPayload(@NonNull ByteBuffer buffer, int kind) {
+        ByteBuffer source = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (source.remaining() < HEADER_SIZE)
+            throw new IllegalArgumentException("Truncated header: " + source.remaining());
+
+        final int position = source.position();
+        if (source.getInt(position) != MAGIC)
+            throw new IllegalArgumentException("Not a T9 codec buffer");
+
+        final int version = source.getInt(position + 4);
+        if (version != VERSION)
+            throw new IllegalArgumentException("Unsupported version: " + version);
+
+        final int actualKind = source.getInt(position + 8);
+        if (actualKind != KIND_INDEX && actualKind != KIND_RESULTS
+                || (kind != 0 && actualKind != kind))
+            throw new IllegalArgumentException("Unexpected kind: " + actualKind);
+
+        final int payloadBytes = source.getInt(position + 12);
+        if (payloadBytes < INDEX_HEADER_SIZE || source.remaining() - HEADER_SIZE < payloadBytes)
+            throw new IllegalArgumentException("Truncated payload: " + payloadBytes);
+
+        source.position(position + HEADER_SIZE);
+        source.limit(position + HEADER_SIZE + payloadBytes);
+        return source.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * 编码数据上的只读索引, 不复制数据. 读取是线程安全的.
+     */
+    public static final class Index implements Closeable {
+
+        private ByteBuffer mBuffer;
+        private final T9DirectIndex mContacts;
+        private final T9DirectIndex mExtras;
+        private final int mIdsBase;
+        private final int mExtraRowsBase;
+        final int mMatchesBase;
+
+        Index(@NonNull ByteBuffer payload) {
+            mBuffer = payload;
+            final int contactsBytes = payload.getInt(0);
+            final int extrasBytes = payload.getInt(4);
+
+            final int contactsBase = INDEX_HEADER_SIZE;
+            mContacts = new T9DirectIndex(slice(payload, contactsBase, contactsBytes));
+            final int size = mContacts.size();
+
+            mIdsBase = contactsBase + contactsBytes;
+            mExtraRowsBase = mIdsBase + size * 8;
+            final int extrasBase = mExtraRowsBase + (size + 1) * 4;
+            mExtras = new T9DirectIndex(slice(payload, extrasBase, extrasBytes));
+            mMatchesBase = extrasBase + extrasBytes;
+        }
+
+        @NonNull
+        private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+            ByteBuffer section = buffer.duplicate();
+            section.position(offset);
+            section.limit(offset + length);
+            return section.slice();
+        }
+
+        /**
+         * @return 联系人个数
+         */
+        public int size() {
+            return mContacts.size();
+        }
+
+        /**
+         * @return 名称, T9键及号码的索引, 可直接 {@link T9DirectIndex#search(String, int, int[])}
+         */
+        @NonNull
+        public T9DirectIndex contacts() {
+            return mContacts;
+        }
+
+        public long getId(int row) {
+            checkOpen();
+            return mBuffer.getLong(mIdsBase + row * 8);
+        }
+
+        /**
+         * @return 附加字段
+         */
+        @NonNull
+        public String[] getExtras(int row) {
+            final int first = getFirstExtra(row);
+            String[] extras = new String[getFirstExtra(row + 1) - first];
+            for (int e = 0; e < extras.length; e++) {
+                extras[e] = mExtras.getName(first + e);
+            }
+            return extras;
+        }
+
+        /**
+         * @return 附加字段的T9键
+         */
+        @NonNull
+        public String[] getExtraT9Keys(int row) {
+            final int first = getFirstExtra(row);
+            String[] keys = new String[getFirstExtra(row + 1) - first];
+            for (int e = 0; e < keys.length; e++) {
+                keys[e] = mExtras.getT9Key(first + e);
+            }
+            return keys;
+        }
+
+        /**
+         * @return 新的联系人对象, 不含匹配信息
+         */
+        @NonNull
+        public Contact getContact(int row) {
+            return new Contact(getId(row), mContacts.getName(row), mContacts.getT9Key(row),
+                    mContacts.getPhoneNumbers(row), getExtras(row), getExtraT9Keys(row));
+        }
+
+        /**
+         * @return 全部联系人
+         */
+        @NonNull
+        public List<Contact> toContacts() {
+            final int size = size();
+            List<Contact> contacts = new ArrayList<>(size);
+            for (int row = 0; row < size; row++) {
+                contacts.add(getContact(row));
+            }
+            return contacts;
+        }
+
+        private int getFirstExtra(int row) {
+            checkOpen();
+            return mBuffer.getInt(mExtraRowsBase + row * 4);
+        }
+
+        private void checkOpen() {
+            if (mBuffer == null) {
+                throw new IllegalStateException("The index has been closed");
+            }
+        }
+
+        /**
+         * 释放对缓冲区的引用
+         */
+        @Override
+        public void close() {
+            mBuffer = null;
+            mContacts.close();
+            mExtras.close();
+        }
+
+        @Override
+        public String toString() {
+            return "T9Codec.Index{" +
+                   "size=" + (mBuffer == null ? -1 : size()) +
+                   ", mClosed=" + (mBuffer == null) +
+                   '}';
+        }
+    }
+
+}
@@ -0,0 +1,414 @@
+package cn.tinkling.t9;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cn.tinkling.t9search.sample.Contact;
+
+/**
+ * 线程安全的联系人索引.
+ * <p>
+ * 每次更新生成一个不可变的 {@link Snapshot}(联系人列表及T9键字典), 通过单个 volatile 引用发布
+ * (copy-on-write). 查询先取得当前快照再在其上过滤, 不加锁, 整个查询看到的始终是同一版本的数据;
+ * 写操作之间以锁串行, 不影响正在进行的查询.
+ * <p>
+ * 加载完成后可在后台线程调用 {@link #warmUp()}, 使首次查询不再承担拼音数据加载, 对象池创建及
+ * 解释执行的开销. {@link #firstQueryLatencyNanos()} 记录首次查询的耗时, 用于比较预热的效果.
+ */
+public final class T9ContactIndex {
+
+    /**
+     * 在联系人列表的副本上进行修改
+     */
+    public interface Mutation {
+        void apply(@NonNull List<Contact> contacts);
+    }
+
+    /**
+     * 预热时的查询轮数, 每轮对全部联系人执行一组查询
+     */
+    private static final int WARM_UP_ROUNDS = 3;
+
+    /**
+     * 预热时至少执行的单个联系人匹配次数, 联系人较少时增加轮数, 使热点方法达到编译阈值
+     */
+    private static final int WARM_UP_MIN_MATCHES = 20000;
+
+    private static final int WARM_UP_MAX_ROUNDS = 200;
+
+    private static final String[] WARM_UP_QUERIES = {
+            "2", "64", "946", "5464", "73426", "138", "0000", "9999999"
+    };
+
+    private final Object mWriteLock = new Object();
+
+    /**
+     * 快照是否生成号码列存储
+     */
+    private final boolean mNumberColumn;
+
+    private volatile Snapshot mSnapshot;
+
+    private volatile boolean mWarmedUp;
+    private final AtomicLong mFirstQueryNanos = new AtomicLong(-1);
+    private volatile boolean mFirstQueryWarm;
+
+    public T9ContactIndex() {
+        this(false);
+    }
+
+    /**
+     * @param numberColumn 快照是否生成号码列存储({@link T9NumberColumn}), 号码由列存储一次扫描匹配.
+     *                     默认不生成, 逐个号码 indexOf 并不更慢
+     */
+    public T9ContactIndex(boolean numberColumn) {
+        mNumberColumn = numberColumn;
+        mSnapshot = new Snapshot(this, Collections.<Contact>emptyList(), 0);
+    }
+
+    /**
+     * @return 当前快照
+     */
+    @NonNull
+    public Snapshot snapshot() {
+        return mSnapshot;
+    }
+
+    /**
+     * 过滤当前快照, 见 {@link Snapshot#search(String)}
+     */
+    @NonNull
+    public List<Contact> search(@Nullable String key) {
+        return mSnapshot.search(key);
+    }
+
+    /**
+     * 以新的联系人列表替换全部数据. 列表被复制, 之后对其修改不会影响索引.
+     *
+     * @return 发布的快照
+     */
+    @NonNull
+    public Snapshot publish(@NonNull List<Contact> contacts) {
+        synchronized (mWriteLock) {
+            Snapshot snapshot = new Snapshot(this, new ArrayList<>(contacts),
+                    mSnapshot.mVersion + 1);
+            mSnapshot = snapshot;
+            return snapshot;
+        }
+    }
+
+    /**
+     * 复制当前联系人列表, 修改后发布. 并发的修改依次进行, 不会丢失.
+     *
+     * @return 发布的快照
+     */
+    @NonNull
+    public Snapshot update(@NonNull Mutation mutation) {
+        synchronized (mWriteLock) {
+            Snapshot current = mSnapshot;
+            List<Contact> contacts = new ArrayList<>(current.mContacts);
+            mutation.apply(contacts);
+
+            Snapshot snapshot = new Snapshot(this, contacts, current.mVersion + 1);
+            mSnapshot = snapshot;
+            return snapshot;
+        }
+    }
+
+    /**
+     * 预热: 加载拼音数据, 并在当前快照上执行一组查询(不计入首次查询耗时), 使匹配相关的方法
+     * 在用户输入前完成编译. 耗时操作, 应在后台线程调用.
+     *
+     * @return 耗时(纳秒)
+     */
+    public long warmUp() {
+        final long start = System.nanoTime();
+        T9SearchSupport.preloadPinyin();
+
+        Snapshot snapshot = mSnapshot;
+        List<Contact> contacts = snapshot.mContacts;
+
+        // 以联系人 T9 键的前缀作为查询, 保证有命中, 覆盖完整的匹配及匹配信息计算路径
+        List<String> queries = new ArrayList<>();
+        Collections.addAll(queries, WARM_UP_QUERIES);
+        final int step = Math.max(1, contacts.size() / 8);
+        for (int i = 0; i < contacts.size(); i += step) {
+            String query = toDigits(contacts.get(i).t9Key);
+            if (query.length() > 0)
+                queries.add(query);
+        }
+
+        // 与 Snapshot#search 相同的执行路径(计划器), 但不计入首次查询耗时.
+        // 每个查询逐位输入, 覆盖细化及各种计划
+        final T9QueryPlanner planner = snapshot.planner();
+        final T9QueryPlanner.Session session = new T9QueryPlanner.Session();
+        final int matchesPerRound = Math.max(1, contacts.size() * queries.size());
+        final int rounds = Math.min(WARM_UP_MAX_ROUNDS,
+                Math.max(WARM_UP_ROUNDS, WARM_UP_MIN_MATCHES / matchesPerRound));
+        for (int r = 0; r < rounds; r++) {
+            for (String query : queries) {
+                session.reset();
+                for (int length = 1; length <= query.length(); length++) {
+                    planner.search(query.substring(0, length), T9MatchStrategy.RECURSIVE, 0,
+                            session);
+                }
+            }
+        }
+
+        mWarmedUp = true;
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * @return 是否已完成预热
+     */
+    public boolean isWarmedUp() {
+        return mWarmedUp;
+    }
+
+    /**
+     * @return 首次(非空)查询的耗时(纳秒), <code>-1</code> - 如果尚未查询
+     */
+    public long firstQueryLatencyNanos() {
+        return mFirstQueryNanos.get();
+    }
+
+    /**
+     * @return 首次查询时是否已完成预热
+     */
+    public boolean isFirstQueryWarm() {
+        return mFirstQueryWarm;
+    }
+
+    private void onQuery(long nanos) {
+        if (mFirstQueryNanos.compareAndSet(-1, nanos)) {
+            mFirstQueryWarm = mWarmedUp;
+        }
+    }
+
+    /**
+     * @return T9 键第一个候选的前几个单词首字母对应的数字
+     */
+    @NonNull
+    private static String toDigits(@Nullable String t9Key) {
+        StringBuilder sb = new StringBuilder();
+        if (t9Key != null) {
+            for (int i = 0; i < t9Key.length() && sb.length() < 3; i++) {
+                char c = t9Key.charAt(i);
+                if (c == T9Utils.T9_KEYS_DIVIDER)
+                    break;
+                if (T9Utils.isInitial(c))
+                    sb.append((char) (c - 'C' + '#'));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 不可变的索引快照
+     */
+    public static final class Snapshot {
+
+        private final T9ContactIndex mIndex;
+        private final List<Contact> mContacts;
+        @Nullable
+        private final T9NumberColumn mNumberColumn;
+        private final T9KeyDictionary mKeyDictionary;
+        private final long mVersion;
+
+        /**
+         * 首次查找来电号码时生成
+         */
+        private volatile T9CallerIdIndex mCallerIdIndex;
+
+        /**
+         * 首次查询时生成
+         */
+        private volatile T9QueryPlanner mPlanner;
+
+        Snapshot(@NonNull T9ContactIndex index, @NonNull List<Contact> contacts, long version) {
+            mIndex = index;
+            mContacts = Collections.unmodifiableList(contacts);
+            mNumberColumn = index.mNumberColumn
+                    ? T9SearchSupport.buildNumberColumn(contacts) : null;
+            mKeyDictionary = T9SearchSupport.buildKeyDictionary(contacts);
+            mVersion = version;
+        }
+
+        /**
+         * @return 全部联系人, 不可修改
+         */
+        @NonNull
+        public List<Contact> contacts() {
+            return mContacts;
+        }
+
+        /**
+         * @return 号码列存储, 行号与 {@link #contacts()} 的下标一致. <code>null</code> - 如果未生成
+         * @see T9ContactIndex#T9ContactIndex(boolean)
+         */
+        @Nullable
+        public T9NumberColumn numberColumn() {
+            return mNumberColumn;
+        }
+
+        /**
+         * @return T9键字典, 行号与 {@link #contacts()} 的下标一致. 相同的键只匹配一次
+         */
+        @NonNull
+        public T9KeyDictionary keyDictionary() {
+            return mKeyDictionary;
+        }
+
+        /**
+         * 查找来电号码所属的联系人. 首次调用时建立索引.
+         *
+         * @param number 来电号码, 可以含有非数字字符
+         * @return 联系人, <code>null</code> - 如果没有匹配
+         * @see T9CallerIdIndex#lookup(CharSequence)
+         */
+        @Nullable
+        public Contact lookupCallerId(@Nullable CharSequence number) {
+            T9CallerIdIndex index = mCallerIdIndex;
+            if (index == null) {
+                // 并发时可能重复建立, 结果相同
+                index = T9SearchSupport.buildCallerIdIndex(mContacts);
+                mCallerIdIndex = index;
+            }
+
+            final int row = index.lookup(number);
+            return row < 0 ? null : mContacts.get(row);
+        }
+
+        /**
+         * @return 查询计划器, 首次调用时生成索引统计
+         */
+        @NonNull
+        public T9QueryPlanner planner() {
+            T9QueryPlanner planner = mPlanner;
+            if (planner == null) {
+                // 并发时可能重复建立, 结果相同
+                planner = T9QueryPlanner.build(mContacts, mNumberColumn, mKeyDictionary);
+                mPlanner = planner;
+            }
+            return planner;
+        }
+
+        /**
+         * 查询计划说明, 不执行查询
+         *
+         * @param strategy  名称匹配策略
+         * @param maxErrors 最大编辑距离, [0, {@link T9FuzzyQuery#MAX_ERRORS}], <code>0</code> - 不进行模糊匹配
+         * @see T9QueryPlanner.Plan#explain()
+         */
+        @NonNull
+        public String explain(@Nullable String key, @NonNull T9MatchStrategy strategy,
+                              int maxErrors) {
+            return planner().plan(key, strategy, maxErrors).explain();
+        }
+
+        /**
+         * @return 版本号, 每次发布加一
+         */
+        public long version() {
+            return mVersion;
+        }
+
+        /**
+         * 过滤
+         *
+         * @see T9SearchSupport#filter(List, T9NumberColumn, String, T9MatchStrategy, int)
+         */
+        @NonNull
+        public List<Contact> search(@Nullable String key) {
+            return search(key, T9MatchStrategy.RECURSIVE, 0);
+        }
+
+        /**
+         * 过滤, 由 {@link #planner()} 选择执行方式, 结果与逐行匹配相同
+         *
+         * @param strategy  名称匹配策略
+         * @param maxErrors 最大编辑距离, [0, {@link T9FuzzyQuery#MAX_ERRORS}], <code>0</code> - 不进行模糊匹配
+         * @see T9SearchSupport#filter(List, T9NumberColumn, String, T9MatchStrategy, int)
+         * @see T9QueryPlanner
+         */
+        @NonNull
+        public List<Contact> search(@Nullable String key, @NonNull T9MatchStrategy strategy,
+                                    int maxErrors) {
+            return search(key, strategy, maxErrors, (T9QueryPlanner.Session) null);
+        }
+
+        /**
+         * 过滤, 同一会话中后一次查询以前一次为前缀时只匹配前一次的结果行
+         *
+         * @param session 调用方的会话, 见 {@link T9QueryPlanner.Session}; 可以为 null
+         * @see #search(String, T9MatchStrategy, int)
+         */
+        @NonNull
+        public List<Contact> search(@Nullable String key, @NonNull T9MatchStrategy strategy,
+                                    int maxErrors, @Nullable T9QueryPlanner.Session session) {
+            if (T9Utils.isEmpty(key))
+                return filter(key, strategy, maxErrors);
+
+            final long start = System.nanoTime();
+            List<Contact> result = planner().search(key, strategy, maxErrors, session);
+            mIndex.onQuery(System.nanoTime() - start);
+            return result;
+        }
+
+        /**
+         * 流式过滤, 按排名层级分批回调
+         *
+         * @param strategy  名称匹配策略
+         * @param maxErrors 最大编辑距离, [0, {@link T9FuzzyQuery#MAX_ERRORS}], <code>0</code> - 不进行模糊匹配
+         * @see T9SearchSupport#filter(List, T9NumberColumn, String, T9MatchStrategy, int,
+         * T9SearchSupport.ResultCallback)
+         */
+        public void search(@Nullable String key, @NonNull T9MatchStrategy strategy, int maxErrors,
+                           @NonNull T9SearchSupport.ResultCallback callback) {
+            final long start = System.nanoTime();
+            T9SearchSupport.filter(mContacts, mNumberColumn, mKeyDictionary, key, strategy,
+                    maxErrors, callback);
+            if (!T9Utils.isEmpty(key)) {
+                mIndex.onQuery(System.nanoTime() - start);
+            }
+        }
+
+        /**
+         * 批量过滤, 只遍历一次联系人
+         *
+         * @param keys      查询串
+         * @param strategy  名称匹配策略
+         * @param maxErrors 最大编辑距离, [0, {@link T9FuzzyQuery#MAX_ERRORS}], <code>0</code> - 不进行模糊匹配
+         * @return 各查询的结果, 顺序与 keys 相同
+         * @see T9SearchSupport#filterBatch(List, T9NumberColumn, List, T9MatchStrategy, int)
+         */
+        @NonNull
+        public List<List<Contact>> searchBatch(@NonNull List<String> keys,
+                                               @NonNull T9MatchStrategy strategy, int maxErrors) {
+            return T9SearchSupport.filterBatch(mContacts, mNumberColumn, mKeyDictionary, keys,
+                    strategy, maxErrors);
+        }
+
+        @NonNull
+        List<Contact> filter(@Nullable String key, @NonNull T9MatchStrategy strategy,
+                             int maxErrors) {
+            return T9SearchSupport.filter(mContacts, mNumberColumn, mKeyDictionary, key,
+                    strategy, maxErrors);
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{" +
+                   "mVersion=" + mVersion +
+                   ", size=" + mContacts.size() +
+                   '}';
+        }
+    }
+
+}
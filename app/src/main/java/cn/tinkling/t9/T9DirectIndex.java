@@ -0,0 +1,385 @@
+package cn.tinkling.t9;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+/**
+ * 堆外(direct ByteBuffer)索引, 用于数十万以上条目的大型通讯录.
+ * <p>
+ * 名称(UTF-8), T9键及号码(ASCII)连续存放在一个 direct ByteBuffer 中, 以 int 偏移定位,
+ * 每个条目在 Java 堆上不产生任何对象. {@link #search(String, int, int[])} 直接在该内存上
+ * 匹配, 只输出命中的行号; 只有需要显示的行才通过 {@link #getName(int)} 等方法取出字符串,
+ * 再用 {@link T9Query} 计算 {@link T9MatchInfo}. 名称匹配的结果与 {@link T9Query} 一致.
+ * <p>
+ * 布局(小端):
+ * <pre>
+ * header:        rowCount, valueCount, keyBytes, nameBytes, numberBytes
+ * keyOffsets:    int[rowCount + 1]
+ * nameOffsets:   int[rowCount + 1]
+ * rowValues:     int[rowCount + 1]  每行第一个号码的序号
+ * numberOffsets: int[valueCount + 1]
+ * keys, names, numbers: byte[]      号码之后各有一个 0 分隔符
+ * </pre>
+ * 使用完毕后应调用 {@link #close()}, 之后不能再调用其他方法. 读取是线程安全的.
+ * <p>
+ * 每个方法开始时取得一次缓冲区, 之后只访问这个局部引用: 与 {@link #close()} 并发时, 已开始的读取
+ * 照常完成, 之后开始的调用抛出 {@link IllegalStateException}.
+ */
+public final class T9DirectIndex implements Closeable {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int HEADER_SIZE = 5 * 4;
+
+    private volatile ByteBuffer mBuffer;
+
+    private final int mRowCount;
+    private final int mValueCount;
+
+    private final int mKeyOffsetsBase;
+    private final int mNameOffsetsBase;
+    private final int mRowValuesBase;
+    private final int mNumberOffsetsBase;
+    private final int mKeysBase;
+    private final int mNamesBase;
+    private final int mNumbersBase;
+
+    T9DirectIndex(@NonNull ByteBuffer buffer) {
+        mBuffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        mRowCount = buffer.getInt(0);
+        mValueCount = buffer.getInt(4);
+        final int keyBytes = buffer.getInt(8);
+        final int nameBytes = buffer.getInt(12);
+
+        mKeyOffsetsBase = HEADER_SIZE;
+        mNameOffsetsBase = mKeyOffsetsBase + (mRowCount + 1) * 4;
+        mRowValuesBase = mNameOffsetsBase + (mRowCount + 1) * 4;
+        mNumberOffsetsBase = mRowValuesBase + (mRowCount + 1) * 4;
+        mKeysBase = mNumberOffsetsBase + (mValueCount + 1) * 4;
+        mNamesBase = mKeysBase + keyBytes;
+        mNumbersBase = mNamesBase + nameBytes;
+    }
+
+    /**
+     * @return 行数
+     */
+    public int size() {
+        return mRowCount;
+    }
+
+    /**
+     * @return 占用的堆外内存字节数
+     */
+    public int sizeInBytes() {
+        return buffer().capacity();
+    }
+
+    /**
+     * 查找匹配的行, 名称按 T9 匹配, 号码按子串匹配. 与 {@link T9SearchSupport} 的过滤相同,
+     * 查询串为空时没有匹配.
+     *
+     * @param constraint the constraint.
+     * @param fromRow    开始查找的行
+     * @param rows       输出命中的行号(升序), 最多 rows.length 个
+     * @return 命中的行数. 小于 rows.length 时表示已查找到末尾, 否则可从最后一个行号 + 1 继续.
+     * @throws IllegalStateException 如果已关闭
+     */
+    public int search(@Nullable String constraint, int fromRow, @NonNull int[] rows) {
+        final ByteBuffer buffer = buffer();
+        if (T9Utils.isEmpty(constraint) || rows.length == 0)
+            return 0;
+
+        final BitParallelT9Matcher matcher = BitParallelT9Matcher.compile(constraint);
+        final byte[] needle = toAscii(constraint);
+        final ByteBufferCharSequence key = new ByteBufferCharSequence(buffer);
+
+        int count = 0;
+        for (int row = Math.max(fromRow, 0); row < mRowCount && count < rows.length; row++) {
+            key.reset(mKeysBase + getInt(buffer, mKeyOffsetsBase, row),
+                    mKeysBase + getInt(buffer, mKeyOffsetsBase, row + 1));
+            if (matcher.find(key) || (needle != null && matchesNumbers(buffer, row, needle))) {
+                rows[count++] = row;
+            }
+        }
+
+        return count;
+    }
+
+    private boolean matchesNumbers(ByteBuffer buffer, int row, byte[] needle) {
+        // 同一行的号码连续存放且以 0 分隔, 查询串不含 0, 可整段查找
+        final int start = mNumbersBase
+                + getInt(buffer, mNumberOffsetsBase, getInt(buffer, mRowValuesBase, row));
+        final int end = mNumbersBase
+                + getInt(buffer, mNumberOffsetsBase, getInt(buffer, mRowValuesBase, row + 1));
+        final int limit = end - needle.length;
+        final byte first = needle[0];
+        for (int i = start; i <= limit; i++) {
+            if (buffer.get(i) != first)
+                continue;
+
+            int j = 1;
+            while (j < needle.length && buffer.get(i + j) == needle[j]) {
+                j++;
+            }
+            if (j == needle.length)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return 名称, 未设置时为空串
+     */
+    @NonNull
+    public String getName(int row) {
+        final ByteBuffer buffer = buffer();
+        final int start = getInt(buffer, mNameOffsetsBase, row);
+        byte[] bytes = new byte[getInt(buffer, mNameOffsetsBase, row + 1) - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(mNamesBase + start + i);
+        }
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * @return T9键, 未设置时为空串
+     */
+    @NonNull
+    public String getT9Key(int row) {
+        final ByteBuffer buffer = buffer();
+        return new ByteBufferCharSequence(buffer)
+                .reset(mKeysBase + getInt(buffer, mKeyOffsetsBase, row),
+                        mKeysBase + getInt(buffer, mKeyOffsetsBase, row + 1))
+                .toString();
+    }
+
+    /**
+     * @return 全部号码
+     */
+    @NonNull
+    public String[] getPhoneNumbers(int row) {
+        final ByteBuffer buffer = buffer();
+        final int firstValue = getInt(buffer, mRowValuesBase, row);
+        String[] numbers = new String[getInt(buffer, mRowValuesBase, row + 1) - firstValue];
+        ByteBufferCharSequence number = new ByteBufferCharSequence(buffer);
+        for (int n = 0; n < numbers.length; n++) {
+            numbers[n] = number.reset(
+                    mNumbersBase + getInt(buffer, mNumberOffsetsBase, firstValue + n),
+                    mNumbersBase + getInt(buffer, mNumberOffsetsBase, firstValue + n + 1) - 1)
+                    .toString();
+        }
+        return numbers;
+    }
+
+    /**
+     * @return <code>true</code> - 如果已关闭
+     */
+    public boolean isClosed() {
+        return mBuffer == null;
+    }
+
+    /**
+     * 释放对堆外内存的引用. 可重复调用.
+     * <p>
+     * Android 没有公开的接口立即释放 direct ByteBuffer, 内存在缓冲区对象被回收时归还;
+     * 正在其他线程上执行的读取仍持有缓冲区, 结束后才可回收. 映射的文件同样在回收时解除映射.
+     */
+    @Override
+    public void close() {
+        mBuffer = null;
+    }
+
+    /**
+     * @return 索引数据, 与索引共享内容
+     * @throws IllegalStateException 如果已关闭
+     */
+    @NonNull
+    ByteBuffer buffer() {
+        final ByteBuffer buffer = mBuffer;
+        if (buffer == null) {
+            throw new IllegalStateException("The index has been closed");
+        }
+        return buffer;
+    }
+
+    private static int getInt(ByteBuffer buffer, int base, int index) {
+        return buffer.getInt(base + (index << 2));
+    }
+
+    /**
+     * @return ASCII 字节, <code>null</code> - 如果含有不能出现在号码中的字符
+     */
+    @Nullable
+    private static byte[] toAscii(String s) {
+        byte[] bytes = new byte[s.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            char c = s.charAt(i);
+            if (c == 0 || c >= 128)
+                return null;
+            bytes[i] = (byte) c;
+        }
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "T9DirectIndex{" +
+               "mRowCount=" + mRowCount +
+               ", mValueCount=" + mValueCount +
+               ", mClosed=" + isClosed() +
+               '}';
+    }
+
+    /**
+     * 逐条添加条目, 数据直接写入可增长的 direct ByteBuffer, 不在堆上保留条目.
+     */
+    public static final class Builder {
+
+        private static final int INITIAL_CAPACITY = 4096;
+
+        private ByteBuffer mKeyOffsets = allocate(INITIAL_CAPACITY);
+        private ByteBuffer mNameOffsets = allocate(INITIAL_CAPACITY);
+        private ByteBuffer mRowValues = allocate(INITIAL_CAPACITY);
+        private ByteBuffer mNumberOffsets = allocate(INITIAL_CAPACITY);
+        private ByteBuffer mKeys = allocate(INITIAL_CAPACITY);
+        private ByteBuffer mNames = allocate(INITIAL_CAPACITY);
+        private ByteBuffer mNumbers = allocate(INITIAL_CAPACITY);
+
+        private int mRowCount;
+        private int mValueCount;
+
+        public Builder() {
+            mKeyOffsets.putInt(0);
+            mNameOffsets.putInt(0);
+            mRowValues.putInt(0);
+            mNumberOffsets.putInt(0);
+        }
+
+        /**
+         * 添加一行
+         *
+         * @param name         名称
+         * @param t9Key        名称的T9键, 见 {@link T9Utils#buildT9Key(String, PinyinProvider)}
+         * @param phoneNumbers 号码, 应已规范化
+         * @return this
+         * @throws IllegalStateException 如果已调用 {@link #build()}
+         */
+        @NonNull
+        public Builder add(@Nullable String name, @Nullable String t9Key,
+                           @Nullable String[] phoneNumbers) {
+            checkNotBuilt();
+
+            mKeys = putAscii(mKeys, t9Key, (byte) ' ');
+            mKeyOffsets = putInt(mKeyOffsets, mKeys.position());
+
+            if (name != null) {
+                byte[] bytes = name.getBytes(UTF_8);
+                mNames = ensureCapacity(mNames, bytes.length);
+                mNames.put(bytes);
+            }
+            mNameOffsets = putInt(mNameOffsets, mNames.position());
+
+            if (phoneNumbers != null) {
+                for (String number : phoneNumbers) {
+                    // 非 ASCII 字符存为 0, 不会被匹配
+                    mNumbers = putAscii(mNumbers, number, (byte) 0);
+                    mNumbers = ensureCapacity(mNumbers, 1);
+                    mNumbers.put((byte) 0);
+                    mNumberOffsets = putInt(mNumberOffsets, mNumbers.position());
+                    mValueCount++;
+                }
+            }
+            mRowValues = putInt(mRowValues, mValueCount);
+
+            mRowCount++;
+            return this;
+        }
+
+        /**
+         * 生成索引, 之后不能再添加
+         *
+         * @return 索引
+         * @throws IllegalStateException 如果已调用过
+         */
+        @NonNull
+        public T9DirectIndex build() {
+            checkNotBuilt();
+
+            ByteBuffer[] sections = {
+                    mKeyOffsets, mNameOffsets, mRowValues, mNumberOffsets, mKeys, mNames, mNumbers
+            };
+            int size = HEADER_SIZE;
+            for (ByteBuffer section : sections) {
+                size += section.position();
+            }
+
+            ByteBuffer buffer = allocate(size);
+            buffer.putInt(mRowCount)
+                    .putInt(mValueCount)
+                    .putInt(mKeys.position())
+                    .putInt(mNames.position())
+                    .putInt(mNumbers.position());
+            for (ByteBuffer section : sections) {
+                section.flip();
+                buffer.put(section);
+            }
+
+            mKeyOffsets = mNameOffsets = mRowValues = mNumberOffsets = null;
+            mKeys = mNames = mNumbers = null;
+            return new T9DirectIndex(buffer);
+        }
+
+        private void checkNotBuilt() {
+            if (mKeys == null) {
+                throw new IllegalStateException("build() has been called");
+            }
+        }
+
+        @NonNull
+        private static ByteBuffer allocate(int capacity) {
+            return ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        @NonNull
+        private static ByteBuffer ensureCapacity(ByteBuffer buffer, int bytes) {
+            if (buffer.remaining() >= bytes)
+                return buffer;
+
+            int capacity = buffer.capacity();
+            while (capacity - buffer.position() < bytes) {
+                capacity *= 2;
+            }
+
+            ByteBuffer grown = allocate(capacity);
+            buffer.flip();
+            grown.put(buffer);
+            return grown;
+        }
+
+        @NonNull
+        private static ByteBuffer putInt(ByteBuffer buffer, int value) {
+            buffer = ensureCapacity(buffer, 4);
+            buffer.putInt(value);
+            return buffer;
+        }
+
+        @NonNull
+        private static ByteBuffer putAscii(ByteBuffer buffer, @Nullable String s, byte other) {
+            if (s == null)
+                return buffer;
+
+            buffer = ensureCapacity(buffer, s.length());
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                buffer.put(c < 128 ? (byte) c : other);
+            }
+            return buffer;
+        }
+    }
+
+}
@@ -0,0 +1,328 @@
+package cn.tinkling.t9;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * 容错(模糊) T9 查询, 允许最多 k 个数字的替换, 插入或删除.
+ * <p>
+ * 使用 Wu-Manber 位并行近似匹配, 每个错误数一个状态字, 对每个 key 单遍扫描且不分配对象.
+ * 名称按两种投影分别匹配: 全拼数字串(只能从单词首字母开始)和首字母串, 不支持首字母与全拼
+ * 混合输入的容错. 仅在命中时回溯计算匹配的起始位置.
+ * <p>
+ * 模糊匹配通常在精确匹配({@link T9Query})失败之后调用, 结果的 {@link T9MatchInfo#errors()}
+ * 为编辑距离, 排序时应排在精确匹配之后.
+ */
+public final class T9FuzzyQuery {
+
+    /**
+     * 支持的最大编辑距离
+     */
+    public static final int MAX_ERRORS = 3;
+
+    private static final int MAX_CONSTRAINT_LENGTH = Long.SIZE - 1;
+    private static final int MASK_TABLE_SIZE = 128;
+
+    /**
+     * 0 个错误的近似匹配必然也是精确匹配, 因此找到 1 个错误的匹配即可停止扫描
+     */
+    private static final int MIN_ERRORS = 1;
+
+    private static final int MODE_NUMBER = 0;
+    private static final int MODE_FULL = 1;
+    private static final int MODE_INITIALS = 2;
+
+    private final String mConstraint;
+    private final int mLength;
+    private final int mMaxErrors;
+    private final boolean mEnabled;
+
+    private final long[] mMasks;
+    private final long mAcceptBit;
+
+    private T9FuzzyQuery(@NonNull String t9Constraint, int maxErrors) {
+        mConstraint = t9Constraint;
+        mLength = t9Constraint.length();
+        mMaxErrors = maxErrors;
+
+        // 查询串过短时任意 key 都能在 k 个错误内匹配, 没有意义
+        boolean enabled = mLength > 2 * maxErrors && mLength <= MAX_CONSTRAINT_LENGTH;
+        for (int i = 0; i < mLength && enabled; i++) {
+            enabled = T9Utils.isValidT9Key(t9Constraint.charAt(i));
+        }
+        mEnabled = enabled;
+
+        // 状态字的第 0 位表示已开始匹配但尚未匹配查询串的任何字符, 第 i + 1 位对应第 i 个字符
+        mMasks = new long[MASK_TABLE_SIZE];
+        if (enabled) {
+            for (int i = 0; i < mLength; i++) {
+                mMasks[t9Constraint.charAt(i)] |= 1L << (i + 1);
+            }
+        }
+        mAcceptBit = 1L << mLength;
+    }
+
+    /**
+     * 编译查询
+     *
+     * @param t9Constraint the constraint.
+     * @param maxErrors    最大编辑距离, [1, {@link #MAX_ERRORS}]
+     * @return 编译后的查询
+     * @throws IllegalArgumentException 如果 maxErrors 超出范围
+     */
+    @NonNull
+    public static T9FuzzyQuery compile(@Nullable String t9Constraint, int maxErrors) {
+        if (maxErrors < 1 || maxErrors > MAX_ERRORS) {
+            throw new IllegalArgumentException(
+                    "maxErrors must be in [1, " + MAX_ERRORS + "]: " + maxErrors);
+        }
+
+        return new T9FuzzyQuery(t9Constraint == null ? "" : t9Constraint, maxErrors);
+    }
+
+    /**
+     * @return 查询串
+     */
+    @NonNull
+    public String constraint() {
+        return mConstraint;
+    }
+
+    /**
+     * @return 最大编辑距离
+     */
+    public int maxErrors() {
+        return mMaxErrors;
+    }
+
+    /**
+     * T9 模糊匹配
+     *
+     * @param t9Key t9 key.
+     * @return the match info.
+     * @see T9MatchInfo
+     */
+    @NonNull
+    public T9MatchInfo matches(@Nullable String t9Key) {
+        if (!mEnabled || T9Utils.isEmpty(t9Key))
+            return T9MatchInfo.NO_MATCH;
+
+        final int length = t9Key.length();
+        long best = -1L;
+        int bestBegin = 0;
+        int bestMode = MODE_FULL;
+        int start = 0;
+        int end;
+        do {
+            end = t9Key.indexOf(T9Utils.T9_KEYS_DIVIDER, start);
+            if (end < 0)
+                end = length;
+
+            for (int mode = MODE_FULL; mode <= MODE_INITIALS; mode++) {
+                long hit = scan(t9Key, start, end, mode);
+                if (hit >= 0 && (best < 0 || getErrors(hit) < getErrors(best))) {
+                    best = hit;
+                    bestBegin = start;
+                    bestMode = mode;
+                    if (getErrors(best) <= MIN_ERRORS)
+                        break;
+                }
+            }
+
+            start = end + 1;
+        } while (end < length && (best < 0 || getErrors(best) > MIN_ERRORS));
+
+        if (best < 0)
+            return T9MatchInfo.NO_MATCH;
+
+        final int matchEnd = getEnd(best);
+        final int matchStart = findStart(t9Key, bestBegin, matchEnd, bestMode, getErrors(best));
+        final int startWord = getWordIndex(t9Key, bestBegin, matchStart);
+
+        T9MatchInfo matchInfo = new T9MatchInfo();
+        matchInfo.set(startWord, getWordIndex(t9Key, bestBegin, matchEnd) - startWord + 1);
+        matchInfo.setErrors(Math.max(MIN_ERRORS, getErrors(best)));
+        return matchInfo;
+    }
+
+    /**
+     * 电话号码模糊匹配
+     *
+     * @param phoneNumber 电话号码
+     * @return the match info.
+     * @see T9MatchInfo
+     */
+    @NonNull
+    public T9MatchInfo matchesNumber(@Nullable String phoneNumber) {
+        if (!mEnabled || T9Utils.isEmpty(phoneNumber))
+            return T9MatchInfo.NO_MATCH;
+
+        long hit = scan(phoneNumber, 0, phoneNumber.length(), MODE_NUMBER);
+        if (hit < 0)
+            return T9MatchInfo.NO_MATCH;
+
+        final int matchEnd = getEnd(hit);
+        final int matchStart = findStart(phoneNumber, 0, matchEnd, MODE_NUMBER, getErrors(hit));
+
+        T9MatchInfo matchInfo = new T9MatchInfo();
+        matchInfo.set(matchStart, matchEnd - matchStart + 1);
+        matchInfo.setErrors(Math.max(MIN_ERRORS, getErrors(hit)));
+        return matchInfo;
+    }
+
+    private static int getErrors(long hit) {
+        return (int) (hit >>> 32);
+    }
+
+    private static int getEnd(long hit) {
+        return (int) hit;
+    }
+
+    /**
+     * 投影后的字符, 首字母还原为数字. <code>0</code> - 如果该字符不参与匹配.
+     */
+    private static char project(char c, int mode) {
+        if (mode == MODE_NUMBER)
+            return c;
+
+        if (T9Utils.isInitial(c))
+            return (char) (c - 'C' + '#');
+
+        return (mode == MODE_FULL && c != ' ') ? c : 0;
+    }
+
+    private long getMask(char c) {
+        return c < MASK_TABLE_SIZE ? mMasks[c] : 0L;
+    }
+
+    /**
+     * 近似匹配扫描 [start, end)
+     *
+     * @return (错误数 << 32) | 结束位置, <code>-1</code> - 如果未匹配.
+     */
+    private long scan(String text, int start, int end, int mode) {
+        final int k = mMaxErrors;
+        long r0 = 0L, r1 = 0L, r2 = 0L, r3 = 0L;
+        long best = -1L;
+        int bestErrors = k + 1;
+
+        for (int i = start; i < end; i++) {
+            final char c = text.charAt(i);
+            final char t = project(c, mode);
+            if (t == 0)
+                continue;
+
+            // 只有单词首字母处才能开始全拼匹配, 开始时可删除查询串开头的至多 j 个字符
+            if (mode != MODE_FULL || T9Utils.isInitial(c)) {
+                r0 |= 1L;
+                r1 |= 3L;
+                r2 |= 7L;
+                r3 |= 15L;
+            }
+            final long mask = getMask(t);
+
+            // 匹配 | 插入 | 替换 | 删除
+            long n0 = (r0 << 1) & mask;
+            long n1 = ((r1 << 1) & mask) | r0 | (r0 << 1) | (n0 << 1);
+            long n2 = 0L, n3 = 0L;
+            if (k >= 2) {
+                n2 = ((r2 << 1) & mask) | r1 | (r1 << 1) | (n1 << 1);
+                if (k >= 3) {
+                    n3 = ((r3 << 1) & mask) | r2 | (r2 << 1) | (n2 << 1);
+                }
+            }
+            r0 = n0;
+            r1 = n1;
+            r2 = n2;
+            r3 = n3;
+
+            int errors;
+            if ((r0 & mAcceptBit) != 0L) {
+                errors = 0;
+            } else if ((r1 & mAcceptBit) != 0L) {
+                errors = 1;
+            } else if ((r2 & mAcceptBit) != 0L) {
+                errors = 2;
+            } else if ((r3 & mAcceptBit) != 0L) {
+                errors = 3;
+            } else {
+                continue;
+            }
+
+            if (errors < bestErrors) {
+                bestErrors = errors;
+                best = ((long) errors << 32) | i;
+                if (errors <= MIN_ERRORS)
+                    break;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * 自匹配结束位置向前计算编辑距离, 求最近的可用起始位置.
+     */
+    private int findStart(String text, int begin, int matchEnd, int mode, int errors) {
+        final int m = mLength;
+        int[] distance = new int[m + 1];
+        int[] next = new int[m + 1];
+        for (int i = 0; i <= m; i++) {
+            distance[i] = m - i;
+        }
+
+        int matchStart = matchEnd;
+        int bestCost = Integer.MAX_VALUE;
+        int textLength = 0;
+        for (int l = matchEnd; l >= begin && textLength <= m + errors; l--) {
+            final char c = text.charAt(l);
+            final char t = project(c, mode);
+            if (t == 0)
+                continue;
+
+            textLength++;
+            next[m] = textLength;
+            for (int i = m - 1; i >= 0; i--) {
+                int cost = distance[i + 1] + (mConstraint.charAt(i) == t ? 0 : 1);
+                cost = Math.min(cost, distance[i] + 1);
+                cost = Math.min(cost, next[i + 1] + 1);
+                next[i] = cost;
+            }
+
+            int[] temp = distance;
+            distance = next;
+            next = temp;
+
+            boolean startable = mode != MODE_FULL || T9Utils.isInitial(c);
+            if (startable && distance[0] < bestCost) {
+                bestCost = distance[0];
+                matchStart = l;
+            }
+        }
+
+        return matchStart;
+    }
+
+    /**
+     * @return 指定位置所在的单词序号, 与 {@link T9Matcher} 中的计数方式一致
+     */
+    private static int getWordIndex(String t9Key, int begin, int index) {
+        int count = -1;
+        for (int i = begin; i <= index; i++) {
+            char c = t9Key.charAt(i);
+            if (i == begin || c == ' ' || T9Utils.isInitial(c)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "T9FuzzyQuery{" +
+               "mConstraint='" + mConstraint + '\'' +
+               ", mMaxErrors=" + mMaxErrors +
+               '}';
+    }
+
+}
@@ -0,0 +1,237 @@
+package cn.tinkling.t9;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * T9键缓存.
+ * <p>
+ * 分三层: 拼音音节 -> T9键(音节数量有限, 为固定大小的表), 汉字 -> 各读音的T9键(LRU),
+ * 完整名称 -> T9键(LRU). 常见的姓氏, 名字用字及重名只需查表. 线程安全.
+ * <p>
+ * 不依赖 Android 框架的类, 可在 JVM 上直接使用.
+ */
+public final class T9KeyCache {
+
+    /**
+     * 无声调拼音音节约 410 个, 留出余量
+     */
+    private static final int MAX_SYLLABLES = 1024;
+
+    /**
+     * 用于在缓存中表示 "没有读音"
+     */
+    private static final String[] NO_PINYIN = new String[0];
+
+    private final PinyinProvider mProvider;
+    private final KeypadLayout mLayout;
+
+    private final Object mSyllableLock = new Object();
+    private final Map<String, String> mSyllables = new HashMap<>();
+    private int mSyllableHitCount;
+    private int mSyllableMissCount;
+
+    private final Lru<Character, String[]> mChars;
+    private final Lru<String, String> mNames;
+
+    /**
+     * @param provider 拼音提供者
+     * @param maxChars 缓存的汉字个数
+     * @param maxNames 缓存的名称个数
+     */
+    public T9KeyCache(@NonNull PinyinProvider provider, int maxChars, int maxNames) {
+        this(provider, KeypadLayout.LATIN, maxChars, maxNames);
+    }
+
+    /**
+     * @param provider 拼音提供者
+     * @param layout   键盘布局
+     * @param maxChars 缓存的汉字个数
+     * @param maxNames 缓存的名称个数
+     * @throws IllegalArgumentException 如果 maxChars 或 maxNames 不大于 0
+     */
+    public T9KeyCache(@NonNull PinyinProvider provider, @NonNull KeypadLayout layout,
+                      int maxChars, int maxNames) {
+        mProvider = provider;
+        mLayout = layout;
+        mChars = new Lru<>(maxChars);
+        mNames = new Lru<>(maxNames);
+    }
+
+    /**
+     * 生成T9键, 与 {@link T9Utils#buildT9Key(String, PinyinProvider, KeypadLayout)} 的结果相同
+     *
+     * @param src 输入
+     * @return T9键
+     */
+    @NonNull
+    public String buildT9Key(@NonNull String src) {
+        String t9Key = mNames.get(src);
+        if (t9Key == null) {
+            t9Key = T9Utils.buildT9Key(src, mProvider, mLayout, this);
+            mNames.put(src, t9Key);
+        }
+        return t9Key;
+    }
+
+    @Nullable
+    String[] getCharT9Keys(char c) {
+        String[] t9Keys = mChars.get(c);
+        if (t9Keys == null) {
+            String[] pinyin = mProvider.getPinyin(c);
+            if (pinyin == null || pinyin.length == 0) {
+                t9Keys = NO_PINYIN;
+            } else {
+                t9Keys = new String[pinyin.length];
+                for (int i = 0; i < pinyin.length; i++) {
+                    t9Keys[i] = getSyllableT9Key(pinyin[i]);
+                }
+            }
+            mChars.put(c, t9Keys);
+        }
+        return t9Keys == NO_PINYIN ? null : t9Keys;
+    }
+
+    @NonNull
+    private String getSyllableT9Key(String py) {
+        if (py == null)
+            return T9Utils.convertPinyinToT9Key(null);
+
+        synchronized (mSyllableLock) {
+            String t9Key = mSyllables.get(py);
+            if (t9Key != null) {
+                mSyllableHitCount++;
+                return t9Key;
+            }
+            mSyllableMissCount++;
+        }
+
+        String t9Key = T9Utils.convertPinyinToT9Key(py);
+        synchronized (mSyllableLock) {
+            if (mSyllables.size() < MAX_SYLLABLES) {
+                mSyllables.put(py, t9Key);
+            }
+        }
+        return t9Key;
+    }
+
+    /**
+     * 清空缓存及统计
+     */
+    public void clear() {
+        mNames.evictAll();
+        mChars.evictAll();
+        synchronized (mSyllableLock) {
+            mSyllables.clear();
+            mSyllableHitCount = 0;
+            mSyllableMissCount = 0;
+        }
+    }
+
+    /**
+     * @return 名称缓存命中率
+     */
+    public float nameHitRate() {
+        return hitRate(mNames.hitCount(), mNames.missCount());
+    }
+
+    /**
+     * @return 汉字缓存命中率
+     */
+    public float charHitRate() {
+        return hitRate(mChars.hitCount(), mChars.missCount());
+    }
+
+    /**
+     * @return 音节表命中率
+     */
+    public float syllableHitRate() {
+        synchronized (mSyllableLock) {
+            return hitRate(mSyllableHitCount, mSyllableMissCount);
+        }
+    }
+
+    private static float hitRate(int hitCount, int missCount) {
+        int total = hitCount + missCount;
+        return total == 0 ? 0f : (float) hitCount / total;
+    }
+
+    @Override
+    public String toString() {
+        int syllables;
+        synchronized (mSyllableLock) {
+            syllables = mSyllables.size();
+        }
+        return String.format(Locale.US,
+                "T9KeyCache[names=%d/%d,hitRate=%.2f; chars=%d/%d,hitRate=%.2f; syllables=%d,hitRate=%.2f]",
+                mNames.size(), mNames.maxSize(), nameHitRate(),
+                mChars.size(), mChars.maxSize(), charHitRate(),
+                syllables, syllableHitRate());
+    }
+
+    /**
+     * 按访问顺序淘汰的缓存, 同 android.util.LruCache 的用法, 记录命中次数
+     */
+    private static final class Lru<K, V> {
+
+        private final int mMaxSize;
+        private final LinkedHashMap<K, V> mMap;
+        private int mHitCount;
+        private int mMissCount;
+
+        Lru(int maxSize) {
+            if (maxSize <= 0)
+                throw new IllegalArgumentException("maxSize <= 0");
+
+            mMaxSize = maxSize;
+            mMap = new LinkedHashMap<K, V>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                    return size() > mMaxSize;
+                }
+            };
+        }
+
+        @Nullable
+        synchronized V get(@NonNull K key) {
+            V value = mMap.get(key);
+            if (value != null) {
+                mHitCount++;
+            } else {
+                mMissCount++;
+            }
+            return value;
+        }
+
+        synchronized void put(@NonNull K key, @NonNull V value) {
+            mMap.put(key, value);
+        }
+
+        synchronized void evictAll() {
+            mMap.clear();
+        }
+
+        synchronized int size() {
+            return mMap.size();
+        }
+
+        int maxSize() {
+            return mMaxSize;
+        }
+
+        synchronized int hitCount() {
+            return mHitCount;
+        }
+
+        synchronized int missCount() {
+            return mMissCount;
+        }
+
+    }
+
+}
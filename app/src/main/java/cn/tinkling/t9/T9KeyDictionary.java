@@ -0,0 +1,319 @@
+package cn.tinkling.t9;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * T9 键字典: 把相同的 T9 键及相同的候选项(以 ';' 分隔)映射为共享的 id.
+ * <p>
+ * 常见的两字名称, 同名不同号码的联系人会产生完全相同的 T9 键; 多音字展开的候选项也在不同的键之间
+ * 大量重复(如 "长江" 与 "常江" 的键不同, 但有相同的候选项). 每个不同的键及候选项只保存一个实例,
+ * 查询时每个不同的键(候选项)只匹配一次, 结果由共享该键的全部行复用.
+ * <p>
+ * 行号与建立时的列表下标一致. 实例不可变, 可在多个线程间共享.
+ */
+public final class T9KeyDictionary {
+
+    /**
+     * 行的键为 null
+     */
+    public static final int NO_KEY = -1;
+
+    /**
+     * 每行的键 id
+     */
+    private final int[] mRowKeys;
+
+    /**
+     * 不同的键
+     */
+    private final String[] mKeys;
+
+    /**
+     * 键 k 的候选项 id 为 mKeyAlternatives[mKeyAlternativeStarts[k] .. mKeyAlternativeStarts[k + 1])
+     */
+    private final int[] mKeyAlternativeStarts;
+    private final int[] mKeyAlternatives;
+
+    /**
+     * 不同的候选项, 以第一次出现的位置表示: 键 id 及候选项在该键中的 [begin, end), 不复制字符
+     */
+    private final int[] mAlternativeKeys;
+    private final int[] mAlternativeBegins;
+    private final int[] mAlternativeEnds;
+
+    private T9KeyDictionary(int[] rowKeys, String[] keys, int[] keyAlternativeStarts,
+                            int[] keyAlternatives, int[] alternativeKeys, int[] alternativeBegins,
+                            int[] alternativeEnds) {
+        mRowKeys = rowKeys;
+        mKeys = keys;
+        mKeyAlternativeStarts = keyAlternativeStarts;
+        mKeyAlternatives = keyAlternatives;
+        mAlternativeKeys = alternativeKeys;
+        mAlternativeBegins = alternativeBegins;
+        mAlternativeEnds = alternativeEnds;
+    }
+
+    /**
+     * 建立字典
+     *
+     * @param rows 每行的 T9 键, 行号即列表中的下标. 可以为 null.
+     * @return 字典
+     */
+    @NonNull
+    public static T9KeyDictionary build(@NonNull List<String> rows) {
+        Builder builder = new Builder(rows.size());
+        for (int row = 0; row < rows.size(); row++) {
+            builder.add(rows.get(row));
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return 行数
+     */
+    public int rowCount() {
+        return mRowKeys.length;
+    }
+
+    /**
+     * @return 不同的键的个数
+     */
+    public int keyCount() {
+        return mKeys.length;
+    }
+
+    /**
+     * @return 不同的候选项的个数
+     */
+    public int alternativeCount() {
+        return mAlternativeKeys.length;
+    }
+
+    /**
+     * @return 该行的键 id, {@link #NO_KEY} - 如果该行的键为 null
+     */
+    public int keyId(int row) {
+        return mRowKeys[row];
+    }
+
+    /**
+     * @return 该 id 的键, 字典中的唯一实例
+     */
+    @NonNull
+    public String key(int keyId) {
+        return mKeys[keyId];
+    }
+
+    /**
+     * @return 该行的键, 字典中的唯一实例. <code>null</code> - 如果该行的键为 null
+     */
+    @Nullable
+    public String rowKey(int row) {
+        final int keyId = mRowKeys[row];
+        return keyId == NO_KEY ? null : mKeys[keyId];
+    }
+
+    /**
+     * @return 该 id 的候选项(新建的字符串)
+     */
+    @NonNull
+    public String alternative(int alternativeId) {
+        return alternativeKey(alternativeId).substring(mAlternativeBegins[alternativeId],
+                mAlternativeEnds[alternativeId]);
+    }
+
+    /**
+     * @return 键的第一个候选项在 {@link #alternativeId(int)} 中的位置
+     */
+    int alternativesStart(int keyId) {
+        return mKeyAlternativeStarts[keyId];
+    }
+
+    /**
+     * @return 键的最后一个候选项之后的位置
+     */
+    int alternativesEnd(int keyId) {
+        return mKeyAlternativeStarts[keyId + 1];
+    }
+
+    /**
+     * @return 第 index 个(按键的顺序排列)候选项的 id
+     */
+    int alternativeId(int index) {
+        return mKeyAlternatives[index];
+    }
+
+    /**
+     * @return 候选项第一次出现的键
+     */
+    @NonNull
+    String alternativeKey(int alternativeId) {
+        return mKeys[mAlternativeKeys[alternativeId]];
+    }
+
+    /**
+     * @return 候选项在 {@link #alternativeKey(int)} 中的起始位置
+     */
+    int alternativeBegin(int alternativeId) {
+        return mAlternativeBegins[alternativeId];
+    }
+
+    /**
+     * @return 候选项在 {@link #alternativeKey(int)} 中的结束位置
+     */
+    int alternativeEnd(int alternativeId) {
+        return mAlternativeEnds[alternativeId];
+    }
+
+    @Override
+    public String toString() {
+        return "T9KeyDictionary{" +
+               "rows=" + mRowKeys.length +
+               ", keys=" + mKeys.length +
+               ", alternatives=" + mAlternativeKeys.length +
+               '}';
+    }
+
+    /**
+     * 候选项在键中的位置, 按内容比较
+     */
+    private static final class Region {
+
+        final String mKey;
+        final int mBegin;
+        final int mEnd;
+        final int mHash;
+
+        Region(String key, int begin, int end) {
+            mKey = key;
+            mBegin = begin;
+            mEnd = end;
+            int hash = 0;
+            for (int i = begin; i < end; i++) {
+                hash = 31 * hash + key.charAt(i);
+            }
+            mHash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Region))
+                return false;
+
+            Region region = (Region) o;
+            final int length = mEnd - mBegin;
+            return mHash == region.mHash && length == region.mEnd - region.mBegin
+                   && mKey.regionMatches(mBegin, region.mKey, region.mBegin, length);
+        }
+    }
+
+    private static final class Builder {
+
+        private final int[] mRowKeys;
+        private int mRowCount;
+
+        private final HashMap<String, Integer> mKeyIds = new HashMap<>();
+        private final HashMap<Region, Integer> mAlternativeIds = new HashMap<>();
+
+        private String[] mKeys = new String[16];
+        private int[] mKeyAlternativeStarts = new int[17];
+        private int mKeyCount;
+
+        private int[] mKeyAlternatives = new int[16];
+        private int mIdCount;
+
+        private int[] mAlternativeKeys = new int[16];
+        private int[] mAlternativeBegins = new int[16];
+        private int[] mAlternativeEnds = new int[16];
+        private int mAlternativeCount;
+
+        Builder(int rowCount) {
+            mRowKeys = new int[rowCount];
+        }
+
+        void add(String key) {
+            if (key == null) {
+                mRowKeys[mRowCount++] = NO_KEY;
+                return;
+            }
+
+            Integer id = mKeyIds.get(key);
+            if (id != null) {
+                mRowKeys[mRowCount++] = id;
+                return;
+            }
+
+            final int keyId = mKeyCount++;
+            if (keyId == mKeys.length) {
+                mKeys = Arrays.copyOf(mKeys, keyId * 2);
+                mKeyAlternativeStarts = Arrays.copyOf(mKeyAlternativeStarts, keyId * 2 + 1);
+            }
+            mKeys[keyId] = key;
+            mKeyIds.put(key, keyId);
+            mRowKeys[mRowCount++] = keyId;
+
+            final int length = key.length();
+            int start = 0;
+            int end;
+            do {
+                end = key.indexOf(T9Utils.T9_KEYS_DIVIDER, start);
+                if (end < 0)
+                    end = length;
+
+                // 空的候选项不会匹配, 不保存
+                if (start < end) {
+                    addAlternative(keyId, key, start, end);
+                }
+
+                start = end + 1;
+            } while (end < length);
+
+            mKeyAlternativeStarts[keyId + 1] = mIdCount;
+        }
+
+        private void addAlternative(int keyId, String key, int begin, int end) {
+            Region region = new Region(key, begin, end);
+            Integer alternativeId = mAlternativeIds.get(region);
+            if (alternativeId == null) {
+                final int count = mAlternativeCount++;
+                if (count == mAlternativeKeys.length) {
+                    mAlternativeKeys = Arrays.copyOf(mAlternativeKeys, count * 2);
+                    mAlternativeBegins = Arrays.copyOf(mAlternativeBegins, count * 2);
+                    mAlternativeEnds = Arrays.copyOf(mAlternativeEnds, count * 2);
+                }
+                mAlternativeKeys[count] = keyId;
+                mAlternativeBegins[count] = begin;
+                mAlternativeEnds[count] = end;
+                alternativeId = count;
+                mAlternativeIds.put(region, alternativeId);
+            }
+
+            if (mIdCount == mKeyAlternatives.length) {
+                mKeyAlternatives = Arrays.copyOf(mKeyAlternatives, mIdCount * 2);
+            }
+            mKeyAlternatives[mIdCount++] = alternativeId;
+        }
+
+        T9KeyDictionary build() {
+            return new T9KeyDictionary(mRowKeys, Arrays.copyOf(mKeys, mKeyCount),
+                    Arrays.copyOf(mKeyAlternativeStarts, mKeyCount + 1),
+                    Arrays.copyOf(mKeyAlternatives, mIdCount),
+                    Arrays.copyOf(mAlternativeKeys, mAlternativeCount),
+                    Arrays.copyOf(mAlternativeBegins, mAlternativeCount),
+                    Arrays.copyOf(mAlternativeEnds, mAlternativeCount));
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+package cn.tinkling.t9;
+
+import androidx.annotation.Nullable;
+
+/**
+ * T9键的签名: 用一个 long 概括键中出现的首字母, 出现的字符及最长候选项的长度,
+ * 供 {@link T9Query#mayMatch(long)} 在完整匹配之前以位运算排除不可能匹配的键.
+ * <p>
+ * 首字母 'C' + k 与字符 '#' + k 对应同一个按键(见 {@link T9Utils#convertDigitToInitial(char)}),
+ * 以同一位 k 表示. 布局:
+ * <pre>
+ * bits  0-22  出现的首字母
+ * bits 23-45  出现的首字母或字符(任意一种出现即置位)
+ * bits 46-61  最长候选项的长度, 超过 65535 时取 65535
+ * bit  63     有效标志, 为 0 时表示未计算({@link #UNKNOWN})
+ * </pre>
+ */
+public final class T9KeySignature {
+
+    /**
+     * 未计算的签名, 不排除任何键
+     */
+    public static final long UNKNOWN = 0;
+
+    static final int KEY_COUNT = 'Y' - 'C' + 1;
+
+    private static final int CHARS_SHIFT = KEY_COUNT;
+    private static final int LENGTH_SHIFT = 2 * KEY_COUNT;
+    static final int MAX_LENGTH = 0xFFFF;
+    private static final long KEY_MASK = (1L << KEY_COUNT) - 1;
+    private static final long VALID = 1L << 63;
+
+    private T9KeySignature() {
+    }
+
+    /**
+     * 计算T9键的签名
+     *
+     * @param t9Key T9键, 见 {@link T9Utils#buildT9Key(String, PinyinProvider)}
+     * @return 签名, <code>null</code> 或空串的签名不匹配任何查询
+     */
+    public static long of(@Nullable String t9Key) {
+        if (t9Key == null)
+            return VALID;
+
+        long initials = 0;
+        long chars = 0;
+        int maxLength = 0;
+        int start = 0;
+        final int length = t9Key.length();
+        for (int i = 0; i < length; i++) {
+            final char c = t9Key.charAt(i);
+            if (c == T9Utils.T9_KEYS_DIVIDER) {
+                maxLength = Math.max(maxLength, i - start);
+                start = i + 1;
+            } else if (T9Utils.isInitial(c)) {
+                initials |= 1L << (c - 'C');
+            } else if (c >= '#' && c <= '9') {
+                chars |= 1L << (c - '#');
+            }
+        }
+        maxLength = Math.min(MAX_LENGTH, Math.max(maxLength, length - start));
+
+        return VALID | initials | ((initials | chars) << CHARS_SHIFT)
+               | ((long) maxLength << LENGTH_SHIFT);
+    }
+
+    static int getInitials(long signature) {
+        return (int) (signature & KEY_MASK);
+    }
+
+    static int getChars(long signature) {
+        return (int) ((signature >>> CHARS_SHIFT) & KEY_MASK);
+    }
+
+    static int getMaxLength(long signature) {
+        return (int) ((signature >>> LENGTH_SHIFT) & MAX_LENGTH);
+    }
+
+}
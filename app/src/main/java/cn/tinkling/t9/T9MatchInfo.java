@@ -10,9 +10,15 @@ import androidx.annotation.Nullable;
  */
 public final class T9MatchInfo implements Parcelable {
 
+    /**
+     * 未匹配. 所有未匹配的结果共享此实例, 不可修改.
+     */
+    static final T9MatchInfo NO_MATCH = new T9MatchInfo();
+
     private boolean mMatchFound;
     private int mMatchStart;
     private int mMatchLength;
+    private int mErrors;
 
     private T9MatchInfo mNext;
 
@@ -36,6 +42,7 @@ public final class T9MatchInfo implements Parcelable {
         mMatchFound = in.readByte() != 0;
         mMatchStart = in.readInt();
         mMatchLength = in.readInt();
+        mErrors = in.readInt();
         mNext = in.readParcelable(T9MatchInfo.class.getClassLoader());
     }
 
@@ -49,10 +56,12 @@ public final class T9MatchInfo implements Parcelable {
         dest.writeByte(mMatchFound ? (byte) 1 : (byte) 0);
         dest.writeInt(mMatchStart);
         dest.writeInt(mMatchLength);
+        dest.writeInt(mErrors);
         dest.writeParcelable(mNext, flags);
     }
 
     void set(int matchStart, int matchLength) {
+        checkMutable();
         if ((matchStart < 0 && matchLength > 0) || (matchStart >= 0 && matchLength <= 0)) {
             throw new IndexOutOfBoundsException(
                     "INVALID MATCH OFFSETS: matchStart=" + matchStart + ", matchLength=" +
@@ -64,11 +73,23 @@ public final class T9MatchInfo implements Parcelable {
         this.mMatchLength = matchLength;
     }
 
+    void setErrors(int errors) {
+        checkMutable();
+        this.mErrors = errors;
+    }
+
     void setNext(T9MatchInfo next) {
+        checkMutable();
         if (this != next)
             mNext = next;
     }
 
+    private void checkMutable() {
+        if (this == NO_MATCH) {
+            throw new IllegalStateException("NO_MATCH is immutable");
+        }
+    }
+
     /**
      * @return <code>true</code> - 已匹配, <code>false</code> - 其他.
      */
@@ -90,6 +111,13 @@ public final class T9MatchInfo implements Parcelable {
         return mMatchLength;
     }
 
+    /**
+     * @return 模糊匹配的编辑距离. <code>0</code> - 如果是精确匹配或未匹配.
+     */
+    public int errors() {
+        return mErrors;
+    }
+
     /**
      * @return <code>true</code> - 如果存在下一个匹配信息, <code>false</code> - 其他.
      */
@@ -111,6 +139,7 @@ public final class T9MatchInfo implements Parcelable {
                "mMatchFound=" + mMatchFound +
                ", mMatchStart=" + mMatchStart +
                ", mMatchLength=" + mMatchLength +
+               ", mErrors=" + mErrors +
                ", mNext=" + mNext +
                '}';
     }
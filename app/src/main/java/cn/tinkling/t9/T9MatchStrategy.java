@@ -0,0 +1,47 @@
+package cn.tinkling.t9;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * T9 名称匹配策略
+ */
+public interface T9MatchStrategy {
+
+    /**
+     * 回溯匹配, 即 {@link T9Matcher#matches(String, String)}
+     */
+    T9MatchStrategy RECURSIVE = new T9MatchStrategy() {
+
+        private volatile T9Query mLastCompiled;
+
+        @NonNull
+        @Override
+        public T9MatchInfo matches(@Nullable String t9Key, @Nullable String t9Constraint) {
+            T9Query query = mLastCompiled;
+            if (query == null || !T9Utils.equals(query.constraint(), t9Constraint)) {
+                query = T9Query.compile(t9Constraint);
+                mLastCompiled = query;
+            }
+
+            return query.matches(t9Key);
+        }
+    };
+
+    /**
+     * 位并行匹配, 每个 key 单遍扫描, 匹配结果与 {@link #RECURSIVE} 相同
+     */
+    T9MatchStrategy BIT_PARALLEL = BitParallelT9Matcher.STRATEGY;
+
+    /**
+     * T9 匹配
+     *
+     * @param t9Key        t9 key.
+     * @param t9Constraint the constraint.
+     * @return the match info.
+     * @see T9MatchInfo
+     */
+    @NonNull
+    T9MatchInfo matches(@Nullable String t9Key, @Nullable String t9Constraint);
+
+}
@@ -0,0 +1,298 @@
+package cn.tinkling.t9;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 电话号码列存储.
+ * <p>
+ * 所有号码连续存放在一个 byte[] 中(每个号码之后是一个 0 分隔符), 另有偏移数组记录每个号码的起始位置,
+ * 以及每行(联系人)的第一个号码.
+ * {@link #search(String)} 经 {@link ByteBuffer} 从同一个 byte[] 按小端序每次读取 8 字节(SWAR),
+ * 同时比较查询串的前两个字符, 只对候选位置逐字节校验, 一次扫描整列, 得到的起始位置与
+ * {@link String#indexOf(String)} 相同. 查询串含有 T9 按键以外的字符时逐个号码查找, 结果同样与
+ * indexOf 相同.
+ * <p>
+ * 实测整列扫描并不比逐个号码 indexOf 快, 因此 {@link T9ContactIndex} 默认不生成列存储.
+ * <p>
+ * 号码应已规范化(见 MainActivity 中的处理); 非 ASCII 字符存为 0, 不会被匹配. 实例不可变.
+ */
+public final class T9NumberColumn {
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+    /**
+     * 末尾补 0 的字节数, 读取 "下一个字" 时无需判断边界
+     */
+    private static final int PADDING = 2 * 8;
+
+    /**
+     * 号码的字节, 之后是 {@link #PADDING} 个 0
+     */
+    private final byte[] mBytes;
+
+    /**
+     * mBytes 的小端序视图, 不复制
+     */
+    private final ByteBuffer mWords;
+
+    /**
+     * 号码部分的字节数
+     */
+    private final int mSize;
+
+    /**
+     * 每个号码在 mBytes 中的起始位置, 最后一项为 mSize
+     */
+    private final int[] mOffsets;
+
+    /**
+     * 每行第一个号码的序号, 最后一项为号码总数
+     */
+    private final int[] mRowValues;
+
+    private T9NumberColumn(byte[] bytes, int size, int[] offsets, int[] rowValues) {
+        mBytes = bytes;
+        mSize = size;
+        mWords = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        mOffsets = offsets;
+        mRowValues = rowValues;
+    }
+
+    /**
+     * 构建列存储, 每行一个号码
+     *
+     * @param numbers 号码, 行号即列表中的下标. 可以为 null.
+     * @return 列存储
+     */
+    @NonNull
+    public static T9NumberColumn build(@NonNull List<String> numbers) {
+        List<String[]> rows = new ArrayList<>(numbers.size());
+        for (String number : numbers) {
+            rows.add(new String[]{number});
+        }
+        return buildMultiValued(rows);
+    }
+
+    /**
+     * 构建列存储, 每行可以有多个号码
+     *
+     * @param rows 每行的号码, 行号即列表中的下标. 可以为 null.
+     * @return 列存储
+     */
+    @NonNull
+    public static T9NumberColumn buildMultiValued(@NonNull List<String[]> rows) {
+        final int rowCount = rows.size();
+        int size = 0;
+        int valueCount = 0;
+        for (int i = 0; i < rowCount; i++) {
+            String[] numbers = rows.get(i);
+            if (numbers == null)
+                continue;
+
+            for (String number : numbers) {
+                size += (number == null ? 0 : number.length()) + 1;
+                valueCount++;
+            }
+        }
+
+        byte[] bytes = new byte[size + PADDING];
+        int[] offsets = new int[valueCount + 1];
+        int[] rowValues = new int[rowCount + 1];
+        int offset = 0;
+        int value = 0;
+        for (int i = 0; i < rowCount; i++) {
+            rowValues[i] = value;
+            String[] numbers = rows.get(i);
+            if (numbers == null)
+                continue;
+
+            for (String number : numbers) {
+                offsets[value++] = offset;
+                if (number != null) {
+                    for (int j = 0; j < number.length(); j++) {
+                        char c = number.charAt(j);
+                        bytes[offset++] = c < 128 ? (byte) c : 0;
+                    }
+                }
+                offset++;
+            }
+        }
+        offsets[valueCount] = offset;
+        rowValues[rowCount] = valueCount;
+
+        return new T9NumberColumn(bytes, size, offsets, rowValues);
+    }
+
+    /**
+     * @return 行数
+     */
+    public int size() {
+        return mRowValues.length - 1;
+    }
+
+    /**
+     * @return 号码总数
+     */
+    public int valueCount() {
+        return mOffsets.length - 1;
+    }
+
+    /**
+     * @return 指定行第一个号码的序号
+     */
+    public int firstValue(int row) {
+        return mRowValues[row];
+    }
+
+    /**
+     * @return 指定行的号码个数
+     */
+    public int valueCount(int row) {
+        return mRowValues[row + 1] - mRowValues[row];
+    }
+
+    /**
+     * @return 指定号码的长度
+     */
+    public int length(int value) {
+        return mOffsets[value + 1] - mOffsets[value] - 1;
+    }
+
+    /**
+     * 在整列中查找
+     *
+     * @param constraint the constraint.
+     * @return 每个号码第一次匹配的起始位置, <code>-1</code> - 如果该号码未匹配.
+     */
+    @NonNull
+    public int[] search(@Nullable String constraint) {
+        int[] starts = new int[valueCount()];
+        Arrays.fill(starts, -1);
+        if (constraint == null || constraint.length() == 0 || starts.length == 0)
+            return starts;
+
+        final int length = constraint.length();
+        for (int i = 0; i < length; i++) {
+            if (!T9Utils.isValidT9Key(constraint.charAt(i))) {
+                indexOf(constraint, starts);
+                return starts;
+            }
+        }
+
+        final long first = ONES * constraint.charAt(0);
+        // 查询串只有一个字符时, 第二个字节与自身比较, 恒为候选
+        final long secondMask = length > 1 ? -1L : 0L;
+        final long second = ONES * constraint.charAt(length > 1 ? 1 : 0);
+        final int limit = mSize - length;
+        final ByteBuffer words = mWords;
+        final int wordCount = (mSize + 7) >>> 3;
+
+        int value = 0;
+        long next = words.getLong(0);
+        for (int w = 0; w < wordCount; w++) {
+            final long word = next;
+            next = words.getLong((w + 1) << 3);
+            final long shifted = (word >>> 8) | (next << 56);
+            long candidates = zeroBytes(word ^ first)
+                    & zeroBytes((shifted & secondMask) ^ (second & secondMask));
+            if (candidates == 0L)
+                continue;
+
+            while (candidates != 0L) {
+                final int pos = (w << 3) + (Long.numberOfTrailingZeros(candidates) >>> 3);
+                candidates &= candidates - 1;
+                if (pos > limit)
+                    break;
+
+                while (mOffsets[value + 1] <= pos) {
+                    value++;
+                }
+
+                if (starts[value] < 0 && regionMatches(pos, constraint, 2)) {
+                    starts[value] = pos - mOffsets[value];
+
+                    // 只需第一次匹配, 跳到下一个号码所在的字
+                    final int nextWord = mOffsets[value + 1] >>> 3;
+                    if (nextWord > w) {
+                        w = nextWord - 1;
+                        next = words.getLong(nextWord << 3);
+                        break;
+                    }
+                }
+            }
+        }
+
+        return starts;
+    }
+
+    /**
+     * @return 查询串是否只含 ASCII 字符. 否则 {@link #search(String)} 的结果可能与 indexOf 不同
+     * (号码中的非 ASCII 字符存为 0)
+     */
+    static boolean isSearchable(@NonNull String constraint) {
+        for (int i = 0; i < constraint.length(); i++) {
+            if (constraint.charAt(i) >= 128)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * 电话号码匹配
+     *
+     * @param starts {@link #search(String)} 的结果
+     * @param value  号码序号
+     * @param length 查询串长度
+     * @return the match info.
+     */
+    @NonNull
+    public static T9MatchInfo getMatchInfo(@NonNull int[] starts, int value, int length) {
+        if (starts[value] < 0)
+            return T9MatchInfo.NO_MATCH;
+
+        T9MatchInfo matchInfo = new T9MatchInfo();
+        matchInfo.set(starts[value], length);
+        return matchInfo;
+    }
+
+    /**
+     * 逐个号码查找, 与 {@link String#indexOf(String)} 相同
+     */
+    private void indexOf(String constraint, int[] starts) {
+        final int length = constraint.length();
+        for (int value = 0; value < starts.length; value++) {
+            final int limit = mOffsets[value + 1] - 1 - length;
+            for (int pos = mOffsets[value]; pos <= limit; pos++) {
+                if (regionMatches(pos, constraint, 0)) {
+                    starts[value] = pos - mOffsets[value];
+                    break;
+                }
+            }
+        }
+    }
+
+    private boolean regionMatches(int pos, String constraint, int from) {
+        for (int i = from; i < constraint.length(); i++) {
+            if (mBytes[pos + i] != constraint.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return 值为 0 的字节置 0x80, 其余字节为 0
+     */
+    private static long zeroBytes(long x) {
+        long t = (x & LOW_BITS) + LOW_BITS;
+        return ~(t | x | LOW_BITS);
+    }
+
+}
@@ -0,0 +1,347 @@
+package cn.tinkling.t9;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * 压缩的倒排列表: 严格递增的 int id(联系人 id 或行号).
+ * <p>
+ * 每 {@link #BLOCK_SIZE} 个 id 为一块, 块内第一个 id 及其余 id 在字节数组中的起始位置记入跳表,
+ * 其余 id 与前一个 id 的差值以 varint(每字节 7 位, 最高位表示后续还有字节)存储. 差值小于 128
+ * 时每个 id 一个字节, 小于 16384 时两个字节; 跳表每个 id 约 0.125 字节.
+ * <p>
+ * {@link Cursor#advance(int)} 先在跳表中二分查找目标所在的块, 只解码该块,
+ * 用于多首字母查询的求交({@link #intersect(T9PostingList...)})时跳过大段不相关的 id.
+ * 实例不可变, 可在多个线程间共享; {@link Cursor} 不是线程安全的.
+ */
+public final class T9PostingList {
+
+    /**
+     * 跳表间隔
+     */
+    static final int BLOCK_SIZE = 64;
+
+    /**
+     * {@link Cursor} 已遍历完毕
+     */
+    public static final int NO_MORE_IDS = Integer.MAX_VALUE;
+
+    private static final int[] EMPTY_INTS = new int[0];
+
+    public static final T9PostingList EMPTY =
+            new T9PostingList(new byte[0], EMPTY_INTS, EMPTY_INTS, 0);
+
+    private final byte[] mBytes;
+
+    /**
+     * 每块第一个 id
+     */
+    private final int[] mBlockIds;
+
+    /**
+     * 每块其余 id 在 mBytes 中的起始位置
+     */
+    private final int[] mBlockOffsets;
+
+    private final int mSize;
+
+    private T9PostingList(byte[] bytes, int[] blockIds, int[] blockOffsets, int size) {
+        mBytes = bytes;
+        mBlockIds = blockIds;
+        mBlockOffsets = blockOffsets;
+        mSize = size;
+    }
+
+    /**
+     * @param ids 严格递增的非负 id
+     * @return 倒排列表
+     * @throws IllegalArgumentException 如果 id 为负数或不是严格递增
+     */
+    @NonNull
+    public static T9PostingList of(@NonNull int... ids) {
+        Builder builder = new Builder();
+        for (int id : ids) {
+            builder.add(id);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return id 个数
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return <code>true</code> - 如果为空
+     */
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * @return 压缩数据及跳表占用的字节数
+     */
+    public int sizeInBytes() {
+        return mBytes.length + (mBlockIds.length + mBlockOffsets.length) * 4;
+    }
+
+    /**
+     * @return 新的游标, 位于第一个 id 之前
+     */
+    @NonNull
+    public Cursor cursor() {
+        return new Cursor(this);
+    }
+
+    /**
+     * @return 解码后的全部 id
+     */
+    @NonNull
+    public int[] toArray() {
+        int[] ids = new int[mSize];
+        Cursor cursor = cursor();
+        for (int i = 0; i < mSize; i++) {
+            ids[i] = cursor.next();
+        }
+        return ids;
+    }
+
+    /**
+     * 求交. 从最短的列表出发, 其余列表以 {@link Cursor#advance(int)} 跳到候选 id.
+     *
+     * @param lists 倒排列表
+     * @return 同时出现在所有列表中的 id, 没有参数时为空
+     */
+    @NonNull
+    public static T9PostingList intersect(@NonNull T9PostingList... lists) {
+        if (lists.length == 0)
+            return EMPTY;
+
+        T9PostingList[] sorted = lists.clone();
+        Arrays.sort(sorted, new Comparator<T9PostingList>() {
+            @Override
+            public int compare(T9PostingList left, T9PostingList right) {
+                return left.mSize < right.mSize ? -1 : (left.mSize == right.mSize ? 0 : 1);
+            }
+        });
+        if (sorted[0].mSize == 0)
+            return EMPTY;
+
+        Cursor[] cursors = new Cursor[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            cursors[i] = sorted[i].cursor();
+        }
+
+        Builder builder = new Builder();
+        int id = cursors[0].next();
+        while (id != NO_MORE_IDS) {
+            int i = 1;
+            for (; i < cursors.length; i++) {
+                int other = cursors[i].advance(id);
+                if (other != id) {
+                    id = other == NO_MORE_IDS ? NO_MORE_IDS : cursors[0].advance(other);
+                    break;
+                }
+            }
+
+            if (i == cursors.length) {
+                builder.add(id);
+                id = cursors[0].next();
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * 求并. 多路归并, 每输出一个 id 比较一次各列表的当前 id, 适用于少量列表(如一个数字键
+     * 对应的几个首字母).
+     *
+     * @param lists 倒排列表
+     * @return 出现在任一列表中的 id
+     */
+    @NonNull
+    public static T9PostingList union(@NonNull T9PostingList... lists) {
+        Cursor[] cursors = new Cursor[lists.length];
+        int[] current = new int[lists.length];
+        for (int i = 0; i < lists.length; i++) {
+            cursors[i] = lists[i].cursor();
+            current[i] = cursors[i].next();
+        }
+
+        Builder builder = new Builder();
+        while (true) {
+            int id = NO_MORE_IDS;
+            for (int value : current) {
+                if (value < id)
+                    id = value;
+            }
+            if (id == NO_MORE_IDS)
+                break;
+
+            builder.add(id);
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == id)
+                    current[i] = cursors[i].next();
+            }
+        }
+        return builder.build();
+    }
+
+    @Override
+    public String toString() {
+        return "T9PostingList{" +
+               "size=" + mSize +
+               ", bytes=" + sizeInBytes() +
+               '}';
+    }
+
+    /**
+     * 顺序遍历的游标
+     */
+    public static final class Cursor {
+
+        private final T9PostingList mList;
+
+        /**
+         * 下一个 id 的序号
+         */
+        private int mIndex;
+        private int mOffset;
+        private int mId = -1;
+
+        Cursor(@NonNull T9PostingList list) {
+            mList = list;
+        }
+
+        /**
+         * @return 当前 id, <code>-1</code> - 尚未开始, {@link #NO_MORE_IDS} - 已遍历完毕
+         */
+        public int id() {
+            return mId;
+        }
+
+        /**
+         * @return 下一个 id, {@link #NO_MORE_IDS} - 如果已遍历完毕
+         */
+        public int next() {
+            final T9PostingList list = mList;
+            if (mIndex >= list.mSize)
+                return mId = NO_MORE_IDS;
+
+            if ((mIndex & (BLOCK_SIZE - 1)) == 0) {
+                final int block = mIndex / BLOCK_SIZE;
+                mOffset = list.mBlockOffsets[block];
+                mId = list.mBlockIds[block];
+            } else {
+                // varint 差值
+                final byte[] bytes = list.mBytes;
+                int offset = mOffset;
+                int b = bytes[offset++];
+                int delta = b & 0x7F;
+                for (int shift = 7; b < 0; shift += 7) {
+                    b = bytes[offset++];
+                    delta |= (b & 0x7F) << shift;
+                }
+                mOffset = offset;
+                mId += delta;
+            }
+
+            mIndex++;
+            return mId;
+        }
+
+        /**
+         * 前进到第一个不小于 target 的 id. 目标不在当前块时在跳表中二分查找.
+         *
+         * @return 当前 id(不小于 target), {@link #NO_MORE_IDS} - 如果不存在
+         */
+        public int advance(int target) {
+            if (mId >= target)
+                return mId;
+
+            final T9PostingList list = mList;
+            final int[] blockIds = list.mBlockIds;
+            final int nextBlock = (mIndex + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            if (nextBlock < blockIds.length && blockIds[nextBlock] <= target) {
+                int block = Arrays.binarySearch(blockIds, nextBlock, blockIds.length, target);
+                if (block < 0)
+                    block = -block - 2;
+
+                mIndex = block * BLOCK_SIZE;
+            }
+
+            int id;
+            do {
+                id = next();
+            } while (id < target);
+            return id;
+        }
+    }
+
+    /**
+     * 按递增顺序逐个添加 id
+     */
+    public static final class Builder {
+
+        private byte[] mBytes = new byte[64];
+        private int[] mBlockIds = new int[4];
+        private int[] mBlockOffsets = new int[4];
+        private int mLength;
+        private int mSize;
+        private int mLast = -1;
+
+        /**
+         * @param id 非负, 且大于上一个 id
+         * @return this
+         * @throws IllegalArgumentException 如果 id 为负数或不是严格递增
+         */
+        @NonNull
+        public Builder add(int id) {
+            if (id <= mLast || id == NO_MORE_IDS)
+                throw new IllegalArgumentException(
+                        "ids must be ascending and non-negative: " + mLast + ", " + id);
+
+            if ((mSize & (BLOCK_SIZE - 1)) == 0) {
+                final int block = mSize / BLOCK_SIZE;
+                if (block == mBlockIds.length) {
+                    mBlockIds = Arrays.copyOf(mBlockIds, block * 2);
+                    mBlockOffsets = Arrays.copyOf(mBlockOffsets, block * 2);
+                }
+                mBlockIds[block] = id;
+                mBlockOffsets[block] = mLength;
+            } else {
+                if (mLength + 5 > mBytes.length)
+                    mBytes = Arrays.copyOf(mBytes, Math.max(mBytes.length * 2, mLength + 5));
+
+                int delta = id - mLast;
+                while ((delta & ~0x7F) != 0) {
+                    mBytes[mLength++] = (byte) ((delta & 0x7F) | 0x80);
+                    delta >>>= 7;
+                }
+                mBytes[mLength++] = (byte) delta;
+            }
+
+            mLast = id;
+            mSize++;
+            return this;
+        }
+
+        /**
+         * @return 倒排列表, 数组按实际大小复制
+         */
+        @NonNull
+        public T9PostingList build() {
+            if (mSize == 0)
+                return EMPTY;
+
+            final int blocks = (mSize + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            return new T9PostingList(Arrays.copyOf(mBytes, mLength),
+                    Arrays.copyOf(mBlockIds, blocks), Arrays.copyOf(mBlockOffsets, blocks), mSize);
+        }
+    }
+
+}
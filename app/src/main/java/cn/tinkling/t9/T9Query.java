@@ -0,0 +1,409 @@
+package cn.tinkling.t9;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * 编译后的 T9 查询.
+ * <p>
+ * 查询串相关的预处理(首字母转换, 长度分派)只在 {@link #compile(String)} 时进行一次,
+ * 之后可对所有联系人重复调用 {@link #matches(String)} / {@link #matchesNumber(String)}.
+ * 未匹配时不分配任何对象. 实例不可变, 可在多个线程间共享.
+ */
+public final class T9Query {
+
+    private static final T9Query EMPTY = new T9Query("");
+
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    private final String mConstraint;
+    private final int mLength;
+
+    /**
+     * 查询串每一位对应的首字母, 即 {@link T9Utils#convertDigitToInitial(char)}
+     */
+    private final char[] mInitials;
+
+    /**
+     * 匹配所需的签名位, 见 {@link T9KeySignature}: 第一位必须是首字母, 其余各位是首字母或字符
+     */
+    private final int mRequiredInitials;
+    private final int mRequiredChars;
+
+    private T9Query(@NonNull String t9Constraint) {
+        mConstraint = t9Constraint;
+        mLength = t9Constraint.length();
+        mInitials = new char[mLength];
+        int requiredChars = 0;
+        for (int i = 0; i < mLength; i++) {
+            final char initial = T9Utils.convertDigitToInitial(t9Constraint.charAt(i));
+            mInitials[i] = initial;
+            if (T9Utils.isInitial(initial)) {
+                requiredChars |= 1 << (initial - 'C');
+            }
+        }
+        mRequiredInitials = mLength > 0 && T9Utils.isInitial(mInitials[0])
+                ? 1 << (mInitials[0] - 'C') : 0;
+        mRequiredChars = requiredChars;
+    }
+
+    /**
+     * 编译查询
+     *
+     * @param t9Constraint the constraint.
+     * @return 编译后的查询
+     */
+    @NonNull
+    public static T9Query compile(@Nullable String t9Constraint) {
+        return T9Utils.isEmpty(t9Constraint) ? EMPTY : new T9Query(t9Constraint);
+    }
+
+    /**
+     * @return 查询串
+     */
+    @NonNull
+    public String constraint() {
+        return mConstraint;
+    }
+
+    /**
+     * @return <code>true</code> - 如果查询串为空
+     */
+    public boolean isEmpty() {
+        return mLength == 0;
+    }
+
+    /**
+     * 以签名判断名称是否可能匹配. 返回 <code>false</code> 时 {@link #matches(String)} 必然不匹配,
+     * 只需几次位运算.
+     *
+     * @param signature 名称T9键的签名, 见 {@link T9KeySignature#of(String)}
+     * @return <code>false</code> - 如果不可能匹配
+     */
+    public boolean mayMatch(long signature) {
+        if (signature == T9KeySignature.UNKNOWN)
+            return true;
+
+        return mLength > 0
+               && (T9KeySignature.getInitials(signature) & mRequiredInitials) == mRequiredInitials
+               && (T9KeySignature.getChars(signature) & mRequiredChars) == mRequiredChars
+               && T9KeySignature.getMaxLength(signature)
+                  >= Math.min(mLength, T9KeySignature.MAX_LENGTH);
+    }
+
+    /**
+     * T9 匹配
+     *
+     * @param t9Key t9 key.
+     * @return the match info.
+     * @see T9MatchInfo
+     */
+    @NonNull
+    public T9MatchInfo matches(@Nullable String t9Key) {
+        if (mLength == 0 || t9Key == null || t9Key.length() == 0)
+            return T9MatchInfo.NO_MATCH;
+
+        if (mLength == 1)
+            return matchesInitial(t9Key, mInitials[0]);
+
+        final int length = t9Key.length();
+        int start = 0;
+        int end;
+        do {
+            end = t9Key.indexOf(T9Utils.T9_KEYS_DIVIDER, start);
+            if (end < 0)
+                end = length;
+
+            if (start < end) {
+                int w = findName(t9Key, start, end);
+                if (w >= 0)
+                    return newMatchInfo(t9Key, start, w);
+            }
+
+            start = end + 1;
+        } while (end < length);
+
+        return T9MatchInfo.NO_MATCH;
+    }
+
+    /**
+     * 只匹配 t9Key 中 [start, end) 的一个候选项, 结果与该候选项单独调用 {@link #matches(String)}
+     * 相同. 用于按候选项缓存匹配结果, 不必复制候选项.
+     *
+     * @param start 候选项的起始位置
+     * @param end   候选项的结束位置(分隔符或键的末尾)
+     */
+    @NonNull
+    T9MatchInfo matches(@NonNull String t9Key, int start, int end) {
+        if (mLength == 0 || start >= end)
+            return T9MatchInfo.NO_MATCH;
+
+        if (mLength == 1) {
+            final int index = t9Key.indexOf(mInitials[0], start);
+            if (index < 0 || index >= end)
+                return T9MatchInfo.NO_MATCH;
+
+            T9MatchInfo matchInfo = new T9MatchInfo();
+            matchInfo.set(T9Utils.getWordsCount(t9Key, start, index), 1);
+            return matchInfo;
+        }
+
+        final int w = findName(t9Key, start, end);
+        return w >= 0 ? newMatchInfo(t9Key, start, w) : T9MatchInfo.NO_MATCH;
+    }
+
+    /**
+     * 按 {@link #findName(String, int, int)} 找到的起始单词标记匹配的字符, 生成匹配信息
+     */
+    private T9MatchInfo newMatchInfo(String t9Key, int start, int w) {
+        BitSet bitSet = T9Utils.getReusableBitSet();
+        markName(t9Key, start, SCRATCH.get(), w, bitSet);
+
+        T9MatchInfo matchInfo = new T9MatchInfo();
+        T9Matcher.setMatchResult(t9Key, matchInfo, bitSet, start);
+        T9Utils.recycleBitSet(bitSet);
+        return matchInfo;
+    }
+
+    /**
+     * 电话号码匹配
+     *
+     * @param phoneNumber 电话号码
+     * @return the match info.
+     * @see T9MatchInfo
+     */
+    @NonNull
+    public T9MatchInfo matchesNumber(@Nullable String phoneNumber) {
+        if (mLength == 0 || phoneNumber == null || phoneNumber.length() == 0)
+            return T9MatchInfo.NO_MATCH;
+
+        int index = phoneNumber.indexOf(mConstraint);
+        if (index < 0)
+            return T9MatchInfo.NO_MATCH;
+
+        T9MatchInfo matchInfo = new T9MatchInfo();
+        matchInfo.set(index, mLength);
+        return matchInfo;
+    }
+
+    /**
+     * 名称能否从开头匹配的必要条件: 某个候选项以查询串第一位对应的首字母开头.
+     * 只比较各候选项的第一个字符, 用于在完整匹配前快速排除.
+     *
+     * @param t9Key t9 key.
+     * @return <code>false</code> - 如果 {@link #matches(String)} 的结果必然不从第 0 个字符开始
+     */
+    boolean mayMatchNameAtStart(@Nullable String t9Key) {
+        if (mLength == 0 || t9Key == null)
+            return false;
+
+        final char initial = mInitials[0];
+        final int length = t9Key.length();
+        int start = 0;
+        while (start < length) {
+            if (t9Key.charAt(start) == initial)
+                return true;
+
+            start = t9Key.indexOf(T9Utils.T9_KEYS_DIVIDER, start) + 1;
+            if (start == 0)
+                break;
+        }
+        return false;
+    }
+
+    @NonNull
+    static T9MatchInfo matchesInitial(@NonNull String t9Key, char initial) {
+        int index = t9Key.indexOf(initial);
+        if (index < 0)
+            return T9MatchInfo.NO_MATCH;
+
+        int begin = t9Key.lastIndexOf(T9Utils.T9_KEYS_DIVIDER, index) + 1;
+        T9MatchInfo matchInfo = new T9MatchInfo();
+        matchInfo.set(T9Utils.getWordsCount(t9Key, begin, index), 1);
+        return matchInfo;
+    }
+
+    /**
+     * 在 [start, end) 中查找匹配的起始单词.
+     * <p>
+     * 先以第一个首字母预筛选; 有候选时建立该候选项的音节边界表(各单词首字母的位置), 再以 (单词, 查询串位置) 为状态进行带备忘的动态规划, 最坏 O(key × query).
+     * 各分支的尝试顺序与原回溯实现相同(先按首字母, 再按单词前缀, 最后按全拼), 结果一致.
+     *
+     * @return 起始单词的序号, <code>-1</code> - 如果未匹配.
+     */
+    private int findName(String t9Key, int start, int end) {
+        if (end - start < mLength)
+            return -1;
+
+        final int maxLength = 1 + (end - mLength);
+        final int first = t9Key.indexOf(mInitials[0], start);
+        if (first < 0 || first >= maxLength)
+            return -1;
+
+        // 匹配只会向后推进, 边界表从第一个候选开始即可
+        final Scratch scratch = SCRATCH.get();
+        scratch.reset(t9Key, first, end, mLength);
+        final int[] wordStarts = scratch.mWordStarts;
+        for (int w = 0; w < scratch.mWordCount; w++) {
+            final int index = wordStarts[w];
+            if (index >= maxLength)
+                break;
+
+            if (t9Key.charAt(index) == mInitials[0] && matchesName(t9Key, scratch, w, 0))
+                return w;
+        }
+
+        return -1;
+    }
+
+    /**
+     * 从第 w 个单词的首字母(对应查询串第 q 位)开始能否完成匹配
+     */
+    private boolean matchesName(String t9Key, Scratch scratch, int w, int q) {
+        final int state = w * mLength + q;
+        if (scratch.mVisited[state] == scratch.mStamp)
+            return scratch.mMatched[state];
+
+        final int start = scratch.mWordStarts[w];
+        boolean matched;
+        if (w == scratch.mWordCount - 1) {
+            matched = t9Key.regionMatches(start + 1, mConstraint, q + 1, mLength - q - 1);
+        } else {
+            final int nextInitial = scratch.mWordStarts[w + 1];
+            matched = mInitials[q + 1] == t9Key.charAt(nextInitial)
+                    && (mLength == q + 2 || matchesName(t9Key, scratch, w + 1, q + 1));
+
+            if (!matched) {
+                final int spanLength = getSpanLength(t9Key, start, nextInitial);
+                if (mLength - q <= spanLength) {
+                    matched = t9Key.regionMatches(start + 1, mConstraint, q + 1,
+                            mLength - q - 1);
+                } else {
+                    matched = mInitials[q + spanLength] == t9Key.charAt(nextInitial)
+                            && t9Key.regionMatches(start + 1, mConstraint, q + 1, spanLength - 1)
+                            && (q + spanLength + 1 == mLength
+                            || matchesName(t9Key, scratch, w + 1, q + spanLength));
+                }
+            }
+        }
+
+        scratch.mVisited[state] = scratch.mStamp;
+        scratch.mMatched[state] = matched;
+        return matched;
+    }
+
+    /**
+     * 按 {@link #matchesName(String, Scratch, int, int)} 选择的分支标记匹配的字符,
+     * 使用 {@link #findName(String, int, int)} 留下的边界表及备忘表
+     */
+    private void markName(String t9Key, int begin, Scratch scratch, int w, BitSet bitSet) {
+        int q = 0;
+        while (true) {
+            final int start = scratch.mWordStarts[w] - begin;
+            if (w == scratch.mWordCount - 1) {
+                bitSet.set(start, start + mLength - q);
+                return;
+            }
+
+            final int nextInitial = scratch.mWordStarts[w + 1];
+            final int next = nextInitial - begin;
+            if (mInitials[q + 1] == t9Key.charAt(nextInitial)) {
+                if (mLength == q + 2) {
+                    bitSet.set(start);
+                    bitSet.set(next);
+                    return;
+                }
+
+                if (matchesName(t9Key, scratch, w + 1, q + 1)) {
+                    bitSet.set(start);
+                    w++;
+                    q++;
+                    continue;
+                }
+            }
+
+            final int spanLength = getSpanLength(t9Key, scratch.mWordStarts[w], nextInitial);
+            if (mLength - q <= spanLength) {
+                bitSet.set(start, start + mLength - q);
+                return;
+            }
+
+            if (q + spanLength + 1 == mLength) {
+                bitSet.set(start, next + 1);
+                return;
+            }
+
+            bitSet.set(start, next);
+            w++;
+            q += spanLength;
+        }
+    }
+
+    /**
+     * @return 单词去掉尾部空格后的长度
+     */
+    private static int getSpanLength(String t9Key, int start, int nextInitial) {
+        int spanLength = nextInitial - start;
+        for (int i = nextInitial - 1; t9Key.charAt(i) == ' '; i--) {
+            spanLength--;
+        }
+        return spanLength;
+    }
+
+    /**
+     * 每个线程复用的音节边界表(各单词首字母的位置)及备忘表
+     */
+    private static final class Scratch {
+
+        int[] mWordStarts = new int[16];
+        int mWordCount;
+
+        int[] mVisited = new int[64];
+        boolean[] mMatched = new boolean[64];
+        int mStamp;
+
+        /**
+         * 建立 [begin, end) 的音节边界表, 并使备忘表失效
+         */
+        void reset(String t9Key, int begin, int end, int constraintLength) {
+            int count = 0;
+            for (int i = begin; i < end; i++) {
+                if (T9Utils.isInitial(t9Key.charAt(i))) {
+                    if (count == mWordStarts.length) {
+                        mWordStarts = Arrays.copyOf(mWordStarts, count * 2);
+                    }
+                    mWordStarts[count++] = i;
+                }
+            }
+            mWordCount = count;
+
+            final int states = count * constraintLength;
+            if (states > mVisited.length) {
+                mVisited = new int[Math.max(states, mVisited.length * 2)];
+                mMatched = new boolean[mVisited.length];
+                mStamp = 0;
+            }
+
+            if (++mStamp == 0) {
+                Arrays.fill(mVisited, 0);
+                mStamp = 1;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "T9Query{" +
+               "mConstraint='" + mConstraint + '\'' +
+               '}';
+    }
+
+}
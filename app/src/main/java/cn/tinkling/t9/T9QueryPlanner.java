@@ -0,0 +1,600 @@
+package cn.tinkling.t9;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.List;
+import java.util.Locale;
+
+import cn.tinkling.t9search.sample.Contact;
+
+/**
+ * 基于代价的查询计划: 按索引统计为每个查询选择估计代价最小的执行方式.
+ * <ul>
+ * <li>{@link Plan#SCAN}: 逐行匹配全部联系人, 即 {@link T9SearchSupport#filter(List,
+ * T9NumberColumn, String, T9MatchStrategy, int)}. 查询不够选择性(如一位数字)时最快</li>
+ * <li>{@link Plan#INDEX}: 以各按键的倒排列表求交得到名称候选行, 只匹配候选行及号码命中的行</li>
+ * <li>{@link Plan#NUMBERS_ONLY}: 查询中的某个按键不出现在任何名称中, 完全跳过名称匹配</li>
+ * <li>{@link Plan#REFINE}: 同一 {@link Session} 的上一次查询是本次的前缀, 只匹配上一次的结果行
+ * (精确匹配的结果对前缀封闭: 匹配 "946" 的行必然匹配 "94")</li>
+ * </ul>
+ * 倒排列表由各联系人的 {@link T9KeySignature}(名称及附加字段)生成, 行号与联系人列表的下标一致.
+ * 只有内置的名称匹配策略及精确匹配(maxErrors 为 0)可以使用索引, 其余查询一律逐行匹配.
+ * 各计划的结果相同. 实例不可变, 可在多个线程间共享; 上一次的结果保存在调用方各自的
+ * {@link Session} 中, 并发的输入不会互相覆盖.
+ */
+public final class T9QueryPlanner {
+
+    /**
+     * 代价以逐行匹配一行为单位
+     */
+    private static final double COST_SCAN_ROW = 1.0;
+
+    /**
+     * 随机访问一个候选行, 比顺序扫描多一次缓存缺失
+     */
+    private static final double COST_CANDIDATE_ROW = 1.5;
+
+    /**
+     * 求交时解码一个 id
+     */
+    private static final double COST_POSTING = 0.05;
+
+    /**
+     * 跳过一个非候选行(只检查号码命中)
+     */
+    private static final double COST_SKIPPED_ROW = 0.02;
+
+    /**
+     * 没有号码列存储时, 对非候选行的每个号码 indexOf 一次
+     */
+    private static final double COST_SKIPPED_NUMBER = 0.1;
+
+    private final List<Contact> mContacts;
+    @Nullable
+    private final T9NumberColumn mNumberColumn;
+    private final T9KeyDictionary mKeyDictionary;
+
+    /**
+     * 名称或附加字段中以该按键为首字母的行
+     */
+    private final T9PostingList[] mInitialRows;
+
+    /**
+     * 名称或附加字段中含有该按键(首字母或字符)的行
+     */
+    private final T9PostingList[] mKeyRows;
+
+    /**
+     * 号码中各按键出现的次数, 号码的总字符数及个数, 用于估计号码命中的行数
+     */
+    private final int[] mNumberKeyCounts;
+    private final long mNumberChars;
+    private final int mNumberCount;
+
+    private T9QueryPlanner(List<Contact> contacts, T9NumberColumn numberColumn,
+                           T9KeyDictionary keyDictionary,
+                           T9PostingList[] initialRows, T9PostingList[] keyRows,
+                           int[] numberKeyCounts, long numberChars, int numberCount) {
+        mContacts = contacts;
+        mNumberColumn = numberColumn;
+        mKeyDictionary = keyDictionary;
+        mInitialRows = initialRows;
+        mKeyRows = keyRows;
+        mNumberKeyCounts = numberKeyCounts;
+        mNumberChars = numberChars;
+        mNumberCount = numberCount;
+    }
+
+    /**
+     * 生成索引统计
+     *
+     * @param contacts     联系人, 之后不能修改
+     * @param numberColumn 由 {@link T9SearchSupport#buildNumberColumn(List)} 生成的号码列存储,
+     *                     为 null 时逐个匹配号码
+     * @return 查询计划器
+     */
+    @NonNull
+    public static T9QueryPlanner build(@NonNull List<Contact> contacts,
+                                       @Nullable T9NumberColumn numberColumn) {
+        return build(contacts, numberColumn, null);
+    }
+
+    /**
+     * 生成索引统计
+     *
+     * @param contacts      联系人, 之后不能修改
+     * @param numberColumn  由 {@link T9SearchSupport#buildNumberColumn(List)} 生成的号码列存储,
+     *                      为 null 时逐个匹配号码
+     * @param keyDictionary 由 {@link T9SearchSupport#buildKeyDictionary(List)} 生成的T9键字典,
+     *                      可以为 null
+     * @return 查询计划器
+     */
+    @NonNull
+    static T9QueryPlanner build(@NonNull List<Contact> contacts,
+                                @Nullable T9NumberColumn numberColumn,
+                                @Nullable T9KeyDictionary keyDictionary) {
+        final int keyCount = T9KeySignature.KEY_COUNT;
+        T9PostingList.Builder[] initialRows = new T9PostingList.Builder[keyCount];
+        T9PostingList.Builder[] keyRows = new T9PostingList.Builder[keyCount];
+        for (int k = 0; k < keyCount; k++) {
+            initialRows[k] = new T9PostingList.Builder();
+            keyRows[k] = new T9PostingList.Builder();
+        }
+        final int[] numberKeyCounts = new int[keyCount];
+        long numberChars = 0;
+        int numberCount = 0;
+
+        for (int row = 0; row < contacts.size(); row++) {
+            Contact contact = contacts.get(row);
+            for (String number : contact.phoneNumbers) {
+                numberCount++;
+                if (number == null)
+                    continue;
+
+                numberChars += number.length();
+                for (int i = 0; i < number.length(); i++) {
+                    final int k = keyIndex(number.charAt(i));
+                    if (k >= 0)
+                        numberKeyCounts[k]++;
+                }
+            }
+
+            long signature = contact.t9KeySignature != T9KeySignature.UNKNOWN
+                    ? contact.t9KeySignature : T9KeySignature.of(contact.t9Key);
+            for (String extraT9Key : contact.extraT9Keys) {
+                signature |= T9KeySignature.of(extraT9Key);
+            }
+
+            final int initials = T9KeySignature.getInitials(signature);
+            final int keys = T9KeySignature.getChars(signature);
+            for (int k = 0; k < keyCount; k++) {
+                if ((initials & (1 << k)) != 0)
+                    initialRows[k].add(row);
+                if ((keys & (1 << k)) != 0)
+                    keyRows[k].add(row);
+            }
+        }
+
+        T9PostingList[] initialLists = new T9PostingList[keyCount];
+        T9PostingList[] keyLists = new T9PostingList[keyCount];
+        for (int k = 0; k < keyCount; k++) {
+            initialLists[k] = initialRows[k].build();
+            keyLists[k] = keyRows[k].build();
+        }
+        return new T9QueryPlanner(contacts, numberColumn, keyDictionary, initialLists, keyLists,
+                numberKeyCounts, numberChars, numberCount);
+    }
+
+    /**
+     * @return 行数
+     */
+    public int size() {
+        return mContacts.size();
+    }
+
+    /**
+     * @return 倒排列表占用的字节数
+     */
+    public int sizeInBytes() {
+        int bytes = 0;
+        for (int k = 0; k < T9KeySignature.KEY_COUNT; k++) {
+            bytes += mInitialRows[k].sizeInBytes() + mKeyRows[k].sizeInBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * 选择执行计划, 不执行查询, 不使用上一次的结果
+     *
+     * @see #plan(String, T9MatchStrategy, int, Session)
+     */
+    @NonNull
+    public Plan plan(@Nullable String key, @NonNull T9MatchStrategy strategy, int maxErrors) {
+        return plan(key, strategy, maxErrors, null);
+    }
+
+    /**
+     * 选择执行计划, 不执行查询
+     *
+     * @param strategy  名称匹配策略
+     * @param maxErrors 最大编辑距离, [0, {@link T9FuzzyQuery#MAX_ERRORS}], <code>0</code> - 不进行模糊匹配
+     * @param session   调用方的会话, 其上一次查询是本次的前缀时可细化; <code>null</code> - 不细化
+     * @return 执行计划, 见 {@link Plan#explain()}
+     * @throws IllegalArgumentException 如果 maxErrors 超出范围
+     */
+    @NonNull
+    public Plan plan(@Nullable String key, @NonNull T9MatchStrategy strategy, int maxErrors,
+                     @Nullable Session session) {
+        T9SearchSupport.checkMaxErrors(maxErrors);
+        final int rows = mContacts.size();
+        final double scanCost = rows * COST_SCAN_ROW;
+        if (T9Utils.isEmpty(key))
+            return new Plan(this, session, key, strategy, maxErrors, Plan.SCAN, "empty query",
+                    scanCost);
+
+        if (strategy != T9MatchStrategy.RECURSIVE && strategy != T9MatchStrategy.BIT_PARALLEL)
+            return new Plan(this, session, key, strategy, maxErrors, Plan.SCAN,
+                    "custom name matching strategy, signatures do not apply", scanCost);
+
+        if (maxErrors > 0)
+            return new Plan(this, session, key, strategy, maxErrors, Plan.SCAN,
+                    "fuzzy matching visits every row without an exact match", scanCost);
+
+        if (mNumberColumn != null && mNumberColumn.size() != rows)
+            return new Plan(this, session, key, strategy, maxErrors, Plan.SCAN,
+                    "number column does not match the contacts", scanCost);
+
+        // 名称匹配要求第一位为首字母, 且每一位都出现在键中, 见 T9Query#mayMatch(long)
+        final int length = key.length();
+        T9PostingList[] lists = new T9PostingList[length + 1];
+        int count = 0;
+        int seen = 0;
+        // 以某按键为首字母的行必然含有该按键, 第一位只需首字母列表
+        final int first = keyIndex(key.charAt(0));
+        if (first >= 0) {
+            lists[count++] = mInitialRows[first];
+            seen |= 1 << first;
+        }
+        for (int i = 0; i < length; i++) {
+            final int k = keyIndex(key.charAt(i));
+            if (k >= 0 && (seen & (1 << k)) == 0) {
+                seen |= 1 << k;
+                lists[count++] = mKeyRows[k];
+            }
+        }
+
+        int smallest = rows;
+        double estimate = rows;
+        for (int i = 0; i < count; i++) {
+            final int size = lists[i].size();
+            smallest = Math.min(smallest, size);
+            // 假设各按键相互独立
+            estimate *= rows == 0 ? 0 : (double) size / rows;
+        }
+
+        // 号码命中的行同样需要匹配
+        final double nameRows = Math.min(estimate, smallest);
+        final double numberRows = estimateNumberRows(key);
+        final double skippedCost = mNumberColumn != null
+                ? rows * COST_SKIPPED_ROW : mNumberCount * COST_SKIPPED_NUMBER;
+        final double indexCost = smallest * count * COST_POSTING + skippedCost
+                + Math.min(rows, nameRows + numberRows) * COST_CANDIDATE_ROW;
+
+        double refineCost = Double.NaN;
+        final Refinement refinement = session != null ? session.refinement(this) : null;
+        if (refinement != null && key.startsWith(refinement.mKey)) {
+            refineCost = skippedCost + refinement.mRows.size() * COST_CANDIDATE_ROW;
+        }
+
+        Plan plan;
+        if (count == 0) {
+            plan = new Plan(this, session, key, strategy, maxErrors, Plan.SCAN,
+                    "no indexable keys", scanCost);
+        } else if (smallest == 0) {
+            plan = new Plan(this, session, key, strategy, maxErrors, Plan.NUMBERS_ONLY,
+                    "no name contains every key of the query", scanCost);
+            plan.mCandidates = T9PostingList.EMPTY;
+        } else if (!Double.isNaN(refineCost) && refineCost <= indexCost
+                && refineCost <= scanCost) {
+            plan = new Plan(this, session, key, strategy, maxErrors, Plan.REFINE,
+                    "previous query '" + refinement.mKey + "' is a prefix", scanCost);
+            plan.mCandidates = refinement.mRows;
+        } else if (indexCost < scanCost) {
+            plan = new Plan(this, session, key, strategy, maxErrors, Plan.INDEX,
+                    "selective keys", scanCost);
+            plan.mLists = copyOf(lists, count);
+        } else {
+            plan = new Plan(this, session, key, strategy, maxErrors, Plan.SCAN,
+                    "unselective keys, most rows are candidates", scanCost);
+        }
+        plan.mIndexable = true;
+        plan.mIndexCost = indexCost;
+        plan.mRefineCost = refineCost;
+        plan.mEstimatedRows = nameRows;
+        plan.mEstimatedNumberRows = numberRows;
+        plan.mKeyStatistics = describeKeys(key);
+        return plan;
+    }
+
+    /**
+     * 执行计划. 计划带有会话时, 精确查询的结果行记入该会话.
+     *
+     * @param plan 由本实例的 {@link #plan(String, T9MatchStrategy, int, Session)} 生成的计划
+     * @return 过滤结果, 与逐行匹配相同
+     * @throws IllegalArgumentException 如果计划不是由本实例生成的
+     */
+    @NonNull
+    public List<Contact> execute(@NonNull Plan plan) {
+        if (plan.mPlanner != this) {
+            throw new IllegalArgumentException("The plan belongs to another planner");
+        }
+
+        if (!plan.mIndexable) {
+            return T9SearchSupport.filter(mContacts, mNumberColumn, mKeyDictionary, plan.mKey,
+                    plan.mStrategy, plan.mMaxErrors);
+        }
+
+        T9PostingList candidates;
+        if (plan.mType == Plan.SCAN) {
+            candidates = null;
+        } else if (plan.mType == Plan.INDEX) {
+            candidates = T9PostingList.intersect(plan.mLists);
+        } else {
+            candidates = plan.mCandidates;
+        }
+
+        T9PostingList.Builder matchedRows = new T9PostingList.Builder();
+        List<Contact> result = T9SearchSupport.filterRows(mContacts, mNumberColumn,
+                mKeyDictionary, plan.mKey, plan.mStrategy, candidates, matchedRows);
+        if (plan.mSession != null) {
+            plan.mSession.setRefinement(this, new Refinement(plan.mKey, matchedRows.build()));
+        }
+        return result;
+    }
+
+    /**
+     * 选择计划并执行, 不使用上一次的结果
+     *
+     * @see #search(String, T9MatchStrategy, int, Session)
+     */
+    @NonNull
+    public List<Contact> search(@Nullable String key, @NonNull T9MatchStrategy strategy,
+                                int maxErrors) {
+        return search(key, strategy, maxErrors, null);
+    }
+
+    /**
+     * 选择计划并执行
+     *
+     * @see #plan(String, T9MatchStrategy, int, Session)
+     * @see #execute(Plan)
+     */
+    @NonNull
+    public List<Contact> search(@Nullable String key, @NonNull T9MatchStrategy strategy,
+                                int maxErrors, @Nullable Session session) {
+        return execute(plan(key, strategy, maxErrors, session));
+    }
+
+    /**
+     * 按各按键在号码中出现的频率(假设相互独立)估计号码中含有查询串的行数
+     */
+    private double estimateNumberRows(String key) {
+        if (mNumberCount == 0 || mNumberChars == 0)
+            return 0;
+
+        final int length = key.length();
+        final double positions = (double) mNumberChars / mNumberCount - length + 1;
+        if (positions <= 0)
+            return 0;
+
+        double p = 1;
+        for (int i = 0; i < length; i++) {
+            final int k = keyIndex(key.charAt(i));
+            p *= k < 0 ? 0 : (double) mNumberKeyCounts[k] / mNumberChars;
+        }
+        // 每个号码至少出现一次的概率
+        final double hit = 1 - Math.exp(-positions * p);
+        return Math.min(mContacts.size(), mNumberCount * hit);
+    }
+
+    /**
+     * @return 查询串中各按键的倒排列表长度
+     */
+    private String describeKeys(String key) {
+        StringBuilder sb = new StringBuilder();
+        final int rows = mContacts.size();
+        int seen = 0;
+        for (int i = 0; i < key.length(); i++) {
+            final char c = key.charAt(i);
+            final int k = keyIndex(c);
+            if (k < 0)
+                continue;
+
+            if (i == 0) {
+                sb.append("initial '").append(c).append("' in ")
+                        .append(mInitialRows[k].size()).append(" rows");
+            }
+            if ((seen & (1 << k)) != 0)
+                continue;
+
+            seen |= 1 << k;
+            final int size = mKeyRows[k].size();
+            sb.append(sb.length() > 0 ? ", '" : "'").append(c).append("' in ").append(size).append(" rows")
+                    .append(String.format(Locale.US, " (%.1f%%)",
+                            rows == 0 ? 0.0 : 100.0 * size / rows));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return 按键在签名中的位, <code>-1</code> - 如果不是T9字符(不参与签名排除)
+     */
+    private static int keyIndex(char c) {
+        final char initial = T9Utils.convertDigitToInitial(c);
+        return T9Utils.isInitial(initial) ? initial - 'C' : -1;
+    }
+
+    private static T9PostingList[] copyOf(T9PostingList[] lists, int count) {
+        T9PostingList[] copy = new T9PostingList[count];
+        System.arraycopy(lists, 0, copy, 0, count);
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return "T9QueryPlanner{" +
+               "size=" + mContacts.size() +
+               ", bytes=" + sizeInBytes() +
+               '}';
+    }
+
+    /**
+     * 上一次精确查询的结果行
+     */
+    private static final class Refinement {
+
+        final String mKey;
+        final T9PostingList mRows;
+
+        Refinement(String key, T9PostingList rows) {
+            mKey = key;
+            mRows = rows;
+        }
+    }
+
+    /**
+     * 一个调用方(如一个输入框)的连续查询, 保存上一次精确查询的结果行供 {@link Plan#REFINE} 使用.
+     * 结果行属于执行查询的计划器, 换用其他计划器(如新的快照)时不再使用.
+     * 不是线程安全的, 每个调用方使用各自的实例.
+     */
+    public static final class Session {
+
+        private T9QueryPlanner mPlanner;
+        private Refinement mRefinement;
+
+        /**
+         * @return 上一次的结果, <code>null</code> - 如果没有或不属于该计划器
+         */
+        @Nullable
+        Refinement refinement(@NonNull T9QueryPlanner planner) {
+            return mPlanner == planner ? mRefinement : null;
+        }
+
+        void setRefinement(@NonNull T9QueryPlanner planner, @NonNull Refinement refinement) {
+            mPlanner = planner;
+            mRefinement = refinement;
+        }
+
+        /**
+         * 丢弃上一次的结果
+         */
+        public void reset() {
+            mPlanner = null;
+            mRefinement = null;
+        }
+    }
+
+    /**
+     * 执行计划
+     */
+    public static final class Plan {
+
+        /**
+         * 逐行匹配全部联系人
+         */
+        public static final int SCAN = 0;
+
+        /**
+         * 以倒排列表求交得到候选行
+         */
+        public static final int INDEX = 1;
+
+        /**
+         * 跳过名称匹配, 只匹配号码命中的行
+         */
+        public static final int NUMBERS_ONLY = 2;
+
+        /**
+         * 只匹配上一次查询的结果行
+         */
+        public static final int REFINE = 3;
+
+        private static final String[] NAMES = {"SCAN", "INDEX", "NUMBERS_ONLY", "REFINE"};
+
+        final T9QueryPlanner mPlanner;
+        final Session mSession;
+        final String mKey;
+        final T9MatchStrategy mStrategy;
+        final int mMaxErrors;
+        final int mType;
+        final String mReason;
+        final double mScanCost;
+
+        double mIndexCost = Double.NaN;
+        double mRefineCost = Double.NaN;
+
+        /**
+         * 内置策略的精确查询, 可以使用索引及细化, 结果行记入缓存
+         */
+        boolean mIndexable;
+
+        /**
+         * 估计的名称候选行数, 只对 {@link #mIndexable} 的计划有效
+         */
+        double mEstimatedRows;
+
+        /**
+         * 估计的号码命中行数
+         */
+        double mEstimatedNumberRows;
+        String mKeyStatistics;
+
+        T9PostingList[] mLists;
+        T9PostingList mCandidates;
+
+        Plan(T9QueryPlanner planner, Session session, String key, T9MatchStrategy strategy,
+             int maxErrors, int type, String reason, double scanCost) {
+            mPlanner = planner;
+            mSession = session;
+            mKey = key;
+            mStrategy = strategy;
+            mMaxErrors = maxErrors;
+            mType = type;
+            mReason = reason;
+            mScanCost = scanCost;
+        }
+
+        /**
+         * @return {@link #SCAN}, {@link #INDEX}, {@link #NUMBERS_ONLY} 或 {@link #REFINE}
+         */
+        public int type() {
+            return mType;
+        }
+
+        /**
+         * @return 选择该计划的原因
+         */
+        @NonNull
+        public String reason() {
+            return mReason;
+        }
+
+        /**
+         * @return 可读的计划说明: 选择的计划及原因, 各按键的统计, 各计划的估计代价
+         */
+        @NonNull
+        public String explain() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("plan: ").append(NAMES[mType]).append(" (").append(mReason).append(")\n");
+            sb.append("query: '").append(mKey).append("', maxErrors=").append(mMaxErrors)
+                    .append(", rows=").append(mPlanner.size()).append('\n');
+            if (mKeyStatistics != null) {
+                sb.append("keys: ").append(mKeyStatistics).append('\n');
+            }
+            if (mIndexable) {
+                sb.append(String.format(Locale.US,
+                        "estimated candidates: names=%.0f, numbers=%.0f\n",
+                        mEstimatedRows, mEstimatedNumberRows));
+            }
+            sb.append(String.format(Locale.US, "cost: scan=%.0f", mScanCost));
+            if (!Double.isNaN(mIndexCost)) {
+                sb.append(String.format(Locale.US, ", index=%.0f", mIndexCost));
+            }
+            if (!Double.isNaN(mRefineCost)) {
+                sb.append(String.format(Locale.US, ", refine=%.0f", mRefineCost));
+            }
+            return sb.toString();
+        }
+
+        @Override
+        public String toString() {
+            return "Plan{" +
+                   NAMES[mType] +
+                   ", mKey='" + mKey + '\'' +
+                   ", mReason='" + mReason + '\'' +
+                   '}';
+        }
+    }
+
+}
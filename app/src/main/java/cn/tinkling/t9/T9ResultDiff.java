@@ -0,0 +1,288 @@
+package cn.tinkling.t9;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.List;
+
+import cn.tinkling.t9search.sample.Contact;
+
+/**
+ * 相邻两次结果列表的差异, 以联系人的 {@link Contact#id} 对应新旧列表中的行, 耗时 O(n).
+ * <p>
+ * 新列表的每一行标记为:
+ * <ul>
+ * <li>{@link #FLAG_INSERTED}: 旧列表中没有该联系人</li>
+ * <li>{@link #FLAG_MOVED}: 相对其他保留的行顺序改变. 从前往后扫描新列表, 旧位置小于之前保留的
+ * 最大旧位置的行视为移动, 其余保留的行在新旧列表中顺序一致(不保证移动的行数最少)</li>
+ * <li>{@link #FLAG_CHANGED}: 显示的内容(名称, 号码, 附加字段及其高亮)改变, 见
+ * {@link #sameContent(Contact, Contact)}</li>
+ * </ul>
+ * 未出现在新列表中的旧行由 {@link #removedPositions()} 给出. 同一列表中 id 重复的行不作对应,
+ * 视为删除及插入. 列表适配器可据此只重新绑定改变的行, 没有任何改变时({@link #isEmpty()})
+ * 不必刷新.
+ */
+public final class T9ResultDiff {
+
+    public static final int FLAG_CHANGED = 1;
+    public static final int FLAG_MOVED = 1 << 1;
+    public static final int FLAG_INSERTED = 1 << 2;
+
+    private static final int NO_POSITION = -1;
+
+    /**
+     * id 在旧列表中出现多次
+     */
+    private static final int DUPLICATE = -2;
+
+    private final int mOldSize;
+
+    /**
+     * 新列表每一行在旧列表中的位置, {@link #NO_POSITION} - 插入
+     */
+    private final int[] mOldPositions;
+    private final int[] mFlags;
+    private final int[] mRemovedPositions;
+
+    private final int mInsertCount;
+    private final int mMoveCount;
+    private final int mChangeCount;
+
+    private T9ResultDiff(int oldSize, int[] oldPositions, int[] flags, int[] removedPositions,
+                         int insertCount, int moveCount, int changeCount) {
+        mOldSize = oldSize;
+        mOldPositions = oldPositions;
+        mFlags = flags;
+        mRemovedPositions = removedPositions;
+        mInsertCount = insertCount;
+        mMoveCount = moveCount;
+        mChangeCount = changeCount;
+    }
+
+    /**
+     * 计算差异
+     *
+     * @param oldList 旧的结果, null 视为空列表
+     * @param newList 新的结果, null 视为空列表
+     * @return 差异
+     */
+    @NonNull
+    public static T9ResultDiff compute(@Nullable List<Contact> oldList,
+                                       @Nullable List<Contact> newList) {
+        final int oldSize = oldList != null ? oldList.size() : 0;
+        final int newSize = newList != null ? newList.size() : 0;
+
+        IdTable oldIds = new IdTable(oldSize);
+        for (int i = 0; i < oldSize; i++) {
+            oldIds.put(oldList.get(i).id, i);
+        }
+
+        final boolean[] kept = new boolean[oldSize];
+        final int[] oldPositions = new int[newSize];
+        final int[] flags = new int[newSize];
+        int insertCount = 0;
+        int moveCount = 0;
+        int changeCount = 0;
+        int lastKept = -1;
+        for (int i = 0; i < newSize; i++) {
+            Contact contact = newList.get(i);
+            int oldPosition = oldIds.get(contact.id);
+            if (oldPosition >= 0 && kept[oldPosition]) {
+                // 新列表中 id 重复
+                oldPosition = NO_POSITION;
+            }
+
+            if (oldPosition < 0) {
+                oldPositions[i] = NO_POSITION;
+                flags[i] = FLAG_INSERTED;
+                insertCount++;
+                continue;
+            }
+
+            kept[oldPosition] = true;
+            oldPositions[i] = oldPosition;
+            if (oldPosition < lastKept) {
+                flags[i] |= FLAG_MOVED;
+                moveCount++;
+            } else {
+                lastKept = oldPosition;
+            }
+            if (!sameContent(oldList.get(oldPosition), contact)) {
+                flags[i] |= FLAG_CHANGED;
+                changeCount++;
+            }
+        }
+
+        int removeCount = 0;
+        for (int i = 0; i < oldSize; i++) {
+            if (!kept[i])
+                removeCount++;
+        }
+        final int[] removedPositions = new int[removeCount];
+        for (int i = 0, r = 0; i < oldSize; i++) {
+            if (!kept[i])
+                removedPositions[r++] = i;
+        }
+
+        return new T9ResultDiff(oldSize, oldPositions, flags, removedPositions, insertCount,
+                moveCount, changeCount);
+    }
+
+    /**
+     * 同一联系人显示的内容是否相同: 名称, 显示的号码, 匹配的附加字段及三者的匹配信息
+     */
+    public static boolean sameContent(@NonNull Contact left, @NonNull Contact right) {
+        return left.id == right.id
+               && left.matchedNumber == right.matchedNumber
+               && left.matchedExtra == right.matchedExtra
+               && T9Utils.equals(left.name, right.name)
+               && T9Utils.equals(left.phoneNumber, right.phoneNumber)
+               && (left.matchedExtra < 0
+                   || T9Utils.equals(left.extras[left.matchedExtra],
+                   right.extras[right.matchedExtra]))
+               && sameMatch(left.nameMatchInfo, right.nameMatchInfo)
+               && sameMatch(left.phoneNumberMatchInfo, right.phoneNumberMatchInfo)
+               && sameMatch(left.extraMatchInfo, right.extraMatchInfo);
+    }
+
+    /**
+     * 匹配信息(各段的起始位置, 长度及编辑距离)是否相同. null 与未匹配相同.
+     */
+    private static boolean sameMatch(@Nullable T9MatchInfo left, @Nullable T9MatchInfo right) {
+        while (left != null && left.found()) {
+            if (right == null || !right.found() || left.start() != right.start()
+                || left.length() != right.length() || left.errors() != right.errors())
+                return false;
+
+            left = left.next();
+            right = right.next();
+        }
+        return right == null || !right.found();
+    }
+
+    /**
+     * @return 旧列表的行数
+     */
+    public int oldSize() {
+        return mOldSize;
+    }
+
+    /**
+     * @return 新列表的行数
+     */
+    public int newSize() {
+        return mFlags.length;
+    }
+
+    /**
+     * @return 新列表中该行的标记, <code>0</code> - 未改变
+     */
+    public int flags(int newPosition) {
+        return mFlags[newPosition];
+    }
+
+    /**
+     * @return 新列表中该行在旧列表中的位置, <code>-1</code> - 如果是插入的行
+     */
+    public int oldPosition(int newPosition) {
+        return mOldPositions[newPosition];
+    }
+
+    /**
+     * @return 删除的行在旧列表中的位置, 升序
+     */
+    @NonNull
+    public int[] removedPositions() {
+        return mRemovedPositions.clone();
+    }
+
+    public int insertCount() {
+        return mInsertCount;
+    }
+
+    public int removeCount() {
+        return mRemovedPositions.length;
+    }
+
+    public int moveCount() {
+        return mMoveCount;
+    }
+
+    public int changeCount() {
+        return mChangeCount;
+    }
+
+    /**
+     * @return <code>true</code> - 如果两个列表显示的内容完全相同
+     */
+    public boolean isEmpty() {
+        return mInsertCount == 0 && mRemovedPositions.length == 0 && mMoveCount == 0
+               && mChangeCount == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "T9ResultDiff{" +
+               "oldSize=" + mOldSize +
+               ", newSize=" + mFlags.length +
+               ", inserted=" + mInsertCount +
+               ", removed=" + mRemovedPositions.length +
+               ", moved=" + mMoveCount +
+               ", changed=" + mChangeCount +
+               '}';
+    }
+
+    /**
+     * id 到旧位置的开放寻址散列表, 不装箱
+     */
+    private static final class IdTable {
+
+        private final long[] mIds;
+        private final int[] mPositions;
+        private final int mMask;
+
+        IdTable(int size) {
+            int capacity = 2;
+            while (capacity < size * 2) {
+                capacity <<= 1;
+            }
+            mIds = new long[capacity];
+            mPositions = new int[capacity];
+            Arrays.fill(mPositions, NO_POSITION);
+            mMask = capacity - 1;
+        }
+
+        void put(long id, int position) {
+            int slot = slot(id);
+            while (mPositions[slot] != NO_POSITION) {
+                if (mIds[slot] == id) {
+                    mPositions[slot] = DUPLICATE;
+                    return;
+                }
+                slot = (slot + 1) & mMask;
+            }
+            mIds[slot] = id;
+            mPositions[slot] = position;
+        }
+
+        /**
+         * @return 旧位置, 负数 - 如果不存在或重复
+         */
+        int get(long id) {
+            int slot = slot(id);
+            while (mPositions[slot] != NO_POSITION) {
+                if (mIds[slot] == id)
+                    return mPositions[slot];
+                slot = (slot + 1) & mMask;
+            }
+            return NO_POSITION;
+        }
+
+        private int slot(long id) {
+            long h = id * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mMask;
+        }
+    }
+
+}
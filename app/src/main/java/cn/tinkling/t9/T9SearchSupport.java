@@ -2,10 +2,10 @@ package cn.tinkling.t9;
 
 import android.text.Spannable;
 import android.text.SpannableStringBuilder;
-import android.text.TextUtils;
 import android.text.style.ForegroundColorSpan;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.core.util.Pools;
 
 import net.sourceforge.pinyin4j.PinyinHelper;
@@ -17,15 +17,21 @@ import net.sourceforge.pinyin4j.format.exception.BadHanyuPinyinOutputFormatCombi
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import cn.tinkling.t9.PinyinProvider;
+import cn.tinkling.t9.T9FuzzyQuery;
+import cn.tinkling.t9.T9KeyCache;
 import cn.tinkling.t9.T9MatchInfo;
-import cn.tinkling.t9.T9Matcher;
+import cn.tinkling.t9.T9NumberColumn;
+import cn.tinkling.t9.T9Query;
 import cn.tinkling.t9.T9Utils;
 import cn.tinkling.t9search.sample.Contact;
 
@@ -36,6 +42,36 @@ public final class T9SearchSupport {
 
     private static final Pools.SynchronizedPool<Set<String>> SET_POOL;
 
+    /**
+     * 排名层级: 名称从开头精确匹配
+     */
+    public static final int TIER_NAME_PREFIX = 0;
+
+    /**
+     * 排名层级: 其余精确匹配(名称, 号码, 附加字段)
+     */
+    public static final int TIER_EXACT = 1;
+
+    /**
+     * 排名层级: 模糊匹配
+     */
+    public static final int TIER_FUZZY = 2;
+
+    /**
+     * 每匹配这么多行检查一次查询是否被取消
+     */
+    private static final int CANCEL_CHECK_ROWS = 256;
+
+    /**
+     * 当前线程上执行的查询的取消标志, 只由 {@link T9ShardedIndex} 的分片查询设置.
+     * 其他调用方的过滤不会被取消.
+     */
+    private static final ThreadLocal<AtomicBoolean> CANCELLATION = new ThreadLocal<>();
+
+    private static final int KEY_CACHE_MAX_CHARS = 4096;
+    private static final int KEY_CACHE_MAX_NAMES = 2048;
+    private static final T9KeyCache KEY_CACHE;
+
     static {
         FORMAT = new HanyuPinyinOutputFormat();
         FORMAT.setCaseType(HanyuPinyinCaseType.UPPERCASE);
@@ -70,6 +106,24 @@ public final class T9SearchSupport {
                 return null;
             }
         };
+
+        KEY_CACHE = new T9KeyCache(PINYIN_PROVIDER, KeypadLayout.ALL, KEY_CACHE_MAX_CHARS,
+                KEY_CACHE_MAX_NAMES);
+    }
+
+    /**
+     * 流式过滤的结果回调
+     *
+     * @see #filter(List, T9NumberColumn, String, T9MatchStrategy, int, ResultCallback)
+     */
+    public interface ResultCallback {
+
+        /**
+         * @param results 一个排名层级的全部结果, 已排序
+         * @param tier    排名层级, {@link #TIER_NAME_PREFIX}, {@link #TIER_EXACT} 或 {@link #TIER_FUZZY}
+         * @return <code>false</code> - 停止过滤, 不再交付之后的层级
+         */
+        boolean onResults(@NonNull List<Contact> results, int tier);
     }
 
     private T9SearchSupport() {
@@ -83,32 +137,698 @@ public final class T9SearchSupport {
      */
     @NonNull
     public static String buildT9Key(String input) {
-        return T9Utils.buildT9Key(input, PINYIN_PROVIDER);
+        return KEY_CACHE.buildT9Key(input);
+    }
+
+    /**
+     * 加载拼音数据(pinyin4j 在首次查询读音时加载整张资源表), 不经过T9键缓存
+     */
+    static void preloadPinyin() {
+        for (char c = '\u4e00'; c < '\u4e00' + 16; c++) {
+            T9Utils.getCharT9Keys(c, PINYIN_PROVIDER);
+        }
+    }
+
+    /**
+     * @return T9键缓存, 可用于查看命中率
+     */
+    @NonNull
+    public static T9KeyCache getKeyCache() {
+        return KEY_CACHE;
+    }
+
+    /**
+     * @return 拼音提供者(pinyin4j), 不经过T9键缓存
+     */
+    @NonNull
+    static PinyinProvider getPinyinProvider() {
+        return PINYIN_PROVIDER;
     }
 
     /**
      * 过虑
      */
     public static List<Contact> filter(List<Contact> contacts, String key) {
+        return filter(contacts, key, T9MatchStrategy.RECURSIVE);
+    }
+
+    /**
+     * 过虑
+     *
+     * @param strategy 名称匹配策略
+     */
+    public static List<Contact> filter(List<Contact> contacts, String key,
+                                       @NonNull T9MatchStrategy strategy) {
+        return filter(contacts, key, strategy, 0);
+    }
+
+    /**
+     * 过虑, 精确匹配失败时进行模糊匹配. 模糊匹配的结果排在精确匹配之后.
+     *
+     * @param strategy  名称匹配策略
+     * @param maxErrors 最大编辑距离, [0, {@link T9FuzzyQuery#MAX_ERRORS}], <code>0</code> - 不进行模糊匹配
+     * @throws IllegalArgumentException 如果 maxErrors 超出范围
+     * @see T9FuzzyQuery
+     */
+    public static List<Contact> filter(List<Contact> contacts, String key,
+                                       @NonNull T9MatchStrategy strategy, int maxErrors) {
+        return filter(contacts, null, key, strategy, maxErrors);
+    }
+
+    /**
+     * 生成号码列存储, 行号与 contacts 的下标一致, 每行包含该联系人的全部号码
+     *
+     * @see #filter(List, T9NumberColumn, String, T9MatchStrategy, int)
+     */
+    @NonNull
+    public static T9NumberColumn buildNumberColumn(@NonNull List<Contact> contacts) {
+        List<String[]> numbers = new ArrayList<>(contacts.size());
+        for (Contact contact : contacts) {
+            numbers.add(contact.phoneNumbers);
+        }
+        return T9NumberColumn.buildMultiValued(numbers);
+    }
+
+    /**
+     * 生成来电号码索引, 行号与 contacts 的下标一致
+     */
+    @NonNull
+    public static T9CallerIdIndex buildCallerIdIndex(@NonNull List<Contact> contacts) {
+        List<String[]> numbers = new ArrayList<>(contacts.size());
+        for (Contact contact : contacts) {
+            numbers.add(contact.phoneNumbers);
+        }
+        return T9CallerIdIndex.build(numbers);
+    }
+
+    /**
+     * 生成T9键字典, 行号与 contacts 的下标一致. 不修改联系人; 带字典过滤时名称按字典中该行的键
+     * 匹配, 相同的键只匹配一次.
+     *
+     * @see T9KeyDictionary
+     */
+    @NonNull
+    static T9KeyDictionary buildKeyDictionary(@NonNull List<Contact> contacts) {
+        List<String> keys = new ArrayList<>(contacts.size());
+        for (Contact contact : contacts) {
+            keys.add(contact.t9Key);
+        }
+        return T9KeyDictionary.build(keys);
+    }
+
+    /**
+     * @throws IllegalArgumentException 如果 maxErrors 不在 [0, {@link T9FuzzyQuery#MAX_ERRORS}] 内
+     */
+    static void checkMaxErrors(int maxErrors) {
+        if (maxErrors < 0 || maxErrors > T9FuzzyQuery.MAX_ERRORS) {
+            throw new IllegalArgumentException(
+                    "maxErrors must be in [0, " + T9FuzzyQuery.MAX_ERRORS + "]: " + maxErrors);
+        }
+    }
+
+    /**
+     * 设置当前线程之后开始的过滤的取消标志. 标志置位后过滤抛出 {@link CancellationException}.
+     *
+     * @param cancelled 取消标志, null - 清除
+     * @see T9ShardedIndex
+     */
+    static void setCancellation(@Nullable AtomicBoolean cancelled) {
+        if (cancelled == null) {
+            CANCELLATION.remove();
+        } else {
+            CANCELLATION.set(cancelled);
+        }
+    }
+
+    /**
+     * 过虑. 名称, 全部号码及附加字段各匹配一次, 每个联系人最多产生一条结果.
+     *
+     * @param numberColumn 由 {@link #buildNumberColumn(List)} 生成的号码列存储, 为 null 时逐个匹配号码
+     * @param strategy     名称匹配策略
+     * @param maxErrors    最大编辑距离, [0, {@link T9FuzzyQuery#MAX_ERRORS}], <code>0</code> - 不进行模糊匹配
+     * @throws IllegalArgumentException 如果 maxErrors 超出范围
+     */
+    public static List<Contact> filter(List<Contact> contacts,
+                                       @Nullable T9NumberColumn numberColumn,
+                                       String key,
+                                       @NonNull T9MatchStrategy strategy,
+                                       int maxErrors) {
+        return filter(contacts, numberColumn, null, key, strategy, maxErrors);
+    }
+
+    /**
+     * 过虑
+     *
+     * @param keyDictionary 由 {@link #buildKeyDictionary(List)} 生成的T9键字典, 不为 null 时
+     *                      每个不同的键只匹配一次
+     * @see #filter(List, T9NumberColumn, String, T9MatchStrategy, int)
+     */
+    static List<Contact> filter(List<Contact> contacts,
+                                @Nullable T9NumberColumn numberColumn,
+                                @Nullable T9KeyDictionary keyDictionary,
+                                String key,
+                                @NonNull T9MatchStrategy strategy,
+                                int maxErrors) {
+        final ArrayList<Contact> filtered = new ArrayList<>();
+        filter(contacts, numberColumn, keyDictionary, key, strategy, maxErrors,
+                new ResultCallback() {
+                    @Override
+                    public boolean onResults(@NonNull List<Contact> results, int tier) {
+                        filtered.addAll(results);
+                        return true;
+                    }
+                });
+        return filtered;
+    }
+
+    /**
+     * 流式过滤: 按排名层级分批回调, 每批在确定不会被之后的结果排到前面时立即交付.
+     * <p>
+     * <ol>
+     * <li>{@link #TIER_NAME_PREFIX}: 先只检查各候选项的第一个单词(每个联系人几次字符比较),
+     * 仅对可能从名称开头匹配的联系人完整匹配, 不等待全量扫描</li>
+     * <li>{@link #TIER_EXACT}: 全量扫描其余联系人的精确匹配</li>
+     * <li>{@link #TIER_FUZZY}: 无精确匹配的联系人进行模糊匹配</li>
+     * </ol>
+     * 各批次内已排序, 依次拼接的结果与 {@link #filter(List, T9NumberColumn, String,
+     * T9MatchStrategy, int)} 相同. 空的层级不回调. 在调用线程中同步执行.
+     *
+     * @param numberColumn 由 {@link #buildNumberColumn(List)} 生成的号码列存储, 为 null 时逐个匹配号码
+     * @param strategy     名称匹配策略
+     * @param maxErrors    最大编辑距离, [0, {@link T9FuzzyQuery#MAX_ERRORS}], <code>0</code> - 不进行模糊匹配
+     * @param callback     结果回调, 返回 <code>false</code> 时停止过滤
+     * @throws IllegalArgumentException 如果 maxErrors 超出范围
+     */
+    public static void filter(List<Contact> contacts,
+                              @Nullable T9NumberColumn numberColumn,
+                              String key,
+                              @NonNull T9MatchStrategy strategy,
+                              int maxErrors,
+                              @NonNull ResultCallback callback) {
+        filter(contacts, numberColumn, null, key, strategy, maxErrors, callback);
+    }
+
+    /**
+     * 流式过滤
+     *
+     * @param keyDictionary 由 {@link #buildKeyDictionary(List)} 生成的T9键字典, 不为 null 时
+     *                      每个不同的键只匹配一次
+     * @see #filter(List, T9NumberColumn, String, T9MatchStrategy, int, ResultCallback)
+     */
+    static void filter(List<Contact> contacts,
+                       @Nullable T9NumberColumn numberColumn,
+                       @Nullable T9KeyDictionary keyDictionary,
+                       String key,
+                       @NonNull T9MatchStrategy strategy,
+                       int maxErrors,
+                       @NonNull ResultCallback callback) {
+        checkMaxErrors(maxErrors);
+        if (contacts == null || contacts.isEmpty())
+            return;
+
+        if (numberColumn != null && numberColumn.size() != contacts.size()) {
+            numberColumn = null;
+        }
+        final ContactMatcher matcher = new ContactMatcher(key, strategy, maxErrors,
+                checkKeyDictionary(keyDictionary, contacts));
+        final int size = contacts.size();
+
+        // 名称开头匹配必然排在最前(无错误, 起始位置为 0), 只需完整匹配首字母相符的联系人.
+        // 其中不从开头匹配的结果按行号顺序暂存, 全量扫描时直接使用
+        BitSet delivered = new BitSet(size);
+        BitSet deferred = new BitSet(size);
+        List<Contact> deferredResults = new ArrayList<>();
+        ArrayList<Contact> tier = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            Contact contact = contacts.get(i);
+            if (!matcher.mQuery.mayMatchNameAtStart(matcher.nameKey(contact, i)))
+                continue;
+
+            Contact c = matcher.matchExact(contact, null, i);
+            if (c != null && c.nameMatchInfo.found() && c.nameMatchInfo.start() == 0) {
+                tier.add(c);
+                delivered.set(i);
+            } else {
+                deferredResults.add(c);
+                deferred.set(i);
+            }
+        }
+        if (!deliver(callback, tier, TIER_NAME_PREFIX))
+            return;
+
+        matcher.searchNumbers(numberColumn);
+        BitSet unmatched = matcher.mFuzzyQuery != null ? new BitSet(size) : null;
+        tier = new ArrayList<>();
+        int next = 0;
+        for (int i = 0; i < size; i++) {
+            if (delivered.get(i))
+                continue;
+
+            Contact contact = contacts.get(i);
+            Contact c = deferred.get(i) ? deferredResults.get(next++)
+                    : matcher.matchExact(contact, numberColumn, i);
+            if (c != null) {
+                tier.add(c);
+            } else if (unmatched != null) {
+                unmatched.set(i);
+            }
+        }
+        if (!deliver(callback, tier, TIER_EXACT) || unmatched == null)
+            return;
+
+        tier = new ArrayList<>();
+        for (int i = unmatched.nextSetBit(0); i >= 0; i = unmatched.nextSetBit(i + 1)) {
+            Contact c = matcher.matchFuzzy(contacts.get(i), i);
+            if (c != null) {
+                tier.add(c);
+            }
+        }
+        deliver(callback, tier, TIER_FUZZY);
+    }
+
+    /**
+     * @return 行数与联系人列表不一致时为 null
+     */
+    @Nullable
+    private static T9KeyDictionary checkKeyDictionary(@Nullable T9KeyDictionary keyDictionary,
+                                                      @NonNull List<Contact> contacts) {
+        return keyDictionary != null && keyDictionary.rowCount() == contacts.size()
+                ? keyDictionary : null;
+    }
+
+    private static boolean deliver(ResultCallback callback, List<Contact> tier, int index) {
+        if (tier.isEmpty())
+            return true;
+
+        Collections.sort(tier, COMPARATOR);
+        return callback.onResults(tier, index);
+    }
+
+    /**
+     * 只匹配候选行的精确过滤: 名称及附加字段只在 nameRows 中匹配, 其余行只匹配号码(有号码列存储时
+     * 由列存储一次求出). 结果与 maxErrors 为 0 的
+     * {@link #filter(List, T9NumberColumn, String, T9MatchStrategy, int)} 相同.
+     *
+     * @param numberColumn  号码列存储, 行数须与 contacts 相同; 为 null 时逐个匹配号码
+     * @param keyDictionary T9键字典, 可以为 null
+     * @param nameRows      名称或附加字段可能匹配的行, 须包含全部实际匹配的行. null - 全部行
+     * @param matchedRows   不为 null 时依次加入有结果的行号
+     */
+    @NonNull
+    static List<Contact> filterRows(@NonNull List<Contact> contacts,
+                                    @Nullable T9NumberColumn numberColumn,
+                                    @Nullable T9KeyDictionary keyDictionary,
+                                    String key,
+                                    @NonNull T9MatchStrategy strategy,
+                                    @Nullable T9PostingList nameRows,
+                                    @Nullable T9PostingList.Builder matchedRows) {
+        final ContactMatcher matcher = new ContactMatcher(key, strategy, 0,
+                checkKeyDictionary(keyDictionary, contacts));
+        matcher.searchNumbers(numberColumn);
+        final int[] numberStarts = matcher.mNumberStarts;
+
         ArrayList<Contact> filtered = new ArrayList<>();
+        T9PostingList.Cursor cursor = nameRows != null ? nameRows.cursor() : null;
+        int nameRow = cursor != null ? cursor.next() : 0;
+        final int size = contacts.size();
+        for (int row = 0; row < size; row++) {
+            if (cursor == null || row == nameRow) {
+                if (cursor != null)
+                    nameRow = cursor.next();
+            } else if (!hasNumberMatch(contacts.get(row), numberColumn, numberStarts, row,
+                    matcher.mQuery)) {
+                continue;
+            }
+
+            Contact c = matcher.matchExact(contacts.get(row), numberColumn, row);
+            if (c != null) {
+                filtered.add(c);
+                if (matchedRows != null) {
+                    matchedRows.add(row);
+                }
+            }
+        }
+
+        Collections.sort(filtered, COMPARATOR);
+        return filtered;
+    }
+
+    private static boolean hasNumberMatch(Contact contact, T9NumberColumn numberColumn,
+                                          int[] numberStarts, int row, T9Query query) {
+        if (numberStarts == null) {
+            for (String number : contact.phoneNumbers) {
+                if (query.matchesNumber(number).found())
+                    return true;
+            }
+            return false;
+        }
+
+        final int first = numberColumn.firstValue(row);
+        final int end = first + numberColumn.valueCount(row);
+        for (int v = first; v < end; v++) {
+            if (numberStarts[v] >= 0)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * 批量过滤: 只遍历一次联系人, 每个联系人依次与全部查询匹配(此时其数据仍在缓存中),
+     * 结果按查询分别收集. 每个查询的结果与 {@link #filter(List, T9NumberColumn, String,
+     * T9MatchStrategy, int)} 相同.
+     *
+     * @param numberColumn 由 {@link #buildNumberColumn(List)} 生成的号码列存储, 为 null 时逐个匹配号码
+     * @param keys         查询串
+     * @param strategy     名称匹配策略
+     * @param maxErrors    最大编辑距离, [0, {@link T9FuzzyQuery#MAX_ERRORS}], <code>0</code> - 不进行模糊匹配
+     * @return 各查询的结果, 顺序与 keys 相同
+     * @throws IllegalArgumentException 如果 maxErrors 超出范围
+     */
+    @NonNull
+    public static List<List<Contact>> filterBatch(List<Contact> contacts,
+                                                  @Nullable T9NumberColumn numberColumn,
+                                                  @NonNull List<String> keys,
+                                                  @NonNull T9MatchStrategy strategy,
+                                                  int maxErrors) {
+        return filterBatch(contacts, numberColumn, null, keys, strategy, maxErrors);
+    }
+
+    /**
+     * 批量过滤
+     *
+     * @param keyDictionary 由 {@link #buildKeyDictionary(List)} 生成的T9键字典, 不为 null 时
+     *                      每个查询对每个不同的键只匹配一次
+     * @see #filterBatch(List, T9NumberColumn, List, T9MatchStrategy, int)
+     */
+    @NonNull
+    static List<List<Contact>> filterBatch(List<Contact> contacts,
+                                           @Nullable T9NumberColumn numberColumn,
+                                           @Nullable T9KeyDictionary keyDictionary,
+                                           @NonNull List<String> keys,
+                                           @NonNull T9MatchStrategy strategy,
+                                           int maxErrors) {
+        checkMaxErrors(maxErrors);
+        final int count = keys.size();
+        List<List<Contact>> results = new ArrayList<>(count);
+        for (int q = 0; q < count; q++) {
+            results.add(new ArrayList<Contact>());
+        }
+        if (contacts == null || contacts.isEmpty() || count == 0)
+            return results;
+
+        if (numberColumn != null && numberColumn.size() != contacts.size()) {
+            numberColumn = null;
+        }
+        keyDictionary = checkKeyDictionary(keyDictionary, contacts);
+        final ContactMatcher[] matchers = new ContactMatcher[count];
+        boolean fuzzy = false;
+        for (int q = 0; q < count; q++) {
+            matchers[q] = new ContactMatcher(keys.get(q), strategy, maxErrors, keyDictionary);
+            matchers[q].searchNumbers(numberColumn);
+            fuzzy |= matchers[q].mFuzzyQuery != null;
+        }
 
-        if (contacts != null && contacts.size() > 0) {
-            for (Contact contact : contacts) {
-                T9MatchInfo nameMatch = T9Matcher.matches(contact.t9Key, key);
-                T9MatchInfo numberMatch = T9Matcher.matchesNumber(contact.phoneNumber, key);
+        // 精确匹配的 (行, 查询), 模糊匹配只处理其余的组合
+        final int size = contacts.size();
+        final BitSet matched = fuzzy ? new BitSet(size * count) : null;
+        for (int i = 0; i < size; i++) {
+            Contact contact = contacts.get(i);
+            for (int q = 0; q < count; q++) {
+                Contact c = matchers[q].matchExact(contact, numberColumn, i);
+                if (c != null) {
+                    results.get(q).add(c);
+                    if (matched != null) {
+                        matched.set(i * count + q);
+                    }
+                }
+            }
+        }
 
-                if (nameMatch.found() || numberMatch.found()) {
-                    Contact c = new Contact(contact);
-                    c.nameMatchInfo = nameMatch;
-                    c.phoneNumberMatchInfo = numberMatch;
-                    filtered.add(c);
+        List<List<Contact>> fuzzyResults = new ArrayList<>(fuzzy ? count : 0);
+        if (fuzzy) {
+            for (int q = 0; q < count; q++) {
+                fuzzyResults.add(new ArrayList<Contact>());
+            }
+            for (int i = 0; i < size; i++) {
+                Contact contact = contacts.get(i);
+                for (int q = 0; q < count; q++) {
+                    if (matchers[q].mFuzzyQuery == null || matched.get(i * count + q))
+                        continue;
+
+                    Contact c = matchers[q].matchFuzzy(contact, i);
+                    if (c != null) {
+                        fuzzyResults.get(q).add(c);
+                    }
                 }
             }
+        }
 
-            Collections.sort(filtered, COMPARATOR);
+        for (int q = 0; q < count; q++) {
+            List<Contact> result = results.get(q);
+            Collections.sort(result, COMPARATOR);
+            if (fuzzy) {
+                List<Contact> fuzzyResult = fuzzyResults.get(q);
+                Collections.sort(fuzzyResult, COMPARATOR);
+                result.addAll(fuzzyResult);
+            }
         }
+        return results;
+    }
 
-        return filtered;
+    /**
+     * 单次过滤的查询状态
+     */
+    private static final class ContactMatcher {
+
+        final String mKey;
+        final T9MatchStrategy mStrategy;
+        final T9Query mQuery;
+        final T9FuzzyQuery mFuzzyQuery;
+        final int mLength;
+
+        /**
+         * 内置策略的匹配结果相同, 可先以签名排除; 其他策略的语义未知, 不排除
+         */
+        final boolean mUseSignature;
+        int[] mNumberStarts;
+        /**
+         * 构造时取自当前线程, null - 不可取消
+         */
+        @Nullable
+        private final AtomicBoolean mCancelled;
+        private int mMatchedRows;
+
+        /**
+         * T9键字典, 名称的匹配结果按键 id 缓存, 共享同一个键的行只匹配一次.
+         * {@link T9MatchStrategy#RECURSIVE} 的匹配结果是第一个匹配的候选项的结果, 再按候选项 id 缓存
+         */
+        final T9KeyDictionary mKeyDictionary;
+        private T9MatchInfo[] mKeyMatches;
+        private T9MatchInfo[] mAlternativeMatches;
+        private T9MatchInfo[] mFuzzyKeyMatches;
+
+        ContactMatcher(String key, T9MatchStrategy strategy, int maxErrors,
+                       @Nullable T9KeyDictionary keyDictionary) {
+            mKey = key;
+            mStrategy = strategy;
+            mQuery = T9Query.compile(key);
+            mFuzzyQuery = maxErrors > 0 ? T9FuzzyQuery.compile(key, maxErrors) : null;
+            mLength = mQuery.constraint().length();
+            mUseSignature = strategy == T9MatchStrategy.RECURSIVE
+                    || strategy == T9MatchStrategy.BIT_PARALLEL;
+            mKeyDictionary = keyDictionary;
+            mCancelled = CANCELLATION.get();
+        }
+
+        void searchNumbers(@Nullable T9NumberColumn numberColumn) {
+            mNumberStarts = numberColumn != null && T9NumberColumn.isSearchable(mQuery.constraint())
+                    ? numberColumn.search(mKey) : null;
+        }
+
+        /**
+         * 精确匹配名称, 全部号码及附加字段
+         *
+         * @param numberColumn 号码列存储, 为 null 时逐个匹配号码
+         * @param row          联系人的行号
+         * @return 匹配结果, <code>null</code> - 如果未匹配
+         */
+        @Nullable
+        Contact matchExact(Contact contact, @Nullable T9NumberColumn numberColumn, int row) {
+            checkCancelled();
+            T9MatchInfo nameMatch = T9MatchInfo.NO_MATCH;
+            if (!mUseSignature || mQuery.mayMatch(contact.t9KeySignature)) {
+                nameMatch = matchName(nameKey(contact, row), row);
+            }
+
+            T9MatchInfo numberMatch = T9MatchInfo.NO_MATCH;
+            int matchedNumber = -1;
+            final String[] numbers = contact.phoneNumbers;
+            for (int n = 0; n < numbers.length; n++) {
+                T9MatchInfo info = numberColumn != null && mNumberStarts != null
+                        ? T9NumberColumn.getMatchInfo(mNumberStarts,
+                        numberColumn.firstValue(row) + n, mLength)
+                        : mQuery.matchesNumber(numbers[n]);
+                if (isBetterMatch(info, numberMatch)) {
+                    numberMatch = info;
+                    matchedNumber = n;
+                }
+            }
+
+            T9MatchInfo extraMatch = T9MatchInfo.NO_MATCH;
+            int matchedExtra = -1;
+            final String[] extraT9Keys = contact.extraT9Keys;
+            for (int e = 0; e < extraT9Keys.length && matchedExtra < 0; e++) {
+                extraMatch = mQuery.matches(extraT9Keys[e]);
+                if (extraMatch.found()) {
+                    matchedExtra = e;
+                }
+            }
+
+            if (!nameMatch.found() && matchedNumber < 0 && matchedExtra < 0)
+                return null;
+
+            return newResult(contact, nameMatch, numberMatch, matchedNumber, extraMatch,
+                    matchedExtra);
+        }
+
+        /**
+         * 每匹配 {@link #CANCEL_CHECK_ROWS} 行检查一次, 被取消的查询不再继续匹配其余行
+         *
+         * @throws CancellationException 如果查询已被取消
+         */
+        private void checkCancelled() {
+            if (mCancelled != null && ++mMatchedRows % CANCEL_CHECK_ROWS == 0
+                    && mCancelled.get()) {
+                throw new CancellationException("Cancelled after " + mMatchedRows + " rows");
+            }
+        }
+
+        /**
+         * @return 用于匹配名称的键: 有字典时为字典中该行的键, 否则为联系人的键
+         */
+        String nameKey(Contact contact, int row) {
+            return mKeyDictionary != null ? mKeyDictionary.rowKey(row) : contact.t9Key;
+        }
+
+        /**
+         * @return 字典中该行的键 id, <code>-1</code> - 如果没有字典, 或该行的键为 null
+         */
+        private int keyId(int row) {
+            return mKeyDictionary != null ? mKeyDictionary.keyId(row) : -1;
+        }
+
+        private T9MatchInfo matchName(String t9Key, int row) {
+            final int keyId = keyId(row);
+            if (keyId < 0) {
+                return mStrategy == T9MatchStrategy.RECURSIVE
+                        ? mQuery.matches(t9Key) : mStrategy.matches(t9Key, mKey);
+            }
+
+            if (mKeyMatches == null) {
+                mKeyMatches = new T9MatchInfo[mKeyDictionary.keyCount()];
+            }
+            T9MatchInfo matchInfo = mKeyMatches[keyId];
+            if (matchInfo == null) {
+                matchInfo = mStrategy == T9MatchStrategy.RECURSIVE
+                        ? matchAlternatives(keyId) : mStrategy.matches(t9Key, mKey);
+                mKeyMatches[keyId] = matchInfo;
+            }
+            return matchInfo;
+        }
+
+        /**
+         * 依次匹配键的各候选项, 与 {@link T9Query#matches(String)} 匹配整个键的结果相同
+         */
+        private T9MatchInfo matchAlternatives(int keyId) {
+            if (mAlternativeMatches == null) {
+                mAlternativeMatches = new T9MatchInfo[mKeyDictionary.alternativeCount()];
+            }
+
+            final int end = mKeyDictionary.alternativesEnd(keyId);
+            for (int i = mKeyDictionary.alternativesStart(keyId); i < end; i++) {
+                final int alternativeId = mKeyDictionary.alternativeId(i);
+                T9MatchInfo matchInfo = mAlternativeMatches[alternativeId];
+                if (matchInfo == null) {
+                    matchInfo = mQuery.matches(mKeyDictionary.alternativeKey(alternativeId),
+                            mKeyDictionary.alternativeBegin(alternativeId),
+                            mKeyDictionary.alternativeEnd(alternativeId));
+                    mAlternativeMatches[alternativeId] = matchInfo;
+                }
+                if (matchInfo.found())
+                    return matchInfo;
+            }
+            return T9MatchInfo.NO_MATCH;
+        }
+
+        /**
+         * 模糊匹配名称及全部号码, 用于无精确匹配的联系人
+         *
+         * @param row 联系人的行号
+         * @return 匹配结果, <code>null</code> - 如果未匹配
+         */
+        @Nullable
+        Contact matchFuzzy(Contact contact, int row) {
+            checkCancelled();
+            T9MatchInfo nameMatch;
+            final String t9Key = nameKey(contact, row);
+            final int keyId = keyId(row);
+            if (keyId < 0) {
+                nameMatch = mFuzzyQuery.matches(t9Key);
+            } else {
+                if (mFuzzyKeyMatches == null) {
+                    mFuzzyKeyMatches = new T9MatchInfo[mKeyDictionary.keyCount()];
+                }
+                nameMatch = mFuzzyKeyMatches[keyId];
+                if (nameMatch == null) {
+                    nameMatch = mFuzzyQuery.matches(t9Key);
+                    mFuzzyKeyMatches[keyId] = nameMatch;
+                }
+            }
+
+            T9MatchInfo numberMatch = T9MatchInfo.NO_MATCH;
+            int matchedNumber = -1;
+            final String[] numbers = contact.phoneNumbers;
+            for (int n = 0; n < numbers.length; n++) {
+                T9MatchInfo info = mFuzzyQuery.matchesNumber(numbers[n]);
+                if (isBetterMatch(info, numberMatch)) {
+                    numberMatch = info;
+                    matchedNumber = n;
+                }
+            }
+
+            if (!nameMatch.found() && matchedNumber < 0)
+                return null;
+
+            return newResult(contact, nameMatch, numberMatch, matchedNumber, T9MatchInfo.NO_MATCH, -1);
+        }
+
+        private static Contact newResult(Contact contact, T9MatchInfo nameMatch,
+                                         T9MatchInfo numberMatch, int matchedNumber,
+                                         T9MatchInfo extraMatch, int matchedExtra) {
+            Contact c = new Contact(contact);
+            c.nameMatchInfo = nameMatch;
+            c.phoneNumberMatchInfo = numberMatch;
+            c.extraMatchInfo = extraMatch;
+            c.matchedNumber = matchedNumber;
+            c.matchedExtra = matchedExtra;
+            if (matchedNumber >= 0) {
+                c.phoneNumber = contact.phoneNumbers[matchedNumber];
+            }
+            return c;
+        }
+    }
+
+    private static boolean isBetterMatch(T9MatchInfo matchInfo, T9MatchInfo current) {
+        if (!matchInfo.found())
+            return false;
+
+        if (!current.found())
+            return true;
+
+        if (matchInfo.errors() != current.errors())
+            return matchInfo.errors() < current.errors();
+
+        return matchInfo.start() < current.start();
     }
 
     /**
@@ -119,7 +839,7 @@ public final class T9SearchSupport {
                                                    String text,
                                                    int color) {
         ssb.clear();
-        if (!TextUtils.isEmpty(text)) {
+        if (!T9Utils.isEmpty(text)) {
             ssb.append(text);
 
             final int maxLength = text.length();
@@ -138,10 +858,19 @@ public final class T9SearchSupport {
         return ssb;
     }
 
-    private static final Comparator<Contact> COMPARATOR = new Comparator<Contact>() {
+    /**
+     * 结果的排序: 错误较少的在前, 其次名称, 号码, 附加字段的匹配依次比较
+     */
+    static final Comparator<Contact> COMPARATOR = new Comparator<Contact>() {
 
         @Override
         public int compare(Contact left, Contact right) {
+            int lErrors = getErrors(left);
+            int rErrors = getErrors(right);
+            if (lErrors != rErrors) {
+                return lErrors < rErrors ? -1 : 1;
+            }
+
             T9MatchInfo leftNameMatch = left.nameMatchInfo;
             T9MatchInfo rightNameMatch = right.nameMatchInfo;
             if (leftNameMatch.found()) {
@@ -155,23 +884,16 @@ public final class T9SearchSupport {
                         return 1;
                     }
 
+                    // 匹配较长的在前, 其次名称较短的在前
                     int lLen = getMatchLength(leftNameMatch);
                     int rLen = getMatchLength(rightNameMatch);
+                    if (lLen != rLen) {
+                        return lLen > rLen ? -1 : 1;
+                    }
 
-                    int temp = left.name.length() - lLen - (right.name.length() - rLen);
+                    int temp = left.name.length() - right.name.length();
                     if (temp != 0) {
-                        if (lLen < rLen) {
-                            return 1;
-                        } else if (lLen > rLen) {
-                            return -1;
-                        }
                         return temp;
-                    } else if (lLen != rLen) {
-                        if (left.name.length() > right.name.length()) {
-                            return 1;
-                        } else if (left.name.length() < right.name.length()) {
-                            return -1;
-                        }
                     }
 
                     return left.name.compareToIgnoreCase(right.name);
@@ -204,9 +926,44 @@ public final class T9SearchSupport {
                 return 1;
             }
 
+            T9MatchInfo leftExtraMatch = left.extraMatchInfo;
+            T9MatchInfo rightExtraMatch = right.extraMatchInfo;
+            if (leftExtraMatch.found()) {
+                if (rightExtraMatch.found()) {
+                    int lStart = leftExtraMatch.start();
+                    int rStart = rightExtraMatch.start();
+
+                    if (lStart < rStart) {
+                        return -1;
+                    } else if (lStart > rStart) {
+                        return 1;
+                    } else {
+                        return left.name.compareToIgnoreCase(right.name);
+                    }
+                } else {
+                    return -1;
+                }
+            } else if (rightExtraMatch.found()) {
+                return 1;
+            }
+
             return 0;
         }
 
+        private int getErrors(Contact contact) {
+            int errors = Integer.MAX_VALUE;
+            if (contact.nameMatchInfo.found()) {
+                errors = contact.nameMatchInfo.errors();
+            }
+            if (contact.phoneNumberMatchInfo.found()) {
+                errors = Math.min(errors, contact.phoneNumberMatchInfo.errors());
+            }
+            if (contact.extraMatchInfo.found()) {
+                errors = Math.min(errors, contact.extraMatchInfo.errors());
+            }
+            return errors;
+        }
+
         private int getMatchLength(T9MatchInfo matchInfo) {
             int len = 0;
             while (matchInfo != null) {
@@ -0,0 +1,379 @@
+package cn.tinkling.t9;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cn.tinkling.t9search.sample.Contact;
+
+/**
+ * 分片索引: 联系人按行号连续地分为 N 个分片, 每个分片是独立的 {@link T9ContactIndex}
+ * (各自的T9键字典及查询计划器).
+ * <p>
+ * 查询同时分发到各分片(scatter), 在调用线程中按 {@link T9SearchSupport#COMPARATOR}
+ * 归并各分片已排序的结果(gather). 比较相等时行号较小的分片在前, 分片内保持原有顺序,
+ * 因此全部分片返回时结果与单个索引完全相同. 超过时限的分片被取消, 返回其余分片的部分结果, 由 {@link Result#isComplete()}
+ * 标明. 取消时置位该分片查询的取消标志, 匹配循环定期检查并停止, 不再占用线程池中的线程.
+ * <p>
+ * 分片的执行方式:
+ * <ul>
+ * <li>{@link #TRANSPORT_IN_PROCESS}: 在本实例的线程池中直接查询</li>
+ * <li>{@link #TRANSPORT_LOOPBACK}: 远程分片的本地替身, 结果经 {@link T9Codec} 编码后再解码,
+ * 包含序列化的开销</li>
+ * </ul>
+ * 每次发布替换全部分片, 查询看到的始终是同一次发布的各分片. 实例可在多个线程间共享.
+ */
+public final class T9ShardedIndex implements Closeable {
+
+    public static final int TRANSPORT_IN_PROCESS = 0;
+    public static final int TRANSPORT_LOOPBACK = 1;
+
+    private final int mShardCount;
+    private final int mTransport;
+    private final ExecutorService mExecutor;
+
+    private final Object mWriteLock = new Object();
+
+    /**
+     * 同一次发布的各分片快照
+     */
+    private volatile T9ContactIndex.Snapshot[] mShards;
+
+    private final AtomicLong mQueryCount = new AtomicLong();
+    private final AtomicLong mPartialCount = new AtomicLong();
+
+    /**
+     * @param shardCount 分片数, 线程池有同样多的线程
+     * @param transport  {@link #TRANSPORT_IN_PROCESS} 或 {@link #TRANSPORT_LOOPBACK}
+     * @throws IllegalArgumentException 如果 shardCount 小于 1 或 transport 未知
+     */
+    public T9ShardedIndex(int shardCount, int transport) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("The shard count must be > 0");
+        }
+        if (transport != TRANSPORT_IN_PROCESS && transport != TRANSPORT_LOOPBACK) {
+            throw new IllegalArgumentException("Unknown transport: " + transport);
+        }
+
+        mShardCount = shardCount;
+        mTransport = transport;
+        mExecutor = Executors.newFixedThreadPool(shardCount, new ThreadFactory() {
+
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(@NonNull Runnable r) {
+                Thread thread = new Thread(r, "T9Shard-" + mCount.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        T9ContactIndex.Snapshot[] shards = new T9ContactIndex.Snapshot[shardCount];
+        for (int s = 0; s < shardCount; s++) {
+            shards[s] = new T9ContactIndex().snapshot();
+        }
+        mShards = shards;
+    }
+
+    /**
+     * @return 分片数
+     */
+    public int shardCount() {
+        return mShardCount;
+    }
+
+    /**
+     * 以新的联系人列表替换全部数据, 按行号连续地分为各分片, 各分片的索引并行建立.
+     * 列表被复制, 之后对其修改不会影响索引.
+     *
+     * @throws IllegalStateException 如果已关闭
+     */
+    public void publish(@NonNull List<Contact> contacts) {
+        final int size = contacts.size();
+        final int shardSize = (size + mShardCount - 1) / mShardCount;
+        synchronized (mWriteLock) {
+            List<Future<T9ContactIndex.Snapshot>> futures = new ArrayList<>(mShardCount);
+            for (int s = 0; s < mShardCount; s++) {
+                final List<Contact> part = new ArrayList<>(contacts.subList(
+                        Math.min(size, s * shardSize), Math.min(size, (s + 1) * shardSize)));
+                futures.add(submit(new Callable<T9ContactIndex.Snapshot>() {
+                    @Override
+                    public T9ContactIndex.Snapshot call() {
+                        return new T9ContactIndex().publish(part);
+                    }
+                }));
+            }
+
+            T9ContactIndex.Snapshot[] shards = new T9ContactIndex.Snapshot[mShardCount];
+            for (int s = 0; s < mShardCount; s++) {
+                shards[s] = getUninterruptibly(futures.get(s));
+            }
+            mShards = shards;
+        }
+    }
+
+    /**
+     * @return 联系人总数
+     */
+    public int size() {
+        int size = 0;
+        for (T9ContactIndex.Snapshot shard : mShards) {
+            size += shard.contacts().size();
+        }
+        return size;
+    }
+
+    /**
+     * 在全部分片上查询, 不限时
+     *
+     * @see #search(String, T9MatchStrategy, int, long, TimeUnit)
+     */
+    @NonNull
+    public List<Contact> search(@Nullable String key, @NonNull T9MatchStrategy strategy,
+                                int maxErrors) {
+        return search(key, strategy, maxErrors, Long.MAX_VALUE, TimeUnit.NANOSECONDS).contacts();
+    }
+
+    /**
+     * 在全部分片上查询, 归并各分片的结果
+     *
+     * @param strategy  名称匹配策略
+     * @param maxErrors 最大编辑距离, [0, {@link T9FuzzyQuery#MAX_ERRORS}], <code>0</code> - 不进行模糊匹配
+     * @param timeout   等待各分片的总时限, 超时的分片不计入结果
+     * @return 查询结果. 全部分片返回时与 {@link T9ContactIndex.Snapshot#search(String,
+     * T9MatchStrategy, int)} 在全部联系人上的结果相同
+     * @throws IllegalArgumentException 如果 maxErrors 超出范围
+     * @throws IllegalStateException    如果已关闭
+     */
+    @NonNull
+    public Result search(@Nullable final String key, @NonNull final T9MatchStrategy strategy,
+                         final int maxErrors, long timeout, @NonNull TimeUnit unit) {
+        T9SearchSupport.checkMaxErrors(maxErrors);
+        final T9ContactIndex.Snapshot[] shards = mShards;
+        final List<Future<List<Contact>>> futures = new ArrayList<>(shards.length);
+        final AtomicBoolean[] cancelled = new AtomicBoolean[shards.length];
+        for (int s = 0; s < shards.length; s++) {
+            final T9ContactIndex.Snapshot shard = shards[s];
+            final AtomicBoolean shardCancelled = new AtomicBoolean();
+            cancelled[s] = shardCancelled;
+            futures.add(submit(new Callable<List<Contact>>() {
+                @Override
+                public List<Contact> call() {
+                    List<Contact> results;
+                    T9SearchSupport.setCancellation(shardCancelled);
+                    try {
+                        results = shard.search(key, strategy, maxErrors);
+                    } finally {
+                        T9SearchSupport.setCancellation(null);
+                    }
+                    return mTransport == TRANSPORT_LOOPBACK
+                            ? T9Codec.decodeResults(T9Codec.encodeResults(results)) : results;
+                }
+            }));
+        }
+
+        final long start = System.nanoTime();
+        final long timeoutNanos = unit.toNanos(timeout);
+        List<List<Contact>> parts = new ArrayList<>(shards.length);
+        BitSet missing = new BitSet(shards.length);
+        boolean interrupted = false;
+        for (int s = 0; s < shards.length; s++) {
+            Future<List<Contact>> future = futures.get(s);
+            List<Contact> part = null;
+            if (!interrupted) {
+                try {
+                    final long remaining = timeoutNanos - (System.nanoTime() - start);
+                    part = future.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    // 返回其余分片的结果
+                } catch (InterruptedException e) {
+                    // 不再等待其余分片
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Shard " + s + " failed", e.getCause());
+                }
+            }
+
+            if (part == null) {
+                cancelled[s].set(true);
+                future.cancel(false);
+                missing.set(s);
+                part = Collections.emptyList();
+            }
+            parts.add(part);
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        mQueryCount.incrementAndGet();
+        if (!missing.isEmpty()) {
+            mPartialCount.incrementAndGet();
+        }
+        return new Result(merge(parts), missing, shards.length);
+    }
+
+    /**
+     * 归并各分片已排序的结果. 比较相等时序号较小的分片在前, 与在全部行上稳定排序的结果相同.
+     */
+    @NonNull
+    static List<Contact> merge(@NonNull List<List<Contact>> parts) {
+        final int count = parts.size();
+        int total = 0;
+        for (List<Contact> part : parts) {
+            total += part.size();
+        }
+
+        ArrayList<Contact> merged = new ArrayList<>(total);
+        final int[] positions = new int[count];
+        for (int n = 0; n < total; n++) {
+            int best = -1;
+            Contact bestContact = null;
+            for (int s = 0; s < count; s++) {
+                List<Contact> part = parts.get(s);
+                if (positions[s] == part.size())
+                    continue;
+
+                Contact c = part.get(positions[s]);
+                if (best < 0 || T9SearchSupport.COMPARATOR.compare(c, bestContact) < 0) {
+                    best = s;
+                    bestContact = c;
+                }
+            }
+            merged.add(bestContact);
+            positions[best]++;
+        }
+        return merged;
+    }
+
+    /**
+     * @return 已执行的查询数
+     */
+    public long queryCount() {
+        return mQueryCount.get();
+    }
+
+    /**
+     * @return 只有部分分片返回的查询数
+     */
+    public long partialCount() {
+        return mPartialCount.get();
+    }
+
+    /**
+     * 停止线程池, 正在执行的分片查询被中断
+     */
+    @Override
+    public void close() {
+        mExecutor.shutdownNow();
+    }
+
+    private <T> Future<T> submit(Callable<T> task) {
+        if (mExecutor.isShutdown()) {
+            throw new IllegalStateException("The index has been closed");
+        }
+        return mExecutor.submit(task);
+    }
+
+    private static <T> T getUninterruptibly(Future<T> future) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Failed to build a shard", e.getCause());
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "T9ShardedIndex{" +
+               "mShardCount=" + mShardCount +
+               ", mTransport=" + mTransport +
+               ", mQueryCount=" + mQueryCount +
+               ", mPartialCount=" + mPartialCount +
+               '}';
+    }
+
+    /**
+     * 分片查询的结果
+     */
+    public static final class Result {
+
+        private final List<Contact> mContacts;
+        private final BitSet mMissingShards;
+        private final int mShardCount;
+
+        Result(@NonNull List<Contact> contacts, @NonNull BitSet missingShards, int shardCount) {
+            mContacts = contacts;
+            mMissingShards = missingShards;
+            mShardCount = shardCount;
+        }
+
+        /**
+         * @return 归并后的结果
+         */
+        @NonNull
+        public List<Contact> contacts() {
+            return mContacts;
+        }
+
+        /**
+         * @return <code>true</code> - 如果全部分片都已返回
+         */
+        public boolean isComplete() {
+            return mMissingShards.isEmpty();
+        }
+
+        /**
+         * @return 超时而未计入结果的分片
+         */
+        @NonNull
+        public BitSet missingShards() {
+            return (BitSet) mMissingShards.clone();
+        }
+
+        /**
+         * @return 分片数
+         */
+        public int shardCount() {
+            return mShardCount;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" +
+                   "size=" + mContacts.size() +
+                   ", missingShards=" + mMissingShards +
+                   ", shardCount=" + mShardCount +
+                   '}';
+        }
+    }
+
+}
@@ -1,10 +1,9 @@
 package cn.tinkling.t9;
 
-import android.util.Log;
-
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.List;
 
@@ -59,6 +58,20 @@ public final class T9Utils {
         BIT_SET_POOL.release(bs);
     }
 
+    /**
+     * 同 android.text.TextUtils#isEmpty, 使引擎不依赖 Android 框架的类
+     */
+    static boolean isEmpty(@Nullable CharSequence s) {
+        return s == null || s.length() == 0;
+    }
+
+    /**
+     * 同 android.text.TextUtils#equals 用于字符串时的结果
+     */
+    static boolean equals(@Nullable String a, @Nullable String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
     /**
      * 检测指定字符是否是有效的T9字符
      *
@@ -107,23 +120,55 @@ public final class T9Utils {
      */
     public static char formatCharToT9(char c) {
         if (c >= 'A' && c <= 'Z') {
-            Log.e("formatCharToT9-AZ--", "char=" + PINYIN_T9_MAP[c - 'A']);
             return PINYIN_T9_MAP[c - 'A'];
         } else if (c >= 'a' && c <= 'z') {
-            Log.e("formatCharToT9-az--", "char=" + PINYIN_T9_MAP[c - 'a']);
             return PINYIN_T9_MAP[c - 'a'];
         } else if (isValidT9Key(c)) {
-            Log.e("formatCharToT9-valid--", "char=" + c);
             return c;
         }
 
         return '\0';
     }
 
+    /**
+     * 规范化电话号码: 去除空格, 括号及连字符(与正则 <code>[ ()-]+</code> 替换为空相同).
+     * 不含这些字符时直接返回原字符串, 不分配任何对象; 否则只生成结果字符串.
+     *
+     * @param number 电话号码
+     * @return 规范化后的号码, <code>null</code> - 如果 number 为 null
+     */
+    @Nullable
+    public static String normalizePhoneNumber(@Nullable String number) {
+        if (number == null)
+            return null;
+
+        final int length = number.length();
+        int i = 0;
+        while (i < length && !isPhoneNumberSeparator(number.charAt(i))) {
+            i++;
+        }
+        if (i == length)
+            return number;
+
+        char[] chars = new char[length - 1];
+        number.getChars(0, i, chars, 0);
+        int count = i;
+        for (i++; i < length; i++) {
+            char c = number.charAt(i);
+            if (!isPhoneNumberSeparator(c)) {
+                chars[count++] = c;
+            }
+        }
+        return new String(chars, 0, count);
+    }
+
+    static boolean isPhoneNumberSeparator(char c) {
+        return c == ' ' || c == '(' || c == ')' || c == '-';
+    }
+
     @NonNull
-    private static String convertPinyinToT9Key(String py) {
+    static String convertPinyinToT9Key(String py) {
         if (py == null || py.length() == 0) {
-            Log.e("convertPinyinToT9Key---", "t9Key=null");
             return " ";
         }
 
@@ -148,21 +193,9 @@ public final class T9Utils {
 
         String t9Key = t9KeyBuilder.toString();
         recycleStringBuilder(t9KeyBuilder);
-        Log.e("convertPinyinToT9Key---", "t9Key=" + t9Key);
         return t9Key;
     }
 
-    private static void insertT9Key(@NonNull StringBuilder t9KeyBuilder, @NonNull String t9Str) {
-        if (t9Str.length() == 0)
-            return;
-
-        int index = -1;
-        while ((index = t9KeyBuilder.indexOf(String.valueOf(T9_KEYS_DIVIDER), index + 1)) >= 0) {
-            t9KeyBuilder.insert(index, t9Str);
-            index += t9Str.length();
-        }
-    }
-
     /**
      * Build T9 Key.
      *
@@ -173,47 +206,137 @@ public final class T9Utils {
      */
     @NonNull
     public static String buildT9Key(@NonNull String src, @NonNull PinyinProvider provider) {
-        StringBuilder t9KeyBuilder = getReusableStringBuilder();
-        t9KeyBuilder.append(T9_KEYS_DIVIDER);
+        return buildT9Key(src, provider, KeypadLayout.LATIN, null);
+    }
+
+    /**
+     * Build T9 Key.
+     *
+     * @param src      input.
+     * @param provider pinyin provider.
+     * @param layout   键盘布局, 先于拼音使用.
+     * @return T9 Key.
+     * @throws NullPointerException if src, provider or layout is null.
+     */
+    @NonNull
+    public static String buildT9Key(@NonNull String src, @NonNull PinyinProvider provider,
+                                    @NonNull KeypadLayout layout) {
+        return buildT9Key(src, provider, layout, null);
+    }
 
+    /**
+     * 获取指定字符的各个读音对应的T9键
+     *
+     * @return T9键, <code>null</code> - 如果没有读音
+     */
+    @Nullable
+    static String[] getCharT9Keys(char c, @NonNull PinyinProvider provider) {
+        String[] pinyin = provider.getPinyin(c);
+        if (pinyin == null || pinyin.length == 0)
+            return null;
+
+        String[] t9Keys = new String[pinyin.length];
+        for (int i = 0; i < pinyin.length; i++) {
+            t9Keys[i] = convertPinyinToT9Key(pinyin[i]);
+        }
+        return t9Keys;
+    }
+
+    /**
+     * 每个候选(多音字的各种读音组合)使用独立的缓冲区, 只在末尾追加, 最后一次拼接,
+     * 耗时与结果长度成线性关系.
+     */
+    @NonNull
+    static String buildT9Key(@NonNull String src, @NonNull PinyinProvider provider,
+                             @NonNull KeypadLayout layout, @Nullable T9KeyCache cache) {
         final int len = src.length();
-        Log.e("buildT9Key---", "src=" + src + ", len=" + len);
+        List<StringBuilder> alternatives = new ArrayList<>(1);
+        alternatives.add(new StringBuilder(len * 2));
+        char[] syllable = null;
+
         for (int i = 0; i < len; ++i) {
             char c = src.charAt(i);
+            char key = layout.getKey(c);
 
-            if (/*ASCII*/c < 128 ||/*Extended Latin*/(c < 0x250 || (0x1e00 <= c && c < 0x1eff))) {
-                char t9c = convertDigitToInitial(formatCharToT9(c));
-                Log.e("buildT9Key---", "t9Key=" + t9c);
-                insertT9Key(t9KeyBuilder, String.valueOf(t9c));
+            if (key != 0 ||
+                    /*ASCII*/c < 128 ||/*Extended Latin*/(c < 0x250 || (0x1e00 <= c && c < 0x1eff))) {
+                appendT9Key(alternatives, convertDigitToInitial(key));
             } else {
-                String[] pinyin = provider.getPinyin(c);
-                Log.e("buildT9Key---", "pinyins=" + Arrays.toString(pinyin));
-                if (pinyin == null || pinyin.length == 0) {
-                    insertT9Key(t9KeyBuilder, " ");
-                } else if (pinyin.length == 1) {
-                    insertT9Key(t9KeyBuilder, convertPinyinToT9Key(pinyin[0]));
+                if (syllable == null)
+                    syllable = new char[KeypadLayout.MAX_SYLLABLE_LENGTH];
+                int syllableLength = layout.getSyllableT9Key(c, syllable);
+                if (syllableLength > 0) {
+                    appendT9Key(alternatives, syllable, syllableLength);
+                    continue;
+                }
+
+                String[] t9Keys = cache != null
+                        ? cache.getCharT9Keys(c) : getCharT9Keys(c, provider);
+                if (t9Keys == null) {
+                    appendT9Key(alternatives, ' ');
+                } else if (t9Keys.length == 1) {
+                    appendT9Key(alternatives, t9Keys[0]);
                 } else {
-                    String temp = t9KeyBuilder.toString();
-                    StringBuilder tempBuilder = getReusableStringBuilder();
-
-                    t9KeyBuilder.setLength(0);
-                    for (String py : pinyin) {
-                        tempBuilder.setLength(0);
-
-                        tempBuilder.append(temp);
-                        insertT9Key(tempBuilder, convertPinyinToT9Key(py));
-                        t9KeyBuilder.append(tempBuilder);
-                    }
-                    recycleStringBuilder(tempBuilder);
+                    alternatives = forkT9Keys(alternatives, t9Keys, (len - i) * 2);
                 }
             }
         }
 
-        t9KeyBuilder.delete(t9KeyBuilder.length() - 1, t9KeyBuilder.length());
+        StringBuilder t9KeyBuilder = getReusableStringBuilder();
+        for (int i = 0; i < alternatives.size(); i++) {
+            if (i > 0)
+                t9KeyBuilder.append(T9_KEYS_DIVIDER);
+            t9KeyBuilder.append(alternatives.get(i));
+        }
+
         String t9Key = t9KeyBuilder.toString();
         recycleStringBuilder(t9KeyBuilder);
-        Log.e("buildT9Key--return-", "t9Key=" + t9Key);
         return t9Key;
     }
 
+    private static void appendT9Key(@NonNull List<StringBuilder> alternatives, char t9c) {
+        for (int i = 0; i < alternatives.size(); i++) {
+            alternatives.get(i).append(t9c);
+        }
+    }
+
+    private static void appendT9Key(@NonNull List<StringBuilder> alternatives,
+                                    @NonNull char[] t9Chars, int length) {
+        for (int i = 0; i < alternatives.size(); i++) {
+            alternatives.get(i).append(t9Chars, 0, length);
+        }
+    }
+
+    private static void appendT9Key(@NonNull List<StringBuilder> alternatives,
+                                    @NonNull String t9Str) {
+        for (int i = 0; i < alternatives.size(); i++) {
+            alternatives.get(i).append(t9Str);
+        }
+    }
+
+    /**
+     * 多音字: 每个读音与现有的每个候选组合, 顺序为读音在外, 候选在内
+     *
+     * @param extraCapacity 为后续字符预留的容量
+     */
+    @NonNull
+    private static List<StringBuilder> forkT9Keys(@NonNull List<StringBuilder> alternatives,
+                                                  @NonNull String[] t9Keys, int extraCapacity) {
+        final int count = alternatives.size();
+        List<StringBuilder> forked = new ArrayList<>(count * t9Keys.length);
+        for (int k = 0; k < t9Keys.length - 1; k++) {
+            for (int i = 0; i < count; i++) {
+                StringBuilder alternative = alternatives.get(i);
+                forked.add(new StringBuilder(alternative.length() + extraCapacity)
+                        .append(alternative)
+                        .append(t9Keys[k]));
+            }
+        }
+
+        // 最后一个读音直接追加到原有的缓冲区
+        appendT9Key(alternatives, t9Keys[t9Keys.length - 1]);
+        forked.addAll(alternatives);
+        return forked;
+    }
+
 }
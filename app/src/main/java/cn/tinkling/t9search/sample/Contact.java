@@ -1,22 +1,69 @@
 package cn.tinkling.t9search.sample;
 
+import cn.tinkling.t9.T9KeySignature;
 import cn.tinkling.t9.T9MatchInfo;
 
 public class Contact {
 
+    private static final String[] EMPTY = new String[0];
+
+    public long id;
     public String name;
-    public String phoneNumber;
     public String t9Key;
+    /**
+     * {@link #t9Key} 的签名, 见 {@link T9KeySignature#of(String)}. 修改 t9Key 后应重新计算
+     */
+    public long t9KeySignature;
+    /**
+     * 全部号码
+     */
+    public String[] phoneNumbers;
+    /**
+     * 公司, 昵称等附加字段
+     */
+    public String[] extras;
+    public String[] extraT9Keys;
+
+    /**
+     * 显示的号码: 匹配的号码, 未匹配号码时为第一个号码
+     */
+    public String phoneNumber;
     public T9MatchInfo nameMatchInfo;
     public T9MatchInfo phoneNumberMatchInfo;
+    public T9MatchInfo extraMatchInfo;
+    /**
+     * 匹配的号码在 {@link #phoneNumbers} 中的下标, <code>-1</code> - 未匹配号码
+     */
+    public int matchedNumber = -1;
+    /**
+     * 匹配的附加字段在 {@link #extras} 中的下标, <code>-1</code> - 未匹配附加字段
+     */
+    public int matchedExtra = -1;
 
     public Contact(String name, String phoneNumber, String t9Key) {
+        this(0, name, t9Key, phoneNumber == null ? EMPTY : new String[]{phoneNumber}, EMPTY,
+                EMPTY);
+    }
+
+    public Contact(long id, String name, String t9Key, String[] phoneNumbers, String[] extras,
+                   String[] extraT9Keys) {
+        this(id, name, t9Key, T9KeySignature.of(t9Key), phoneNumbers, extras, extraT9Keys);
+    }
+
+    private Contact(long id, String name, String t9Key, long t9KeySignature,
+                    String[] phoneNumbers, String[] extras, String[] extraT9Keys) {
+        this.id = id;
         this.name = name;
-        this.phoneNumber = phoneNumber;
         this.t9Key = t9Key;
+        this.t9KeySignature = t9KeySignature;
+        this.phoneNumbers = phoneNumbers;
+        this.extras = extras;
+        this.extraT9Keys = extraT9Keys;
+        this.phoneNumber = phoneNumbers.length > 0 ? phoneNumbers[0] : null;
     }
 
     public Contact(Contact contact) {
-        this(contact.name, contact.phoneNumber, contact.t9Key);
+        this(contact.id, contact.name, contact.t9Key, contact.t9KeySignature,
+                contact.phoneNumbers, contact.extras, contact.extraT9Keys);
     }
 }
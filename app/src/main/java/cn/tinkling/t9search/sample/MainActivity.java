@@ -7,6 +7,8 @@ import android.content.Context;
 import android.database.Cursor;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.provider.ContactsContract;
 import android.text.Editable;
 import android.text.SpannableStringBuilder;
@@ -27,17 +29,40 @@ import com.dys.t9search.R;
 import com.nabinbhandari.android.permissions.PermissionHandler;
 import com.nabinbhandari.android.permissions.Permissions;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import cn.tinkling.t9.T9ContactIndex;
+import cn.tinkling.t9.T9MatchStrategy;
+import cn.tinkling.t9.T9ResultDiff;
 import cn.tinkling.t9.T9SearchSupport;
+import cn.tinkling.t9.T9Utils;
 
 public class MainActivity extends AppCompatActivity {
 
-    static List<Contact> mContactsAll;
-    static ContactsAdapter mContactsAdapter;
+    private static final String TAG = "T9Search";
+
+    /**
+     * 加载完成后在后台预热搜索引擎. 关闭后可对比首次查询耗时
+     */
+    private static final boolean WARM_UP = true;
+
+    /**
+     * 后台过滤与加载在不同线程读写, 通过快照发布
+     */
+    final T9ContactIndex mContactIndex = new T9ContactIndex();
+    final Handler mHandler = new Handler(Looper.getMainLooper());
+    ContactsAdapter mContactsAdapter;
     T9Filter mT9Filter;
-    static ProgressDialog mProgressDialog;
+    ProgressDialog mProgressDialog;
+    EditText mEditText;
+    boolean mFirstQueryReported;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -51,7 +76,8 @@ public class MainActivity extends AppCompatActivity {
         listView.setAdapter(mContactsAdapter);
 
         //textWatcher
-        ((EditText) findViewById(R.id.editText)).addTextChangedListener(new TextWatcher() {
+        mEditText = findViewById(R.id.editText);
+        mEditText.addTextChangedListener(new TextWatcher() {
             @Override
             public void beforeTextChanged(CharSequence s, int start, int count, int after) {
             }
@@ -85,7 +111,8 @@ public class MainActivity extends AppCompatActivity {
                     public void onGranted() {
                         Log.e("permission","onGranted");
                         //加载联系人
-                        new MyTask(getContentResolver()).execute();
+                        mProgressDialog.show();
+                        new MyTask(MainActivity.this).execute();
                     }
 
                     @Override
@@ -96,47 +123,135 @@ public class MainActivity extends AppCompatActivity {
                 });
     }
 
-    private static class MyTask extends AsyncTask<Void, Void, List<Contact>> {
+    /**
+     * 加载完成, 以当前输入重新过滤, 并在后台预热
+     */
+    void onContactsLoaded() {
+        if (mProgressDialog.isShowing())
+            mProgressDialog.dismiss();
+        mT9Filter.filter(mEditText.getText());
+
+        if (WARM_UP) {
+            final T9ContactIndex contactIndex = mContactIndex;
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long nanos = contactIndex.warmUp();
+                    Log.i(TAG, "warm up: " + nanos / 1000 + "us");
+                }
+            });
+        }
+    }
+
+    /**
+     * 输出首次查询耗时
+     */
+    void reportFirstQuery() {
+        long nanos = mContactIndex.firstQueryLatencyNanos();
+        if (mFirstQueryReported || nanos < 0)
+            return;
+
+        mFirstQueryReported = true;
+        Log.i(TAG, "first query: " + nanos / 1000 + "us, warm="
+                + mContactIndex.isFirstQueryWarm());
+    }
+
+    private static class MyTask extends AsyncTask<Void, Void, Void> {
         private final ContentResolver contentResolver;
+        private final T9ContactIndex contactIndex;
+        private final WeakReference<MainActivity> activityRef;
 
-        public MyTask(ContentResolver contentResolver) {
-            this.contentResolver = contentResolver;
+        public MyTask(MainActivity activity) {
+            this.contentResolver = activity.getContentResolver();
+            this.contactIndex = activity.mContactIndex;
+            this.activityRef = new WeakReference<>(activity);
         }
 
         @Override
-        protected void onPreExecute() {
-            mProgressDialog.show();
+        protected Void doInBackground(Void... params) {
+            contactIndex.publish(loadContacts());
+            return null;
         }
 
-        @Override
-        protected List<Contact> doInBackground(Void... params) {
+        private List<Contact> loadContacts() {
+            // 每个联系人一条记录, 包含全部号码
+            Map<Long, String> names = new LinkedHashMap<>();
+            Map<Long, Set<String>> numbers = new HashMap<>();
             Cursor cursor = contentResolver.query(ContactsContract.CommonDataKinds.Phone.CONTENT_URI,
-                    new String[]{ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME,
+                    new String[]{ContactsContract.CommonDataKinds.Phone.CONTACT_ID,
+                            ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME,
                             ContactsContract.CommonDataKinds.Phone.NUMBER},
                     null, null,
                     ContactsContract.CommonDataKinds.Phone.SORT_KEY_PRIMARY);
 
-            List<Contact> contacts = new ArrayList<>();
             if (cursor != null) {
                 while (cursor.moveToNext()) {
-                    String name = cursor.getString(0);
-                    String number = cursor.getString(1).replaceAll("[ \\(\\)-]+", "");
-                    //生成T9Key
-                    String t9Key = T9SearchSupport.buildT9Key(name);
-                    contacts.add(new Contact(name, number, t9Key));
+                    long id = cursor.getLong(0);
+                    String number = T9Utils.normalizePhoneNumber(cursor.getString(2));
+                    if (!names.containsKey(id)) {
+                        names.put(id, cursor.getString(1));
+                        numbers.put(id, new LinkedHashSet<String>());
+                    }
+                    numbers.get(id).add(number);
+                }
+                cursor.close();
+            }
+
+            // 公司, 昵称
+            Map<Long, List<String>> extras = new HashMap<>();
+            cursor = contentResolver.query(ContactsContract.Data.CONTENT_URI,
+                    new String[]{ContactsContract.Data.CONTACT_ID, ContactsContract.Data.DATA1},
+                    ContactsContract.Data.MIMETYPE + " IN (?, ?)",
+                    new String[]{ContactsContract.CommonDataKinds.Organization.CONTENT_ITEM_TYPE,
+                            ContactsContract.CommonDataKinds.Nickname.CONTENT_ITEM_TYPE},
+                    null);
+
+            if (cursor != null) {
+                while (cursor.moveToNext()) {
+                    long id = cursor.getLong(0);
+                    String extra = cursor.getString(1);
+                    if (TextUtils.isEmpty(extra) || !names.containsKey(id))
+                        continue;
+
+                    List<String> list = extras.get(id);
+                    if (list == null) {
+                        list = new ArrayList<>();
+                        extras.put(id, list);
+                    }
+                    list.add(extra);
                 }
                 cursor.close();
             }
 
+            List<Contact> contacts = new ArrayList<>(names.size());
+            for (Map.Entry<Long, String> entry : names.entrySet()) {
+                long id = entry.getKey();
+                String name = entry.getValue();
+                Set<String> phoneNumbers = numbers.get(id);
+                List<String> extraList = extras.get(id);
+
+                String[] extraArray = new String[extraList == null ? 0 : extraList.size()];
+                String[] extraT9Keys = new String[extraArray.length];
+                for (int i = 0; i < extraArray.length; i++) {
+                    extraArray[i] = extraList.get(i);
+                    extraT9Keys[i] = T9SearchSupport.buildT9Key(extraArray[i]);
+                }
+
+                //生成T9Key
+                String t9Key = T9SearchSupport.buildT9Key(name);
+                contacts.add(new Contact(id, name, t9Key,
+                        phoneNumbers.toArray(new String[phoneNumbers.size()]), extraArray,
+                        extraT9Keys));
+            }
+
             return contacts;
         }
 
         @Override
-        protected void onPostExecute(List<Contact> contacts) {
-            mContactsAll = contacts;
-            mContactsAdapter.setContacts(contacts);
-            if (mProgressDialog.isShowing())
-                mProgressDialog.dismiss();
+        protected void onPostExecute(Void result) {
+            MainActivity activity = activityRef.get();
+            if (activity != null)
+                activity.onContactsLoaded();
         }
     }
 
@@ -150,6 +265,12 @@ public class MainActivity extends AppCompatActivity {
         public TextView name;
         public TextView phoneNumber;
 
+        /**
+         * 绑定的联系人 id 及绑定时结果列表的版本
+         */
+        long contactId;
+        int generation = -1;
+
         ViewHolder(View itemView) {
             name = itemView.findViewById(R.id.name);
             phoneNumber = itemView.findViewById(R.id.phoneNumber);
@@ -159,15 +280,36 @@ public class MainActivity extends AppCompatActivity {
     private class ContactsAdapter extends BaseAdapter {
 
         private final SpannableStringBuilder mHighLightBuffer = new SpannableStringBuilder();
+        private final SpannableStringBuilder mExtraHighLightBuffer = new SpannableStringBuilder();
 
         private final List<Contact> mContacts = new ArrayList<>();
 
+        /**
+         * 结果列表的版本, 每次改变加一
+         */
+        private int mGeneration;
+
+        /**
+         * 上一版本到当前版本的差异
+         */
+        private T9ResultDiff mDiff;
+
+        /**
+         * 以 id 对应新旧结果, 没有改变时不刷新; 否则保留列表状态刷新,
+         * 内容未改变的行不重新绑定(见 {@link #getView(int, View, ViewGroup)})
+         */
         public void setContacts(List<Contact> contacts) {
+            T9ResultDiff diff = T9ResultDiff.compute(mContacts, contacts);
+            if (diff.isEmpty())
+                return;
+
             mContacts.clear();
             if (contacts != null)
                 mContacts.addAll(contacts);
 
-            notifyDataSetInvalidated();
+            mDiff = diff;
+            mGeneration++;
+            notifyDataSetChanged();
         }
 
         @Override
@@ -182,7 +324,12 @@ public class MainActivity extends AppCompatActivity {
 
         @Override
         public long getItemId(int position) {
-            return 0;
+            return mContacts.get(position).id;
+        }
+
+        @Override
+        public boolean hasStableIds() {
+            return true;
         }
 
         @Override
@@ -198,22 +345,47 @@ public class MainActivity extends AppCompatActivity {
             }
 
             Contact contact = mContacts.get(position);
-
-            holder.name.setText(T9SearchSupport.highLight(mHighLightBuffer, contact.nameMatchInfo,
-                    contact.name, 0xFFFF4081));
+            if (holder.contactId == contact.id && isBound(holder, position))
+                return convertView;
+
+            holder.contactId = contact.id;
+            holder.generation = mGeneration;
+
+            SpannableStringBuilder name = T9SearchSupport.highLight(mHighLightBuffer,
+                    contact.nameMatchInfo, contact.name, 0xFFFF4081);
+            if (contact.matchedExtra >= 0) {
+                name.append(" (")
+                        .append(T9SearchSupport.highLight(mExtraHighLightBuffer,
+                                contact.extraMatchInfo, contact.extras[contact.matchedExtra],
+                                0xFFFF4081))
+                        .append(')');
+            }
+            holder.name.setText(name);
             holder.phoneNumber.setText(T9SearchSupport.highLight(mHighLightBuffer,
                     contact.phoneNumberMatchInfo, contact.phoneNumber, 0xAFFF4081));
 
             return convertView;
         }
+
+        /**
+         * 该视图已显示同一联系人的当前内容: 在当前版本绑定, 或在上一版本绑定且该行内容未改变
+         */
+        private boolean isBound(ViewHolder holder, int position) {
+            return holder.generation == mGeneration
+                   || (holder.generation == mGeneration - 1 && mDiff != null
+                       && (mDiff.flags(position) & (T9ResultDiff.FLAG_CHANGED
+                                                    | T9ResultDiff.FLAG_INSERTED)) == 0);
+        }
     }
 
-    private static class T9Filter extends Filter {
+    private class T9Filter extends Filter {
         //执行筛选
         @Override
         protected FilterResults performFiltering(CharSequence constraint) {
+            // 整个过滤过程使用同一个快照
+            T9ContactIndex.Snapshot snapshot = mContactIndex.snapshot();
             List<Contact> list = TextUtils.isEmpty(constraint)
-                    ? mContactsAll : T9SearchSupport.filter(mContactsAll, constraint.toString());
+                    ? snapshot.contacts() : search(snapshot, constraint.toString());
 
             FilterResults results = new FilterResults();
             if (list != null) {
@@ -226,11 +398,43 @@ public class MainActivity extends AppCompatActivity {
             return results;
         }
 
+        /**
+         * 流式过滤, 第一个排名层级确定后立即显示, 不等待扫描完成
+         */
+        private List<Contact> search(T9ContactIndex.Snapshot snapshot, final String constraint) {
+            final List<Contact> list = new ArrayList<>();
+            snapshot.search(constraint, T9MatchStrategy.RECURSIVE, 0,
+                    new T9SearchSupport.ResultCallback() {
+                        @Override
+                        public boolean onResults(List<Contact> results, int tier) {
+                            if (list.isEmpty()) {
+                                publishFirstTier(constraint, new ArrayList<>(results));
+                            }
+                            list.addAll(results);
+                            return true;
+                        }
+                    });
+            return list;
+        }
+
+        private void publishFirstTier(final String constraint, final List<Contact> results) {
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    // 输入已改变时丢弃
+                    if (constraint.equals(mEditText.getText().toString())) {
+                        mContactsAdapter.setContacts(results);
+                    }
+                }
+            });
+        }
+
         //筛选结果
         @SuppressWarnings("unchecked")
         @Override
         protected void publishResults(CharSequence constraint, FilterResults results) {
             mContactsAdapter.setContacts((List<Contact>) results.values);
+            reportFirstQuery();
         }
 
     }
@@ -0,0 +1,148 @@
+package cn.tinkling.t9;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import cn.tinkling.t9search.sample.Contact;
+
+/**
+ * 生成通讯录: 按文字比例生成中文, 拉丁及中英混合名称, 手机及固定电话号码.
+ * <p>
+ * 文字比例的格式为 <code>han=60,latin=30,mixed=10</code>, 各项为相对权重.
+ */
+final class AddressBookGenerator {
+
+    static final String DEFAULT_MIX = "han=60,latin=30,mixed=10";
+
+    private static final String SURNAMES =
+            "王李张刘陈杨黄赵吴周徐孙马朱胡郭何高林罗郑梁谢宋唐许韩冯邓曹彭曾肖田董袁潘于蒋蔡余杜叶"
+            + "程苏魏吕丁任沈姚卢姜崔钟谭陆汪范金石廖贾夏韦付方白邹孟熊秦邱江尹薛闫段雷侯龙史陶黎"
+            + "贺顾毛郝龚邵万钱严覃武戴莫孔向汤单欧阳";
+
+    private static final String GIVEN_NAMES =
+            "伟芳娜秀英敏静丽强磊军洋勇艳杰娟涛明超秀兰霞平刚桂英华玉萍红娥玲芬燕彬鑫斌宇浩凯健俊"
+            + "帆帅旭宁龙林欢阳建国建华志强志明永刚海燕海涛小红小明晓东晓明丹婷雪梅慧琳思远子涵"
+            + "梓萱一诺欣怡雨轩浩然宇航博文天佑俊杰嘉怡佳琪诗涵可馨语桐乐行重长朝";
+
+    private static final String[] FIRST_NAMES = {
+            "James", "Mary", "John", "Patricia", "Robert", "Jennifer", "Michael", "Linda",
+            "William", "Elizabeth", "David", "Susan", "Tom", "Jessica", "Daniel", "Sarah",
+            "Kevin", "Lucy", "Jack", "Emma", "Leo", "Anna", "Max", "Grace"
+    };
+
+    private static final String[] LAST_NAMES = {
+            "Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis",
+            "Wilson", "Anderson", "Taylor", "Thomas", "Moore", "Martin", "Lee", "Walker",
+            "Hall", "Young", "King", "Wright", "Lopez", "Hill", "Green", "Adams"
+    };
+
+    private static final String[] MOBILE_PREFIXES = {
+            "130", "131", "132", "133", "135", "136", "137", "138", "139", "150", "151",
+            "152", "155", "156", "158", "159", "166", "176", "177", "180", "181", "185",
+            "186", "187", "188", "189", "199"
+    };
+
+    private AddressBookGenerator() {
+    }
+
+    /**
+     * @param size 联系人个数
+     * @param mix  文字比例, 见 {@link #DEFAULT_MIX}
+     * @param seed 随机种子, 相同的参数生成相同的通讯录
+     * @throws IllegalArgumentException 如果比例格式错误
+     */
+    @NonNull
+    static List<Contact> generate(int size, @NonNull String mix, long seed) {
+        final int[] weights = parseMix(mix);
+        final int total = weights[0] + weights[1] + weights[2];
+        Random random = new Random(seed);
+
+        List<Contact> contacts = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final int pick = random.nextInt(total);
+            String name;
+            if (pick < weights[0]) {
+                name = hanName(random);
+            } else if (pick < weights[0] + weights[1]) {
+                name = latinName(random);
+            } else {
+                name = random.nextBoolean()
+                        ? FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " " + hanName(random)
+                        : hanName(random) + " " + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            }
+
+            String[] numbers = new String[random.nextInt(10) == 0 ? 2 : 1];
+            for (int n = 0; n < numbers.length; n++) {
+                numbers[n] = phoneNumber(random);
+            }
+            contacts.add(new Contact(i, name, T9SearchSupport.buildT9Key(name), numbers,
+                    new String[0], new String[0]));
+        }
+        return contacts;
+    }
+
+    private static int[] parseMix(String mix) {
+        int[] weights = new int[3];
+        for (String part : mix.split(",")) {
+            String[] pair = part.trim().split("=");
+            if (pair.length != 2)
+                throw new IllegalArgumentException("Bad script mix: " + mix);
+
+            final int weight = Integer.parseInt(pair[1].trim());
+            switch (pair[0].trim()) {
+                case "han":
+                    weights[0] = weight;
+                    break;
+                case "latin":
+                    weights[1] = weight;
+                    break;
+                case "mixed":
+                    weights[2] = weight;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown script: " + pair[0]);
+            }
+        }
+        if (weights[0] + weights[1] + weights[2] <= 0)
+            throw new IllegalArgumentException("Bad script mix: " + mix);
+        return weights;
+    }
+
+    private static String hanName(Random random) {
+        StringBuilder sb = new StringBuilder(3);
+        sb.append(SURNAMES.charAt(random.nextInt(SURNAMES.length())));
+        final int length = random.nextInt(3) == 0 ? 1 : 2;
+        for (int i = 0; i < length; i++) {
+            sb.append(GIVEN_NAMES.charAt(random.nextInt(GIVEN_NAMES.length())));
+        }
+        return sb.toString();
+    }
+
+    private static String latinName(Random random) {
+        return FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " "
+               + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+    }
+
+    private static String phoneNumber(Random random) {
+        StringBuilder sb = new StringBuilder(14);
+        if (random.nextInt(5) == 0) {
+            // 固定电话
+            sb.append('0').append(10 + random.nextInt(90));
+            for (int i = 0; i < 8; i++) {
+                sb.append((char) ('0' + random.nextInt(10)));
+            }
+        } else {
+            if (random.nextInt(10) == 0)
+                sb.append("+86");
+            sb.append(MOBILE_PREFIXES[random.nextInt(MOBILE_PREFIXES.length)]);
+            for (int i = 0; i < 8; i++) {
+                sb.append((char) ('0' + random.nextInt(10)));
+            }
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,258 @@
+package cn.tinkling.t9;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import cn.tinkling.t9search.sample.Contact;
+
+/**
+ * 键入轨迹: 若干个会话, 每个会话从空的输入框开始, 由按键, 退格, 清空及停顿组成.
+ * <p>
+ * 文本格式每行一个会话, 以空白分隔的记号:
+ * <pre>
+ * 9 4 6       键入T9字符(0-9 * # + ,)
+ * &lt;           退格
+ * !           清空
+ * ~250        停顿 250 毫秒
+ * // ...      整行注释
+ * </pre>
+ * 会话可以在行首以 <code>@行号</code> 标明目标联系人, 用于统计目标是否出现在结果中.
+ */
+final class KeystrokeTrace {
+
+    static final int TYPE = 0;
+    static final int BACKSPACE = 1;
+    static final int CLEAR = 2;
+    static final int PAUSE = 3;
+
+    /**
+     * 会话, 事件以 {@link #mTypes} 及 {@link #mValues}(键入的字符或停顿的毫秒数)并列存储
+     */
+    static final class Session {
+
+        /**
+         * 目标联系人的行号, <code>-1</code> - 未知
+         */
+        final int mTarget;
+        final int[] mTypes;
+        final int[] mValues;
+
+        Session(int target, int[] types, int[] values) {
+            mTarget = target;
+            mTypes = types;
+            mValues = values;
+        }
+
+        int size() {
+            return mTypes.length;
+        }
+    }
+
+    private final List<Session> mSessions;
+
+    KeystrokeTrace(@NonNull List<Session> sessions) {
+        mSessions = Collections.unmodifiableList(sessions);
+    }
+
+    @NonNull
+    List<Session> sessions() {
+        return mSessions;
+    }
+
+    /**
+     * @return 按键, 退格及清空的总数
+     */
+    int keystrokeCount() {
+        int count = 0;
+        for (Session session : mSessions) {
+            for (int type : session.mTypes) {
+                if (type != PAUSE)
+                    count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 读取文本格式的轨迹
+     *
+     * @throws IllegalArgumentException 如果有无法识别的记号
+     */
+    @NonNull
+    static KeystrokeTrace parse(@NonNull Reader reader) throws IOException {
+        BufferedReader in = new BufferedReader(reader);
+        List<Session> sessions = new ArrayList<>();
+        String line;
+        int lineNumber = 0;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("//"))
+                continue;
+
+            SessionBuilder builder = new SessionBuilder();
+            int target = -1;
+            for (String token : line.split("\\s+")) {
+                if (token.startsWith("@")) {
+                    target = Integer.parseInt(token.substring(1));
+                } else if (token.equals("<")) {
+                    builder.add(BACKSPACE, 0);
+                } else if (token.equals("!")) {
+                    builder.add(CLEAR, 0);
+                } else if (token.startsWith("~")) {
+                    builder.add(PAUSE, Integer.parseInt(token.substring(1)));
+                } else if (token.length() == 1 && T9Utils.isValidT9Key(token.charAt(0))) {
+                    builder.add(TYPE, token.charAt(0));
+                } else {
+                    throw new IllegalArgumentException(
+                            "Unknown token '" + token + "' at line " + lineNumber);
+                }
+            }
+            sessions.add(builder.build(target));
+        }
+        return new KeystrokeTrace(sessions);
+    }
+
+    /**
+     * @return 文本格式, 可由 {@link #parse(Reader)} 读回
+     */
+    @NonNull
+    String format() {
+        StringBuilder sb = new StringBuilder();
+        for (Session session : mSessions) {
+            if (session.mTarget >= 0) {
+                sb.append('@').append(session.mTarget).append(' ');
+            }
+            for (int i = 0; i < session.size(); i++) {
+                if (i > 0)
+                    sb.append(' ');
+                switch (session.mTypes[i]) {
+                    case TYPE:
+                        sb.append((char) session.mValues[i]);
+                        break;
+                    case BACKSPACE:
+                        sb.append('<');
+                        break;
+                    case CLEAR:
+                        sb.append('!');
+                        break;
+                    default:
+                        sb.append('~').append(session.mValues[i]);
+                        break;
+                }
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 合成轨迹: 每个会话选择一个目标联系人(靠前的联系人被查找得更多), 按名称首字母, 全拼或号码
+     * 逐位键入, 偶尔按错后退格重输, 停顿浏览结果, 最后清空或逐位退格.
+     *
+     * @param contacts 通讯录
+     * @param sessions 会话个数
+     * @param seed     随机种子, 相同的参数生成相同的轨迹
+     */
+    @NonNull
+    static KeystrokeTrace synthesize(@NonNull List<Contact> contacts, int sessions, long seed) {
+        Random random = new Random(seed);
+        List<Session> result = new ArrayList<>(sessions);
+        for (int s = 0; s < sessions && !contacts.isEmpty(); s++) {
+            // 近似 Zipf 分布
+            final int target = (int) Math.min(contacts.size() - 1,
+                    Math.floor(Math.pow(contacts.size(), random.nextDouble())) - 1);
+            Contact contact = contacts.get(target);
+            String digits = chooseDigits(contact, random);
+
+            SessionBuilder builder = new SessionBuilder();
+            for (int i = 0; i < digits.length(); i++) {
+                builder.add(PAUSE, 80 + random.nextInt(220));
+                if (random.nextInt(20) == 0) {
+                    // 按错, 发现后退格
+                    builder.add(TYPE, '2' + random.nextInt(8));
+                    builder.add(PAUSE, 300 + random.nextInt(500));
+                    builder.add(BACKSPACE, 0);
+                    builder.add(PAUSE, 100 + random.nextInt(200));
+                }
+                builder.add(TYPE, digits.charAt(i));
+            }
+
+            builder.add(PAUSE, 500 + random.nextInt(1500));
+            if (random.nextInt(10) < 3) {
+                for (int i = 0; i < digits.length(); i++) {
+                    builder.add(BACKSPACE, 0);
+                    builder.add(PAUSE, 60 + random.nextInt(80));
+                }
+            } else {
+                builder.add(CLEAR, 0);
+            }
+            result.add(builder.build(target));
+        }
+        return new KeystrokeTrace(result);
+    }
+
+    /**
+     * @return 查找该联系人时键入的数字
+     */
+    private static String chooseDigits(Contact contact, Random random) {
+        final int kind = random.nextInt(10);
+        if (kind < 3 && contact.phoneNumbers.length > 0) {
+            String number = contact.phoneNumbers[random.nextInt(contact.phoneNumbers.length)];
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < number.length(); i++) {
+                if (T9Utils.isValidT9Key(number.charAt(i)))
+                    sb.append(number.charAt(i));
+            }
+            if (sb.length() > 0) {
+                final int start = random.nextInt(3) == 0 ? random.nextInt(sb.length()) : 0;
+                final int length = 3 + random.nextInt(6);
+                return sb.substring(start, Math.min(sb.length(), start + length));
+            }
+        }
+
+        // 名称第一个候选: 首字母(如 "zs")或全拼的前缀(如 "zhangs")
+        final String t9Key = contact.t9Key;
+        final boolean initialsOnly = kind < 6;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < t9Key.length() && sb.length() < 8; i++) {
+            final char c = t9Key.charAt(i);
+            if (c == T9Utils.T9_KEYS_DIVIDER)
+                break;
+
+            if (T9Utils.isInitial(c)) {
+                sb.append((char) (c - 'C' + '#'));
+            } else if (!initialsOnly && c != ' ') {
+                sb.append(c);
+            }
+        }
+        return sb.length() > 0 ? sb.toString() : "2";
+    }
+
+    private static final class SessionBuilder {
+
+        private final List<int[]> mEvents = new ArrayList<>();
+
+        void add(int type, int value) {
+            mEvents.add(new int[]{type, value});
+        }
+
+        Session build(int target) {
+            int[] types = new int[mEvents.size()];
+            int[] values = new int[mEvents.size()];
+            for (int i = 0; i < types.length; i++) {
+                types[i] = mEvents.get(i)[0];
+                values[i] = mEvents.get(i)[1];
+            }
+            return new Session(target, types, values);
+        }
+    }
+
+}
@@ -0,0 +1,179 @@
+package cn.tinkling.t9;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.List;
+import java.util.Scanner;
+
+import cn.tinkling.t9search.sample.Contact;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * 键入轨迹回放压测, 在 JVM 上运行. 压测耗时较长, 只在指定 t9.replay.enabled=true 时运行,
+ * 参数以 Gradle 属性传入, 例如:
+ * <pre>
+ * ./gradlew :app:testDebugUnitTest --tests '*TraceReplayTest*' -Pt9.replay.enabled=true \
+ *     -Pt9.replay.contacts=50000 -Pt9.replay.mix=han=80,latin=20 \
+ *     -Pt9.replay.baseline=/path/to/previous/report.json
+ * </pre>
+ * <ul>
+ * <li>t9.replay.contacts, t9.replay.mix, t9.replay.seed: 生成的通讯录</li>
+ * <li>t9.replay.trace: 录制的轨迹文件, 未指定时合成 t9.replay.sessions 个会话</li>
+ * <li>t9.replay.mode: filter 或 planner; t9.replay.strategy: RECURSIVE 或 BIT_PARALLEL;
+ * t9.replay.maxErrors</li>
+ * <li>t9.replay.warmUp: 不计入统计的会话数; t9.replay.pauseScale: 停顿的缩放比例, 0 为不停顿</li>
+ * <li>t9.replay.output: JSON 报告的路径, 默认为 build/t9-replay/report.json</li>
+ * <li>t9.replay.baseline: 上一版本的 JSON 报告, p99 超过其 t9.replay.maxRegression 倍,
+ * 或找到目标的比例下降时失败</li>
+ * </ul>
+ */
+public class TraceReplayTest {
+
+    private static final String PREFIX = "t9.replay.";
+
+    @Test
+    public void replay() throws Exception {
+        assumeTrue(Boolean.parseBoolean(property("enabled", "false")));
+
+        final int size = intProperty("contacts", 5000);
+        final String mix = property("mix", AddressBookGenerator.DEFAULT_MIX);
+        final long seed = intProperty("seed", 1);
+        final String mode = property("mode", TraceReplayer.MODE_FILTER);
+        final String strategyName = property("strategy", "RECURSIVE");
+        final int maxErrors = intProperty("maxErrors", 0);
+        final String tracePath = property("trace", null);
+
+        List<Contact> contacts = AddressBookGenerator.generate(size, mix, seed);
+        KeystrokeTrace trace;
+        if (tracePath != null) {
+            try (Reader reader = new InputStreamReader(new FileInputStream(tracePath), "UTF-8")) {
+                trace = KeystrokeTrace.parse(reader);
+            }
+        } else {
+            trace = KeystrokeTrace.synthesize(contacts, intProperty("sessions", 300), seed);
+        }
+
+        T9MatchStrategy strategy = "BIT_PARALLEL".equals(strategyName)
+                ? T9MatchStrategy.BIT_PARALLEL : T9MatchStrategy.RECURSIVE;
+        TraceReplayer replayer = new TraceReplayer(contacts, mode, strategy, maxErrors,
+                Double.parseDouble(property("pauseScale", "0")));
+        TraceReplayer.Report report = replayer.replay(trace,
+                Math.min(intProperty("warmUp", 50), trace.sessions().size() / 2));
+        report.mConfig.put("contacts", size);
+        report.mConfig.put("mix", mix);
+        report.mConfig.put("seed", seed);
+        report.mConfig.put("trace", tracePath != null ? tracePath : "synthetic");
+        report.mConfig.put("sessions", trace.sessions().size());
+        report.mConfig.put("mode", mode);
+        report.mConfig.put("strategy", strategyName);
+        report.mConfig.put("maxErrors", maxErrors);
+
+        final String json = report.toJson();
+        File output = new File(property("output", "build/t9-replay/report.json"));
+        writeFile(output, json);
+
+        assertTrue(report.summary(), report.searches() > 0);
+
+        final String baselinePath = property("baseline", null);
+        if (baselinePath != null) {
+            final String baseline = readFile(new File(baselinePath));
+            final double maxRegression = Double.parseDouble(property("maxRegression", "1.5"));
+            final double p99 = TraceReplayer.Report.readMetric(json, "latencyUs", "p99");
+            final double baselineP99 =
+                    TraceReplayer.Report.readMetric(baseline, "latencyUs", "p99");
+            assertTrue("p99 " + p99 + "us > " + maxRegression + " x baseline " + baselineP99,
+                    p99 <= baselineP99 * maxRegression);
+
+            final double found = TraceReplayer.Report.readMetric(json, "targets", "foundRate");
+            final double baselineFound =
+                    TraceReplayer.Report.readMetric(baseline, "targets", "foundRate");
+            assertTrue("found rate " + found + " < baseline " + baselineFound,
+                    found >= baselineFound);
+        }
+    }
+
+    @Test
+    public void recordedTraceRoundTrip() throws Exception {
+        KeystrokeTrace trace = readSampleTrace();
+        assertEquals(4, trace.sessions().size());
+        assertEquals(29, trace.keystrokeCount());
+
+        KeystrokeTrace copy = KeystrokeTrace.parse(new StringReader(trace.format()));
+        assertEquals(trace.format(), copy.format());
+
+        try {
+            KeystrokeTrace.parse(new StringReader("9 4 x"));
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            // 无法识别的记号
+        }
+    }
+
+    @Test
+    public void modesReplayTheSameResults() throws Exception {
+        List<Contact> contacts = AddressBookGenerator.generate(500,
+                AddressBookGenerator.DEFAULT_MIX, 7);
+        KeystrokeTrace trace = readSampleTrace();
+
+        TraceReplayer.Report filter = new TraceReplayer(contacts, TraceReplayer.MODE_FILTER,
+                T9MatchStrategy.RECURSIVE, 0, 0).replay(trace, 0);
+        TraceReplayer.Report planner = new TraceReplayer(contacts,
+                TraceReplayer.MODE_PLANNER, T9MatchStrategy.RECURSIVE, 0, 0).replay(trace, 0);
+
+        // 空输入不过滤
+        assertEquals(23, filter.searches());
+        assertEquals(6, filter.mEmptyKeystrokes);
+        assertEquals(filter.searches(), planner.searches());
+
+        final String filterJson = filter.toJson();
+        final String plannerJson = planner.toJson();
+        assertEquals(TraceReplayer.Report.readMetric(filterJson, "keystrokes", "meanResults"),
+                TraceReplayer.Report.readMetric(plannerJson, "keystrokes", "meanResults"),
+                0.0);
+    }
+
+    private KeystrokeTrace readSampleTrace() throws IOException {
+        try (InputStream in = getClass().getResourceAsStream("sample.trace")) {
+            return KeystrokeTrace.parse(new InputStreamReader(in, "UTF-8"));
+        }
+    }
+
+    private static String property(String name, String defaultValue) {
+        return System.getProperty(PREFIX + name, defaultValue);
+    }
+
+    private static int intProperty(String name, int defaultValue) {
+        return Integer.parseInt(property(name, String.valueOf(defaultValue)));
+    }
+
+    private static void writeFile(File file, String content) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+            writer.write(content);
+        }
+    }
+
+    private static String readFile(File file) throws IOException {
+        try (Scanner scanner = new Scanner(file, "UTF-8")) {
+            return scanner.useDelimiter("\\A").hasNext() ? scanner.next() : "";
+        }
+    }
+
+}
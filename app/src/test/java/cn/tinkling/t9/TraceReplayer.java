@@ -0,0 +1,441 @@
+package cn.tinkling.t9;
+
+import androidx.annotation.NonNull;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import cn.tinkling.t9search.sample.Contact;
+
+/**
+ * 在 JVM 上回放 {@link KeystrokeTrace}: 每次按键, 退格或清空后以当前输入过滤通讯录,
+ * 记录该次过滤的耗时, 分配的字节数及期间的 GC. 输入为空时与界面相同, 不进行过滤.
+ * <p>
+ * 两种执行方式: {@link #MODE_FILTER} 直接调用 {@link T9SearchSupport#filter(List,
+ * T9NumberColumn, String, T9MatchStrategy, int)}; {@link #MODE_PLANNER} 调用
+ * {@link T9ContactIndex.Snapshot#search(String, T9MatchStrategy, int, T9QueryPlanner.Session)}
+ * (经查询计划), 每个会话使用各自的 {@link T9QueryPlanner.Session}.
+ */
+final class TraceReplayer {
+
+    static final String MODE_FILTER = "filter";
+    static final String MODE_PLANNER = "planner";
+
+    /**
+     * 判断目标是否被找到时查看的结果个数
+     */
+    private static final int TARGET_RANK = 10;
+
+    private final List<Contact> mContacts;
+    private final T9NumberColumn mNumberColumn;
+    private final T9ContactIndex.Snapshot mSnapshot;
+    private final String mMode;
+    private final T9MatchStrategy mStrategy;
+    private final int mMaxErrors;
+
+    /**
+     * 停顿的缩放比例, <code>0</code> - 不停顿
+     */
+    private final double mPauseScale;
+
+    private final JvmCounters mCounters = new JvmCounters();
+
+    /**
+     * @param mode       {@link #MODE_FILTER} 或 {@link #MODE_PLANNER}
+     * @param pauseScale 停顿的缩放比例, <code>1</code> - 按轨迹实时停顿, <code>0</code> - 不停顿
+     * @throws IllegalArgumentException 如果 mode 无法识别
+     */
+    TraceReplayer(@NonNull List<Contact> contacts, @NonNull String mode,
+                  @NonNull T9MatchStrategy strategy, int maxErrors, double pauseScale) {
+        if (!MODE_FILTER.equals(mode) && !MODE_PLANNER.equals(mode)) {
+            throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+
+        mContacts = contacts;
+        mMode = mode;
+        mStrategy = strategy;
+        mMaxErrors = maxErrors;
+        mPauseScale = pauseScale;
+
+        T9ContactIndex index = new T9ContactIndex();
+        mSnapshot = index.publish(contacts);
+        mNumberColumn = mSnapshot.numberColumn();
+    }
+
+    /**
+     * 回放轨迹
+     *
+     * @param warmUpSessions 先回放但不计入统计的会话个数, 使热点方法完成编译
+     * @return 统计结果
+     */
+    @NonNull
+    Report replay(@NonNull KeystrokeTrace trace, int warmUpSessions)
+            throws InterruptedException {
+        final List<KeystrokeTrace.Session> sessions = trace.sessions();
+        final int keystrokes = trace.keystrokeCount();
+        Report report = new Report(keystrokes);
+        report.mAllocationSupported = mCounters.allocatedBytes() >= 0;
+
+        for (int s = 0; s < sessions.size(); s++) {
+            replay(sessions.get(s), s < warmUpSessions ? null : report);
+        }
+        report.finish();
+        return report;
+    }
+
+    private void replay(KeystrokeTrace.Session session, Report report)
+            throws InterruptedException {
+        final StringBuilder key = new StringBuilder();
+        final T9QueryPlanner.Session plannerSession = new T9QueryPlanner.Session();
+        int bestLength = 0;
+        boolean found = false;
+        for (int i = 0; i < session.size(); i++) {
+            final int value = session.mValues[i];
+            switch (session.mTypes[i]) {
+                case KeystrokeTrace.TYPE:
+                    key.append((char) value);
+                    break;
+                case KeystrokeTrace.BACKSPACE:
+                    if (key.length() > 0)
+                        key.setLength(key.length() - 1);
+                    break;
+                case KeystrokeTrace.CLEAR:
+                    key.setLength(0);
+                    break;
+                default:
+                    if (report != null) {
+                        report.mPauseMillis += value;
+                    }
+                    if (mPauseScale > 0) {
+                        Thread.sleep((long) (value * mPauseScale));
+                    }
+                    continue;
+            }
+
+            if (key.length() == 0) {
+                if (report != null) {
+                    report.mEmptyKeystrokes++;
+                }
+                continue;
+            }
+
+            final String constraint = key.toString();
+            final long gcCount = mCounters.gcCount();
+            final long gcMillis = mCounters.gcMillis();
+            final long allocated = mCounters.allocatedBytes();
+            final long start = System.nanoTime();
+            List<Contact> results = search(constraint, plannerSession);
+            final long nanos = System.nanoTime() - start;
+            final long bytes = mCounters.allocatedBytes() - allocated
+                    - mCounters.allocationOverhead();
+            if (report == null)
+                continue;
+
+            report.add(nanos, bytes, mCounters.gcCount() - gcCount,
+                    mCounters.gcMillis() - gcMillis, results.size());
+
+            // 以键入最长时的结果判断目标是否被找到
+            if (session.mTarget >= 0 && key.length() >= bestLength) {
+                bestLength = key.length();
+                found = containsTarget(results, mContacts.get(session.mTarget).id);
+            }
+        }
+
+        if (report != null && session.mTarget >= 0) {
+            report.mTargetSessions++;
+            if (found)
+                report.mTargetsFound++;
+        }
+    }
+
+    private List<Contact> search(String key, T9QueryPlanner.Session session) {
+        return MODE_PLANNER.equals(mMode)
+                ? mSnapshot.search(key, mStrategy, mMaxErrors, session)
+                : T9SearchSupport.filter(mContacts, mNumberColumn, key, mStrategy, mMaxErrors);
+    }
+
+    private static boolean containsTarget(List<Contact> results, long id) {
+        final int count = Math.min(TARGET_RANK, results.size());
+        for (int i = 0; i < count; i++) {
+            if (results.get(i).id == id)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * 回放统计
+     */
+    static final class Report {
+
+        private static final Pattern METRIC =
+                Pattern.compile("\"%s\"\\s*:\\s*\\{[^}]*\"%s\"\\s*:\\s*(-?[0-9.]+)");
+
+        final Map<String, Object> mConfig = new LinkedHashMap<>();
+
+        private long[] mLatencies;
+        private long[] mAllocations;
+        private int mSearches;
+        private long mResults;
+        private long mGcCount;
+        private long mGcMillis;
+        private long mMaxGcMillis;
+        private int mKeystrokesWithGc;
+
+        int mEmptyKeystrokes;
+        long mPauseMillis;
+        int mTargetSessions;
+        int mTargetsFound;
+        boolean mAllocationSupported;
+
+        Report(int capacity) {
+            mLatencies = new long[capacity];
+            mAllocations = new long[capacity];
+        }
+
+        void add(long nanos, long bytes, long gcCount, long gcMillis, int results) {
+            mLatencies[mSearches] = nanos;
+            mAllocations[mSearches] = Math.max(0, bytes);
+            mSearches++;
+            mResults += results;
+            if (gcCount > 0) {
+                mGcCount += gcCount;
+                mGcMillis += gcMillis;
+                mMaxGcMillis = Math.max(mMaxGcMillis, gcMillis);
+                mKeystrokesWithGc++;
+            }
+        }
+
+        void finish() {
+            mLatencies = Arrays.copyOf(mLatencies, mSearches);
+            mAllocations = Arrays.copyOf(mAllocations, mSearches);
+            Arrays.sort(mLatencies);
+            Arrays.sort(mAllocations);
+        }
+
+        int searches() {
+            return mSearches;
+        }
+
+        /**
+         * @param percentile 0 - 100
+         * @return 过滤耗时的百分位数(微秒)
+         */
+        double latencyMicros(double percentile) {
+            return percentile(mLatencies, percentile) / 1000.0;
+        }
+
+        double targetFoundRate() {
+            return mTargetSessions == 0 ? 0 : (double) mTargetsFound / mTargetSessions;
+        }
+
+        /**
+         * @return 机器可读的 JSON, 见 {@link #readMetric(String, String, String)}
+         */
+        @NonNull
+        String toJson() {
+            StringBuilder sb = new StringBuilder("{\n");
+            sb.append("  \"harness\": \"t9-trace-replay\",\n");
+            sb.append("  \"format\": 1,\n");
+            sb.append("  \"config\": {");
+            boolean first = true;
+            for (Map.Entry<String, Object> entry : mConfig.entrySet()) {
+                sb.append(first ? "" : ", ").append('"').append(entry.getKey()).append("\": ");
+                Object value = entry.getValue();
+                if (value instanceof Number || value instanceof Boolean) {
+                    sb.append(value);
+                } else {
+                    sb.append('"').append(String.valueOf(value).replace("\"", "\\\""))
+                            .append('"');
+                }
+                first = false;
+            }
+            sb.append("},\n");
+            sb.append(String.format(Locale.US,
+                    "  \"keystrokes\": {\"searches\": %d, \"empty\": %d, \"pauseMs\": %d, "
+                    + "\"meanResults\": %.1f},\n",
+                    mSearches, mEmptyKeystrokes, mPauseMillis,
+                    mSearches == 0 ? 0.0 : (double) mResults / mSearches));
+            sb.append(String.format(Locale.US,
+                    "  \"latencyUs\": {\"mean\": %.1f, \"p50\": %.1f, \"p90\": %.1f, "
+                    + "\"p99\": %.1f, \"p999\": %.1f, \"max\": %.1f},\n",
+                    mean(mLatencies) / 1000.0, latencyMicros(50), latencyMicros(90),
+                    latencyMicros(99), latencyMicros(99.9), latencyMicros(100)));
+            if (mAllocationSupported) {
+                sb.append(String.format(Locale.US,
+                        "  \"allocBytes\": {\"mean\": %.0f, \"p50\": %d, \"p99\": %d, "
+                        + "\"max\": %d},\n",
+                        mean(mAllocations), percentile(mAllocations, 50),
+                        percentile(mAllocations, 99), percentile(mAllocations, 100)));
+            }
+            sb.append(String.format(Locale.US,
+                    "  \"gc\": {\"count\": %d, \"timeMs\": %d, \"maxMsPerKeystroke\": %d, "
+                    + "\"keystrokesWithGc\": %d},\n",
+                    mGcCount, mGcMillis, mMaxGcMillis, mKeystrokesWithGc));
+            sb.append(String.format(Locale.US,
+                    "  \"targets\": {\"sessions\": %d, \"foundRate\": %.4f}\n",
+                    mTargetSessions, targetFoundRate()));
+            return sb.append("}\n").toString();
+        }
+
+        /**
+         * @return 一行可读的摘要
+         */
+        @NonNull
+        String summary() {
+            return String.format(Locale.US,
+                    "%d searches: p50 %.0fus, p90 %.0fus, p99 %.0fus, max %.0fus; "
+                    + "alloc mean %s, p99 %s; gc %d (%dms, max %dms/keystroke); "
+                    + "targets found %.1f%%",
+                    mSearches, latencyMicros(50), latencyMicros(90), latencyMicros(99),
+                    latencyMicros(100),
+                    mAllocationSupported ? formatBytes(mean(mAllocations)) : "n/a",
+                    mAllocationSupported ? formatBytes(percentile(mAllocations, 99)) : "n/a",
+                    mGcCount, mGcMillis, mMaxGcMillis, 100 * targetFoundRate());
+        }
+
+        /**
+         * 从 {@link #toJson()} 的输出中读取一项指标, 用于与基准比较
+         *
+         * @param group 指标组, 如 "latencyUs"
+         * @param name  指标名, 如 "p99"
+         * @return 指标值, <code>NaN</code> - 如果不存在
+         */
+        static double readMetric(@NonNull String json, @NonNull String group,
+                                 @NonNull String name) {
+            Matcher matcher = Pattern.compile(String.format(METRIC.pattern(),
+                    Pattern.quote(group), Pattern.quote(name))).matcher(json);
+            return matcher.find() ? Double.parseDouble(matcher.group(1)) : Double.NaN;
+        }
+
+        private static long percentile(long[] sorted, double percentile) {
+            if (sorted.length == 0)
+                return 0;
+
+            // nearest-rank
+            final int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+            return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+        }
+
+        private static double mean(long[] values) {
+            if (values.length == 0)
+                return 0;
+
+            double sum = 0;
+            for (long value : values) {
+                sum += value;
+            }
+            return sum / values.length;
+        }
+
+        private static String formatBytes(double bytes) {
+            return bytes >= 1024 * 1024
+                    ? String.format(Locale.US, "%.1fMB", bytes / 1024 / 1024)
+                    : String.format(Locale.US, "%.1fKB", bytes / 1024);
+        }
+    }
+
+    /**
+     * 通过反射读取 JVM 的管理接口: 单元测试以 android.jar 为编译时的 bootclasspath,
+     * 其中没有 java.lang.management. 不支持时分配字节数为 <code>-1</code>, GC 为 0.
+     */
+    private static final class JvmCounters {
+
+        private final Object mThreads;
+        private final Method mAllocatedBytes;
+        private final Object[] mGcBeans;
+        private final Method mCollectionCount;
+        private final Method mCollectionTime;
+        private final Long mThreadId = Thread.currentThread().getId();
+
+        /**
+         * 两次连续读取分配字节数之间的差值(反射调用自身的装箱), 从每次测量中扣除
+         */
+        private long mOverhead;
+
+        JvmCounters() {
+            Object threads = null;
+            Method allocatedBytes = null;
+            Object[] gcBeans = new Object[0];
+            Method collectionCount = null;
+            Method collectionTime = null;
+            try {
+                Class<?> factory = Class.forName("java.lang.management.ManagementFactory");
+                threads = factory.getMethod("getThreadMXBean").invoke(null);
+                Class<?> sunThreads = Class.forName("com.sun.management.ThreadMXBean");
+                if (sunThreads.isInstance(threads)) {
+                    allocatedBytes = sunThreads.getMethod("getThreadAllocatedBytes",
+                            long.class);
+                }
+
+                gcBeans = ((List<?>) factory.getMethod("getGarbageCollectorMXBeans")
+                        .invoke(null)).toArray();
+                Class<?> gcBean = Class.forName("java.lang.management.GarbageCollectorMXBean");
+                collectionCount = gcBean.getMethod("getCollectionCount");
+                collectionTime = gcBean.getMethod("getCollectionTime");
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                allocatedBytes = null;
+                collectionCount = null;
+            }
+            mThreads = threads;
+            mAllocatedBytes = allocatedBytes;
+            mGcBeans = gcBeans;
+            mCollectionCount = collectionCount;
+            mCollectionTime = collectionTime;
+
+            if (mAllocatedBytes != null) {
+                long overhead = Long.MAX_VALUE;
+                for (int i = 0; i < 16; i++) {
+                    final long before = allocatedBytes();
+                    overhead = Math.min(overhead, allocatedBytes() - before);
+                }
+                mOverhead = overhead;
+            }
+        }
+
+        long allocationOverhead() {
+            return mOverhead;
+        }
+
+        long allocatedBytes() {
+            if (mAllocatedBytes == null)
+                return -1;
+
+            try {
+                return (Long) mAllocatedBytes.invoke(mThreads, mThreadId);
+            } catch (ReflectiveOperationException e) {
+                return -1;
+            }
+        }
+
+        long gcCount() {
+            return sum(mCollectionCount);
+        }
+
+        long gcMillis() {
+            return sum(mCollectionTime);
+        }
+
+        private long sum(Method method) {
+            if (method == null)
+                return 0;
+
+            long total = 0;
+            try {
+                for (Object bean : mGcBeans) {
+                    total += Math.max(0, (Long) method.invoke(bean));
+                }
+            } catch (ReflectiveOperationException e) {
+                return 0;
+            }
+            return total;
+        }
+    }
+
+}